@@ -3,10 +3,12 @@ package com.cadosfrit.sensor.event.service;
 import jakarta.annotation.PostConstruct;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.TimeZone;
 
 @SpringBootApplication
+@EnableScheduling
 public class SensorEventServiceApplication {
 
 	public static void main(String[] args) {
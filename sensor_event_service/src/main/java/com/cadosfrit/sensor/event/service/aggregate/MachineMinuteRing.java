@@ -0,0 +1,71 @@
+package com.cadosfrit.sensor.event.service.aggregate;
+
+import java.util.Arrays;
+
+/**
+ * Event count and defect sum of one machine per UTC minute, in hour-long segments of primitive arrays.
+ * Segments are reused round-robin: the slot of an hour is {@code hour mod segments}, and a write to a newer hour
+ * clears whatever older hour held the slot. Segment arrays are allocated on the first write to their slot.
+ */
+final class MachineMinuteRing {
+
+    static final int SEGMENT_MINUTES = 60;
+
+    private final long[] segmentHours;
+    private final long[][] events;
+    private final long[][] defects;
+
+    MachineMinuteRing(int segments) {
+        this.segmentHours = new long[segments];
+        this.events = new long[segments][];
+        this.defects = new long[segments][];
+        Arrays.fill(segmentHours, Long.MIN_VALUE);
+    }
+
+    /**
+     * Adds a change to one minute. A retraction for an hour the ring no longer (or never) held is dropped,
+     * as is any write to an hour older than the one occupying its slot.
+     *
+     * @return whether the change was applied
+     */
+    synchronized boolean add(long epochMinute, long eventDelta, long defectDelta) {
+        long hour = Math.floorDiv(epochMinute, SEGMENT_MINUTES);
+        int slot = (int) Math.floorMod(hour, (long) segmentHours.length);
+        if (segmentHours[slot] != hour) {
+            if (hour < segmentHours[slot] || eventDelta < 0) {
+                return false;
+            }
+            if (events[slot] == null) {
+                events[slot] = new long[SEGMENT_MINUTES];
+                defects[slot] = new long[SEGMENT_MINUTES];
+            } else {
+                Arrays.fill(events[slot], 0);
+                Arrays.fill(defects[slot], 0);
+            }
+            segmentHours[slot] = hour;
+        }
+        int minute = (int) Math.floorMod(epochMinute, (long) SEGMENT_MINUTES);
+        events[slot][minute] += eventDelta;
+        defects[slot][minute] += defectDelta;
+        return true;
+    }
+
+    /**
+     * Adds the minutes [fromMinute, toMinute) to {@code totals} as {events, defects}; hours not held count as zero.
+     */
+    synchronized void sum(long fromMinute, long toMinute, long[] totals) {
+        long minute = fromMinute;
+        while (minute < toMinute) {
+            long hour = Math.floorDiv(minute, SEGMENT_MINUTES);
+            long hourEnd = Math.min(toMinute, (hour + 1) * SEGMENT_MINUTES);
+            int slot = (int) Math.floorMod(hour, (long) segmentHours.length);
+            if (segmentHours[slot] == hour) {
+                for (int i = (int) (minute - hour * SEGMENT_MINUTES); i < hourEnd - hour * SEGMENT_MINUTES; i++) {
+                    totals[0] += events[slot][i];
+                    totals[1] += defects[slot][i];
+                }
+            }
+            minute = hourEnd;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.cadosfrit.sensor.event.service.aggregate;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.EventStoreType;
+import com.cadosfrit.sensor.event.service.constants.PartitionInterval;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+import com.cadosfrit.sensor.event.service.dto.EventChangeDTO;
+import com.cadosfrit.sensor.event.service.dto.MinuteAggregateStatsDTO;
+import com.cadosfrit.sensor.event.service.service.ChangeFeedService;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.RetentionProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-machine, per-minute event counts and defect sums (heartbeats count as events, not defects) for the last
+ * {@code horizon-hours}, kept in memory so minute-aligned stats windows need no range scan of machine_events.
+ * <p>
+ * The store is loaded from one consistent snapshot and then follows the change feed. The snapshot position comes
+ * from {@link ChangeFeedService#stablePosition()}: every change up to it is in the snapshot, and the changes above it
+ * that the snapshot already saw are listed in the same transaction and skipped when the feed delivers them.
+ * An UPDATED change retracts its before-image from the old machine and minute and adds the new one.
+ * Reads are only answered while the feed was drained within {@code max-staleness-ms}.
+ */
+@Slf4j
+@Component
+public class MinuteAggregateStore {
+
+    // Minute numbers count from the epoch in UTC, like event_time's UTC wall-clock values
+    private static final String EVENT_MINUTES_SQL = """
+            SELECT k.machine_id, e.minute_no, e.events, e.defects
+            FROM (
+                SELECT machine_key, TIMESTAMPDIFF(MINUTE, '1970-01-01 00:00:00', event_time) AS minute_no,
+                       COUNT(*) AS events,
+                       SUM(CASE WHEN defect_count = -1 THEN 0 ELSE defect_count END) AS defects
+                FROM machine_events
+                WHERE event_time >= ?
+                GROUP BY machine_key, minute_no
+            ) e
+            JOIN machine_keys k ON k.machine_key = e.machine_key
+            """;
+    private static final String HEARTBEAT_MINUTES_SQL = """
+            SELECT machine_id, TIMESTAMPDIFF(MINUTE, '1970-01-01 00:00:00', minute_start) AS minute_no,
+                   heartbeat_count AS events, 0 AS defects
+            FROM machine_heartbeat_minutes
+            WHERE minute_start >= ?
+            """;
+    private static final String SEEN_CHANGES_SQL = "SELECT seq FROM event_outbox WHERE seq > ?";
+    private static final String UPDATED = "UPDATED";
+    // Ingest rejects events more than 15 minutes ahead; the extra hours absorb clock skew between instances
+    private static final int FUTURE_HOURS = 2;
+
+    private final boolean enabled;
+    private final int horizonHours;
+    private final int pageSize;
+    private final long pollWaitMs;
+    private final long maxStalenessMs;
+    private final long retryIntervalMs;
+    private final boolean heartbeatsCompacted;
+    private final ChangeFeedService changeFeed;
+    private final JdbcTemplate jdbc;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "minute-aggregates");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<String, MachineMinuteRing> machines = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile long position;
+    private volatile long caughtUpAtMillis;
+    private volatile Instant lastLoadAt;
+    // Changes above the snapshot position that the snapshot already contains
+    private Set<Long> seenBySnapshot = new HashSet<>();
+    private final LongAdder appliedChanges = new LongAdder();
+    private final LongAdder retractions = new LongAdder();
+    private final LongAdder droppedChanges = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder servedReads = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+
+    public MinuteAggregateStore(@Value("${analytics.minute-aggregates.enabled:false}") boolean enabled,
+                                @Value("${analytics.minute-aggregates.horizon-hours:6}") int horizonHours,
+                                @Value("${analytics.minute-aggregates.page-size:1000}") int pageSize,
+                                @Value("${analytics.minute-aggregates.poll-wait-ms:500}") long pollWaitMs,
+                                @Value("${analytics.minute-aggregates.max-staleness-ms:2000}") long maxStalenessMs,
+                                @Value("${analytics.minute-aggregates.retry-interval-ms:5000}") long retryIntervalMs,
+                                @Value("${ingest.outbox.max-page-size:1000}") int maxFeedPageSize,
+                                @Value("${ingest.store.type:MYSQL}") EventStoreType storeType,
+                                IngestSessionSettings sessionSettings,
+                                RetentionProperties retention,
+                                Environment environment,
+                                ShardRouter shardRouter,
+                                ChangeFeedService changeFeed,
+                                @Qualifier("analyticsJdbcTemplate") NamedParameterJdbcTemplate analyticsJdbcTemplate) {
+        this.enabled = enabled && isSupported(storeType, sessionSettings, shardRouter);
+        this.horizonHours = Math.max(1, horizonHours);
+        if (this.enabled) {
+            requireHorizonBelowDeletes(this.horizonHours, retention, environment);
+        }
+        this.pageSize = Math.max(1, Math.min(pageSize, maxFeedPageSize));
+        this.pollWaitMs = pollWaitMs;
+        this.maxStalenessMs = maxStalenessMs;
+        this.retryIntervalMs = retryIntervalMs;
+        this.heartbeatsCompacted = sessionSettings.getStorageMode() == StorageMode.HEARTBEAT_COMPACTED;
+        this.changeFeed = changeFeed;
+        this.jdbc = analyticsJdbcTemplate.getJdbcTemplate();
+    }
+
+    /**
+     * The store follows the primary's outbox, so it needs the MySQL store with the outbox on. Versioned storage
+     * projects into machine_events after the fact, and sharded factories record changes in their own shard's outbox.
+     */
+    private static boolean isSupported(EventStoreType storeType, IngestSessionSettings sessionSettings,
+                                       ShardRouter shardRouter) {
+        String reason = storeType != EventStoreType.MYSQL ? "ingest.store.type=" + storeType
+                : !sessionSettings.isOutboxEnabled() ? "ingest.outbox.enabled=false"
+                : sessionSettings.getStorageMode() == StorageMode.VERSIONED ? "ingest.storage.mode=VERSIONED"
+                : shardRouter.isEnabled() ? "ingest.sharding.enabled=true"
+                : null;
+        if (reason != null) {
+            log.warn("Minute aggregates are not available with {}, stats keep reading MySQL", reason);
+        }
+        return reason == null;
+    }
+
+    /**
+     * Retention, partition drops and tiering remove events without recording a change, so a horizon reaching
+     * that far back would keep counting them. Refusing to start is safer than stats that never shrink.
+     */
+    private static void requireHorizonBelowDeletes(int horizonHours, RetentionProperties retention,
+                                                   Environment environment) {
+        Map<String, Integer> minAgeHours = new LinkedHashMap<>();
+        if (retention.shortestMaxAgeDays() > 0) {
+            minAgeHours.put("ingest.retention.max-age-days", retention.shortestMaxAgeDays() * 24);
+        }
+        int retentionPartitions = environment.getProperty("ingest.storage.partitioning.retention-partitions", Integer.class, 0);
+        if (environment.getProperty("ingest.storage.partitioning.enabled", Boolean.class, false) && retentionPartitions > 0) {
+            PartitionInterval interval = environment.getProperty("ingest.storage.partitioning.interval",
+                    PartitionInterval.class, PartitionInterval.DAILY);
+            minAgeHours.put("ingest.storage.partitioning.retention-partitions",
+                    retentionPartitions * (interval == PartitionInterval.WEEKLY ? 7 : 1) * 24);
+        }
+        if (environment.getProperty("ingest.tiering.enabled", Boolean.class, false)) {
+            minAgeHours.put("ingest.tiering.hot-days", environment.getProperty("ingest.tiering.hot-days", Integer.class, 30) * 24);
+        }
+        List<String> reached = new ArrayList<>();
+        minAgeHours.forEach((property, hours) -> {
+            if (horizonHours >= hours) {
+                reached.add(property + " (" + hours + " h)");
+            }
+        });
+        if (!reached.isEmpty()) {
+            throw new IllegalStateException("analytics.minute-aggregates.horizon-hours=" + horizonHours
+                    + " must be below the age at which events are removed by " + reached);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            executor.execute(this::follow);
+        } catch (RejectedExecutionException e) {
+            log.debug("Minute aggregate executor is shut down");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Totals of the minute-aligned part of [start, end) that lies within the horizon, or empty when that part is
+     * shorter than a minute or the store is not current. The caller reads the rest of the window from MySQL.
+     */
+    public Optional<Covered> aggregate(String machineId, Instant start, Instant end) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long nowMinute = epochMinute(Instant.now());
+        long fromMinute = Math.max(ceilMinute(start), nowMinute - horizonHours * 60L);
+        long toMinute = Math.min(epochMinute(end), coveredToMinute(nowMinute));
+        if (fromMinute >= toMinute) {
+            return Optional.empty();
+        }
+        if (!isCurrent()) {
+            staleReads.increment();
+            return Optional.empty();
+        }
+
+        long[] totals = new long[2];
+        MachineMinuteRing ring = machines.get(machineId);
+        if (ring != null) {
+            ring.sum(fromMinute, toMinute, totals);
+        }
+        servedReads.increment();
+        return Optional.of(new Covered(toInstant(fromMinute), toInstant(toMinute), totals[0], totals[1]));
+    }
+
+    public MinuteAggregateStatsDTO getStats() {
+        long caughtUp = caughtUpAtMillis;
+        return MinuteAggregateStatsDTO.builder()
+                .enabled(enabled)
+                .current(isCurrent())
+                .horizonHours(horizonHours)
+                .machines(machines.size())
+                .position(position)
+                .stalenessMs(caughtUp > 0 ? System.currentTimeMillis() - caughtUp : null)
+                .lastLoadAt(lastLoadAt)
+                .loads(loads.sum())
+                .appliedChanges(appliedChanges.sum())
+                .retractions(retractions.sum())
+                .droppedChanges(droppedChanges.sum())
+                .servedReads(servedReads.sum())
+                .staleReads(staleReads.sum())
+                .build();
+    }
+
+    private boolean isCurrent() {
+        return loaded && System.currentTimeMillis() - caughtUpAtMillis <= maxStalenessMs;
+    }
+
+    private void follow() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (!loaded) {
+                    load();
+                }
+                long polledAt = System.currentTimeMillis();
+                ChangeFeedPageDTO page = changeFeed.getChanges(position, pageSize, pollWaitMs);
+                for (EventChangeDTO change : page.getChanges()) {
+                    apply(change);
+                }
+                position = page.getNextAfter();
+                if (page.getChanges().size() < pageSize) {
+                    caughtUpAtMillis = polledAt;
+                }
+            } catch (IllegalStateException e) {
+                log.warn("Reloading minute aggregates: {}", e.getMessage());
+                loaded = false;
+            } catch (Exception e) {
+                log.error("Error following the change feed for minute aggregates, retrying in {} ms", retryIntervalMs, e);
+                try {
+                    Thread.sleep(retryIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds every machine's ring from MySQL inside one REPEATABLE READ snapshot.
+     */
+    private void load() {
+        long started = System.nanoTime();
+        long stable = changeFeed.stablePosition();
+        long fromMinute = epochMinute(Instant.now()) - horizonHours * 60L;
+        LocalDateTime from = LocalDateTime.ofInstant(toInstant(fromMinute), ZoneOffset.UTC);
+        Map<String, MachineMinuteRing> loadedMachines = new ConcurrentHashMap<>();
+        Set<Long> seen = new HashSet<>();
+
+        jdbc.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setAutoCommit(false);
+            try {
+                readMinutes(connection, EVENT_MINUTES_SQL, from, loadedMachines);
+                if (heartbeatsCompacted) {
+                    readMinutes(connection, HEARTBEAT_MINUTES_SQL, from, loadedMachines);
+                }
+                try (PreparedStatement statement = connection.prepareStatement(SEEN_CHANGES_SQL)) {
+                    statement.setLong(1, stable);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            seen.add(rs.getLong(1));
+                        }
+                    }
+                }
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+                connection.setTransactionIsolation(isolation);
+            }
+            return null;
+        });
+
+        machines = loadedMachines;
+        seenBySnapshot = seen;
+        position = stable;
+        loaded = true;
+        lastLoadAt = Instant.now();
+        loads.increment();
+        log.info("Loaded minute aggregates of {} machines from {} at change {} in {} ms", loadedMachines.size(),
+                from, stable, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void readMinutes(Connection connection, String sql, LocalDateTime from,
+                             Map<String, MachineMinuteRing> target) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, from);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    target.computeIfAbsent(rs.getString("machine_id"), id -> newRing())
+                            .add(rs.getLong("minute_no"), rs.getLong("events"), rs.getLong("defects"));
+                }
+            }
+        }
+    }
+
+    private void apply(EventChangeDTO change) {
+        if (seenBySnapshot.remove(change.getSeq())) {
+            return;
+        }
+        if (UPDATED.equals(change.getChangeType())) {
+            if (change.getBefore() == null) {
+                throw new IllegalStateException("update " + change.getSeq() + " carries no before-image");
+            }
+            add(change.getBefore(), -1);
+            retractions.increment();
+        }
+        add(change.getAfter(), 1);
+        appliedChanges.increment();
+    }
+
+    private void add(EventChangeDTO.Image image, int sign) {
+        long minute = epochMinute(image.getEventTime());
+        long nowMinute = epochMinute(Instant.now());
+        if (minute < nowMinute - horizonHours * 60L) {
+            return;
+        }
+        if (minute >= coveredToMinute(nowMinute)) {
+            droppedChanges.increment();
+            log.warn("Minute aggregates dropped a change of machine {} at {}, beyond the covered future",
+                    image.getMachineId(), image.getEventTime());
+            return;
+        }
+        Integer defects = image.getDefectCount();
+        long defectDelta = defects == null || defects == -1 ? 0 : defects;
+        if (!machines.computeIfAbsent(image.getMachineId(), id -> newRing()).add(minute, sign, sign * defectDelta)) {
+            // Every hour of the horizon stays in the ring, so a change it cannot apply means the store is off
+            droppedChanges.increment();
+            throw new IllegalStateException("change of machine " + image.getMachineId() + " at "
+                    + image.getEventTime() + " matches no loaded minute");
+        }
+    }
+
+    private MachineMinuteRing newRing() {
+        // Enough segments that a write up to FUTURE_HOURS ahead never clears an hour inside the horizon
+        return new MachineMinuteRing(horizonHours + FUTURE_HOURS + 1);
+    }
+
+    private static long coveredToMinute(long nowMinute) {
+        return (Math.floorDiv(nowMinute, MachineMinuteRing.SEGMENT_MINUTES) + FUTURE_HOURS + 1)
+                * MachineMinuteRing.SEGMENT_MINUTES;
+    }
+
+    private static long epochMinute(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), 60);
+    }
+
+    private static long ceilMinute(Instant instant) {
+        Instant floor = instant.truncatedTo(ChronoUnit.MINUTES);
+        return epochMinute(floor) + (floor.equals(instant) ? 0 : 1);
+    }
+
+    private static Instant toInstant(long epochMinute) {
+        return Instant.ofEpochSecond(epochMinute * 60);
+    }
+
+    /**
+     * Totals of the minutes [from, to) answered from memory.
+     */
+    public record Covered(Instant from, Instant to, long events, long defects) {}
+}
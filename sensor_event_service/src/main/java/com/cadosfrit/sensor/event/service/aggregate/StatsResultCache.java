@@ -0,0 +1,423 @@
+package com.cadosfrit.sensor.event.service.aggregate;
+
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+import com.cadosfrit.sensor.event.service.dto.EventChangeDTO;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.dto.StatsCacheStatsDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+import com.cadosfrit.sensor.event.service.flowcontrol.FactoryResolver;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRouter;
+import com.cadosfrit.sensor.event.service.service.ChangeFeedService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU of finished /stats and /stats/top-defect-lines results, keyed by the request parameters.
+ * Dashboards keep asking for the same closed windows ("yesterday", "last shift"), whose answers only change
+ * when a late or corrected event lands in them.
+ * <p>
+ * Every ingest on this instance reports the (machine, hour) buckets it wrote once it has committed, and only the
+ * entries of that machine, or of its factory for line rankings, whose window overlaps a written hour are dropped.
+ * With the outbox on, the change feed adds the before-images of event updates and event writes made by other
+ * instances. Without it, a batch that updated events drops everything, because the old machine and time are
+ * unknown. Summaries never reach the outbox, so a summary batch that updated rows always drops everything, and
+ * summary writes made by other instances only leave this cache through {@code ttl-ms}.
+ * A result is not stored when a write overlapping it was reported while it was computed (or within the
+ * replica lag before), so a read racing an ingest never caches the old totals.
+ * Changes no ingest reports (retention, partition drops, hierarchy edits, other shards' outboxes) are bounded by
+ * {@code ttl-ms}.
+ */
+@Slf4j
+@Component
+public class StatsResultCache {
+
+    private static final long BUCKET_MS = ChronoUnit.HOURS.getDuration().toMillis();
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final int maxInvalidations;
+    private final int pageSize;
+    private final long pollWaitMs;
+    private final long retryIntervalMs;
+    private final FactoryResolver factoryResolver;
+    private final ReplicaRouter replicaRouter;
+    private final ChangeFeedService changeFeed;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-cache-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // All guarded by entries
+    private final Map<Key, Entry> entries;
+    private final Map<String, Set<Key>> byMachine = new HashMap<>();
+    private final Map<String, Set<Key>> byFactory = new HashMap<>();
+    private final Deque<Invalidation> recentInvalidations = new ArrayDeque<>();
+    // Invalidations at or before this time are no longer in recentInvalidations (or dropped everything)
+    private long forgottenBeforeMillis;
+
+    private volatile boolean following;
+    private volatile long position;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidatedEntries = new LongAdder();
+    private final LongAdder invalidatedBuckets = new LongAdder();
+    private final LongAdder clears = new LongAdder();
+    private final LongAdder racedStores = new LongAdder();
+
+    public StatsResultCache(@Value("${analytics.stats-cache.enabled:false}") boolean enabled,
+                            @Value("${analytics.stats-cache.max-entries:10000}") int maxEntries,
+                            @Value("${analytics.stats-cache.ttl-ms:600000}") long ttlMs,
+                            @Value("${analytics.stats-cache.recent-invalidations:4096}") int maxInvalidations,
+                            @Value("${analytics.stats-cache.page-size:1000}") int pageSize,
+                            @Value("${analytics.stats-cache.poll-wait-ms:500}") long pollWaitMs,
+                            @Value("${analytics.stats-cache.retry-interval-ms:5000}") long retryIntervalMs,
+                            @Value("${ingest.outbox.max-page-size:1000}") int maxFeedPageSize,
+                            FactoryResolver factoryResolver,
+                            ReplicaRouter replicaRouter,
+                            ChangeFeedService changeFeed) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = ttlMs;
+        this.maxInvalidations = Math.max(1, maxInvalidations);
+        this.pageSize = Math.max(1, Math.min(pageSize, maxFeedPageSize));
+        this.pollWaitMs = pollWaitMs;
+        this.retryIntervalMs = retryIntervalMs;
+        this.factoryResolver = factoryResolver;
+        this.replicaRouter = replicaRouter;
+        this.changeFeed = changeFeed;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= StatsResultCache.this.maxEntries) {
+                    return false;
+                }
+                unindex(eldest.getKey());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || !changeFeed.isEnabled()) {
+            return;
+        }
+        try {
+            executor.execute(this::follow);
+        } catch (RejectedExecutionException e) {
+            log.debug("Stats cache invalidation executor is shut down");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public MachineStatsDTO getMachineStats(String machineId, Instant start, Instant end,
+                                           Supplier<MachineStatsDTO> loader) {
+        return get(new Key(Kind.MACHINE, machineId, start, end, 0), loader);
+    }
+
+    public List<Map<String, Object>> getTopDefectLines(String factoryId, Instant from, Instant to, int limit,
+                                                       Supplier<List<Map<String, Object>>> loader) {
+        return get(new Key(Kind.LINES, factoryId, from, to, limit),
+                () -> loader.get().stream().map(Collections::unmodifiableMap).toList());
+    }
+
+    /**
+     * Runs the ingest of an event batch and drops the entries it may have changed once it returns.
+     * A failed ingest drops them too, because parts of a batch split across shards may have committed.
+     */
+    public IngestResponseDTO invalidateEvents(List<EventRequestDTO> batch, Supplier<IngestResponseDTO> ingest) {
+        return invalidate(batch, ingest, true, EventRequestDTO::getMachineId,
+                event -> event.getEventTime() != null ? new Instant[]{event.getEventTime(), event.getEventTime()} : null);
+    }
+
+    /**
+     * Runs the ingest of a summary batch and drops the entries it may have changed, as {@link #invalidateEvents}.
+     * The change feed carries no summaries, so the old interval of an updated summary is never known.
+     */
+    public IngestResponseDTO invalidateSummaries(List<SummaryRequestDTO> batch, Supplier<IngestResponseDTO> ingest) {
+        return invalidate(batch, ingest, false, SummaryRequestDTO::getMachineId,
+                summary -> summary.getIntervalStart() != null && summary.getIntervalEnd() != null
+                        ? new Instant[]{summary.getIntervalStart(), summary.getIntervalEnd()} : null);
+    }
+
+    public StatsCacheStatsDTO getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return StatsCacheStatsDTO.builder()
+                .enabled(enabled)
+                .followingChangeFeed(following)
+                .position(position)
+                .entries(size)
+                .maxEntries(maxEntries)
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .bypasses(bypasses.sum())
+                .evictions(evictions.sum())
+                .expirations(expirations.sum())
+                .invalidatedEntries(invalidatedEntries.sum())
+                .invalidatedBuckets(invalidatedBuckets.sum())
+                .clears(clears.sum())
+                .racedStores(racedStores.sum())
+                .build();
+    }
+
+    /**
+     * Windows still open are computed every time; new events would invalidate them right away.
+     * With the outbox on, nothing is served until the feed is followed, so no committed change goes unnoticed.
+     */
+    private <T> T get(Key key, Supplier<T> loader) {
+        long startedAt = System.currentTimeMillis();
+        if (!enabled || (changeFeed.isEnabled() && !following) || key.to().toEpochMilli() > startedAt) {
+            bypasses.increment();
+            return loader.get();
+        }
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() > startedAt) {
+                    hits.increment();
+                    @SuppressWarnings("unchecked")
+                    T value = (T) entry.value();
+                    return value;
+                }
+                entries.remove(key);
+                unindex(key);
+                expirations.increment();
+            }
+        }
+
+        misses.increment();
+        T value = loader.get();
+        if (value == null) {
+            return null;
+        }
+        // A replica read may reflect the data as it was up to the lag before the read started
+        long since = startedAt - replicaRouter.getLagMs().orElse(0);
+        synchronized (entries) {
+            if (since <= forgottenBeforeMillis || invalidatedSince(key, since)) {
+                racedStores.increment();
+                return value;
+            }
+            entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMs));
+            (key.kind() == Kind.MACHINE ? byMachine : byFactory)
+                    .computeIfAbsent(key.id(), id -> new HashSet<>()).add(key);
+        }
+        return value;
+    }
+
+    private <E> IngestResponseDTO invalidate(List<E> batch, Supplier<IngestResponseDTO> ingest, boolean inChangeFeed,
+                                             Function<E, String> machineIdOf, Function<E, Instant[]> rangeOf) {
+        IngestResponseDTO response;
+        try {
+            response = ingest.get();
+        } catch (RuntimeException e) {
+            invalidate(batch, (IngestResponseDTO) null, inChangeFeed, machineIdOf, rangeOf);
+            throw e;
+        }
+        return invalidate(batch, response, inChangeFeed, machineIdOf, rangeOf);
+    }
+
+    /**
+     * @param inChangeFeed whether the feed reports the before-images of this batch's updates
+     */
+    private <E> IngestResponseDTO invalidate(List<E> batch, IngestResponseDTO response, boolean inChangeFeed,
+                                             Function<E, String> machineIdOf, Function<E, Instant[]> rangeOf) {
+        if (!enabled || batch == null || batch.isEmpty()) {
+            return response;
+        }
+        try {
+            if ((response == null || response.getUpdated() > 0) && !(inChangeFeed && following)) {
+                clear();
+                return response;
+            }
+            Set<Bucket> buckets = new LinkedHashSet<>();
+            for (E item : batch) {
+                Instant[] range = item != null ? rangeOf.apply(item) : null;
+                String machineId = item != null ? machineIdOf.apply(item) : null;
+                if (machineId != null && range != null) {
+                    addBuckets(buckets, machineId, range[0], range[1]);
+                }
+            }
+            invalidate(buckets);
+        } catch (Exception e) {
+            log.error("Error invalidating cached stats, dropping all entries", e);
+            clear();
+        }
+        return response;
+    }
+
+    private void follow() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (!following) {
+                    position = changeFeed.stablePosition();
+                    following = true;
+                    log.info("Stats cache following the change feed from position {}", position);
+                }
+                ChangeFeedPageDTO page = changeFeed.getChanges(position, pageSize, pollWaitMs);
+                Set<Bucket> buckets = new LinkedHashSet<>();
+                for (EventChangeDTO change : page.getChanges()) {
+                    addBuckets(buckets, change.getAfter());
+                    addBuckets(buckets, change.getBefore());
+                }
+                invalidate(buckets);
+                position = page.getNextAfter();
+            } catch (Exception e) {
+                // Changes may have been missed, so nothing cached so far can be trusted
+                log.error("Error following the change feed for the stats cache, retrying in {} ms", retryIntervalMs, e);
+                following = false;
+                clear();
+                try {
+                    Thread.sleep(retryIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void addBuckets(Set<Bucket> buckets, EventChangeDTO.Image image) {
+        if (image != null && image.getMachineId() != null && image.getEventTime() != null) {
+            addBuckets(buckets, image.getMachineId(), image.getEventTime(), image.getEventTime());
+        }
+    }
+
+    /**
+     * The hours touched by [from, to], or the hour holding {@code from} for a single event time.
+     */
+    private static void addBuckets(Set<Bucket> buckets, String machineId, Instant from, Instant to) {
+        long bucket = Math.floorDiv(from.toEpochMilli(), BUCKET_MS);
+        long last = Math.max(bucket, Math.floorDiv(to.toEpochMilli() - 1, BUCKET_MS));
+        for (; bucket <= last; bucket++) {
+            buckets.add(new Bucket(machineId, bucket));
+        }
+    }
+
+    private void invalidate(Set<Bucket> buckets) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        Map<String, String> factories = new HashMap<>();
+        for (Bucket bucket : buckets) {
+            factories.computeIfAbsent(bucket.machineId(), factoryResolver::resolve);
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (Bucket bucket : buckets) {
+                Instant from = Instant.ofEpochMilli(bucket.number() * BUCKET_MS);
+                Instant to = Instant.ofEpochMilli((bucket.number() + 1) * BUCKET_MS);
+                Invalidation invalidation = new Invalidation(now, bucket.machineId(),
+                        factories.get(bucket.machineId()), from, to);
+                remember(invalidation);
+                drop(byMachine.get(invalidation.machineId()), invalidation);
+                drop(byFactory.get(invalidation.factoryId()), invalidation);
+            }
+        }
+        invalidatedBuckets.add(buckets.size());
+    }
+
+    private void drop(Set<Key> keys, Invalidation invalidation) {
+        if (keys == null) {
+            return;
+        }
+        for (Key key : new ArrayList<>(keys)) {
+            if (invalidation.overlaps(key)) {
+                entries.remove(key);
+                unindex(key);
+                invalidatedEntries.increment();
+            }
+        }
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            invalidatedEntries.add(entries.size());
+            entries.clear();
+            byMachine.clear();
+            byFactory.clear();
+            recentInvalidations.clear();
+            forgottenBeforeMillis = System.currentTimeMillis();
+        }
+        clears.increment();
+    }
+
+    private void remember(Invalidation invalidation) {
+        recentInvalidations.addLast(invalidation);
+        while (recentInvalidations.size() > maxInvalidations) {
+            forgottenBeforeMillis = Math.max(forgottenBeforeMillis, recentInvalidations.removeFirst().atMillis());
+        }
+    }
+
+    private boolean invalidatedSince(Key key, long since) {
+        Iterator<Invalidation> newestFirst = recentInvalidations.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Invalidation invalidation = newestFirst.next();
+            if (invalidation.atMillis() < since) {
+                return false;
+            }
+            if (invalidation.overlaps(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unindex(Key key) {
+        Map<String, Set<Key>> index = key.kind() == Kind.MACHINE ? byMachine : byFactory;
+        Set<Key> keys = index.get(key.id());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(key.id());
+            }
+        }
+    }
+
+    private enum Kind { MACHINE, LINES }
+
+    private record Key(Kind kind, String id, Instant from, Instant to, int limit) {}
+
+    private record Entry(Object value, long expiresAt) {}
+
+    private record Bucket(String machineId, long number) {}
+
+    private record Invalidation(long atMillis, String machineId, String factoryId, Instant from, Instant to) {
+        boolean overlaps(Key key) {
+            String owner = key.kind() == Kind.MACHINE ? machineId : factoryId;
+            return key.id().equals(owner) && key.from().isBefore(to) && from.isBefore(key.to());
+        }
+    }
+}
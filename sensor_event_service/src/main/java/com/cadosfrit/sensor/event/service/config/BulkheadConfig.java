@@ -0,0 +1,30 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.flowcontrol.Bulkhead;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class BulkheadConfig {
+
+    @Bean(destroyMethod = "close")
+    public Bulkhead ingestBulkhead(
+            @Qualifier("ingestDataSource") HikariDataSource dataSource,
+            @Value("${bulkhead.ingest.threads:16}") int threads,
+            @Value("${bulkhead.ingest.queue-capacity:64}") int queueCapacity,
+            @Value("${bulkhead.ingest.timeout-ms:30000}") long timeoutMs) {
+        return new Bulkhead("ingest", threads, queueCapacity, timeoutMs, dataSource);
+    }
+
+    @Bean(destroyMethod = "close")
+    public Bulkhead analyticsBulkhead(
+            @Qualifier("analyticsDataSource") HikariDataSource dataSource,
+            @Value("${bulkhead.analytics.threads:4}") int threads,
+            @Value("${bulkhead.analytics.queue-capacity:32}") int queueCapacity,
+            @Value("${bulkhead.analytics.timeout-ms:10000}") long timeoutMs) {
+        return new Bulkhead("analytics", threads, queueCapacity, timeoutMs, dataSource);
+    }
+}
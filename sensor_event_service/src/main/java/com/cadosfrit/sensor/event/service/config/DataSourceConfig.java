@@ -0,0 +1,74 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRoutingDataSource;
+import com.cadosfrit.sensor.event.service.shadow.ShadowRoutingDataSource;
+import com.cadosfrit.sensor.event.service.sharding.ShardDataSources;
+import com.cadosfrit.sensor.event.service.sharding.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Connection bulkheads: ingest (JPA, stored procedures) and analytics (stats scans) draw from separate Hikari pools
+ * on the same database, so a slow dashboard query cannot hold connections ingest is waiting for and vice versa.
+ * With sharding enabled, both are routed per thread to the pools of the bound shard; with a read replica,
+ * stats reads the replica can already answer are routed to it.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource ingestDataSource(DataSourceProperties properties, IngestSessionSettings sessionSettings) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(AppConstants.INGEST_POOL_NAME);
+        dataSource.setConnectionInitSql(sessionSettings.connectionInitSql());
+        return dataSource;
+    }
+
+    /**
+     * JPA and the stored procedures use the ingest pool of the thread's shard, except on threads replaying shadow traffic.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("ingestDataSource") HikariDataSource ingestDataSource,
+                                 @Qualifier("shadowDataSource") ObjectProvider<HikariDataSource> shadowDataSource,
+                                 ObjectProvider<ShardDataSources> shardDataSources) {
+        ShardDataSources shards = shardDataSources.getIfAvailable();
+        DataSource primary = ShardRoutingDataSource.of(ingestDataSource, shards != null ? shards.ingest() : null);
+        return new ShadowRoutingDataSource(primary, shadowDataSource.getIfAvailable());
+    }
+
+    @Bean
+    @ConfigurationProperties("analytics.datasource.hikari")
+    public HikariDataSource analyticsDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(AppConstants.ANALYTICS_POOL_NAME);
+        return dataSource;
+    }
+
+    @Bean
+    public NamedParameterJdbcTemplate analyticsJdbcTemplate(@Qualifier("analyticsDataSource") HikariDataSource dataSource,
+                                                            @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource,
+                                                            ObjectProvider<ShardDataSources> shardDataSources) {
+        ShardDataSources shards = shardDataSources.getIfAvailable();
+        DataSource primary = ReplicaRoutingDataSource.of(dataSource, replicaDataSource.getIfAvailable());
+        return new NamedParameterJdbcTemplate(ShardRoutingDataSource.of(primary, shards != null ? shards.analytics() : null));
+    }
+}
@@ -0,0 +1,34 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.flowcontrol.AdaptiveConcurrencyLimiter;
+import com.cadosfrit.sensor.event.service.flowcontrol.HikariWaitTrackerPostProcessor;
+import com.cadosfrit.sensor.event.service.flowcontrol.IngestLimiterInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@ConditionalOnProperty(name = "ingest.limiter.enabled", havingValue = "true", matchIfMissing = true)
+public class FlowControlConfig implements WebMvcConfigurer {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public FlowControlConfig(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Bean
+    public static HikariWaitTrackerPostProcessor hikariWaitTrackerPostProcessor(
+            ObjectProvider<AdaptiveConcurrencyLimiter> limiter) {
+        return new HikariWaitTrackerPostProcessor(limiter);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new IngestLimiterInterceptor(limiter))
+                .addPathPatterns("/events/batch", "/events/v2/batch", "/events/auto/batch", "/events/summary");
+    }
+}
@@ -0,0 +1,54 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * MySQL session variables the stored procedures read to select optional behaviour.
+ * They are set once per connection through Hikari's connection-init SQL, so procedure signatures stay unchanged.
+ */
+@Getter
+@Component
+public class IngestSessionSettings {
+
+    private final StorageMode storageMode;
+    private final boolean outboxEnabled;
+    private final boolean rollupsEnabled;
+    private final boolean eventRegistryEnabled;
+
+    public IngestSessionSettings(@Value("${ingest.storage.mode:STANDARD}") StorageMode storageMode,
+                                 @Value("${ingest.outbox.enabled:false}") boolean outboxEnabled,
+                                 @Value("${ingest.rollups.enabled:false}") boolean rollupsEnabled,
+                                 @Value("${ingest.storage.partitioning.enabled:false}") boolean partitioningEnabled) {
+        this.storageMode = storageMode;
+        this.outboxEnabled = outboxEnabled;
+        this.rollupsEnabled = rollupsEnabled;
+        this.eventRegistryEnabled = partitioningEnabled;
+    }
+
+    public String connectionInitSql() {
+        return connectionInitSql(outboxEnabled, rollupsEnabled, eventRegistryEnabled);
+    }
+
+    /**
+     * Shadow replays write to a scratch schema and must not record changes for feed consumers.
+     * The scratch schema has no rollup or event id registry table either.
+     */
+    public String shadowConnectionInitSql() {
+        return connectionInitSql(false, false, false);
+    }
+
+    private String connectionInitSql(boolean outbox, boolean rollups, boolean eventRegistry) {
+        return "SET @ingest_heartbeat_compaction = " + flag(storageMode == StorageMode.HEARTBEAT_COMPACTED)
+                + ", @ingest_versioned_storage = " + flag(storageMode == StorageMode.VERSIONED)
+                + ", @ingest_outbox = " + flag(outbox)
+                + ", @ingest_rollups = " + flag(rollups)
+                + ", @ingest_event_registry = " + flag(eventRegistry);
+    }
+
+    private static int flag(boolean enabled) {
+        return enabled ? 1 : 0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "analytics.replica.enabled", havingValue = "true")
+public class ReplicaConfig {
+
+    /**
+     * Read-only pool on the replica; credentials default to the primary's.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource replicaDataSource(DataSourceProperties primary,
+                                              @Value("${analytics.replica.url}") String url,
+                                              @Value("${analytics.replica.username:}") String username,
+                                              @Value("${analytics.replica.password:}") String password,
+                                              @Value("${analytics.replica.pool-size:4}") int poolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDriverClassName(primary.determineDriverClassName());
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username.isEmpty() ? primary.determineUsername() : username);
+        dataSource.setPassword(password.isEmpty() ? primary.determinePassword() : password);
+        dataSource.setPoolName(AppConstants.REPLICA_POOL_NAME);
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+}
@@ -0,0 +1,31 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "ingest.shadow.enabled", havingValue = "true")
+public class ShadowConfig {
+
+    /**
+     * Same server and credentials as ingest, defaulting every connection to the shadow schema.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource shadowDataSource(DataSourceProperties properties,
+                                             IngestSessionSettings sessionSettings,
+                                             @Value("${ingest.shadow.schema:factory_db_shadow}") String schema,
+                                             @Value("${ingest.shadow.pool-size:2}") int poolSize) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(AppConstants.SHADOW_POOL_NAME);
+        dataSource.setCatalog(schema);
+        dataSource.setConnectionInitSql(sessionSettings.shadowConnectionInitSql());
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setMinimumIdle(0);
+        return dataSource;
+    }
+}
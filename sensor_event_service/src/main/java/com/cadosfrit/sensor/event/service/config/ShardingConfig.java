@@ -0,0 +1,84 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.constants.StorageLayout;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.sharding.ShardDataSources;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.sharding.ShardingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "ingest.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    /**
+     * One ingest and one analytics pool per shard; the primary keeps the pools from {@link DataSourceConfig}.
+     */
+    @Bean(destroyMethod = "close")
+    public ShardDataSources shardDataSources(ShardingProperties properties,
+                                             DataSourceProperties primary,
+                                             IngestSessionSettings sessionSettings,
+                                             Environment environment) {
+        requireShardAwareMaintenance(environment, sessionSettings);
+        Map<String, HikariDataSource> ingest = new LinkedHashMap<>();
+        Map<String, HikariDataSource> analytics = new LinkedHashMap<>();
+        properties.getShards().forEach((name, shard) -> {
+            if (ShardRouter.PRIMARY.equals(name) || shard.getUrl() == null) {
+                throw new IllegalStateException("Shard " + name + " needs a url and a name other than " + ShardRouter.PRIMARY);
+            }
+            HikariDataSource ingestPool = build(primary, shard, "ingest-pool-" + name, shard.getPoolSize());
+            ingestPool.setConnectionInitSql(sessionSettings.connectionInitSql());
+            ingest.put(name, ingestPool);
+            analytics.put(name, build(primary, shard, "analytics-pool-" + name, shard.getAnalyticsPoolSize()));
+        });
+        return new ShardDataSources(ingest, analytics);
+    }
+
+    /**
+     * Tiering, retention, partitioning, the alternative layouts and the version compactor maintain the primary's
+     * tables only, so with shards they would leave every shard's rows untouched. The change feed reads the
+     * primary's outbox only, and each shard numbers its own outbox, so one cursor cannot follow them all.
+     * Refusing to start is safer than serving stats or a feed that covers one node only.
+     */
+    private static void requireShardAwareMaintenance(Environment environment, IngestSessionSettings sessionSettings) {
+        List<String> unsupported = new ArrayList<>();
+        for (String flag : List.of("ingest.tiering.enabled", "ingest.retention.enabled",
+                "ingest.storage.partitioning.enabled", "ingest.outbox.enabled")) {
+            if (environment.getProperty(flag, Boolean.class, false)) {
+                unsupported.add(flag + "=true");
+            }
+        }
+        StorageLayout layout = environment.getProperty("ingest.storage.layout", StorageLayout.class, StorageLayout.EVENT_ID);
+        if (layout != StorageLayout.EVENT_ID) {
+            unsupported.add("ingest.storage.layout=" + layout);
+        }
+        if (sessionSettings.getStorageMode() == StorageMode.VERSIONED) {
+            unsupported.add("ingest.storage.mode=" + StorageMode.VERSIONED);
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalStateException("ingest.sharding.enabled=true cannot be combined with " + unsupported);
+        }
+    }
+
+    private static HikariDataSource build(DataSourceProperties primary, ShardingProperties.Shard shard,
+                                          String poolName, int poolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDriverClassName(primary.determineDriverClassName());
+        dataSource.setJdbcUrl(shard.getUrl());
+        dataSource.setUsername(shard.getUsername() != null ? shard.getUsername() : primary.determineUsername());
+        dataSource.setPassword(shard.getPassword() != null ? shard.getPassword() : primary.determinePassword());
+        dataSource.setPoolName(poolName);
+        dataSource.setMaximumPoolSize(poolSize);
+        return dataSource;
+    }
+}
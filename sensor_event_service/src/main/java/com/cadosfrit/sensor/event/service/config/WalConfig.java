@@ -0,0 +1,21 @@
+package com.cadosfrit.sensor.event.service.config;
+
+import com.cadosfrit.sensor.event.service.wal.WriteAheadLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(name = "ingest.wal.enabled", havingValue = "true")
+public class WalConfig {
+
+    @Bean(destroyMethod = "close")
+    public WriteAheadLog ingestWriteAheadLog(
+            @Value("${ingest.wal.dir:./data/wal}") String directory,
+            @Value("${ingest.wal.segment-size-bytes:67108864}") int segmentSizeBytes) {
+        return new WriteAheadLog(Path.of(directory), segmentSizeBytes);
+    }
+}
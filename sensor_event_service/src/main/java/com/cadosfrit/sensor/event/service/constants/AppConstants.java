@@ -8,4 +8,24 @@ public final class AppConstants {
     // Validation Limits
     public static final long MAX_DURATION_MS = 6 * 60 * 60 * 1000;
     public static final int FUTURE_TIME_ALLOWANCE_MINS = 15;
+    // A summary counts wholly at its interval start, so long intervals would smear across stats windows
+    public static final long MAX_SUMMARY_INTERVAL_MS = 60 * 60 * 1000;
+    // Width of the event_id / machine_id columns; longer ids fail the whole procedure call
+    public static final int MAX_ID_LENGTH = 50;
+
+    // Write-Ahead Log Layout: [int payloadLength][int crc32][long sequence][byte engine][payload]
+    public static final int WAL_RECORD_HEADER_BYTES = 4 + 4 + 8 + 1;
+    public static final String WAL_SEGMENT_PREFIX = "wal-";
+    public static final String WAL_SEGMENT_SUFFIX = ".log";
+    public static final String WAL_CHECKPOINT_FILE = "applied.ckpt";
+    public static final String WAL_DEAD_LETTER_DIR = "dead-letter";
+
+    // Connection Bulkheads
+    public static final String INGEST_POOL_NAME = "ingest-pool";
+    public static final String ANALYTICS_POOL_NAME = "analytics-pool";
+    public static final String SHADOW_POOL_NAME = "shadow-pool";
+    public static final String REPLICA_POOL_NAME = "replica-pool";
+
+    // Fair Scheduling: batches whose machine is not registered in the hierarchy
+    public static final String UNASSIGNED_FACTORY = "unassigned";
 }
\ No newline at end of file
@@ -8,6 +8,11 @@ public enum Constants {
     // Validation Error Codes
     INVALID_DURATION("INVALID_DURATION"),
     FUTURE_EVENT_TIME("FUTURE_EVENT_TIME"),
+    MISSING_EVENT_ID("MISSING_EVENT_ID"),
+    COLD_TIER_EVENT_TIME("COLD_TIER_EVENT_TIME"),
+    COLD_TIER_EVENT_ID("COLD_TIER_EVENT_ID"),
+    INVALID_SUMMARY_INTERVAL("INVALID_SUMMARY_INTERVAL"),
+    INVALID_SUMMARY_COUNTS("INVALID_SUMMARY_COUNTS"),
 
     // Ingest Status Codes
     ACCEPTED("ACCEPTED"),
@@ -0,0 +1,7 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+public enum EventStoreType {
+    MYSQL,
+    EMBEDDED,
+    LSM
+}
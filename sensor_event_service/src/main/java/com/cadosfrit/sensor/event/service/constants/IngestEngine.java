@@ -0,0 +1,30 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+import lombok.Getter;
+
+import java.util.Optional;
+
+@Getter
+public enum IngestEngine {
+
+    V1("EventIngestServiceV1", (byte) 1),
+    V2("EventIngestServiceV2", (byte) 2),
+    AUTO("EventIngestServiceAuto", (byte) 3);
+
+    private final String beanName;
+    private final byte code;
+
+    IngestEngine(String beanName, byte code) {
+        this.beanName = beanName;
+        this.code = code;
+    }
+
+    public static Optional<IngestEngine> fromCode(byte code) {
+        for (IngestEngine engine : values()) {
+            if (engine.code == code) {
+                return Optional.of(engine);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,45 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Width of one machine_events range partition. Boundaries are UTC midnights, like the stored event_time values.
+ */
+public enum PartitionInterval {
+    DAILY {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        public LocalDate next(LocalDate periodStart) {
+            return periodStart.plusDays(1);
+        }
+    },
+    WEEKLY {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate next(LocalDate periodStart) {
+            return periodStart.plusWeeks(1);
+        }
+    };
+
+    public abstract LocalDate periodStart(LocalDate date);
+
+    public abstract LocalDate next(LocalDate periodStart);
+
+    public LocalDate previous(LocalDate periodStart, int periods) {
+        LocalDate start = periodStart;
+        for (int i = 0; i < periods; i++) {
+            start = periodStart(start.minusDays(1));
+        }
+        return start;
+    }
+}
@@ -0,0 +1,27 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Shape of an ingest response body, selected per request with {@code ?response=} or the {@code Response-Mode} header.
+ */
+public enum ResponseMode {
+    /** Counters plus every rejection with its reason. */
+    FULL,
+    /** Counters, a histogram of rejection reasons and only the first rejected ids. */
+    LEAN,
+    /** application/x-ndjson: a counters line followed by one line per rejection, streamed. */
+    NDJSON;
+
+    public static Optional<ResponseMode> parse(String value) {
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(valueOf(value.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+/**
+ * What happens to a machine_events partition once it falls out of the retention window.
+ */
+public enum RetentionAction {
+    /** The partition is dropped; a metadata-only operation. */
+    DROP,
+    /** The partition is exchanged into its own table in the archive schema, then the empty partition is dropped. */
+    ARCHIVE
+}
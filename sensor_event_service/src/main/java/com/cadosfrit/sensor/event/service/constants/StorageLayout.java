@@ -0,0 +1,11 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+/**
+ * Clustered (InnoDB primary key) order of machine_events, selected with {@code ingest.storage.layout}.
+ */
+public enum StorageLayout {
+    /** Clustered by event_id; window scans go through the secondary idx_machine_key_time index. */
+    EVENT_ID,
+    /** Clustered by (machine_key, event_time, event_id); event_id is a secondary unique key. */
+    MACHINE_TIME
+}
@@ -0,0 +1,13 @@
+package com.cadosfrit.sensor.event.service.constants;
+
+/**
+ * Physical layout of ingested events, selected with {@code ingest.storage.mode}.
+ */
+public enum StorageMode {
+    /** Every event, heartbeats included, is a machine_events row. */
+    STANDARD,
+    /** Heartbeats (defect_count = -1) are kept as a slim ledger row plus per-machine, per-minute counters. */
+    HEARTBEAT_COMPACTED,
+    /** Events are appended to machine_event_versions; a background compactor projects the newest version into machine_events. */
+    VERSIONED
+}
@@ -0,0 +1,94 @@
+package com.cadosfrit.sensor.event.service.controller;
+
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+import com.cadosfrit.sensor.event.service.service.ChangeFeedService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+@RestController
+@RequestMapping("/events")
+public class ChangeFeedController {
+
+    // Past the wait, the poller answers within one poll interval; the request times out only if it is stuck
+    private static final long RESPONSE_SLACK_MS = 10_000;
+
+    private final ChangeFeedService changeFeedService;
+    private final long maxWaitMs;
+
+    public ChangeFeedController(@Qualifier("ChangeFeedService") ChangeFeedService changeFeedService,
+                                @Value("${ingest.outbox.max-wait-ms:30000}") long maxWaitMs) {
+        this.changeFeedService = changeFeedService;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * Long-polling change feed: returns at once when changes exist after {@code after}, otherwise waits up to
+     * {@code waitMs} for some. Consumers resume from the returned {@code nextAfter}.
+     * The wait is asynchronous: the request thread is released and the feed's poller completes the response.
+     */
+    @GetMapping("/changes")
+    public DeferredResult<ResponseEntity<?>> getChanges(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "0") long waitMs) {
+
+        if (!changeFeedService.isEnabled()) {
+            return answered(ResponseEntity.status(HttpStatus.NOT_FOUND).body("Change feed is disabled (ingest.outbox.enabled)"));
+        }
+
+        if (after < 0) {
+            log.warn("Invalid request: after {} is negative", after);
+            return answered(ResponseEntity.badRequest().body("After must not be negative"));
+        }
+
+        if (limit <= 0) {
+            log.warn("Invalid request: limit {} is not positive", limit);
+            return answered(ResponseEntity.badRequest().body("Limit must be greater than 0"));
+        }
+
+        if (waitMs < 0) {
+            log.warn("Invalid request: waitMs {} is negative", waitMs);
+            return answered(ResponseEntity.badRequest().body("Wait must not be negative"));
+        }
+
+        ChangeFeedPageDTO empty = ChangeFeedPageDTO.builder().changes(List.of()).nextAfter(after).build();
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(
+                Math.min(waitMs, maxWaitMs) + RESPONSE_SLACK_MS, ResponseEntity.ok(empty));
+        CompletableFuture<ChangeFeedPageDTO> pending;
+        try {
+            pending = changeFeedService.awaitChanges(after, limit, waitMs);
+        } catch (Exception e) {
+            log.error("Error reading change feed after {}", after, e);
+            return answered(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading change feed"));
+        }
+        // A timed out or disconnected request leaves the poller's queue
+        result.onCompletion(() -> pending.cancel(false));
+        pending.whenComplete((page, error) -> {
+            if (error == null) {
+                result.setResult(ResponseEntity.ok(page));
+            } else if (!pending.isCancelled()) {
+                log.error("Error reading change feed after {}", after, error);
+                result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading change feed"));
+            }
+        });
+        return result;
+    }
+
+    private static DeferredResult<ResponseEntity<?>> answered(ResponseEntity<?> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+}
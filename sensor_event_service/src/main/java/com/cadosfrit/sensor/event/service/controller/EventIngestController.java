@@ -1,65 +1,132 @@
 package com.cadosfrit.sensor.event.service.controller;
 
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.constants.ResponseMode;
 import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
 import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.WalAckDTO;
+import com.cadosfrit.sensor.event.service.exception.IdempotencyKeyConflictException;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.cadosfrit.sensor.event.service.exception.ShardUnavailableException;
+import com.cadosfrit.sensor.event.service.flowcontrol.Bulkhead;
+import com.cadosfrit.sensor.event.service.flowcontrol.FactoryResolver;
+import com.cadosfrit.sensor.event.service.flowcontrol.FairIngestScheduler;
 import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.IdempotencyService;
+import com.cadosfrit.sensor.event.service.service.SummaryIngestService;
+import com.cadosfrit.sensor.event.service.service.impl.EventIngestServiceAuto;
+import com.cadosfrit.sensor.event.service.shadow.ShadowTrafficMirror;
+import com.cadosfrit.sensor.event.service.sharding.ShardPlacements;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import com.cadosfrit.sensor.event.service.wal.WalBatchValidator;
+import com.cadosfrit.sensor.event.service.wal.WriteAheadLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
 @RequestMapping("/events")
 public class EventIngestController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final String SUMMARY_IDEMPOTENCY_SCOPE = "SUMMARY";
+    private static final String RESPONSE_MODE_PARAM = "response";
+    private static final String RESPONSE_MODE_HEADER = "Response-Mode";
+
     private final EventIngestService ingestService;
     private final EventIngestService ingestServiceV2;
+    private final EventIngestService ingestServiceAuto;
+    private final SummaryIngestService summaryIngestService;
+    private final IdempotencyService idempotencyService;
+    private final FairIngestScheduler scheduler;
+    private final FactoryResolver factoryResolver;
+    private final Bulkhead ingestBulkhead;
+    private final ShadowTrafficMirror shadowMirror;
+    private final ShardRouter shardRouter;
+    private final StatsResultCache statsCache;
+    private final ColdTierStore coldTier;
+    private final MachineKeyDictionary machineKeys;
+    private final WriteAheadLog writeAheadLog;
+    private final ObjectMapper objectMapper;
+    private final IngestResponseRenderer responses;
 
     public EventIngestController(
             @Qualifier("EventIngestServiceV1") EventIngestService ingestService,
-            @Qualifier("EventIngestServiceV2") EventIngestService ingestServiceV2
+            @Qualifier("EventIngestServiceV2") EventIngestService ingestServiceV2,
+            @Qualifier("EventIngestServiceAuto") EventIngestService ingestServiceAuto,
+            SummaryIngestService summaryIngestService,
+            IdempotencyService idempotencyService,
+            FairIngestScheduler scheduler,
+            FactoryResolver factoryResolver,
+            @Qualifier("ingestBulkhead") Bulkhead ingestBulkhead,
+            ShadowTrafficMirror shadowMirror,
+            ShardRouter shardRouter,
+            StatsResultCache statsCache,
+            ColdTierStore coldTier,
+            MachineKeyDictionary machineKeys,
+            ObjectProvider<WriteAheadLog> writeAheadLog,
+            ObjectMapper objectMapper,
+            @Value("${ingest.response.default-mode:FULL}") ResponseMode defaultResponseMode,
+            @Value("${ingest.response.rejection-sample-size:20}") int rejectionSampleSize
     ) {
         this.ingestService = ingestService;
         this.ingestServiceV2 = ingestServiceV2;
+        this.ingestServiceAuto = ingestServiceAuto;
+        this.summaryIngestService = summaryIngestService;
+        this.idempotencyService = idempotencyService;
+        this.scheduler = scheduler;
+        this.factoryResolver = factoryResolver;
+        this.ingestBulkhead = ingestBulkhead;
+        this.shadowMirror = shadowMirror;
+        this.shardRouter = shardRouter;
+        this.statsCache = statsCache;
+        this.coldTier = coldTier;
+        this.machineKeys = machineKeys;
+        this.writeAheadLog = writeAheadLog.getIfAvailable();
+        this.objectMapper = objectMapper;
+        this.responses = new IngestResponseRenderer(objectMapper, defaultResponseMode, rejectionSampleSize);
     }
 
     @PostMapping("/batch")
-    public ResponseEntity<?> ingestBatch(@RequestBody List<EventRequestDTO> batch) {
+    public ResponseEntity<?> ingestBatch(
+            @RequestBody List<EventRequestDTO> batch,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestParam(value = RESPONSE_MODE_PARAM, required = false) String responseModeParam,
+            @RequestHeader(value = RESPONSE_MODE_HEADER, required = false) String responseModeHeader) {
         try {
-            if (batch == null || batch.isEmpty()) {
-                log.warn("Invalid request: batch is null or empty");
-                return ResponseEntity.badRequest().body("Batch cannot be empty");
-            }
-
-            if (batch.size() > 10000) {
-                log.warn("Invalid request: batch size {} exceeds maximum limit", batch.size());
-                return ResponseEntity.badRequest().body("Batch size cannot exceed 10000 events");
+            Optional<ResponseMode> responseMode = responses.resolve(responseModeParam, responseModeHeader);
+            Optional<String> invalid = IngestRequestValidator.validate(batch, IngestRequestValidator.EVENTS, idempotencyKey,
+                    responseMode);
+            if (invalid.isPresent()) {
+                log.warn("Invalid request: {}", invalid.get());
+                return ResponseEntity.badRequest().body(invalid.get());
             }
 
-            for (int i = 0; i < batch.size(); i++) {
-                EventRequestDTO event = batch.get(i);
-                if (event == null) {
-                    log.warn("Invalid request: event at index {} is null", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " is null");
-                }
-
-                if (event.getEventId() == null || event.getEventId().trim().isEmpty()) {
-                    log.warn("Invalid request: event at index {} has null or empty eventId", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " must have an eventId");
-                }
-
-                if (event.getMachineId() == null || event.getMachineId().trim().isEmpty()) {
-                    log.warn("Invalid request: event at index {} has null or empty machineId", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " must have a machineId");
-                }
+            log.debug("Received ingestion batch with size: {}", batch.size());
+            if (writeAheadLog != null) {
+                return acknowledgeViaWal(batch, IngestEngine.V1, idempotencyKey);
             }
 
-            log.info("Received ingestion batch with size: {}", batch.size());
-            IngestResponseDTO response = ingestService.processBatch(batch);
+            IdempotencyService.IdempotentResult result = process(ingestService, IngestEngine.V1, batch, idempotencyKey);
+            IngestResponseDTO response = result.response();
 
             if (response == null) {
                 log.error("Service returned null response for batch");
@@ -67,9 +134,14 @@ public class EventIngestController {
                         .body("Error processing batch");
             }
 
-            log.info("Batch processed. Accepted: {}, Rejected: {}", response.getAccepted(), response.getRejected());
-            return ResponseEntity.ok(response);
+            log.debug("Batch processed. Accepted: {}, Rejected: {}", response.getAccepted(), response.getRejected());
+            return responses.render(response, responseMode.get(), result.replayed());
 
+        } catch (IdempotencyKeyConflictException e) {
+            log.warn("Idempotency key conflict: {}", e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(e.getMessage());
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error processing batch", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -78,38 +150,27 @@ public class EventIngestController {
     }
 
     @PostMapping("/v2/batch")
-    public ResponseEntity<?> ingestBatchV2(@RequestBody List<EventRequestDTO> batch) {
+    public ResponseEntity<?> ingestBatchV2(
+            @RequestBody List<EventRequestDTO> batch,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestParam(value = RESPONSE_MODE_PARAM, required = false) String responseModeParam,
+            @RequestHeader(value = RESPONSE_MODE_HEADER, required = false) String responseModeHeader) {
         try {
-            if (batch == null || batch.isEmpty()) {
-                log.warn("Invalid request: v2 batch is null or empty");
-                return ResponseEntity.badRequest().body("Batch cannot be empty");
+            Optional<ResponseMode> responseMode = responses.resolve(responseModeParam, responseModeHeader);
+            Optional<String> invalid = IngestRequestValidator.validate(batch, IngestRequestValidator.EVENTS, idempotencyKey,
+                    responseMode);
+            if (invalid.isPresent()) {
+                log.warn("Invalid request: {}", invalid.get());
+                return ResponseEntity.badRequest().body(invalid.get());
             }
 
-            if (batch.size() > 10000) {
-                log.warn("Invalid request: v2 batch size {} exceeds maximum limit", batch.size());
-                return ResponseEntity.badRequest().body("Batch size cannot exceed 10000 events");
+            log.debug("V2: Received ingestion batch with size: {}", batch.size());
+            if (writeAheadLog != null) {
+                return acknowledgeViaWal(batch, IngestEngine.V2, idempotencyKey);
             }
 
-            for (int i = 0; i < batch.size(); i++) {
-                EventRequestDTO event = batch.get(i);
-                if (event == null) {
-                    log.warn("Invalid request: v2 event at index {} is null", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " is null");
-                }
-
-                if (event.getEventId() == null || event.getEventId().trim().isEmpty()) {
-                    log.warn("Invalid request: v2 event at index {} has null or empty eventId", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " must have an eventId");
-                }
-
-                if (event.getMachineId() == null || event.getMachineId().trim().isEmpty()) {
-                    log.warn("Invalid request: v2 event at index {} has null or empty machineId", i);
-                    return ResponseEntity.badRequest().body("Event at index " + i + " must have a machineId");
-                }
-            }
-
-            log.info("V2: Received ingestion batch with size: {}", batch.size());
-            IngestResponseDTO response = ingestServiceV2.processBatch(batch);
+            IdempotencyService.IdempotentResult result = process(ingestServiceV2, IngestEngine.V2, batch, idempotencyKey);
+            IngestResponseDTO response = result.response();
 
             if (response == null) {
                 log.error("Service returned null response for v2 batch");
@@ -117,14 +178,173 @@ public class EventIngestController {
                         .body("Error processing batch");
             }
 
-            log.info("V2: Batch processed. Accepted: {}, Updated: {}, Deduped: {}",
+            log.debug("V2: Batch processed. Accepted: {}, Updated: {}, Deduped: {}",
                     response.getAccepted(), response.getUpdated(), response.getDeduped());
-            return ResponseEntity.ok(response);
+            return responses.render(response, responseMode.get(), result.replayed());
 
+        } catch (IdempotencyKeyConflictException e) {
+            log.warn("V2: Idempotency key conflict: {}", e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(e.getMessage());
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error processing v2 batch", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error processing batch: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Same contract as /v2/batch; the engine is chosen per batch by {@link EventIngestServiceAuto}.
+     */
+    @PostMapping("/auto/batch")
+    public ResponseEntity<?> ingestBatchAuto(
+            @RequestBody List<EventRequestDTO> batch,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestParam(value = RESPONSE_MODE_PARAM, required = false) String responseModeParam,
+            @RequestHeader(value = RESPONSE_MODE_HEADER, required = false) String responseModeHeader) {
+        try {
+            Optional<ResponseMode> responseMode = responses.resolve(responseModeParam, responseModeHeader);
+            Optional<String> invalid = IngestRequestValidator.validate(batch, IngestRequestValidator.EVENTS, idempotencyKey,
+                    responseMode);
+            if (invalid.isPresent()) {
+                log.warn("Invalid request: {}", invalid.get());
+                return ResponseEntity.badRequest().body(invalid.get());
+            }
+
+            log.debug("Auto: Received ingestion batch with size: {}", batch.size());
+            if (writeAheadLog != null) {
+                return acknowledgeViaWal(batch, IngestEngine.AUTO, idempotencyKey);
+            }
+
+            IdempotencyService.IdempotentResult result = process(ingestServiceAuto, IngestEngine.AUTO, batch, idempotencyKey);
+            IngestResponseDTO response = result.response();
+
+            if (response == null) {
+                log.error("Service returned null response for auto batch");
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Error processing batch");
+            }
+
+            log.debug("Auto: Batch processed. Accepted: {}, Updated: {}, Deduped: {}",
+                    response.getAccepted(), response.getUpdated(), response.getDeduped());
+            return responses.render(response, responseMode.get(), result.replayed());
+
+        } catch (IdempotencyKeyConflictException e) {
+            log.warn("Auto: Idempotency key conflict: {}", e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(e.getMessage());
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing auto batch", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error processing batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pre-aggregated ingest for edge gateways: one row per machine and interval instead of every event.
+     * Summaries are applied synchronously (never through the WAL) and share the ingest scheduler and bulkhead.
+     */
+    @PostMapping("/summary")
+    public ResponseEntity<?> ingestSummaries(
+            @RequestBody List<SummaryRequestDTO> batch,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestParam(value = RESPONSE_MODE_PARAM, required = false) String responseModeParam,
+            @RequestHeader(value = RESPONSE_MODE_HEADER, required = false) String responseModeHeader) {
+        try {
+            Optional<ResponseMode> responseMode = responses.resolve(responseModeParam, responseModeHeader);
+            Optional<String> invalid = IngestRequestValidator.validate(batch, IngestRequestValidator.SUMMARIES, idempotencyKey,
+                    responseMode);
+            if (invalid.isPresent()) {
+                log.warn("Invalid request: {}", invalid.get());
+                return ResponseEntity.badRequest().body(invalid.get());
+            }
+
+            log.debug("Summary: Received batch with size: {}", batch.size());
+            Map<String, Integer> shares = factoryResolver.shares(batch, SummaryRequestDTO::getMachineId);
+            Supplier<IngestResponseDTO> scheduled = () -> scheduler.execute(shares,
+                    () -> ingestBulkhead.call(() -> statsCache.invalidateSummaries(batch,
+                            () -> shardRouter.ingest(batch, ShardPlacements.SUMMARIES, SummaryRequestDTO::getSummaryId,
+                                    SummaryRequestDTO::getMachineId, summaryIngestService::processBatch))));
+            IdempotencyService.IdempotentResult result = idempotencyKey == null
+                    ? new IdempotencyService.IdempotentResult(scheduled.get(), false)
+                    : idempotencyService.execute(SUMMARY_IDEMPOTENCY_SCOPE, idempotencyKey, batch, scheduled);
+            IngestResponseDTO response = result.response();
+
+            if (response == null) {
+                log.error("Service returned null response for summary batch");
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Error processing batch");
+            }
+
+            log.debug("Summary: Batch processed. Accepted: {}, Updated: {}, Deduped: {}",
+                    response.getAccepted(), response.getUpdated(), response.getDeduped());
+            return responses.render(response, responseMode.get(), result.replayed());
+
+        } catch (IdempotencyKeyConflictException e) {
+            log.warn("Summary: Idempotency key conflict: {}", e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(e.getMessage());
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing summary batch", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error processing batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Without a key the batch goes to the service in its factory's turn; with one, retries replay the first response.
+     */
+    private IdempotencyService.IdempotentResult process(EventIngestService service, IngestEngine engine,
+                                                        List<EventRequestDTO> batch, String idempotencyKey) {
+        machineKeys.requireReady();
+        Map<String, Integer> shares = factoryResolver.shares(batch, EventRequestDTO::getMachineId);
+        Supplier<IngestResponseDTO> scheduled = () -> scheduler.execute(shares,
+                () -> ingestBulkhead.call(() -> coldTier.admit(() -> shadowMirror.mirror(engine.getBeanName(), batch,
+                        () -> statsCache.invalidateEvents(batch,
+                                () -> shardRouter.ingest(batch, ShardPlacements.EVENTS, EventRequestDTO::getEventId,
+                                        EventRequestDTO::getMachineId, service::processBatch))))));
+
+        if (idempotencyKey == null) {
+            return new IdempotencyService.IdempotentResult(scheduled.get(), false);
+        }
+        return idempotencyService.execute(engine.name(), idempotencyKey, batch, scheduled);
+    }
+
+    /**
+     * Durability mode: the batch is acknowledged once forced to the local write-ahead log.
+     * Counters are not known yet, so the client gets the log sequence instead; the drainer applies it later.
+     * With a key, a retry gets the first acknowledgement back instead of appending the batch again.
+     */
+    private ResponseEntity<?> acknowledgeViaWal(List<EventRequestDTO> batch, IngestEngine engine,
+                                                String idempotencyKey) {
+        Optional<String> invalid = WalBatchValidator.validate(batch);
+        if (invalid.isPresent()) {
+            log.warn("Invalid request: {}", invalid.get());
+            return ResponseEntity.badRequest().body(invalid.get());
+        }
+        Supplier<WalAckDTO> append = () -> appendToWal(batch, engine);
+        IdempotencyService.AcknowledgedResult result = idempotencyKey == null
+                ? new IdempotencyService.AcknowledgedResult(append.get(), false)
+                : idempotencyService.acknowledge(engine.name(), idempotencyKey, batch, append);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                .body(result.ack());
+    }
+
+    private WalAckDTO appendToWal(List<EventRequestDTO> batch, IngestEngine engine) {
+        try {
+            long sequence = writeAheadLog.append(engine.getCode(), objectMapper.writeValueAsBytes(batch));
+            log.debug("Batch of {} events appended to WAL at sequence {}", batch.size(), sequence);
+            return WalAckDTO.builder()
+                    .sequence(sequence)
+                    .events(batch.size())
+                    .durability("WAL")
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append batch to the write-ahead log", e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cadosfrit.sensor.event.service.controller;
+
+import com.cadosfrit.sensor.event.service.constants.ResponseMode;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Request checks shared by the ingest endpoints: a non-empty batch of at most {@link #MAX_BATCH_SIZE} items,
+ * each with an id and a machine id, a well-formed Idempotency-Key and a known response mode. Field-level rules
+ * stay with the engines, which report them as rejections.
+ */
+final class IngestRequestValidator {
+
+    static final int MAX_BATCH_SIZE = 10000;
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 200;
+
+    static final Item<EventRequestDTO> EVENTS =
+            new Item<>("Event", "events", "an eventId", EventRequestDTO::getEventId, EventRequestDTO::getMachineId);
+    static final Item<SummaryRequestDTO> SUMMARIES =
+            new Item<>("Summary", "summaries", "a summaryId", SummaryRequestDTO::getSummaryId, SummaryRequestDTO::getMachineId);
+
+    private IngestRequestValidator() {}
+
+    /**
+     * @return the message of the first problem found, answered as 400
+     */
+    static <T> Optional<String> validate(List<T> batch, Item<T> item, String idempotencyKey,
+                                         Optional<ResponseMode> responseMode) {
+        if (batch == null || batch.isEmpty()) {
+            return Optional.of("Batch cannot be empty");
+        }
+        if (batch.size() > MAX_BATCH_SIZE) {
+            return Optional.of("Batch size cannot exceed " + MAX_BATCH_SIZE + " " + item.plural());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            T element = batch.get(i);
+            if (element == null) {
+                return Optional.of(item.noun() + " at index " + i + " is null");
+            }
+            if (isBlank(item.id().apply(element))) {
+                return Optional.of(item.noun() + " at index " + i + " must have " + item.idLabel());
+            }
+            if (isBlank(item.machineId().apply(element))) {
+                return Optional.of(item.noun() + " at index " + i + " must have a machineId");
+            }
+        }
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return Optional.of("Idempotency-Key must be 1-" + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        if (responseMode.isEmpty()) {
+            return Optional.of("Response mode must be one of " + Arrays.toString(ResponseMode.values()));
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * What one kind of batch calls its items and where their ids are.
+     */
+    record Item<T>(String noun, String plural, String idLabel, Function<T, String> id, Function<T, String> machineId) {}
+}
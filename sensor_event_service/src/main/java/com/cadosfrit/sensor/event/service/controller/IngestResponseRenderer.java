@@ -0,0 +1,74 @@
+package com.cadosfrit.sensor.event.service.controller;
+
+import com.cadosfrit.sensor.event.service.constants.ResponseMode;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.LeanIngestResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Picks the {@link ResponseMode} of an ingest request and writes the response body in it, the same way for
+ * every ingest endpoint.
+ */
+final class IngestResponseRenderer {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ObjectMapper objectMapper;
+    private final ResponseMode defaultMode;
+    private final int rejectionSampleSize;
+
+    IngestResponseRenderer(ObjectMapper objectMapper, ResponseMode defaultMode, int rejectionSampleSize) {
+        this.objectMapper = objectMapper;
+        this.defaultMode = defaultMode;
+        this.rejectionSampleSize = rejectionSampleSize;
+    }
+
+    /**
+     * The query parameter wins over the header; neither means the configured default. Empty if a value is unknown.
+     */
+    Optional<ResponseMode> resolve(String param, String header) {
+        String requested = param != null ? param : header;
+        return requested == null ? Optional.of(defaultMode) : ResponseMode.parse(requested);
+    }
+
+    /**
+     * Large rejection lists are the expensive part of a response, so LEAN and NDJSON avoid building one big body.
+     */
+    ResponseEntity<?> render(IngestResponseDTO response, ResponseMode mode, boolean replayed) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .header(EventIngestController.IDEMPOTENT_REPLAYED_HEADER, String.valueOf(replayed));
+
+        return switch (mode) {
+            case FULL -> ok.body(response);
+            case LEAN -> ok.body(LeanIngestResponseDTO.of(response, rejectionSampleSize));
+            case NDJSON -> ok.contentType(NDJSON).body((StreamingResponseBody) out -> writeNdjson(response, out));
+        };
+    }
+
+    private void writeNdjson(IngestResponseDTO response, OutputStream out) throws IOException {
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        counters.put("accepted", response.getAccepted());
+        counters.put("deduped", response.getDeduped());
+        counters.put("updated", response.getUpdated());
+        counters.put("rejected", response.getRejected());
+        out.write(objectMapper.writeValueAsBytes(counters));
+        out.write('\n');
+
+        if (response.getRejections() != null) {
+            for (IngestResponseDTO.Rejection rejection : response.getRejections()) {
+                out.write(objectMapper.writeValueAsBytes(rejection));
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+}
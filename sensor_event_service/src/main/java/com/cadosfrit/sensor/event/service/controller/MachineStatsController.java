@@ -1,9 +1,14 @@
 package com.cadosfrit.sensor.event.service.controller;
 
+import com.cadosfrit.sensor.event.service.dto.BatchStatsRequestDTO;
 import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.cadosfrit.sensor.event.service.exception.ShardUnavailableException;
+import com.cadosfrit.sensor.event.service.flowcontrol.Bulkhead;
 import com.cadosfrit.sensor.event.service.service.MachineStatsService;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,10 +21,19 @@ import java.util.Map;
 @Slf4j
 @RestController
 @RequestMapping("/stats")
-@RequiredArgsConstructor
 public class MachineStatsController {
 
     private final MachineStatsService statsService;
+    private final Bulkhead analyticsBulkhead;
+    private final int maxBatchMachines;
+
+    public MachineStatsController(MachineStatsService statsService,
+                                  @Qualifier("analyticsBulkhead") Bulkhead analyticsBulkhead,
+                                  @Value("${analytics.batch-stats.max-machines:500}") int maxBatchMachines) {
+        this.statsService = statsService;
+        this.analyticsBulkhead = analyticsBulkhead;
+        this.maxBatchMachines = maxBatchMachines;
+    }
 
     @GetMapping
     public ResponseEntity<?> getMachineStats(
@@ -44,7 +58,7 @@ public class MachineStatsController {
             }
 
             log.debug("Fetching stats for machine: {} from {} to {}", machineId, start, end);
-            MachineStatsDTO result = statsService.getMachineStats(machineId, start, end);
+            MachineStatsDTO result = analyticsBulkhead.call(() -> statsService.getMachineStats(machineId, start, end));
 
             if (result == null) {
                 log.warn("No stats available for machineId: {}", machineId);
@@ -53,6 +67,8 @@ public class MachineStatsController {
 
             return ResponseEntity.ok(result);
 
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error fetching stats for machineId: {}", machineId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -60,6 +76,55 @@ public class MachineStatsController {
         }
     }
 
+    /**
+     * Stats of many machines for one window, e.g. every machine of a line for a dashboard refresh.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> getBatchStats(@RequestBody BatchStatsRequestDTO request) {
+        try {
+            if (request == null || request.getStart() == null || request.getEnd() == null) {
+                log.warn("Invalid request: start or end time is null");
+                return ResponseEntity.badRequest().body("Start and end times are required");
+            }
+
+            if (!request.getStart().isBefore(request.getEnd())) {
+                log.warn("Invalid request: start time {} is not before end time {}", request.getStart(), request.getEnd());
+                return ResponseEntity.badRequest().body("Start time must be before end time");
+            }
+
+            boolean listed = request.getMachineIds() != null && !request.getMachineIds().isEmpty();
+            boolean selected = request.getFactoryId() != null && !request.getFactoryId().trim().isEmpty();
+            if (listed == selected) {
+                log.warn("Invalid request: batch stats need either machineIds or a factoryId");
+                return ResponseEntity.badRequest().body("Either machineIds or factoryId (optionally with lineId) is required");
+            }
+
+            if (listed && request.getMachineIds().stream().anyMatch(id -> id == null || id.trim().isEmpty())) {
+                log.warn("Invalid request: machineIds contains a null or empty id");
+                return ResponseEntity.badRequest().body("Machine IDs must not be empty");
+            }
+
+            List<String> machineIds = listed ? request.getMachineIds()
+                    : analyticsBulkhead.call(() -> statsService.findMachineIds(request.getFactoryId(), request.getLineId()));
+            if (machineIds.size() > maxBatchMachines) {
+                log.warn("Invalid request: {} machines exceed the batch limit of {}", machineIds.size(), maxBatchMachines);
+                return ResponseEntity.badRequest().body("At most " + maxBatchMachines + " machines per batch");
+            }
+
+            log.debug("Fetching stats for {} machines from {} to {}", machineIds.size(), request.getStart(), request.getEnd());
+            List<MachineStatsDTO> result = analyticsBulkhead.call(
+                    () -> statsService.getMachineStats(machineIds, request.getStart(), request.getEnd()));
+            return ResponseEntity.ok(result);
+
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching batch stats", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error fetching machine statistics");
+        }
+    }
+
     @GetMapping("/top-defect-lines")
     public ResponseEntity<?> getTopDefectLines(
             @RequestParam String factoryId,
@@ -89,7 +154,8 @@ public class MachineStatsController {
             }
 
             log.debug("Fetching top {} defect lines for factory: {} from {} to {}", limit, factoryId, from, to);
-            List<Map<String, Object>> result = statsService.getTopDefectLines(factoryId, from, to, limit);
+            List<Map<String, Object>> result = analyticsBulkhead.call(
+                    () -> statsService.getTopDefectLines(factoryId, from, to, limit));
 
             if (result == null || result.isEmpty()) {
                 log.debug("No defect lines found for factoryId: {}", factoryId);
@@ -98,6 +164,8 @@ public class MachineStatsController {
 
             return ResponseEntity.ok(result);
 
+        } catch (ServiceOverloadedException | ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error fetching defect lines for factoryId: {}", factoryId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
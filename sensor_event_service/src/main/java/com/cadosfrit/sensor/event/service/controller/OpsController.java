@@ -0,0 +1,131 @@
+package com.cadosfrit.sensor.event.service.controller;
+
+import com.cadosfrit.sensor.event.service.aggregate.MinuteAggregateStore;
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
+import com.cadosfrit.sensor.event.service.flowcontrol.AdaptiveConcurrencyLimiter;
+import com.cadosfrit.sensor.event.service.flowcontrol.Bulkhead;
+import com.cadosfrit.sensor.event.service.flowcontrol.FairIngestScheduler;
+import com.cadosfrit.sensor.event.service.service.impl.EventIngestServiceAuto;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRouter;
+import com.cadosfrit.sensor.event.service.shadow.ShadowTrafficMirror;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.EventVersionCompactor;
+import com.cadosfrit.sensor.event.service.storage.PartitionManager;
+import com.cadosfrit.sensor.event.service.storage.RetentionPurgeJob;
+import com.cadosfrit.sensor.event.service.storage.RollupManager;
+import com.cadosfrit.sensor.event.service.store.lsm.LsmEventStore;
+import com.cadosfrit.sensor.event.service.tiering.EventTieringJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/ops")
+@RequiredArgsConstructor
+public class OpsController {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final FairIngestScheduler scheduler;
+    private final List<Bulkhead> bulkheads;
+    private final EventIngestServiceAuto ingestRouter;
+    private final ShadowTrafficMirror shadowMirror;
+    private final EventVersionCompactor versionCompactor;
+    private final PartitionManager partitionManager;
+    private final EventTieringJob tieringJob;
+    private final RetentionPurgeJob retentionJob;
+    private final ShardRouter shardRouter;
+    private final ReplicaRouter replicaRouter;
+    private final ObjectProvider<LsmEventStore> lsmStore;
+    private final MinuteAggregateStore minuteAggregates;
+    private final RollupManager rollupManager;
+    private final StatsResultCache statsCache;
+
+    @GetMapping("/limiter")
+    public ResponseEntity<?> getLimiterStats() {
+        return ResponseEntity.ok(limiter.getStats());
+    }
+
+    @GetMapping("/scheduler")
+    public ResponseEntity<?> getSchedulerStats() {
+        return ResponseEntity.ok(scheduler.getStats());
+    }
+
+    @GetMapping("/bulkheads")
+    public ResponseEntity<?> getBulkheadStats() {
+        return ResponseEntity.ok(bulkheads.stream().map(Bulkhead::getStats).toList());
+    }
+
+    @GetMapping("/router")
+    public ResponseEntity<?> getRouterStats() {
+        return ResponseEntity.ok(ingestRouter.getStats());
+    }
+
+    @GetMapping("/shadow")
+    public ResponseEntity<?> getShadowReport() {
+        return ResponseEntity.ok(shadowMirror.getReport());
+    }
+
+    @GetMapping("/versions")
+    public ResponseEntity<?> getVersionCompactionStats() {
+        return ResponseEntity.ok(versionCompactor.getStats());
+    }
+
+    @GetMapping("/versions/{eventId}")
+    public ResponseEntity<?> getVersionHistory(@PathVariable String eventId) {
+        return ResponseEntity.ok(versionCompactor.getHistory(eventId));
+    }
+
+    @GetMapping("/partitions")
+    public ResponseEntity<?> getPartitionStats() {
+        return ResponseEntity.ok(partitionManager.getStats());
+    }
+
+    @GetMapping("/tiering")
+    public ResponseEntity<?> getTieringStats() {
+        return ResponseEntity.ok(tieringJob.getStats());
+    }
+
+    @GetMapping("/retention")
+    public ResponseEntity<?> getRetentionStats() {
+        return ResponseEntity.ok(retentionJob.getStats());
+    }
+
+    @GetMapping("/shards")
+    public ResponseEntity<?> getShardStats() {
+        return ResponseEntity.ok(shardRouter.getStats());
+    }
+
+    @GetMapping("/replica")
+    public ResponseEntity<?> getReplicaStats() {
+        return ResponseEntity.ok(replicaRouter.getStats());
+    }
+
+    @GetMapping("/lsm")
+    public ResponseEntity<?> getLsmStats() {
+        LsmEventStore store = lsmStore.getIfAvailable();
+        return store != null ? ResponseEntity.ok(store.getStats()) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/minute-aggregates")
+    public ResponseEntity<?> getMinuteAggregateStats() {
+        return ResponseEntity.ok(minuteAggregates.getStats());
+    }
+
+    @GetMapping("/rollups")
+    public ResponseEntity<?> getRollupStats() {
+        return ResponseEntity.ok(rollupManager.getStats());
+    }
+
+    @GetMapping("/stats-cache")
+    public ResponseEntity<?> getStatsCacheStats() {
+        return ResponseEntity.ok(statsCache.getStats());
+    }
+}
@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Machines are either listed or selected by factory, optionally narrowed to one of its lines.
+ */
+@Data
+public class BatchStatsRequestDTO {
+    private List<String> machineIds;
+    private String factoryId;
+    private String lineId;
+    private Instant start;
+    private Instant end;
+}
@@ -0,0 +1,21 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BulkheadStatsDTO {
+    private String name;
+    private int threads;
+    private int activeThreads;
+    private int queued;
+    private int queueCapacity;
+    private long completed;
+    private long rejected;
+    private long timedOut;
+    private int maxConnections;
+    private int activeConnections;
+    private int idleConnections;
+    private int threadsAwaitingConnection;
+}
@@ -0,0 +1,16 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ChangeFeedPageDTO {
+    private List<EventChangeDTO> changes;
+    /** Pass as {@code after} on the next call; equals the request's {@code after} when nothing was returned. */
+    private long nextAfter;
+    /** The page stopped before a sequence an open transaction may still commit. */
+    private boolean gapPending;
+}
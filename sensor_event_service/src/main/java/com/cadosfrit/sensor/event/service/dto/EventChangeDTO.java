@@ -0,0 +1,30 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EventChangeDTO {
+    private long seq;
+    private String changeType;
+    private String eventId;
+    private Instant receivedTime;
+    private Instant recordedAt;
+    private Image after;
+    /** The replaced row of an UPDATED change; absent for ACCEPTED. */
+    private Image before;
+
+    @Data
+    @Builder
+    public static class Image {
+        private String machineId;
+        private Instant eventTime;
+        private Long durationMs;
+        private Integer defectCount;
+    }
+}
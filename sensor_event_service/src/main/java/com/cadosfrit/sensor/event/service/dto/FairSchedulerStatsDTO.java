@@ -0,0 +1,26 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class FairSchedulerStatsDTO {
+    private boolean enabled;
+    private int concurrency;
+    private int availableSlots;
+    private Map<String, FactoryQueueStats> factories;
+
+    @Data
+    @Builder
+    public static class FactoryQueueStats {
+        private int weight;
+        private int queued;
+        private long deficit;
+        private long dispatchedBatches;
+        private long dispatchedEvents;
+        private long rejected;
+    }
+}
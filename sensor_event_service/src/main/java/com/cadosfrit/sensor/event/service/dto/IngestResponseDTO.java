@@ -3,10 +3,13 @@ package com.cadosfrit.sensor.event.service.dto;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import java.util.List;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class IngestResponseDTO {
     private int accepted;
     private int deduped;
@@ -14,8 +17,17 @@ public class IngestResponseDTO {
     private int rejected;
     private List<Rejection> rejections;
 
+    /**
+     * Every event of a successfully processed batch lands in exactly one counter.
+     * A shortfall means part of the batch failed to persist and was swallowed by the service.
+     */
+    public boolean isComplete(int batchSize) {
+        return accepted + deduped + updated + rejected == batchSize;
+    }
+
     @Data
     @Builder
+    @NoArgsConstructor
     @AllArgsConstructor
     public static class Rejection {
         private String eventId;
@@ -0,0 +1,46 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class LeanIngestResponseDTO {
+    private int accepted;
+    private int deduped;
+    private int updated;
+    private int rejected;
+    private Map<String, Integer> rejectionReasons;
+    private List<String> rejectedIdsSample;
+    private boolean rejectedIdsTruncated;
+
+    public static LeanIngestResponseDTO of(IngestResponseDTO response, int sampleSize) {
+        Map<String, Integer> reasons = new LinkedHashMap<>();
+        List<String> sample = new ArrayList<>();
+        List<IngestResponseDTO.Rejection> rejections = response.getRejections() != null
+                ? response.getRejections()
+                : List.of();
+
+        for (IngestResponseDTO.Rejection rejection : rejections) {
+            reasons.merge(rejection.getReason(), 1, Integer::sum);
+            if (sample.size() < sampleSize) {
+                sample.add(rejection.getEventId());
+            }
+        }
+
+        return LeanIngestResponseDTO.builder()
+                .accepted(response.getAccepted())
+                .deduped(response.getDeduped())
+                .updated(response.getUpdated())
+                .rejected(response.getRejected())
+                .rejectionReasons(reasons)
+                .rejectedIdsSample(sample)
+                .rejectedIdsTruncated(rejections.size() > sample.size())
+                .build();
+    }
+}
@@ -0,0 +1,15 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class LimiterStatsDTO {
+    private int limit;
+    private int inFlight;
+    private long accepted;
+    private long rejected;
+    private double latencyEwmaMs;
+    private double poolWaitEwmaMs;
+}
@@ -0,0 +1,24 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class LsmStatsDTO {
+    private int memtableRows;
+    private int flushingRows;
+    private int segments;
+    private long segmentRows;
+    private long segmentBytes;
+    private long walPendingRecords;
+    private long walBytes;
+    private long committedBatches;
+    private long flushes;
+    private long compactions;
+    private long compactedRows;
+    private Instant lastFlushAt;
+    private Instant lastCompactionAt;
+}
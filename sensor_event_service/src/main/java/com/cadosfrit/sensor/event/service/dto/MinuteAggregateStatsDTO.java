@@ -0,0 +1,24 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class MinuteAggregateStatsDTO {
+    private boolean enabled;
+    private boolean current;
+    private int horizonHours;
+    private int machines;
+    private long position;
+    private Long stalenessMs;
+    private Instant lastLoadAt;
+    private long loads;
+    private long appliedChanges;
+    private long retractions;
+    private long droppedChanges;
+    private long servedReads;
+    private long staleReads;
+}
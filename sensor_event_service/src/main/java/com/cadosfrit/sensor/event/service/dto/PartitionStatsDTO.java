@@ -0,0 +1,31 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+public class PartitionStatsDTO {
+    private boolean enabled;
+    private boolean partitioned;
+    private String interval;
+    private int futurePartitions;
+    private int retentionPartitions;
+    private String retentionAction;
+    private long created;
+    private long dropped;
+    private long archived;
+    private Instant lastMaintenanceAt;
+    private List<Partition> partitions;
+
+    @Data
+    @Builder
+    public static class Partition {
+        private String name;
+        private String lessThan;
+        private long estimatedRows;
+    }
+}
@@ -0,0 +1,20 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class ReplicaStatsDTO {
+    private boolean enabled;
+    private boolean healthy;
+    private Long lagMs;
+    private Instant lastCheckAt;
+    private long replicaReads;
+    private long primaryReads;
+    private long fallbacksForFreshness;
+    private long fallbacksForLag;
+    private long fallbacksForErrors;
+}
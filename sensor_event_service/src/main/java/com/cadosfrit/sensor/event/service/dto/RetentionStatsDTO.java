@@ -0,0 +1,35 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+public class RetentionStatsDTO {
+    private boolean enabled;
+    private boolean running;
+    private long deletedEvents;
+    private long deletedRelatedRows;
+    private long deletedColdEvents;
+    private long chunks;
+    private long backoffs;
+    private long currentSleepMs;
+    private long lastRunDeleted;
+    private double lastRunEventsPerSecond;
+    private Instant lastRunAt;
+    private List<Factory> factories;
+
+    @Data
+    @Builder
+    public static class Factory {
+        private String factoryId;
+        private int maxAgeDays;
+        private Integer nextMachineKey;
+        private Instant cutoff;
+        private long deletedEvents;
+        private Instant lastCompletedAt;
+    }
+}
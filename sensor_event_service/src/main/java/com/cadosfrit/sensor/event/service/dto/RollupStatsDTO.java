@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class RollupStatsDTO {
+    private boolean enabled;
+    private int windowDays;
+    private Instant coveredFrom;
+    private long reconciledHours;
+    private long correctedRows;
+    private long rollupReads;
+    private Instant lastReconcileAt;
+}
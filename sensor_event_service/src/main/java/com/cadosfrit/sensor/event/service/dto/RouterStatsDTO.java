@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import com.cadosfrit.sensor.event.service.routing.RoutingDecision;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class RouterStatsDTO {
+    private List<String> engines;
+    private double expectedExistingRatio;
+    private Map<String, Long> decisions;
+    private Map<String, Map<String, Double>> medianMicrosPerEvent;
+    private List<RoutingDecision> recentDecisions;
+}
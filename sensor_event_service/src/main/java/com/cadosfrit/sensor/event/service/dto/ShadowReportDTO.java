@@ -0,0 +1,44 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class ShadowReportDTO {
+    private boolean enabled;
+    private String schema;
+    private String candidate;
+    private double sampleRate;
+    private long dropped;
+    private Map<String, EngineComparison> comparisons;
+    private List<Divergence> recentDivergences;
+
+    @Data
+    @Builder
+    public static class EngineComparison {
+        private String primary;
+        private long compared;
+        private long matched;
+        private long diverged;
+        private long candidateFailures;
+        private double primaryP50Ms;
+        private double primaryP95Ms;
+        private double candidateP50Ms;
+        private double candidateP95Ms;
+    }
+
+    @Data
+    @Builder
+    public static class Divergence {
+        private Instant at;
+        private String primary;
+        private int events;
+        private IngestResponseDTO primaryCounters;
+        private IngestResponseDTO candidateCounters;
+    }
+}
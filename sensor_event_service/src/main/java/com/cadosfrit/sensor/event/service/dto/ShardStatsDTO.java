@@ -0,0 +1,28 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+public class ShardStatsDTO {
+    private boolean enabled;
+    private long crossShardBatches;
+    private long fanOutQueries;
+    private long placedElsewhere;
+    private Instant lastHierarchySyncAt;
+    private List<Shard> shards;
+
+    @Data
+    @Builder
+    public static class Shard {
+        private String name;
+        private List<String> factories;
+        private long batches;
+        private long events;
+        private long failures;
+    }
+}
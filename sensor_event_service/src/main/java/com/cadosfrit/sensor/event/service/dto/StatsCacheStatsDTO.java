@@ -0,0 +1,23 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class StatsCacheStatsDTO {
+    private boolean enabled;
+    private boolean followingChangeFeed;
+    private long position;
+    private int entries;
+    private int maxEntries;
+    private long hits;
+    private long misses;
+    private long bypasses;
+    private long evictions;
+    private long expirations;
+    private long invalidatedEntries;
+    private long invalidatedBuckets;
+    private long clears;
+    private long racedStores;
+}
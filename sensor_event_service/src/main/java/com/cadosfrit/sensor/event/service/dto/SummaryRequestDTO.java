@@ -0,0 +1,21 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Data;
+import java.time.Instant;
+
+/**
+ * Gateway-side aggregate of one machine's events over [intervalStart, intervalEnd).
+ * The summary id is stable across resends, so it dedupes and updates like an event id.
+ */
+@Data
+public class SummaryRequestDTO {
+    private String summaryId;
+    private String machineId;
+    private Instant intervalStart;
+    private Instant intervalEnd;
+    private long eventCount;
+    private long defectSum;
+    private long durationSumMs;
+    private long durationMinMs;
+    private long durationMaxMs;
+}
@@ -0,0 +1,21 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class TieringStatsDTO {
+    private boolean enabled;
+    private int hotDays;
+    private LocalDate cutoff;
+    private int segments;
+    private long coldEvents;
+    private long coldBytes;
+    private long movedEvents;
+    private long movedDays;
+    private Instant lastRunAt;
+}
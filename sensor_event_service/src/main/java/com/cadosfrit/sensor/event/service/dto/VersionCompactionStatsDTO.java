@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class VersionCompactionStatsDTO {
+    private boolean enabled;
+    private long pendingVersions;
+    private long runs;
+    private long projected;
+    private long pruned;
+    private long failures;
+    private Instant lastRunAt;
+}
@@ -0,0 +1,12 @@
+package com.cadosfrit.sensor.event.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class WalAckDTO {
+    private long sequence;
+    private int events;
+    private String durability;
+}
@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.Set;
+
+@Getter
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ShardUnavailableException extends RuntimeException {
+    private final Set<String> shards;
+
+    public ShardUnavailableException(Set<String> shards, Throwable cause) {
+        super("Shards unavailable: " + shards, cause);
+        this.shards = shards;
+    }
+}
@@ -0,0 +1,156 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.dto.LimiterStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIMD concurrency limit for ingest requests.
+ * Each completed request is a sample: if its latency or the recent Hikari connection wait is above threshold
+ * the limit is cut multiplicatively (at most once per cooldown), otherwise it grows by {@code 1/limit}.
+ * Requests over the limit are rejected up front instead of queueing on the connection pool.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final long poolWaitThresholdNanos;
+    private final double backoffRatio;
+    private final long decreaseCooldownNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private double limit;
+    private long lastDecreaseNanos;
+    // Bits of doubles: pool waits arrive from every Hikari thread at once, so updates must not overwrite each other
+    private final AtomicLong latencyEwmaNanos = new AtomicLong(Double.doubleToLongBits(0.0));
+    private final AtomicLong poolWaitEwmaNanos = new AtomicLong(Double.doubleToLongBits(0.0));
+
+    public AdaptiveConcurrencyLimiter(@Value("${ingest.limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${ingest.limiter.min-limit:2}") int minLimit,
+                                      @Value("${ingest.limiter.max-limit:200}") int maxLimit,
+                                      @Value("${ingest.limiter.latency-threshold-ms:2000}") long latencyThresholdMs,
+                                      @Value("${ingest.limiter.pool-wait-threshold-ms:50}") long poolWaitThresholdMs,
+                                      @Value("${ingest.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${ingest.limiter.decrease-cooldown-ms:250}") long decreaseCooldownMs) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.poolWaitThresholdNanos = TimeUnit.MILLISECONDS.toNanos(poolWaitThresholdMs);
+        this.backoffRatio = backoffRatio;
+        this.decreaseCooldownNanos = TimeUnit.MILLISECONDS.toNanos(decreaseCooldownMs);
+        // nanoTime has an arbitrary origin, so a zero here could hold back the first decrease
+        this.lastDecreaseNanos = System.nanoTime() - decreaseCooldownNanos;
+    }
+
+    /**
+     * @return a permit to release when the request completes, or empty if the service is saturated
+     */
+    public Optional<Permit> tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= getLimit()) {
+                rejected.increment();
+                return Optional.empty();
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        accepted.increment();
+        return Optional.of(new Permit(System.nanoTime()));
+    }
+
+    /**
+     * Fed by the Hikari metrics tracker with the time each connection checkout waited.
+     */
+    public void recordPoolWait(long waitNanos) {
+        addSample(poolWaitEwmaNanos, waitNanos);
+    }
+
+    /**
+     * Suggested client back-off: roughly how long the requests in front of a retry take to drain.
+     */
+    public int getRetryAfterSeconds() {
+        double seconds = read(latencyEwmaNanos) / TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.max(1, Math.ceil(seconds));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public LimiterStatsDTO getStats() {
+        return LimiterStatsDTO.builder()
+                .limit(getLimit())
+                .inFlight(inFlight.get())
+                .accepted(accepted.sum())
+                .rejected(rejected.sum())
+                .latencyEwmaMs(read(latencyEwmaNanos) / 1_000_000d)
+                .poolWaitEwmaMs(read(poolWaitEwmaNanos) / 1_000_000d)
+                .build();
+    }
+
+    private synchronized void onSample(long latencyNanos, boolean failed) {
+        addSample(latencyEwmaNanos, latencyNanos);
+
+        boolean overloaded = failed
+                || latencyNanos > latencyThresholdNanos
+                || read(poolWaitEwmaNanos) > poolWaitThresholdNanos;
+        long now = System.nanoTime();
+
+        if (overloaded) {
+            if (now - lastDecreaseNanos >= decreaseCooldownNanos) {
+                double previous = limit;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = now;
+                log.debug("Ingest concurrency limit decreased {} -> {}", (int) previous, (int) limit);
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private static void addSample(AtomicLong ewma, long sample) {
+        ewma.updateAndGet(bits -> {
+            double current = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(current + EWMA_WEIGHT * (sample - current));
+        });
+    }
+
+    private static double read(AtomicLong ewma) {
+        return Double.longBitsToDouble(ewma.get());
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void release(boolean failed) {
+            if (released) {
+                return;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - startNanos, failed);
+        }
+    }
+}
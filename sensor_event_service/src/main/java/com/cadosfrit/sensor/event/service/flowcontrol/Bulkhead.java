@@ -0,0 +1,118 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.dto.BulkheadStatsDTO;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded thread pool plus its own connection pool for one workload.
+ * Work beyond the threads and queue, or work still queued when the timeout expires, fails fast with a 429
+ * instead of tying up Tomcat workers that the other workload needs. Work that has started is always waited
+ * for: it may already have committed, so answering 429 would invite a retry of a write that succeeded.
+ */
+@Slf4j
+public class Bulkhead implements AutoCloseable {
+
+    @Getter
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final HikariDataSource dataSource;
+    private final long timeoutMs;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public Bulkhead(String name, int threads, int queueCapacity, long timeoutMs, HikariDataSource dataSource) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.dataSource = dataSource;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-bulkhead-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public <T> T call(Supplier<T> work) {
+        // Claimed either by the worker when it starts or by the caller when it gives up, never both
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> claimed.compareAndSet(false, true) ? work.get() : null);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("{} bulkhead is full, rejecting request", name);
+            throw new ServiceOverloadedException(name + " capacity exhausted", 1);
+        }
+
+        try {
+            try {
+                return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (claimed.compareAndSet(false, true)) {
+                    future.cancel(false);
+                    timedOut.increment();
+                    log.warn("{} bulkhead call still queued after {} ms", name, timeoutMs);
+                    throw new ServiceOverloadedException(name + " request timed out", 1);
+                }
+                return future.get();
+            }
+        } catch (InterruptedException e) {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + name + " bulkhead", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public BulkheadStatsDTO getStats() {
+        BulkheadStatsDTO.BulkheadStatsDTOBuilder stats = BulkheadStatsDTO.builder()
+                .name(name)
+                .threads(executor.getMaximumPoolSize())
+                .activeThreads(executor.getActiveCount())
+                .queued(executor.getQueue().size())
+                .queueCapacity(executor.getQueue().size() + executor.getQueue().remainingCapacity())
+                .completed(executor.getCompletedTaskCount())
+                .rejected(rejected.sum())
+                .timedOut(timedOut.sum())
+                .maxConnections(dataSource.getMaximumPoolSize());
+
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            stats.activeConnections(pool.getActiveConnections())
+                    .idleConnections(pool.getIdleConnections())
+                    .threadsAwaitingConnection(pool.getThreadsAwaitingConnection());
+        }
+        return stats.build();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
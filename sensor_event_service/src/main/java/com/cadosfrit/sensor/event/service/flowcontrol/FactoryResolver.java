@@ -0,0 +1,68 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resolves the owning factories of a batch through the machines / production_lines hierarchy.
+ * Lookups are cached (including misses, so unregistered machines do not hit MySQL on every batch).
+ */
+@Slf4j
+@Component
+public class FactoryResolver {
+
+    private final EventStore eventStore;
+    private final long ttlMs;
+    private final Map<String, CachedFactory> cache = new ConcurrentHashMap<>();
+
+    public FactoryResolver(EventStore eventStore, FairSchedulerProperties properties) {
+        this.eventStore = eventStore;
+        this.ttlMs = properties.getHierarchyCacheTtlMs();
+    }
+
+    /**
+     * Items of the batch per owning factory, so a batch spanning several plants charges each its share.
+     * Null items count as {@link AppConstants#UNASSIGNED_FACTORY}; an empty batch is one unassigned item.
+     */
+    public <T> Map<String, Integer> shares(List<T> batch, Function<T, String> machineId) {
+        Map<String, Integer> shares = new LinkedHashMap<>();
+        if (batch == null || batch.isEmpty()) {
+            shares.put(AppConstants.UNASSIGNED_FACTORY, 1);
+            return shares;
+        }
+        for (T item : batch) {
+            shares.merge(resolve(item != null ? machineId.apply(item) : null), 1, Integer::sum);
+        }
+        return shares;
+    }
+
+    public String resolve(String machineId) {
+        if (machineId == null) {
+            return AppConstants.UNASSIGNED_FACTORY;
+        }
+        long now = System.currentTimeMillis();
+        CachedFactory cached = cache.get(machineId);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.factoryId();
+        }
+
+        String factoryId = AppConstants.UNASSIGNED_FACTORY;
+        try {
+            factoryId = eventStore.findFactoryId(machineId).orElse(AppConstants.UNASSIGNED_FACTORY);
+        } catch (Exception e) {
+            log.warn("Error resolving factory for machine {}", machineId, e);
+        }
+        cache.put(machineId, new CachedFactory(factoryId, now + ttlMs));
+        return factoryId;
+    }
+
+    private record CachedFactory(String factoryId, long expiresAt) {}
+}
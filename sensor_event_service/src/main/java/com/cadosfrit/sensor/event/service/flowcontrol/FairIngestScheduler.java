@@ -0,0 +1,263 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.dto.FairSchedulerStatsDTO;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Deficit round-robin admission of ingest batches, one queue per factory.
+ * A dispatcher thread hands out a fixed number of execution slots; each visit to a factory adds
+ * {@code weight * quantumEvents} to its deficit, and a batch is granted once the deficit covers its event count.
+ * A batch spanning several factories waits in the queue of the factory with most of its events; the other
+ * factories are charged their share when it is granted and work off that debt before their own next batch.
+ * The batch itself still runs on the request thread, so there is no extra hand-off of the work.
+ */
+@Slf4j
+@Component
+public class FairIngestScheduler {
+
+    private final FairSchedulerProperties properties;
+    private final Semaphore slots;
+    private final Object lock = new Object();
+    private final Map<String, FactoryQueue> queues = new HashMap<>();
+    private final ArrayDeque<FactoryQueue> active = new ArrayDeque<>();
+
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    public FairIngestScheduler(FairSchedulerProperties properties) {
+        this.properties = properties;
+        this.slots = new Semaphore(properties.getConcurrency());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "ingest-fair-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Fair ingest scheduler started - Concurrency: {}, Quantum: {} events, Weights: {}",
+                properties.getConcurrency(), properties.getQuantumEvents(), properties.getWeights());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the factory's turn, then runs {@code work} on the calling thread.
+     *
+     * @throws ServiceOverloadedException if the factory queue is full or the turn does not come within max-wait
+     */
+    public <T> T execute(String factoryId, int events, Supplier<T> work) {
+        return execute(Map.of(factoryId, events), work);
+    }
+
+    /**
+     * Same as {@link #execute(String, int, Supplier)} for a batch whose events belong to several factories.
+     *
+     * @param eventsByFactory events of the batch per factory, as counted by {@link FactoryResolver#shares}
+     */
+    public <T> T execute(Map<String, Integer> eventsByFactory, Supplier<T> work) {
+        if (!running) {
+            return work.get();
+        }
+
+        Job job = enqueue(eventsByFactory);
+        awaitGrant(job);
+        try {
+            return work.get();
+        } finally {
+            slots.release();
+        }
+    }
+
+    public FairSchedulerStatsDTO getStats() {
+        Map<String, FairSchedulerStatsDTO.FactoryQueueStats> factories = new LinkedHashMap<>();
+        synchronized (lock) {
+            queues.forEach((factoryId, queue) -> factories.put(factoryId, FairSchedulerStatsDTO.FactoryQueueStats.builder()
+                    .weight(queue.weight)
+                    .queued(queue.jobs.size())
+                    .deficit(queue.deficit)
+                    .dispatchedBatches(queue.dispatchedBatches)
+                    .dispatchedEvents(queue.dispatchedEvents)
+                    .rejected(queue.rejected)
+                    .build()));
+        }
+        return FairSchedulerStatsDTO.builder()
+                .enabled(running)
+                .concurrency(properties.getConcurrency())
+                .availableSlots(slots.availablePermits())
+                .factories(factories)
+                .build();
+    }
+
+    private Job enqueue(Map<String, Integer> eventsByFactory) {
+        String factoryId = eventsByFactory.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElseThrow();
+        int events = Math.max(1, eventsByFactory.get(factoryId));
+        synchronized (lock) {
+            FactoryQueue queue = queue(factoryId);
+            if (queue.jobs.size() >= properties.getMaxQueuedPerFactory()) {
+                queue.rejected++;
+                log.warn("Ingest queue for factory {} is full ({} batches)", factoryId, queue.jobs.size());
+                throw new ServiceOverloadedException("Ingest queue for factory " + factoryId + " is full", 1);
+            }
+            Map<FactoryQueue, Integer> shares = new HashMap<>();
+            eventsByFactory.forEach((otherId, otherEvents) -> {
+                if (!otherId.equals(factoryId) && otherEvents > 0) {
+                    shares.put(queue(otherId), otherEvents);
+                }
+            });
+            Job job = new Job(queue, events, shares);
+            queue.jobs.addLast(job);
+            if (queue.jobs.size() == 1) {
+                active.addLast(queue);
+            }
+            lock.notifyAll();
+            return job;
+        }
+    }
+
+    private FactoryQueue queue(String factoryId) {
+        return queues.computeIfAbsent(factoryId, id -> new FactoryQueue(properties.weightOf(id)));
+    }
+
+    private void awaitGrant(Job job) {
+        try {
+            job.grant.get(properties.getMaxWaitMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (cancel(job)) {
+                synchronized (lock) {
+                    job.queue.rejected++;
+                }
+                throw new ServiceOverloadedException("Timed out waiting for an ingest slot", 1);
+            }
+            job.grant.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!cancel(job)) {
+                slots.release();
+            }
+            throw new IllegalStateException("Interrupted while waiting for an ingest slot", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ingest slot grant failed", e.getCause());
+        }
+    }
+
+    private boolean cancel(Job job) {
+        synchronized (lock) {
+            if (job.granted) {
+                return false;
+            }
+            FactoryQueue queue = job.queue;
+            queue.jobs.remove(job);
+            if (queue.jobs.isEmpty()) {
+                // Unused credit lapses, a debt from shared batches does not
+                queue.deficit = Math.min(0, queue.deficit);
+                active.remove(queue);
+            }
+            return true;
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Job job;
+            try {
+                job = nextJob();
+            } catch (InterruptedException e) {
+                slots.release();
+                return;
+            }
+            job.grant.complete(null);
+        }
+    }
+
+    private Job nextJob() throws InterruptedException {
+        synchronized (lock) {
+            while (active.isEmpty()) {
+                lock.wait();
+            }
+            while (true) {
+                FactoryQueue queue = active.peekFirst();
+                Job head = queue.jobs.peekFirst();
+                if (queue.deficit >= head.events) {
+                    queue.deficit -= head.events;
+                    queue.jobs.pollFirst();
+                    queue.dispatchedBatches++;
+                    queue.dispatchedEvents += head.events;
+                    if (queue.jobs.isEmpty()) {
+                        queue.deficit = 0;
+                        active.pollFirst();
+                    }
+                    head.shares.forEach((other, events) -> {
+                        other.deficit -= events;
+                        other.dispatchedEvents += events;
+                    });
+                    head.granted = true;
+                    return head;
+                }
+                queue.deficit += (long) queue.weight * properties.getQuantumEvents();
+                active.pollFirst();
+                active.addLast(queue);
+            }
+        }
+    }
+
+    private static final class FactoryQueue {
+        private final int weight;
+        private final ArrayDeque<Job> jobs = new ArrayDeque<>();
+        private long deficit;
+        private long dispatchedBatches;
+        private long dispatchedEvents;
+        private long rejected;
+
+        private FactoryQueue(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class Job {
+        private final FactoryQueue queue;
+        private final int events;
+        // Events of other factories in the same batch, charged on grant
+        private final Map<FactoryQueue, Integer> shares;
+        private final CompletableFuture<Void> grant = new CompletableFuture<>();
+        private boolean granted;
+
+        private Job(FactoryQueue queue, int events, Map<FactoryQueue, Integer> shares) {
+            this.queue = queue;
+            this.events = events;
+            this.shares = shares;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ingest.scheduler")
+public class FairSchedulerProperties {
+    private boolean enabled = true;
+    /** Batches allowed to run against the database at once. */
+    private int concurrency = 16;
+    /** Events a weight of 1 may dispatch per round. */
+    private int quantumEvents = 1000;
+    private int defaultWeight = 1;
+    private Map<String, Integer> weights = new HashMap<>();
+    private int maxQueuedPerFactory = 200;
+    private long maxWaitMs = 30000;
+    private long hierarchyCacheTtlMs = 300000;
+
+    public int weightOf(String factoryId) {
+        return Math.max(1, weights.getOrDefault(factoryId, defaultWeight));
+    }
+}
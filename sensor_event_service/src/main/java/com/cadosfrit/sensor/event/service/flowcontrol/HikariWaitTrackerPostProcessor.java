@@ -0,0 +1,40 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Installs a Hikari metrics tracker that reports ingest pool checkout wait to the {@link AdaptiveConcurrencyLimiter}.
+ * The limiter is resolved lazily so registering this post-processor does not initialize it early.
+ */
+@Slf4j
+public class HikariWaitTrackerPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<AdaptiveConcurrencyLimiter> limiter;
+
+    public HikariWaitTrackerPostProcessor(ObjectProvider<AdaptiveConcurrencyLimiter> limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource
+                && AppConstants.INGEST_POOL_NAME.equals(dataSource.getPoolName())) {
+            try {
+                dataSource.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+                    @Override
+                    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                        limiter.getObject().recordPoolWait(elapsedAcquiredNanos);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                log.warn("Hikari pool {} already started, pool wait will not feed the ingest limiter", beanName);
+            }
+        }
+        return bean;
+    }
+}
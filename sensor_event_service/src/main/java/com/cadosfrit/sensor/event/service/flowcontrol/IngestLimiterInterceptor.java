@@ -0,0 +1,41 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Admits ingest requests through the {@link AdaptiveConcurrencyLimiter}; rejected requests surface as 429.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IngestLimiterInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = IngestLimiterInterceptor.class.getName() + ".permit";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            // Async re-dispatch of a streamed response: the original permit is still held
+            return true;
+        }
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire().orElseThrow(() -> {
+            log.warn("Shedding ingest request, concurrency limit {} reached", limiter.getLimit());
+            return new ServiceOverloadedException("Ingest concurrency limit reached", limiter.getRetryAfterSeconds());
+        });
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdaptiveConcurrencyLimiter.Permit permit) {
+            permit.release(ex != null || response.getStatus() >= 500);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * One row per event (or compacted heartbeat) moved to the cold tier, written by {@code EventTieringJob} in the
+ * transaction that deletes the hot row. A later send of the id is rejected even with a hot event_time, since the
+ * immutable cold copy would otherwise be counted next to a new hot one.
+ */
+@Data
+@Entity
+@Table(name = "cold_event_ids", indexes = {
+        @Index(name = "idx_cold_machine_day", columnList = "machine_id, cold_day")
+})
+public class ColdEventId {
+
+    @Id
+    @Column(name = "event_id", length = 50)
+    private String eventId;
+
+    @Column(name = "machine_id", nullable = false, length = 50)
+    private String machineId;
+
+    @Column(name = "cold_day", nullable = false)
+    private LocalDate coldDay;
+}
@@ -0,0 +1,20 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One row per event id ever claimed by an ingest procedure when machine_events is partitioned.
+ * A partitioned machine_events cannot carry a unique key on event_id alone, so the procedures insert the batch's
+ * ids here first, in the ingest transaction: a second batch claiming the same new id waits on this key until the
+ * first commits, then finds the event and updates or dedupes it instead of inserting a twin.
+ */
+@Data
+@Entity
+@Table(name = "event_ids")
+public class EventIdRegistration {
+
+    @Id
+    @Column(name = "event_id", length = 50)
+    private String eventId;
+}
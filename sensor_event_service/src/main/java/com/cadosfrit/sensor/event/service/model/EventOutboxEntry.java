@@ -0,0 +1,59 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * One accepted or updated event in commit-sequence order, for the change feed. Written by the stored procedures in
+ * the ingest transaction; the before columns hold the replaced image of an update and are null for an accept.
+ */
+@Data
+@Entity
+@Table(name = "event_outbox", indexes = {
+    @Index(name = "idx_outbox_created", columnList = "created_at")
+})
+public class EventOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "seq")
+    private Long seq;
+
+    @Column(name = "event_id", nullable = false)
+    private String eventId;
+
+    @Column(name = "change_type", nullable = false, length = 10)
+    private String changeType;
+
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+
+    @Column(name = "event_time", nullable = false)
+    private Instant eventTime;
+
+    @Column(name = "received_time", nullable = false)
+    private Instant receivedTime;
+
+    @Column(name = "duration_ms", nullable = false)
+    private Long durationMs;
+
+    @Column(name = "defect_count", nullable = false)
+    private Integer defectCount;
+
+    @Column(name = "before_machine_id")
+    private String beforeMachineId;
+
+    @Column(name = "before_event_time")
+    private Instant beforeEventTime;
+
+    @Column(name = "before_duration_ms")
+    private Long beforeDurationMs;
+
+    @Column(name = "before_defect_count")
+    private Integer beforeDefectCount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,30 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Compacted heartbeat: only what exact dedupe and window edges need. Written by the stored procedures.
+ */
+@Data
+@Entity
+@Table(name = "heartbeat_ledger", indexes = {
+    @Index(name = "idx_heartbeat_machine_time", columnList = "machine_id, event_time")
+})
+public class HeartbeatLedgerEntry {
+
+    @Id
+    @Column(name = "event_id")
+    private String eventId;
+
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+
+    @Column(name = "event_time", nullable = false)
+    private Instant eventTime;
+
+    @Column(name = "duration_ms", nullable = false)
+    private Long durationMs;
+}
@@ -5,11 +5,17 @@ import lombok.Data;
 
 import java.time.Instant;
 
+/**
+ * The physical keys (clustered primary key, event_id lookup key, idx_machine_key_time) depend on the configured
+ * layout and partitioning and are managed by StorageLayoutManager. Unpartitioned, event_id is the primary key or
+ * a unique key. Partitioned, no key can be unique on event_id alone, so the procedures claim every id in
+ * event_ids within the ingest transaction and remove a row before re-inserting it under a new machine or event_time.
+ * The machine is stored as its machine_keys dictionary key; {@code machineId} is converted on the way in and out.
+ */
 @Data
 @Entity
 @Table(name = "machine_events", indexes = {
-    @Index(name = "idx_event_time", columnList = "event_time"),
-    @Index(name = "idx_machine_id_time", columnList = "machine_id, event_time")
+    @Index(name = "idx_event_time", columnList = "event_time")
 })
 public class MachineEvent {
 
@@ -17,7 +23,8 @@ public class MachineEvent {
     @Column(name = "event_id")
     private String eventId; 
 
-    @JoinColumn(name="machine_id", nullable = false)
+    @Convert(converter = MachineKeyConverter.class)
+    @Column(name = "machine_key", nullable = false)
     private String machineId;
 
     @Column(name = "event_time", nullable = false)
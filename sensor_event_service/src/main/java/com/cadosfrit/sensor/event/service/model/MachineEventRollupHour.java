@@ -0,0 +1,44 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Event count and defect sum (heartbeats excluded) of one machine for one UTC hour,
+ * maintained by the ingest procedures when @ingest_rollups = 1.
+ */
+@Data
+@Entity
+@Table(name = "machine_event_rollup_hour", indexes = {
+    @Index(name = "idx_rollup_hour", columnList = "hour_start")
+})
+@IdClass(MachineEventRollupHour.Key.class)
+public class MachineEventRollupHour {
+
+    @Id
+    @Column(name = "machine_id")
+    private String machineId;
+
+    @Id
+    @Column(name = "hour_start")
+    private Instant hourStart;
+
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount;
+
+    @Column(name = "defect_sum", nullable = false)
+    private Long defectSum;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String machineId;
+        private Instant hourStart;
+    }
+}
@@ -0,0 +1,49 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Pre-aggregated events submitted by an edge gateway. Written by the process_summary_batch procedure.
+ */
+@Data
+@Entity
+@Table(name = "machine_event_summaries", indexes = {
+    @Index(name = "idx_summary_machine_start", columnList = "machine_id, interval_start"),
+    @Index(name = "idx_summary_start", columnList = "interval_start")
+})
+public class MachineEventSummary {
+
+    @Id
+    @Column(name = "summary_id")
+    private String summaryId;
+
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+
+    @Column(name = "interval_start", nullable = false)
+    private Instant intervalStart;
+
+    @Column(name = "interval_end", nullable = false)
+    private Instant intervalEnd;
+
+    @Column(name = "received_time", nullable = false)
+    private Instant receivedTime;
+
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount;
+
+    @Column(name = "defect_sum", nullable = false)
+    private Long defectSum;
+
+    @Column(name = "duration_sum_ms", nullable = false)
+    private Long durationSumMs;
+
+    @Column(name = "duration_min_ms", nullable = false)
+    private Long durationMinMs;
+
+    @Column(name = "duration_max_ms", nullable = false)
+    private Long durationMaxMs;
+}
@@ -0,0 +1,45 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * One appended version of an event in VERSIONED storage mode. Written by the stored procedures;
+ * {@code projected} flips once the compactor has folded the version into machine_events.
+ */
+@Data
+@Entity
+@Table(name = "machine_event_versions", indexes = {
+    @Index(name = "idx_version_event", columnList = "event_id, version_id"),
+    @Index(name = "idx_version_projected", columnList = "projected, version_id")
+})
+public class MachineEventVersion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "version_id")
+    private Long versionId;
+
+    @Column(name = "event_id", nullable = false)
+    private String eventId;
+
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+
+    @Column(name = "event_time", nullable = false)
+    private Instant eventTime;
+
+    @Column(name = "received_time", nullable = false)
+    private Instant receivedTime;
+
+    @Column(name = "duration_ms", nullable = false)
+    private Long durationMs;
+
+    @Column(name = "defect_count", nullable = false)
+    private Integer defectCount;
+
+    @Column(name = "projected", nullable = false)
+    private Boolean projected;
+}
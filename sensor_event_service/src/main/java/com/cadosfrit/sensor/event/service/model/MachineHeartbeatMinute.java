@@ -0,0 +1,35 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Data
+@Entity
+@Table(name = "machine_heartbeat_minutes")
+@IdClass(MachineHeartbeatMinute.Key.class)
+public class MachineHeartbeatMinute {
+
+    @Id
+    @Column(name = "machine_id")
+    private String machineId;
+
+    @Id
+    @Column(name = "minute_start")
+    private Instant minuteStart;
+
+    @Column(name = "heartbeat_count", nullable = false)
+    private Long heartbeatCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String machineId;
+        private Instant minuteStart;
+    }
+}
@@ -0,0 +1,24 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Dictionary entry mapping a machine id to the integer key stored in machine_events.
+ * Keys are assigned once and never reused; maintained by MachineKeyDictionary and the stored procedures.
+ */
+@Data
+@Entity
+@Table(name = "machine_keys", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_machine_keys_machine_id", columnNames = "machine_id")
+})
+public class MachineKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "machine_key")
+    private Integer machineKey;
+
+    @Column(name = "machine_id", nullable = false, length = 50)
+    private String machineId;
+}
@@ -0,0 +1,28 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets JPA keep exposing {@code machineId} while machine_events stores the dictionary key.
+ */
+@Component
+@Converter
+@RequiredArgsConstructor
+public class MachineKeyConverter implements AttributeConverter<String, Integer> {
+
+    private final MachineKeyDictionary dictionary;
+
+    @Override
+    public Integer convertToDatabaseColumn(String machineId) {
+        return machineId == null ? null : dictionary.resolve(machineId);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer machineKey) {
+        return machineKey == null ? null : dictionary.machineId(machineKey);
+    }
+}
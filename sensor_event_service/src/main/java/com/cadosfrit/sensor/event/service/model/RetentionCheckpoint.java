@@ -0,0 +1,35 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Purge progress of one factory: machines are purged in machine_key order and {@code nextMachineKey}
+ * is where an interrupted run resumes (null once the factory has been purged completely).
+ */
+@Data
+@Entity
+@Table(name = "retention_checkpoints")
+public class RetentionCheckpoint {
+
+    @Id
+    @Column(name = "factory_id")
+    private String factoryId;
+
+    @Column(name = "next_machine_key")
+    private Integer nextMachineKey;
+
+    @Column(name = "cutoff")
+    private Instant cutoff;
+
+    @Column(name = "deleted_events", nullable = false)
+    private long deletedEvents;
+
+    @Column(name = "last_completed_at")
+    private Instant lastCompletedAt;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
@@ -0,0 +1,39 @@
+package com.cadosfrit.sensor.event.service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The shard holding an event or gateway summary, on the primary only. Written by {@code ShardPlacements} the
+ * first time an id is ingested with sharding enabled; later sends of the id go to this shard whatever its
+ * machine's factory is by then.
+ */
+@Data
+@Entity
+@Table(name = "shard_placements")
+@IdClass(ShardPlacement.Key.class)
+public class ShardPlacement {
+
+    @Id
+    @Column(name = "kind", length = 16)
+    private String kind;
+
+    @Id
+    @Column(name = "item_id", length = 50)
+    private String itemId;
+
+    @Column(name = "shard", nullable = false, length = 64)
+    private String shard;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String kind;
+        private String itemId;
+    }
+}
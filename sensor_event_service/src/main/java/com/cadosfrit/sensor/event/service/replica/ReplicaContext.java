@@ -0,0 +1,32 @@
+package com.cadosfrit.sensor.event.service.replica;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks the current thread as reading from the replica, which routes its analytics connections to the replica pool.
+ */
+public final class ReplicaContext {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private ReplicaContext() {}
+
+    public static boolean isActive() {
+        return Boolean.TRUE.equals(ACTIVE.get());
+    }
+
+    public static <T> T run(Supplier<T> work) {
+        Boolean previous = ACTIVE.get();
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            // A nested run must leave the outer one active
+            if (previous == null) {
+                ACTIVE.remove();
+            } else {
+                ACTIVE.set(previous);
+            }
+        }
+    }
+}
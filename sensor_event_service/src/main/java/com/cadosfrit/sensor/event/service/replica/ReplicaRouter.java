@@ -0,0 +1,139 @@
+package com.cadosfrit.sensor.event.service.replica;
+
+import com.cadosfrit.sensor.event.service.dto.ReplicaStatsDTO;
+import com.cadosfrit.sensor.event.service.sharding.ShardContext;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends stats reads to the read replica when the replica already holds everything the window asks for.
+ * Lag is measured pt-heartbeat style: the primary stamps replica_heartbeat with UTC_TIMESTAMP(6), and right after,
+ * the replica reports how far its copy of the stamp trails its own clock.
+ * Between checks the lag is assumed to grow with the time since the last check, so a stalled replica
+ * is noticed even before the next measurement.
+ * A window ending within that lag of now, a lag above {@code max-lag-ms} or a failed replica query goes to the primary.
+ */
+@Slf4j
+@Component
+public class ReplicaRouter {
+
+    private static final int HEARTBEAT_ID = 1;
+
+    private final boolean enabled;
+    private final long maxLagMs;
+    private final long marginMs;
+    private final JdbcTemplate primaryJdbc;
+    private final JdbcTemplate replicaJdbc;
+
+    private volatile long lagMs = -1;
+    private volatile long checkedAtMillis;
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder fallbacksForFreshness = new LongAdder();
+    private final LongAdder fallbacksForLag = new LongAdder();
+    private final LongAdder fallbacksForErrors = new LongAdder();
+
+    public ReplicaRouter(@Value("${analytics.replica.max-lag-ms:30000}") long maxLagMs,
+                         @Value("${analytics.replica.lag-margin-ms:1000}") long marginMs,
+                         @Qualifier("ingestDataSource") HikariDataSource ingestDataSource,
+                         @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource) {
+        HikariDataSource replica = replicaDataSource.getIfAvailable();
+        this.enabled = replica != null;
+        this.maxLagMs = maxLagMs;
+        this.marginMs = marginMs;
+        this.primaryJdbc = new JdbcTemplate(ingestDataSource);
+        this.replicaJdbc = replica != null ? new JdbcTemplate(replica) : null;
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.replica.lag-check-interval-ms:1000}")
+    public void checkLag() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            primaryJdbc.update("INSERT INTO replica_heartbeat (id, beat_at) VALUES (?, UTC_TIMESTAMP(6)) "
+                    + "ON DUPLICATE KEY UPDATE beat_at = VALUES(beat_at)", HEARTBEAT_ID);
+            Long micros = replicaJdbc.queryForObject("SELECT TIMESTAMPDIFF(MICROSECOND, beat_at, UTC_TIMESTAMP(6)) "
+                    + "FROM replica_heartbeat WHERE id = ?", Long.class, HEARTBEAT_ID);
+            lagMs = micros != null ? Math.max(0, micros / 1000) : -1;
+        } catch (Exception e) {
+            log.warn("Error measuring replica lag, reads go to the primary until the next check: {}", e.getMessage());
+            lagMs = -1;
+        }
+        checkedAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Upper bound of the replica lag right now; empty while it is unknown.
+     */
+    public OptionalLong getLagMs() {
+        long measured = lagMs;
+        if (!enabled || measured < 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(measured + Math.max(0, System.currentTimeMillis() - checkedAtMillis));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs a stats read for a window ending at {@code windowEnd} on the replica when it is fresh enough.
+     * Only the primary shard has a replica; reads bound to another shard run unchanged.
+     */
+    public <T> T read(Instant windowEnd, Supplier<T> query) {
+        if (!enabled || ShardContext.current() != null) {
+            return query.get();
+        }
+        OptionalLong lag = getLagMs();
+        if (lag.isEmpty() || lag.getAsLong() > maxLagMs) {
+            fallbacksForLag.increment();
+            return onPrimary(query);
+        }
+        if (windowEnd.toEpochMilli() > System.currentTimeMillis() - lag.getAsLong() - marginMs) {
+            fallbacksForFreshness.increment();
+            return onPrimary(query);
+        }
+        try {
+            T result = ReplicaContext.run(query);
+            replicaReads.increment();
+            return result;
+        } catch (RuntimeException e) {
+            log.warn("Replica read failed, retrying on the primary: {}", e.getMessage());
+            fallbacksForErrors.increment();
+            return onPrimary(query);
+        }
+    }
+
+    public ReplicaStatsDTO getStats() {
+        OptionalLong lag = getLagMs();
+        return ReplicaStatsDTO.builder()
+                .enabled(enabled)
+                .healthy(lag.isPresent() && lag.getAsLong() <= maxLagMs)
+                .lagMs(lag.isPresent() ? lag.getAsLong() : null)
+                .lastCheckAt(checkedAtMillis > 0 ? Instant.ofEpochMilli(checkedAtMillis) : null)
+                .replicaReads(replicaReads.sum())
+                .primaryReads(primaryReads.sum())
+                .fallbacksForFreshness(fallbacksForFreshness.sum())
+                .fallbacksForLag(fallbacksForLag.sum())
+                .fallbacksForErrors(fallbacksForErrors.sum())
+                .build();
+    }
+
+    private <T> T onPrimary(Supplier<T> query) {
+        primaryReads.increment();
+        return query.get();
+    }
+}
@@ -0,0 +1,34 @@
+package com.cadosfrit.sensor.event.service.replica;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Routes to the replica pool while {@link ReplicaContext} is active, otherwise to the primary analytics pool.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * @return the primary itself when no replica is configured
+     */
+    public static DataSource of(DataSource primary, DataSource replica) {
+        return replica == null ? primary : new ReplicaRoutingDataSource(primary, replica);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ReplicaContext.isActive() ? REPLICA : PRIMARY;
+    }
+}
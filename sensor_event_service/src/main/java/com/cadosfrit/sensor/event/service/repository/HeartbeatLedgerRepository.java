@@ -0,0 +1,9 @@
+package com.cadosfrit.sensor.event.service.repository;
+
+import com.cadosfrit.sensor.event.service.model.HeartbeatLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface HeartbeatLedgerRepository extends JpaRepository<HeartbeatLedgerEntry, String> {
+}
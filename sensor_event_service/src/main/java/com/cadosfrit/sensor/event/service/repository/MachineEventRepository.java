@@ -32,7 +32,7 @@ public interface MachineEventRepository extends JpaRepository<MachineEvent, Stri
             "SUM(CASE WHEN defect_count = -1 THEN 0 ELSE defect_count END) as totalDefects, " +
             "COUNT(event_id) as totalEvents " +
             "FROM machine_events " +
-            "WHERE machine_id = :machineId " +
+            "WHERE machine_key = (SELECT machine_key FROM machine_keys WHERE machine_id = :machineId) " +
             "AND event_time >= :startTime " + // Inclusive
             "AND event_time < :endTime",      // Exclusive
             nativeQuery = true)
@@ -50,7 +50,8 @@ public interface MachineEventRepository extends JpaRepository<MachineEvent, Stri
              FROM factories f
              JOIN production_lines pl ON f.factory_id = pl.factory_id
              JOIN machines m ON pl.line_id = m.line_id
-             JOIN machine_events me ON m.machine_id = me.machine_id
+             JOIN machine_keys mk ON m.machine_id = mk.machine_id
+             JOIN machine_events me ON mk.machine_key = me.machine_key
              WHERE f.factory_id = :factoryId
                AND me.event_time >= :from
                AND me.event_time < :to
@@ -0,0 +1,17 @@
+package com.cadosfrit.sensor.event.service.repository;
+
+import com.cadosfrit.sensor.event.service.model.MachineEventSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public interface MachineEventSummaryRepository extends JpaRepository<MachineEventSummary, String> {
+
+    @Query(value = "CALL process_summary_batch(:jsonBatch)", nativeQuery = true)
+    List<Map<String, Object>> processSummaryBatchSP(@Param("jsonBatch") String jsonBatch);
+}
@@ -0,0 +1,25 @@
+package com.cadosfrit.sensor.event.service.repository;
+
+import com.cadosfrit.sensor.event.service.model.MachineEventVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public interface MachineEventVersionRepository extends JpaRepository<MachineEventVersion, Long> {
+
+    @Transactional
+    @Query(value = "CALL compact_event_versions(:limit, :pruneBefore)", nativeQuery = true)
+    List<Map<String, Object>> compactVersionsSP(@Param("limit") int limit,
+                                                @Param("pruneBefore") LocalDateTime pruneBefore);
+
+    List<MachineEventVersion> findByEventIdOrderByVersionIdAsc(String eventId);
+
+    long countByProjectedFalse();
+}
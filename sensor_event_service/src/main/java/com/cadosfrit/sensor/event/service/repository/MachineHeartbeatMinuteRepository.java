@@ -0,0 +1,9 @@
+package com.cadosfrit.sensor.event.service.repository;
+
+import com.cadosfrit.sensor.event.service.model.MachineHeartbeatMinute;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MachineHeartbeatMinuteRepository extends JpaRepository<MachineHeartbeatMinute, MachineHeartbeatMinute.Key> {
+}
@@ -1,10 +1,20 @@
 package com.cadosfrit.sensor.event.service.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.cadosfrit.sensor.event.service.model.Machine;
 
+import java.util.Optional;
+
 @Repository
 public interface MachineRepository extends JpaRepository<Machine, String> {
+
+    @Query(value = "SELECT pl.factory_id FROM machines m " +
+            "JOIN production_lines pl ON pl.line_id = m.line_id " +
+            "WHERE m.machine_id = :machineId",
+            nativeQuery = true)
+    Optional<String> findFactoryIdByMachineId(@Param("machineId") String machineId);
 }
\ No newline at end of file
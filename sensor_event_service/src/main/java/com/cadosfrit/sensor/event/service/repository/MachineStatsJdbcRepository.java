@@ -0,0 +1,278 @@
+package com.cadosfrit.sensor.event.service.repository;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.cadosfrit.sensor.event.service.storage.RollupManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Analytics queries on the analytics connection pool.
+ * Rows are returned in the same Object[] shape as the former JPA native queries.
+ * Both queries add up per-machine sources: raw events, gateway summaries and, in heartbeat-compacted mode,
+ * the heartbeat counters (whole minutes from machine_heartbeat_minutes, partial edge minutes exactly from heartbeat_ledger).
+ * Raw events are keyed by the machine_keys dictionary; they are aggregated per key and then mapped back to machine_id.
+ * With hourly rollups, the whole hours the RollupManager vouches for come from machine_event_rollup_hour and the raw
+ * sources only cover the rest of the window.
+ */
+@Repository
+public class MachineStatsJdbcRepository {
+
+    // Per-machine sources of (defects, events); each branch is filtered to the window [:from, :to)
+    private static final String EVENTS_SOURCE = """
+            SELECT k.machine_id, e.defects, e.events
+            FROM (
+                SELECT machine_key,
+                       SUM(CASE WHEN defect_count = -1 THEN 0 ELSE defect_count END) AS defects,
+                       COUNT(event_id) AS events
+                FROM machine_events
+                WHERE event_time >= :from AND event_time < :to%s
+                GROUP BY machine_key
+            ) e
+            JOIN machine_keys k ON k.machine_key = e.machine_key
+            """;
+
+    private static final String SUMMARIES_SOURCE = """
+            UNION ALL
+            SELECT machine_id, SUM(defect_sum), SUM(event_count)
+            FROM machine_event_summaries
+            WHERE interval_start >= :from AND interval_start < :to%s
+            GROUP BY machine_id
+            """;
+
+    private static final String HEARTBEATS_SOURCE = """
+            UNION ALL
+            SELECT machine_id, 0, SUM(heartbeat_count)
+            FROM machine_heartbeat_minutes
+            WHERE minute_start >= :fullFrom AND minute_start < :fullTo%s
+            GROUP BY machine_id
+            UNION ALL
+            SELECT machine_id, 0, COUNT(*)
+            FROM heartbeat_ledger
+            WHERE ((event_time >= :from AND event_time < :headEnd)
+                OR (event_time >= :tailStart AND event_time < :to))%s
+            GROUP BY machine_id
+            """;
+
+    private static final String ROLLUPS_SOURCE = """
+            UNION ALL
+            SELECT machine_id, SUM(defect_sum), SUM(event_count)
+            FROM machine_event_rollup_hour
+            WHERE hour_start >= :skipFrom AND hour_start < :skipTo%s
+            GROUP BY machine_id
+            """;
+
+    private static final String MACHINE_FILTER = " AND machine_id = :machineId";
+    private static final String MACHINE_KEY_FILTER = " AND machine_key = :machineKey";
+    private static final String MACHINES_FILTER = " AND machine_id IN (:machineIds)";
+    private static final String MACHINE_KEYS_FILTER = " AND machine_key IN (:machineKeys)";
+    // Leaves out the range answered elsewhere: minute aggregates in memory or hourly rollups
+    private static final String SKIP_EVENT_TIME = " AND (event_time < :skipFrom OR event_time >= :skipTo)";
+    private static final String SKIP_MINUTE_START = " AND (minute_start < :skipFrom OR minute_start >= :skipTo)";
+
+    private static final String MACHINE_STATS_SQL = """
+            SELECT SUM(src.defects) AS totalDefects, COALESCE(SUM(src.events), 0) AS totalEvents
+            FROM (
+            %s) src
+            """;
+
+    private static final String MACHINES_STATS_SQL = """
+            SELECT src.machine_id AS machineId, SUM(src.defects) AS totalDefects, COALESCE(SUM(src.events), 0) AS totalEvents
+            FROM (
+            %s) src
+            GROUP BY src.machine_id
+            """;
+
+    private static final String TOP_DEFECT_LINES_SQL = """
+            SELECT
+                pl.line_id AS lineId,
+                COALESCE(SUM(src.defects), 0) AS totalDefects,
+                COALESCE(SUM(src.events), 0) AS eventCount,
+                (COALESCE(SUM(src.defects), 0) * 100.0 / NULLIF(SUM(src.events), 0)) AS defectPercentage
+            FROM production_lines pl
+            JOIN machines m ON pl.line_id = m.line_id
+            JOIN (
+            %s) src ON src.machine_id = m.machine_id
+            WHERE pl.factory_id = :factoryId
+            GROUP BY pl.line_id
+            HAVING SUM(src.events) > 0
+            ORDER BY defectPercentage DESC
+            LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MachineKeyDictionary machineKeys;
+    private final RollupManager rollups;
+    private final String machineStatsSql;
+    private final String machineStatsSkippingSql;
+    private final String machineStatsRollupSql;
+    private final String machinesStatsSql;
+    private final String machinesStatsRollupSql;
+    private final String topDefectLinesSql;
+    private final String topDefectLinesRollupSql;
+
+    public MachineStatsJdbcRepository(@Qualifier("analyticsJdbcTemplate") NamedParameterJdbcTemplate jdbcTemplate,
+                                      IngestSessionSettings sessionSettings,
+                                      MachineKeyDictionary machineKeys,
+                                      RollupManager rollups) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.machineKeys = machineKeys;
+        this.rollups = rollups;
+        boolean heartbeatsCompacted = sessionSettings.getStorageMode() == StorageMode.HEARTBEAT_COMPACTED;
+        this.machineStatsSql = MACHINE_STATS_SQL.formatted(sources(MACHINE_KEY_FILTER, MACHINE_FILTER, heartbeatsCompacted));
+        String machineSkippingSources = sources(MACHINE_KEY_FILTER + SKIP_EVENT_TIME,
+                MACHINE_FILTER, MACHINE_FILTER + SKIP_MINUTE_START, MACHINE_FILTER + SKIP_EVENT_TIME, heartbeatsCompacted);
+        this.machineStatsSkippingSql = MACHINE_STATS_SQL.formatted(machineSkippingSources);
+        this.machineStatsRollupSql = MACHINE_STATS_SQL.formatted(machineSkippingSources + ROLLUPS_SOURCE.formatted(MACHINE_FILTER));
+        this.machinesStatsSql = MACHINES_STATS_SQL.formatted(sources(MACHINE_KEYS_FILTER, MACHINES_FILTER, heartbeatsCompacted));
+        this.machinesStatsRollupSql = MACHINES_STATS_SQL.formatted(sources(MACHINE_KEYS_FILTER + SKIP_EVENT_TIME,
+                MACHINES_FILTER, MACHINES_FILTER + SKIP_MINUTE_START, MACHINES_FILTER + SKIP_EVENT_TIME, heartbeatsCompacted)
+                + ROLLUPS_SOURCE.formatted(MACHINES_FILTER));
+        this.topDefectLinesSql = TOP_DEFECT_LINES_SQL.formatted(sources("", "", heartbeatsCompacted));
+        this.topDefectLinesRollupSql = TOP_DEFECT_LINES_SQL.formatted(sources(SKIP_EVENT_TIME, "", SKIP_MINUTE_START,
+                SKIP_EVENT_TIME, heartbeatsCompacted) + ROLLUPS_SOURCE.formatted(""));
+    }
+
+    /**
+     * Rule: defect_count = -1 is ignored in the SUM but counts in time window.
+     * Summaries count when their interval starts inside the window.
+     * A machine without a dictionary key has no raw events; the NULL key matches no row.
+     */
+    public Object[] getMachineStatsRaw(String machineId, Instant startTime, Instant endTime) {
+        MapSqlParameterSource params = windowParams(startTime, endTime)
+                .addValue("machineId", machineId)
+                .addValue("machineKey", machineKeys.find(machineId).orElse(null));
+        Optional<RollupManager.Hours> hours = rollups.wholeHours(startTime, endTime);
+        hours.ifPresent(whole -> addSkip(params, whole.from(), whole.to()));
+        return jdbcTemplate.queryForObject(hours.isPresent() ? machineStatsRollupSql : machineStatsSql, params,
+                (rs, rowNum) -> new Object[]{rs.getObject("totalDefects"), rs.getObject("totalEvents")});
+    }
+
+    /**
+     * Same totals without the raw events and heartbeats of [skipFrom, skipTo), which the caller takes from the
+     * minute aggregates; summaries still count over the whole window. One round trip for both edges.
+     */
+    public Object[] getMachineStatsRaw(String machineId, Instant startTime, Instant endTime, Instant skipFrom, Instant skipTo) {
+        MapSqlParameterSource params = windowParams(startTime, endTime)
+                .addValue("machineId", machineId)
+                .addValue("machineKey", machineKeys.find(machineId).orElse(null));
+        addSkip(params, skipFrom, skipTo);
+        return jdbcTemplate.queryForObject(machineStatsSkippingSql, params,
+                (rs, rowNum) -> new Object[]{rs.getObject("totalDefects"), rs.getObject("totalEvents")});
+    }
+
+    /**
+     * Totals of several machines in one grouped query; each source range-scans its machine/time index once per
+     * machine of the IN list. Machines without rows are missing from the result.
+     * An empty key list is sent as (NULL), which matches no row.
+     *
+     * @return machine_id to {totalDefects, totalEvents}
+     */
+    public Map<String, Object[]> getMachineStatsRaw(Collection<String> machineIds, Instant startTime, Instant endTime) {
+        List<Integer> keys = new ArrayList<>();
+        for (String machineId : machineIds) {
+            machineKeys.find(machineId).ifPresent(keys::add);
+        }
+        if (keys.isEmpty()) {
+            keys.add(null);
+        }
+        MapSqlParameterSource params = windowParams(startTime, endTime)
+                .addValue("machineIds", machineIds)
+                .addValue("machineKeys", keys);
+        Optional<RollupManager.Hours> hours = rollups.wholeHours(startTime, endTime);
+        hours.ifPresent(whole -> addSkip(params, whole.from(), whole.to()));
+        Map<String, Object[]> totals = new HashMap<>();
+        jdbcTemplate.query(hours.isPresent() ? machinesStatsRollupSql : machinesStatsSql, params,
+                (RowCallbackHandler) rs -> totals.put(rs.getString("machineId"),
+                        new Object[]{rs.getObject("totalDefects"), rs.getObject("totalEvents")}));
+        return totals;
+    }
+
+    public List<Object[]> findTopDefectLinesRaw(String factoryId, Instant from, Instant to, int limit) {
+        MapSqlParameterSource params = windowParams(from, to)
+                .addValue("factoryId", factoryId)
+                .addValue("limit", limit);
+        Optional<RollupManager.Hours> hours = rollups.wholeHours(from, to);
+        hours.ifPresent(whole -> addSkip(params, whole.from(), whole.to()));
+        return jdbcTemplate.query(hours.isPresent() ? topDefectLinesRollupSql : topDefectLinesSql, params, (rs, rowNum) -> new Object[]{
+                rs.getString("lineId"),
+                rs.getObject("totalDefects"),
+                rs.getObject("eventCount"),
+                rs.getObject("defectPercentage")
+        });
+    }
+
+    /**
+     * machine_id to line_id for every machine of the factory.
+     */
+    public Map<String, String> findMachineLines(String factoryId) {
+        Map<String, String> lines = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT m.machine_id, m.line_id
+                        FROM machines m
+                        JOIN production_lines pl ON pl.line_id = m.line_id
+                        WHERE pl.factory_id = :factoryId
+                        """,
+                new MapSqlParameterSource("factoryId", factoryId),
+                (RowCallbackHandler) rs -> lines.put(rs.getString("machine_id"), rs.getString("line_id")));
+        return lines;
+    }
+
+    private static String sources(String eventFilter, String filter, boolean heartbeatsCompacted) {
+        return sources(eventFilter, filter, filter, filter, heartbeatsCompacted);
+    }
+
+    private static String sources(String eventFilter, String summaryFilter, String minuteFilter, String ledgerFilter,
+                                  boolean heartbeatsCompacted) {
+        String sources = EVENTS_SOURCE.formatted(eventFilter) + SUMMARIES_SOURCE.formatted(summaryFilter);
+        return heartbeatsCompacted ? sources + HEARTBEATS_SOURCE.formatted(minuteFilter, ledgerFilter) : sources;
+    }
+
+    /**
+     * Splits [start, end) into whole minutes [fullFrom, fullTo) answered by the counters and the partial
+     * edges [start, headEnd) and [tailStart, end) answered by the ledger.
+     */
+    private static MapSqlParameterSource windowParams(Instant start, Instant end) {
+        Instant startFloor = start.truncatedTo(ChronoUnit.MINUTES);
+        Instant fullFrom = startFloor.equals(start) ? start : startFloor.plus(1, ChronoUnit.MINUTES);
+        Instant fullTo = end.truncatedTo(ChronoUnit.MINUTES);
+        Instant headEnd = fullFrom;
+        Instant tailStart = fullTo;
+        if (!fullFrom.isBefore(fullTo)) {
+            fullTo = fullFrom;
+            headEnd = end;
+            tailStart = end;
+        }
+        return new MapSqlParameterSource()
+                .addValue("from", toUtc(start))
+                .addValue("to", toUtc(end))
+                .addValue("fullFrom", toUtc(fullFrom))
+                .addValue("fullTo", toUtc(fullTo))
+                .addValue("headEnd", toUtc(headEnd))
+                .addValue("tailStart", toUtc(tailStart));
+    }
+
+    private static void addSkip(MapSqlParameterSource params, Instant skipFrom, Instant skipTo) {
+        params.addValue("skipFrom", toUtc(skipFrom)).addValue("skipTo", toUtc(skipTo));
+    }
+
+    // event_time holds UTC wall-clock values (Hibernate Instant mapping and the procedures' JSON parsing)
+    private static LocalDateTime toUtc(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,44 @@
+package com.cadosfrit.sensor.event.service.routing;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routing features of one batch.
+ *
+ * @param collisionRatio share of events whose eventId occurs more than once in the batch
+ *                       (the events V2's splitBatch sends down the sequential path)
+ * @param existingRatio  expected share of events that already exist in MySQL, estimated from recent batches
+ */
+public record BatchShape(int size, double collisionRatio, double existingRatio) {
+
+    public static BatchShape of(List<EventRequestDTO> batch, double expectedExistingRatio) {
+        Map<String, Integer> frequency = new HashMap<>();
+        for (EventRequestDTO event : batch) {
+            if (event != null && event.getEventId() != null) {
+                frequency.merge(event.getEventId(), 1, Integer::sum);
+            }
+        }
+        int colliding = 0;
+        for (int count : frequency.values()) {
+            if (count > 1) {
+                colliding += count;
+            }
+        }
+        double collisionRatio = batch.isEmpty() ? 0.0 : (double) colliding / batch.size();
+        return new BatchShape(batch.size(), collisionRatio, expectedExistingRatio);
+    }
+
+    /**
+     * Coarse cost-model bucket: order of magnitude of the size, collision level and mostly-new vs mostly-existing.
+     */
+    public String bucket() {
+        int sizeBucket = (int) Math.min(4, Math.ceil(Math.log10(Math.max(1, size))));
+        int collisionBucket = collisionRatio == 0 ? 0 : (collisionRatio < 0.1 ? 1 : 2);
+        int existingBucket = existingRatio < 0.5 ? 0 : 1;
+        return "s" + sizeBucket + "-c" + collisionBucket + "-e" + existingBucket;
+    }
+}
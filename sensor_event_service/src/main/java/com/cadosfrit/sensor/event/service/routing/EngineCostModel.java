@@ -0,0 +1,57 @@
+package com.cadosfrit.sensor.event.service.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Online cost model: one latency histogram per (engine, batch-shape bucket), scaled by batch size.
+ */
+public class EngineCostModel {
+
+    private final int window;
+    private final int minSamples;
+    private final Map<String, Map<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    public EngineCostModel(int window, int minSamples) {
+        this.window = window;
+        this.minSamples = minSamples;
+    }
+
+    public void record(String engine, BatchShape shape, long latencyNanos) {
+        histogram(engine, shape.bucket()).record(latencyNanos / Math.max(1, shape.size()));
+    }
+
+    /**
+     * @return estimated batch latency in nanoseconds (median per-event cost times size), or -1 if not enough samples
+     */
+    public long estimate(String engine, BatchShape shape) {
+        LatencyHistogram histogram = histogram(engine, shape.bucket());
+        if (histogram.getSamples() < minSamples) {
+            return -1;
+        }
+        return histogram.quantile(0.5) * shape.size();
+    }
+
+    public long samples(String engine, BatchShape shape) {
+        return histogram(engine, shape.bucket()).getSamples();
+    }
+
+    /**
+     * engine -> bucket -> median per-event cost in microseconds
+     */
+    public Map<String, Map<String, Double>> snapshot() {
+        Map<String, Map<String, Double>> snapshot = new LinkedHashMap<>();
+        histograms.forEach((engine, buckets) -> {
+            Map<String, Double> perBucket = new LinkedHashMap<>();
+            buckets.forEach((bucket, histogram) -> perBucket.put(bucket, histogram.quantile(0.5) / 1000.0));
+            snapshot.put(engine, perBucket);
+        });
+        return snapshot;
+    }
+
+    private LatencyHistogram histogram(String engine, String bucket) {
+        return histograms.computeIfAbsent(engine, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(bucket, b -> new LatencyHistogram(window));
+    }
+}
@@ -0,0 +1,55 @@
+package com.cadosfrit.sensor.event.service.routing;
+
+/**
+ * Log2-bucketed latency histogram in nanoseconds.
+ * Counts are halved once the total reaches the window, so old samples fade and the estimate follows recent load.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final long[] counts = new long[BUCKETS];
+    private final int window;
+    private long total;
+    private long samples;
+
+    public LatencyHistogram(int window) {
+        this.window = window;
+    }
+
+    public synchronized void record(long nanos) {
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+        counts[bucket]++;
+        total++;
+        samples++;
+        if (total >= window) {
+            total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] >>= 1;
+                total += counts[i];
+            }
+        }
+    }
+
+    /**
+     * @return upper bound of the bucket holding the given quantile, or -1 with no samples
+     */
+    public synchronized long quantile(double q) {
+        if (total == 0) {
+            return -1;
+        }
+        long target = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target && counts[i] > 0) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,18 @@
+package com.cadosfrit.sensor.event.service.routing;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * @param estimatesMs per eligible engine, the estimated batch latency; -1 where the model has too few samples
+ * @param reason      "model", "explore" or "only-eligible"
+ */
+public record RoutingDecision(Instant at, String engine, String bucket, int size, double collisionRatio,
+                              double existingRatio, Map<String, Double> estimatesMs, String reason,
+                              Double actualMs) {
+
+    public RoutingDecision withActual(double actualMs) {
+        return new RoutingDecision(at, engine, bucket, size, collisionRatio, existingRatio, estimatesMs, reason,
+                actualMs);
+    }
+}
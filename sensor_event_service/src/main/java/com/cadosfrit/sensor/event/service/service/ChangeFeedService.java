@@ -0,0 +1,28 @@
+package com.cadosfrit.sensor.event.service.service;
+
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface ChangeFeedService {
+
+    boolean isEnabled();
+
+    /**
+     * Changes with a sequence above {@code after}, oldest first, never past a sequence that may still commit.
+     * When there are none, waits up to {@code waitMs} for new ones before returning an empty page.
+     */
+    ChangeFeedPageDTO getChanges(long after, int limit, long waitMs);
+
+    /**
+     * Like {@link #getChanges}, without holding the calling thread while waiting: the returned page is completed
+     * by the feed's poller once changes arrive or {@code waitMs} has passed.
+     */
+    CompletableFuture<ChangeFeedPageDTO> awaitChanges(long after, int limit, long waitMs);
+
+    /**
+     * Highest sequence recorded so far, returned once no change at or below it can still commit:
+     * a read started afterwards sees every change up to it.
+     */
+    long stablePosition();
+}
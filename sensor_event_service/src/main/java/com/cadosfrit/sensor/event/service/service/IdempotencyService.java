@@ -0,0 +1,25 @@
+package com.cadosfrit.sensor.event.service.service;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.WalAckDTO;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+    /**
+     * Runs the ingest action once per (scope, key) and replays the stored response for retries.
+     * Throws IdempotencyKeyConflictException when the key is reused for a different batch.
+     */
+    IdempotentResult execute(String scope, String idempotencyKey, List<?> batch, Supplier<IngestResponseDTO> action);
+
+    /**
+     * Same contract for write-ahead-log acknowledgements: a retry gets the first sequence back instead of
+     * appending the batch again.
+     */
+    AcknowledgedResult acknowledge(String scope, String idempotencyKey, List<?> batch, Supplier<WalAckDTO> append);
+
+    record IdempotentResult(IngestResponseDTO response, boolean replayed) {}
+
+    record AcknowledgedResult(WalAckDTO ack, boolean replayed) {}
+}
@@ -12,6 +12,16 @@ public interface MachineStatsService {
      */
     MachineStatsDTO getMachineStats(String machineId, Instant start, Instant end);
 
+    /**
+     * Calculates stats for several machines in the same time window, in the order given.
+     */
+    List<MachineStatsDTO> getMachineStats(List<String> machineIds, Instant start, Instant end);
+
+    /**
+     * Machines of a factory, or only of one of its lines when {@code lineId} is given.
+     */
+    List<String> findMachineIds(String factoryId, String lineId);
+
     /**
      * Returns top production lines with the highest defect rates.
      */
@@ -0,0 +1,13 @@
+package com.cadosfrit.sensor.event.service.service;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+import java.util.List;
+
+public interface SummaryIngestService {
+    /**
+     * Validates and persists a batch of gateway summaries with the same
+     * accepted / updated / deduped semantics as raw events.
+     */
+    IngestResponseDTO processBatch(List<SummaryRequestDTO> batch);
+}
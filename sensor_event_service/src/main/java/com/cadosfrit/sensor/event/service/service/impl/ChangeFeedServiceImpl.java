@@ -0,0 +1,343 @@
+package com.cadosfrit.sensor.event.service.service.impl;
+
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+import com.cadosfrit.sensor.event.service.dto.EventChangeDTO;
+import com.cadosfrit.sensor.event.service.service.ChangeFeedService;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages through event_outbox in sequence order.
+ * AUTO_INCREMENT values are handed out at insert time but become visible at commit, and bulk inserts may reserve
+ * values they never use, so a missing sequence is either still in flight or gone for good. When a page meets a gap
+ * it snapshots the write transactions open in InnoDB: any transaction holding the missing value is among them.
+ * The page stops before the gap until every transaction of that snapshot has ended, after which the gap is
+ * permanent and skipped. Without the PROCESS privilege the snapshot is unavailable and a gap is held for
+ * {@code gap-timeout-ms} instead.
+ * Readers waiting for changes do not poll themselves: one poller thread reads the head every
+ * {@code poll-interval-ms} and reads pages only for waiters the head has moved past, so waiting readers hold
+ * neither a request thread nor an analytics connection.
+ */
+@Slf4j
+@Service("ChangeFeedService")
+public class ChangeFeedServiceImpl implements ChangeFeedService {
+
+    private static final String PAGE_SQL = """
+            SELECT seq, event_id, change_type, machine_id, event_time, received_time, duration_ms, defect_count,
+                   before_machine_id, before_event_time, before_duration_ms, before_defect_count, created_at
+            FROM event_outbox
+            WHERE seq > :after
+            ORDER BY seq
+            LIMIT :limit
+            """;
+    // Only a transaction that has written can hold a sequence
+    private static final String OPEN_WRITERS_SQL = "SELECT trx_id FROM information_schema.innodb_trx "
+            + "WHERE trx_autocommit_non_locking = 0 AND trx_is_read_only = 0";
+    private static final String HEAD_SQL = "SELECT COALESCE(MAX(seq), 0) FROM event_outbox";
+    private static final String PURGE_SQL = "DELETE FROM event_outbox WHERE created_at < ? ORDER BY seq LIMIT ?";
+    private static final int MAX_TRACKED_GAPS = 1024;
+
+    private final boolean enabled;
+    private final int maxPageSize;
+    private final long maxWaitMs;
+    private final long pollIntervalMs;
+    private final long gapTimeoutNanos;
+    private final int retentionHours;
+    private final int purgeChunkSize;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final JdbcTemplate ingestJdbc;
+
+    // First sighting of each unresolved gap, keyed by the first missing sequence
+    private final Map<Long, GapWatch> gaps = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, GapWatch> eldest) {
+            return size() > MAX_TRACKED_GAPS;
+        }
+    });
+    private volatile boolean openWritersVisible = true;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChangeFeedServiceImpl(@Value("${ingest.outbox.enabled:false}") boolean enabled,
+                                 @Value("${ingest.outbox.max-page-size:1000}") int maxPageSize,
+                                 @Value("${ingest.outbox.max-wait-ms:30000}") long maxWaitMs,
+                                 @Value("${ingest.outbox.poll-interval-ms:200}") long pollIntervalMs,
+                                 @Value("${ingest.outbox.gap-timeout-ms:30000}") long gapTimeoutMs,
+                                 @Value("${ingest.outbox.retention-hours:72}") int retentionHours,
+                                 @Value("${ingest.outbox.purge-chunk-size:10000}") int purgeChunkSize,
+                                 @Qualifier("analyticsJdbcTemplate") NamedParameterJdbcTemplate analyticsJdbcTemplate,
+                                 @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.enabled = enabled;
+        this.maxPageSize = maxPageSize;
+        this.maxWaitMs = maxWaitMs;
+        this.pollIntervalMs = pollIntervalMs;
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMs);
+        this.retentionHours = retentionHours;
+        this.purgeChunkSize = purgeChunkSize;
+        this.jdbc = analyticsJdbcTemplate;
+        this.ingestJdbc = new JdbcTemplate(ingestDataSource);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            poller.scheduleWithFixedDelay(this::pollWaiters, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        for (Waiter waiter = waiters.poll(); waiter != null; waiter = waiters.poll()) {
+            waiter.page().complete(page(List.of(), waiter.after(), false));
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public ChangeFeedPageDTO getChanges(long after, int limit, long waitMs) {
+        CompletableFuture<ChangeFeedPageDTO> pending = awaitChanges(after, limit, waitMs);
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.cancel(false);
+            return page(List.of(), after, false);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<ChangeFeedPageDTO> awaitChanges(long after, int limit, long waitMs) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(waitMs, maxWaitMs)));
+
+        ChangeFeedPageDTO page = readPage(after, pageSize);
+        if (!page.getChanges().isEmpty() || waitNanos == 0 || !enabled) {
+            return CompletableFuture.completedFuture(page);
+        }
+        Waiter waiter = new Waiter(after, pageSize, System.nanoTime() + waitNanos, new CompletableFuture<>());
+        waiters.add(waiter);
+        return waiter.page();
+    }
+
+    /**
+     * Reads the head, then waits until the write transactions open at that moment have ended, since any of them
+     * may hold a lower sequence. Bounded by the gap timeout, like a gap without the writer snapshot.
+     */
+    @Override
+    public long stablePosition() {
+        Long head = jdbc.getJdbcTemplate().queryForObject(HEAD_SQL, Long.class);
+        Set<String> writers = openWriters();
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < gapTimeoutNanos) {
+            Set<String> open = writers != null ? openWriters() : null;
+            if (open != null && Collections.disjoint(writers, open)) {
+                break;
+            }
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return head != null ? head : 0;
+    }
+
+    /**
+     * Deletes outbox rows older than the retention in chunks, so consumers that fall further behind see a gap.
+     */
+    @Scheduled(fixedDelayString = "${ingest.outbox.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!enabled || retentionHours <= 0) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now(ZoneOffset.UTC).minusHours(retentionHours);
+            long deleted = 0;
+            int chunk;
+            do {
+                chunk = ingestJdbc.update(PURGE_SQL, cutoff, purgeChunkSize);
+                deleted += chunk;
+            } while (chunk == purgeChunkSize);
+            if (deleted > 0) {
+                log.info("Purged {} change feed entries recorded before {}", deleted, cutoff);
+            }
+        } catch (Exception e) {
+            log.error("Error purging change feed entries", e);
+        }
+    }
+
+    /**
+     * One head read per tick for all waiters; a waiter is answered once a page after its position has changes,
+     * or with whatever its position shows at its deadline. A failed read fails every waiter, as a read on the
+     * request thread would have.
+     */
+    private void pollWaiters() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        try {
+            Long head = jdbc.getJdbcTemplate().queryForObject(HEAD_SQL, Long.class);
+            long now = System.nanoTime();
+            for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext(); ) {
+                Waiter waiter = iterator.next();
+                boolean expired = now - waiter.deadlineNanos() >= 0;
+                if (waiter.page().isDone()) {
+                    iterator.remove();
+                } else if (expired || (head != null && head > waiter.after())) {
+                    ChangeFeedPageDTO page = readPage(waiter.after(), waiter.pageSize());
+                    if (!page.getChanges().isEmpty() || expired) {
+                        waiter.page().complete(page);
+                        iterator.remove();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error polling the change feed for {} waiting readers", waiters.size(), e);
+            for (Waiter waiter = waiters.poll(); waiter != null; waiter = waiters.poll()) {
+                waiter.page().completeExceptionally(e);
+            }
+        }
+    }
+
+    private ChangeFeedPageDTO readPage(long after, int pageSize) {
+        List<EventChangeDTO> rows = fetch(after, pageSize);
+        if (isContiguous(after, rows)) {
+            return page(rows, after, false);
+        }
+
+        // Snapshot first, then re-read: a transaction that commits in between is already in the second read
+        Set<String> writers = openWriters();
+        rows = fetch(after, pageSize);
+
+        List<EventChangeDTO> visible = new ArrayList<>(rows.size());
+        long expected = after + 1;
+        for (EventChangeDTO row : rows) {
+            if (row.getSeq() != expected && isGapPending(expected, writers)) {
+                return page(visible, after, true);
+            }
+            visible.add(row);
+            expected = row.getSeq() + 1;
+        }
+        return page(visible, after, false);
+    }
+
+    private boolean isGapPending(long firstMissing, Set<String> writers) {
+        GapWatch watch = gaps.computeIfAbsent(firstMissing, key -> new GapWatch(writers, System.nanoTime()));
+        boolean pending = watch.writers() != null && writers != null
+                ? !Collections.disjoint(watch.writers(), writers)
+                : System.nanoTime() - watch.firstSeenNanos() < gapTimeoutNanos;
+        if (!pending) {
+            gaps.remove(firstMissing);
+        }
+        return pending;
+    }
+
+    private Set<String> openWriters() {
+        try {
+            Set<String> writers = new HashSet<>(jdbc.getJdbcTemplate().queryForList(OPEN_WRITERS_SQL, String.class));
+            openWritersVisible = true;
+            return writers;
+        } catch (DataAccessException e) {
+            if (openWritersVisible) {
+                log.warn("Cannot read information_schema.innodb_trx, change feed gaps are held for the gap timeout: {}",
+                        e.getMessage());
+                openWritersVisible = false;
+            }
+            return null;
+        }
+    }
+
+    private List<EventChangeDTO> fetch(long after, int pageSize) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("after", after)
+                .addValue("limit", pageSize);
+        return jdbc.query(PAGE_SQL, params, (rs, rowNum) -> mapChange(rs));
+    }
+
+    private static boolean isContiguous(long after, List<EventChangeDTO> rows) {
+        return rows.isEmpty() || rows.get(rows.size() - 1).getSeq() - after == rows.size();
+    }
+
+    private static ChangeFeedPageDTO page(List<EventChangeDTO> changes, long after, boolean gapPending) {
+        long nextAfter = changes.isEmpty() ? after : changes.get(changes.size() - 1).getSeq();
+        return ChangeFeedPageDTO.builder()
+                .changes(changes)
+                .nextAfter(nextAfter)
+                .gapPending(gapPending)
+                .build();
+    }
+
+    private static EventChangeDTO mapChange(ResultSet rs) throws SQLException {
+        EventChangeDTO.Image before = null;
+        String beforeMachineId = rs.getString("before_machine_id");
+        if (beforeMachineId != null) {
+            before = EventChangeDTO.Image.builder()
+                    .machineId(beforeMachineId)
+                    .eventTime(toInstant(rs.getObject("before_event_time", LocalDateTime.class)))
+                    .durationMs(rs.getObject("before_duration_ms", Long.class))
+                    .defectCount(rs.getObject("before_defect_count", Integer.class))
+                    .build();
+        }
+        return EventChangeDTO.builder()
+                .seq(rs.getLong("seq"))
+                .changeType(rs.getString("change_type"))
+                .eventId(rs.getString("event_id"))
+                .receivedTime(toInstant(rs.getObject("received_time", LocalDateTime.class)))
+                .recordedAt(toInstant(rs.getObject("created_at", LocalDateTime.class)))
+                .after(EventChangeDTO.Image.builder()
+                        .machineId(rs.getString("machine_id"))
+                        .eventTime(toInstant(rs.getObject("event_time", LocalDateTime.class)))
+                        .durationMs(rs.getLong("duration_ms"))
+                        .defectCount(rs.getInt("defect_count"))
+                        .build())
+                .before(before)
+                .build();
+    }
+
+    private static Instant toInstant(LocalDateTime utc) {
+        return utc != null ? utc.toInstant(ZoneOffset.UTC) : null;
+    }
+
+    private record GapWatch(Set<String> writers, long firstSeenNanos) {}
+
+    private record Waiter(long after, int pageSize, long deadlineNanos, CompletableFuture<ChangeFeedPageDTO> page) {}
+}
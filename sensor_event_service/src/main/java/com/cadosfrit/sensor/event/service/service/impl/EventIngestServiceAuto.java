@@ -0,0 +1,178 @@
+package com.cadosfrit.sensor.event.service.service.impl;
+
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.RouterStatsDTO;
+import com.cadosfrit.sensor.event.service.routing.BatchShape;
+import com.cadosfrit.sensor.event.service.routing.EngineCostModel;
+import com.cadosfrit.sensor.event.service.routing.RoutingDecision;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes each batch to the engine expected to persist it fastest.
+ * Engines are scored by an online cost model keyed on batch shape (size, in-batch collision ratio, expected
+ * share of existing ids); engines with too few samples in a bucket are tried first, and a small share of
+ * traffic keeps exploring so the model follows changes in load.
+ * V1 compacts duplicates in memory and loses intermediate transitions, so it is only eligible for batches
+ * without in-batch collisions, where both engines produce the same counters.
+ */
+@Slf4j
+@Service("EventIngestServiceAuto")
+public class EventIngestServiceAuto implements EventIngestService {
+
+    private static final double EXISTING_RATIO_WEIGHT = 0.1;
+
+    private final Map<String, EventIngestService> engines = new LinkedHashMap<>();
+    private final EngineCostModel costModel;
+    private final double exploreRatio;
+    private final int maxRecentDecisions;
+
+    private final Map<String, LongAdder> decisionCounts = new ConcurrentHashMap<>();
+    private final Deque<RoutingDecision> recentDecisions = new ArrayDeque<>();
+    // Bits of a double, so concurrent batches update the average without losing each other's observations
+    private final AtomicLong expectedExistingRatio = new AtomicLong(Double.doubleToLongBits(0.0));
+
+    public EventIngestServiceAuto(Map<String, EventIngestService> ingestServices,
+                                  @Value("${ingest.router.engines:EventIngestServiceV1,EventIngestServiceV2}") List<String> engineNames,
+                                  @Value("${ingest.router.histogram-window:512}") int histogramWindow,
+                                  @Value("${ingest.router.min-samples:20}") int minSamples,
+                                  @Value("${ingest.router.explore-ratio:0.05}") double exploreRatio,
+                                  @Value("${ingest.router.recent-decisions:100}") int maxRecentDecisions) {
+        for (String name : engineNames) {
+            EventIngestService engine = ingestServices.get(name);
+            if (engine == null) {
+                throw new IllegalStateException("Unknown ingest engine configured for router: " + name);
+            }
+            engines.put(name, engine);
+        }
+        this.costModel = new EngineCostModel(histogramWindow, minSamples);
+        this.exploreRatio = exploreRatio;
+        this.maxRecentDecisions = maxRecentDecisions;
+    }
+
+    @Override
+    public IngestResponseDTO processBatch(List<EventRequestDTO> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return engines.values().iterator().next().processBatch(batch);
+        }
+
+        BatchShape shape = BatchShape.of(batch, getExpectedExistingRatio());
+        RoutingDecision decision = decide(shape);
+        log.debug("Router chose {} ({}) for batch - Size: {}, Collisions: {}, Existing: {}, Estimates(ms): {}",
+                decision.engine(), decision.reason(), shape.size(), String.format("%.3f", shape.collisionRatio()),
+                String.format("%.2f", shape.existingRatio()), decision.estimatesMs());
+
+        long start = System.nanoTime();
+        IngestResponseDTO response = engines.get(decision.engine()).processBatch(batch);
+        long elapsed = System.nanoTime() - start;
+
+        if (response != null && response.isComplete(batch.size())) {
+            costModel.record(decision.engine(), shape, elapsed);
+            updateExistingRatio(response);
+        }
+        remember(decision.withActual(elapsed / 1_000_000.0));
+        return response;
+    }
+
+    public RouterStatsDTO getStats() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        decisionCounts.forEach((engine, count) -> counts.put(engine, count.sum()));
+        List<RoutingDecision> recent;
+        synchronized (recentDecisions) {
+            recent = new ArrayList<>(recentDecisions);
+        }
+        return RouterStatsDTO.builder()
+                .engines(new ArrayList<>(engines.keySet()))
+                .expectedExistingRatio(getExpectedExistingRatio())
+                .decisions(counts)
+                .medianMicrosPerEvent(costModel.snapshot())
+                .recentDecisions(recent)
+                .build();
+    }
+
+    private RoutingDecision decide(BatchShape shape) {
+        List<String> eligible = new ArrayList<>();
+        for (String name : engines.keySet()) {
+            if (name.equals(IngestEngine.V1.getBeanName()) && shape.collisionRatio() > 0) {
+                continue;
+            }
+            eligible.add(name);
+        }
+
+        Map<String, Double> estimatesMs = new LinkedHashMap<>();
+        String best = null;
+        long bestEstimate = Long.MAX_VALUE;
+        String leastSampled = null;
+        long leastSamples = Long.MAX_VALUE;
+
+        for (String name : eligible) {
+            long estimate = costModel.estimate(name, shape);
+            estimatesMs.put(name, estimate < 0 ? -1.0 : estimate / 1_000_000.0);
+            if (estimate >= 0 && estimate < bestEstimate) {
+                bestEstimate = estimate;
+                best = name;
+            }
+            long samples = costModel.samples(name, shape);
+            if (samples < leastSamples) {
+                leastSamples = samples;
+                leastSampled = name;
+            }
+        }
+
+        String chosen;
+        String reason;
+        if (eligible.size() == 1) {
+            chosen = eligible.get(0);
+            reason = "only-eligible";
+        } else if (estimatesMs.containsValue(-1.0)) {
+            chosen = leastSampled;
+            reason = "explore";
+        } else if (ThreadLocalRandom.current().nextDouble() < exploreRatio) {
+            chosen = eligible.get(ThreadLocalRandom.current().nextInt(eligible.size()));
+            reason = "explore";
+        } else {
+            chosen = best;
+            reason = "model";
+        }
+
+        return new RoutingDecision(Instant.now(), chosen, shape.bucket(), shape.size(), shape.collisionRatio(),
+                shape.existingRatio(), estimatesMs, reason, null);
+    }
+
+    private void updateExistingRatio(IngestResponseDTO response) {
+        int persisted = response.getAccepted() + response.getUpdated() + response.getDeduped();
+        if (persisted == 0) {
+            return;
+        }
+        double observed = (double) (response.getUpdated() + response.getDeduped()) / persisted;
+        expectedExistingRatio.updateAndGet(bits -> {
+            double current = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(current + EXISTING_RATIO_WEIGHT * (observed - current));
+        });
+    }
+
+    private double getExpectedExistingRatio() {
+        return Double.longBitsToDouble(expectedExistingRatio.get());
+    }
+
+    private void remember(RoutingDecision decision) {
+        decisionCounts.computeIfAbsent(decision.engine(), e -> new LongAdder()).increment();
+        synchronized (recentDecisions) {
+            recentDecisions.addFirst(decision);
+            while (recentDecisions.size() > maxRecentDecisions) {
+                recentDecisions.removeLast();
+            }
+        }
+    }
+}
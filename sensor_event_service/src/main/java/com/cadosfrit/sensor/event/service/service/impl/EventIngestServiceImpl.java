@@ -5,6 +5,7 @@ import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
 import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
 import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
 import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
 import com.cadosfrit.sensor.event.service.stratergy.EventValidationStrategy;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -24,6 +25,7 @@ public class EventIngestServiceImpl implements EventIngestService {
     private final ObjectMapper objectMapper;
     private final MachineEventRepository repository;
     private final List<EventValidationStrategy> validationStrategies;
+    private final MachineKeyDictionary machineKeys;
 
     @Override
     @Transactional
@@ -43,15 +45,17 @@ public class EventIngestServiceImpl implements EventIngestService {
                     preProcessResult.intraUpdates,
                     preProcessResult.intraDedups);
 
+            List<IngestResponseDTO.Rejection> rejections = new ArrayList<>(preProcessResult.rejections);
+            rejections.addAll(validationResult.rejections);
             log.info("Batch processed - Accepted: {}, Updated: {}, Deduped: {}, Rejected: {}",
-                dbResult.accepted, dbResult.updated, dbResult.dbDeduped, validationResult.rejections.size());
+                dbResult.accepted, dbResult.updated, dbResult.dbDeduped, rejections.size());
 
             return IngestResponseDTO.builder()
                     .accepted(dbResult.accepted)
                     .updated(dbResult.updated)
                     .deduped(dbResult.dbDeduped)
-                    .rejected(validationResult.rejections.size())
-                    .rejections(validationResult.rejections)
+                    .rejected(rejections.size())
+                    .rejections(rejections)
                     .build();
         } catch (Exception e) {
             log.error("Error processing batch", e);
@@ -59,20 +63,26 @@ public class EventIngestServiceImpl implements EventIngestService {
         }
     }
 
+    /**
+     * Repeats of an id collapse to its last version and are counted as intra-batch updates or dedupes; events
+     * without an id are rejected. Every event of the batch therefore ends up in exactly one counter.
+     */
     private BatchPreProcessResult preprocessBatch(List<EventRequestDTO> batch) {
         try {
             if (batch == null || batch.isEmpty()) {
-                return new BatchPreProcessResult(Collections.emptyList(), 0, 0);
+                return new BatchPreProcessResult(Collections.emptyList(), 0, 0, Collections.emptyList());
             }
 
             Map<String, EventRequestDTO> uniqueMap = new LinkedHashMap<>();
+            List<IngestResponseDTO.Rejection> rejections = new ArrayList<>();
             int intraUpdates = 0;
             int intraDedups = 0;
 
             for (EventRequestDTO current : batch) {
                 try {
                     if (current == null || current.getEventId() == null) {
-                        log.warn("Skipping null event or null eventId");
+                        log.warn("Rejecting null event or null eventId");
+                        rejections.add(new IngestResponseDTO.Rejection(null, Constants.MISSING_EVENT_ID.getCode()));
                         continue;
                     }
 
@@ -96,10 +106,10 @@ public class EventIngestServiceImpl implements EventIngestService {
             }
 
             log.debug("Batch preprocessed - IntraUpdates: {}, IntraDedups: {}", intraUpdates, intraDedups);
-            return new BatchPreProcessResult(new ArrayList<>(uniqueMap.values()), intraUpdates, intraDedups);
+            return new BatchPreProcessResult(new ArrayList<>(uniqueMap.values()), intraUpdates, intraDedups, rejections);
         } catch (Exception e) {
             log.error("Error in preprocessBatch", e);
-            return new BatchPreProcessResult(Collections.emptyList(), 0, 0);
+            return new BatchPreProcessResult(Collections.emptyList(), 0, 0, Collections.emptyList());
         }
     }
 
@@ -140,10 +150,12 @@ public class EventIngestServiceImpl implements EventIngestService {
 
     private DbPersistResult persistBatch(List<EventRequestDTO> validEvents, int intraUpdates, int intraDedups) {
         try {
+            // Earlier versions of ids whose last version was rejected still count, so the counters cover the batch
             if (validEvents == null || validEvents.isEmpty()) {
-                return new DbPersistResult(0, 0, 0);
+                return new DbPersistResult(0, intraUpdates, intraDedups);
             }
 
+            Map<String, Integer> keys = machineKeys.resolveBatch(validEvents);
             List<Map<String, Object>> dbRows = new ArrayList<>();
             for (EventRequestDTO event : validEvents) {
                 try {
@@ -155,6 +167,7 @@ public class EventIngestServiceImpl implements EventIngestService {
                     Map<String, Object> row = new HashMap<>();
                     row.put("event_id", event.getEventId());
                     row.put("machine_id", event.getMachineId());
+                    row.put("machine_key", keys.get(event.getMachineId()));
                     row.put("event_time", event.getEventTime());
                     row.put("received_time", Instant.now());
                     row.put("defect_count", event.getDefectCount());
@@ -242,7 +255,8 @@ public class EventIngestServiceImpl implements EventIngestService {
         }
     }
 
-    private record BatchPreProcessResult(List<EventRequestDTO> sanitizedList, int intraUpdates, int intraDedups) {}
+    private record BatchPreProcessResult(List<EventRequestDTO> sanitizedList, int intraUpdates, int intraDedups,
+                                         List<IngestResponseDTO.Rejection> rejections) {}
 
     private record ValidationResult(List<EventRequestDTO> validEvents, List<IngestResponseDTO.Rejection> rejections) {}
 
@@ -3,15 +3,12 @@ package com.cadosfrit.sensor.event.service.service.impl;
 import com.cadosfrit.sensor.event.service.constants.Constants;
 import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
 import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
-import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
 import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.store.EventStore;
 import com.cadosfrit.sensor.event.service.stratergy.EventValidationStrategy;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.*;
@@ -21,12 +18,13 @@ import java.util.*;
 @Slf4j
 public class EventIngestServiceV2Impl implements EventIngestService {
 
-    private final ObjectMapper objectMapper;
-    private final MachineEventRepository repository;
+    private final EventStore eventStore;
     private final List<EventValidationStrategy> validationStrategies;
 
+    /**
+     * Both halves of the batch are written in one store transaction.
+     */
     @Override
-    @Transactional
     public IngestResponseDTO processBatch(List<EventRequestDTO> batch) {
         try {
             if (batch == null || batch.isEmpty()) {
@@ -43,9 +41,10 @@ public class EventIngestServiceV2Impl implements EventIngestService {
             }
 
             SplitBatchResult splitResult = splitBatch(validationResult.validEvents);
-            DbPersistResult fastResult = persistFastBatch(splitResult.fastBatch);
-            DbPersistResult slowResult = persistSlowBatch(splitResult.slowBatch);
-            DbPersistResult totalResult = mergeResults(fastResult, slowResult);
+            Instant receivedTime = Instant.now();
+            DbPersistResult totalResult = eventStore.inTransaction(() -> mergeResults(
+                    persistFastBatch(splitResult.fastBatch, receivedTime),
+                    persistSlowBatch(splitResult.slowBatch, receivedTime)));
 
             log.info("Batch processed - Accepted: {}, Updated: {}, Deduped: {}, Rejected: {}",
                 totalResult.accepted, totalResult.updated, totalResult.deduped, validationResult.rejections.size());
@@ -96,128 +95,40 @@ public class EventIngestServiceV2Impl implements EventIngestService {
         }
     }
 
-    private DbPersistResult persistFastBatch(List<EventRequestDTO> events) {
+    private DbPersistResult persistFastBatch(List<EventRequestDTO> events, Instant receivedTime) {
         try {
             if (events == null || events.isEmpty()) {
                 return new DbPersistResult(0, 0, 0);
             }
 
-            String json = convertToDbJson(events);
-            List<Map<String, Object>> rows = repository.processFastBatchSP(json);
-            DbPersistResult result = parseDbStats(rows);
+            DbPersistResult result = toResult(eventStore.upsertBatch(events, receivedTime));
             log.debug("Fast batch persisted - Events: {}, Accepted: {}", events.size(), result.accepted);
             return result;
 
-        } catch (JsonProcessingException e) {
-            log.error("JSON processing error in fast batch", e);
-            return new DbPersistResult(0, 0, 0);
         } catch (Exception e) {
             log.error("Error persisting fast batch", e);
             return new DbPersistResult(0, 0, 0);
         }
     }
 
-    private DbPersistResult persistSlowBatch(List<EventRequestDTO> events) {
+    private DbPersistResult persistSlowBatch(List<EventRequestDTO> events, Instant receivedTime) {
         try {
             if (events == null || events.isEmpty()) {
                 return new DbPersistResult(0, 0, 0);
             }
 
-            String json = convertToDbJson(events);
-            List<Map<String, Object>> rows = repository.processSlowBatchSP(json);
-            DbPersistResult result = parseDbStats(rows);
+            DbPersistResult result = toResult(eventStore.upsertSequential(events, receivedTime));
             log.debug("Slow batch persisted - Events: {}, Accepted: {}", events.size(), result.accepted);
             return result;
 
-        } catch (JsonProcessingException e) {
-            log.error("JSON processing error in slow batch", e);
-            return new DbPersistResult(0, 0, 0);
         } catch (Exception e) {
             log.error("Error persisting slow batch", e);
             return new DbPersistResult(0, 0, 0);
         }
     }
 
-    private String convertToDbJson(List<EventRequestDTO> events) throws JsonProcessingException {
-        try {
-            if (events == null || events.isEmpty()) {
-                return "[]";
-            }
-
-            List<Map<String, Object>> dbRows = new ArrayList<>();
-            Instant now = Instant.now();
-
-            for (EventRequestDTO event : events) {
-                try {
-                    if (event == null) {
-                        log.warn("Skipping null event during JSON conversion");
-                        continue;
-                    }
-
-                    Map<String, Object> row = new HashMap<>();
-                    row.put("event_id", event.getEventId());
-                    row.put("machine_id", event.getMachineId());
-                    row.put("event_time", event.getEventTime());
-                    row.put("received_time", now);
-                    row.put("defect_count", event.getDefectCount());
-                    row.put("duration_ms", event.getDurationMs());
-                    dbRows.add(row);
-                } catch (Exception e) {
-                    log.warn("Error converting event to JSON: {}", event != null ? event.getEventId() : "unknown", e);
-                }
-            }
-
-            return objectMapper.writeValueAsString(dbRows);
-
-        } catch (JsonProcessingException e) {
-            log.error("JSON serialization error", e);
-            throw e;
-        } catch (Exception e) {
-            log.error("Unexpected error in convertToDbJson", e);
-            throw new RuntimeException("Error converting events to JSON", e);
-        }
-    }
-
-    private DbPersistResult parseDbStats(List<Map<String, Object>> dbRows) {
-        try {
-            if (dbRows == null || dbRows.isEmpty()) {
-                return new DbPersistResult(0, 0, 0);
-            }
-
-            int accepted = 0;
-            int updated = 0;
-            int deduped = 0;
-
-            for (Map<String, Object> row : dbRows) {
-                try {
-                    if (row == null) {
-                        log.warn("Skipping null row in DB stats");
-                        continue;
-                    }
-
-                    String status = (String) row.get("status");
-                    Number countNum = (Number) row.get("count");
-                    int count = (countNum != null) ? countNum.intValue() : 0;
-
-                    if (status == null) {
-                        log.warn("Null status in DB stats row");
-                        continue;
-                    }
-
-                    if (Constants.ACCEPTED.getCode().equals(status)) accepted += count;
-                    else if (Constants.UPDATED.getCode().equals(status)) updated += count;
-                    else if (Constants.DEDUPED.getCode().equals(status)) deduped += count;
-                } catch (ClassCastException e) {
-                    log.warn("Error parsing DB stats row", e);
-                }
-            }
-
-            return new DbPersistResult(accepted, updated, deduped);
-
-        } catch (Exception e) {
-            log.error("Error parsing DB stats", e);
-            return new DbPersistResult(0, 0, 0);
-        }
+    private static DbPersistResult toResult(EventStore.Counts counts) {
+        return new DbPersistResult(counts.accepted(), counts.updated(), counts.deduped());
     }
 
     private DbPersistResult mergeResults(DbPersistResult r1, DbPersistResult r2) {
@@ -239,8 +150,9 @@ public class EventIngestServiceV2Impl implements EventIngestService {
 
             for (EventRequestDTO event : batch) {
                 try {
-                    if (event == null) {
-                        log.warn("Skipping null event during validation");
+                    if (event == null || event.getEventId() == null) {
+                        log.warn("Rejecting null event or null eventId");
+                        rejections.add(new IngestResponseDTO.Rejection(null, Constants.MISSING_EVENT_ID.getCode()));
                         continue;
                     }
 
@@ -0,0 +1,254 @@
+package com.cadosfrit.sensor.event.service.service.impl;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.WalAckDTO;
+import com.cadosfrit.sensor.event.service.exception.IdempotencyKeyConflictException;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.cadosfrit.sensor.event.service.model.IdempotencyRecord;
+import com.cadosfrit.sensor.event.service.repository.IdempotencyRecordRepository;
+import com.cadosfrit.sensor.event.service.service.IdempotencyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL-evicting replay cache for ingest responses and WAL acknowledgements, optionally backed by the
+ * {@code ingest_idempotency_keys} table so retries survive a restart.
+ * A request first takes the key's in-flight gate and only then looks for a stored response, so concurrent requests
+ * with the same key wait for the first one instead of running the procedures twice.
+ * Batches are compared by the SHA-256 of their JSON form.
+ */
+@Slf4j
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private final IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final boolean persistEnabled;
+    private final long inFlightWaitMs;
+
+    private final LinkedHashMap<String, CachedResponse> cache = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyServiceImpl(IdempotencyRecordRepository repository,
+                                  ObjectMapper objectMapper,
+                                  @Value("${ingest.idempotency.max-entries:50000}") int maxEntries,
+                                  @Value("${ingest.idempotency.ttl-seconds:3600}") long ttlSeconds,
+                                  @Value("${ingest.idempotency.persist-enabled:false}") boolean persistEnabled,
+                                  @Value("${ingest.idempotency.in-flight-wait-ms:30000}") long inFlightWaitMs) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.persistEnabled = persistEnabled;
+        this.inFlightWaitMs = inFlightWaitMs;
+    }
+
+    @Override
+    public IdempotentResult execute(String scope, String idempotencyKey, List<?> batch,
+                                    Supplier<IngestResponseDTO> action) {
+        Replay<IngestResponseDTO> replay = run(scope + ":" + idempotencyKey, fingerprint(batch),
+                IngestResponseDTO.class, action, response -> response.isComplete(batch.size()));
+        return new IdempotentResult(replay.response(), replay.replayed());
+    }
+
+    @Override
+    public AcknowledgedResult acknowledge(String scope, String idempotencyKey, List<?> batch,
+                                          Supplier<WalAckDTO> append) {
+        Replay<WalAckDTO> replay = run(scope + ":WAL:" + idempotencyKey, fingerprint(batch),
+                WalAckDTO.class, append, ack -> true);
+        return new AcknowledgedResult(replay.response(), replay.replayed());
+    }
+
+    private <T> Replay<T> run(String cacheKey, String fingerprint, Class<T> type, Supplier<T> action,
+                              Predicate<T> cacheable) {
+        while (true) {
+            CompletableFuture<CachedResponse> ownFuture = new CompletableFuture<>();
+            CompletableFuture<CachedResponse> running = inFlight.putIfAbsent(cacheKey, ownFuture);
+            if (running != null) {
+                CachedResponse concurrent = awaitConcurrent(cacheKey, running);
+                if (concurrent != null) {
+                    return replay(cacheKey, concurrent, fingerprint, type);
+                }
+                // The first request stored nothing; take the gate and run the action here
+                continue;
+            }
+
+            CachedResponse stored = null;
+            try {
+                Optional<CachedResponse> existing = lookup(cacheKey, type);
+                if (existing.isPresent()) {
+                    stored = existing.get();
+                    return replay(cacheKey, stored, fingerprint, type);
+                }
+
+                T response = action.get();
+                if (response != null && cacheable.test(response)) {
+                    stored = new CachedResponse(response, fingerprint, Instant.now().plus(ttl));
+                    store(cacheKey, stored);
+                } else {
+                    log.warn("Not caching incomplete response for idempotency key {}", cacheKey);
+                }
+                return new Replay<>(response, false);
+            } finally {
+                inFlight.remove(cacheKey, ownFuture);
+                ownFuture.complete(stored);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.idempotency.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        int evicted = 0;
+        synchronized (cache) {
+            Iterator<CachedResponse> it = cache.values().iterator();
+            while (it.hasNext()) {
+                if (!it.next().isExpired(now)) {
+                    break;
+                }
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} expired idempotency entries", evicted);
+        }
+
+        if (persistEnabled) {
+            try {
+                int deleted;
+                do {
+                    deleted = repository.deleteExpired(now, 1000);
+                } while (deleted == 1000);
+            } catch (Exception e) {
+                log.warn("Error purging expired idempotency records", e);
+            }
+        }
+    }
+
+    private Optional<CachedResponse> lookup(String cacheKey, Class<?> type) {
+        Instant now = Instant.now();
+        synchronized (cache) {
+            CachedResponse cached = cache.get(cacheKey);
+            if (cached != null && !cached.isExpired(now)) {
+                return Optional.of(cached);
+            }
+        }
+
+        if (!persistEnabled) {
+            return Optional.empty();
+        }
+
+        try {
+            Optional<IdempotencyRecord> record = repository.findById(cacheKey);
+            if (record.isEmpty() || record.get().getExpiresAt().isBefore(now)) {
+                return Optional.empty();
+            }
+            Object response = objectMapper.readValue(record.get().getResponseJson(), type);
+            CachedResponse cached = new CachedResponse(response, record.get().getRequestFingerprint(),
+                    record.get().getExpiresAt());
+            putInMemory(cacheKey, cached);
+            return Optional.of(cached);
+        } catch (Exception e) {
+            log.warn("Error reading persisted idempotency record {}", cacheKey, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Null when the first request finished without a storable response. Running the action while the first
+     * request is still in flight could apply the batch twice, so a timeout answers 429 instead.
+     */
+    private CachedResponse awaitConcurrent(String cacheKey, CompletableFuture<CachedResponse> running) {
+        try {
+            return running.get(inFlightWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceOverloadedException("Interrupted waiting for idempotency key " + cacheKey, 1);
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("Timed out waiting for in-flight request with idempotency key {}", cacheKey);
+            throw new ServiceOverloadedException("Request with this Idempotency-Key is still in flight", 1);
+        }
+    }
+
+    private <T> Replay<T> replay(String cacheKey, CachedResponse cached, String fingerprint, Class<T> type) {
+        if (!cached.fingerprint().equals(fingerprint) || !type.isInstance(cached.response())) {
+            throw new IdempotencyKeyConflictException(
+                    "Idempotency-Key was already used for a different batch: " + cacheKey);
+        }
+        log.debug("Replaying stored response for idempotency key {}", cacheKey);
+        return new Replay<>(type.cast(cached.response()), true);
+    }
+
+    private String fingerprint(List<?> batch) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(batch)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to fingerprint batch", e);
+        }
+    }
+
+    private void store(String cacheKey, CachedResponse cached) {
+        putInMemory(cacheKey, cached);
+
+        if (!persistEnabled) {
+            return;
+        }
+        try {
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setIdempotencyKey(cacheKey);
+            record.setRequestFingerprint(cached.fingerprint());
+            record.setResponseJson(objectMapper.writeValueAsString(cached.response()));
+            record.setCreatedAt(Instant.now());
+            record.setExpiresAt(cached.expiresAt());
+            repository.save(record);
+        } catch (Exception e) {
+            log.warn("Error persisting idempotency record {}", cacheKey, e);
+        }
+    }
+
+    private void putInMemory(String cacheKey, CachedResponse cached) {
+        synchronized (cache) {
+            cache.remove(cacheKey);
+            cache.put(cacheKey, cached);
+            Iterator<String> it = cache.keySet().iterator();
+            while (cache.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private record Replay<T>(T response, boolean replayed) {}
+
+    private record CachedResponse(Object response, String fingerprint, Instant expiresAt) {
+        boolean isExpired(Instant now) {
+            return expiresAt.isBefore(now);
+        }
+    }
+}
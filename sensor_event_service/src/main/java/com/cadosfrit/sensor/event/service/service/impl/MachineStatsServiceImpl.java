@@ -1,9 +1,16 @@
 package com.cadosfrit.sensor.event.service.service.impl;
 
+import com.cadosfrit.sensor.event.service.aggregate.MinuteAggregateStore;
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
 import com.cadosfrit.sensor.event.service.constants.Constants;
 import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
-import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.exception.ShardUnavailableException;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRouter;
 import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import com.cadosfrit.sensor.event.service.tiering.ColdSegment;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +25,12 @@ import java.util.*;
 public class MachineStatsServiceImpl implements MachineStatsService {
 
     private static final Logger logger = LoggerFactory.getLogger(MachineStatsServiceImpl.class);
-    private final MachineEventRepository eventRepository;
+    private final EventStore eventStore;
+    private final ColdTierStore coldTier;
+    private final ShardRouter shardRouter;
+    private final ReplicaRouter replicaRouter;
+    private final MinuteAggregateStore minuteAggregates;
+    private final StatsResultCache statsCache;
 
     @Override
     public MachineStatsDTO getMachineStats(String machineId, Instant start, Instant end) {
@@ -31,63 +43,180 @@ public class MachineStatsServiceImpl implements MachineStatsService {
                 return buildDefaultStats(machineId, start, end);
             }
 
-            Object result = eventRepository.getMachineStatsRaw(machineId, start, end);
-            StatsRawData rawData = parseRawStats(result);
-            double windowHours = calculateWindowHours(start, end);
-            double avgDefectRate = calculateDefectRate(rawData.defects, windowHours);
-            String status = (avgDefectRate < 2.0) ? Constants.HEALTHY.getCode() : Constants.WARNING.getCode();
-
-            return MachineStatsDTO.builder()
-                    .machineId(machineId)
-                    .start(start)
-                    .end(end)
-                    .eventsCount(rawData.events)
-                    .defectsCount(rawData.defects)
-                    .avgDefectRate(roundToTwoDecimals(avgDefectRate))
-                    .status(status)
-                    .build();
+            return statsCache.getMachineStats(machineId, start, end, () -> computeMachineStats(machineId, start, end));
 
+        } catch (ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error in getMachineStats for machineId: {}", machineId, e);
             return buildDefaultStats(machineId, start, end);
         }
     }
 
+    /**
+     * One grouped query per shard for all machines; the cold tier is read once for the window.
+     * Rates and statuses are then worked out over plain arrays in a single pass.
+     */
     @Override
-    public List<Map<String, Object>> getTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+    public List<MachineStatsDTO> getMachineStats(List<String> machineIds, Instant start, Instant end) {
         try {
-            if (factoryId == null || factoryId.isEmpty() || from == null || to == null || limit <= 0) {
+            if (machineIds == null || machineIds.isEmpty() || start == null || end == null || !start.isBefore(end)) {
                 return Collections.emptyList();
             }
 
-            if (!from.isBefore(to)) {
-                return Collections.emptyList();
+            List<String> machines = new ArrayList<>(new LinkedHashSet<>(machineIds));
+            long[] defects = new long[machines.size()];
+            long[] events = new long[machines.size()];
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < machines.size(); i++) {
+                positions.put(machines.get(i), i);
             }
 
-            List<Object[]> results = eventRepository.findTopDefectLinesRaw(factoryId, from, to, limit);
+            List<Map<String, Object[]>> shardTotals = shardRouter.onAllShards(
+                    () -> replicaRouter.read(end, () -> eventStore.getMachineStatsRaw(machines, start, end)));
+            for (Map<String, Object[]> totals : shardTotals) {
+                totals.forEach((machineId, result) -> {
+                    Integer i = positions.get(machineId);
+                    if (i != null) {
+                        StatsRawData machineStats = parseRawStats(result);
+                        defects[i] += machineStats.defects;
+                        events[i] += machineStats.events;
+                    }
+                });
+            }
+            if (coldTier.overlaps(start)) {
+                try {
+                    coldTier.aggregateAll(start, end).forEach((machineId, totals) -> {
+                        Integer i = positions.get(machineId);
+                        if (i != null) {
+                            defects[i] += totals.defects();
+                            events[i] += totals.events();
+                        }
+                    });
+                } catch (Exception e) {
+                    logger.error("Error reading cold tier stats for {} machines", machines.size(), e);
+                }
+            }
 
-            if (results == null || results.isEmpty()) {
+            double windowHours = calculateWindowHours(start, end);
+            List<MachineStatsDTO> stats = new ArrayList<>(machines.size());
+            for (int i = 0; i < machines.size(); i++) {
+                double avgDefectRate = calculateDefectRate(defects[i], windowHours);
+                stats.add(MachineStatsDTO.builder()
+                        .machineId(machines.get(i))
+                        .start(start)
+                        .end(end)
+                        .eventsCount(events[i])
+                        .defectsCount(defects[i])
+                        .avgDefectRate(roundToTwoDecimals(avgDefectRate))
+                        .status((avgDefectRate < 2.0) ? Constants.HEALTHY.getCode() : Constants.WARNING.getCode())
+                        .build());
+            }
+            return stats;
+
+        } catch (ShardUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error in getMachineStats for {} machines", machineIds.size(), e);
+            List<MachineStatsDTO> defaults = new ArrayList<>();
+            for (String machineId : new LinkedHashSet<>(machineIds)) {
+                defaults.add(buildDefaultStats(machineId, start, end));
+            }
+            return defaults;
+        }
+    }
+
+    @Override
+    public List<String> findMachineIds(String factoryId, String lineId) {
+        try {
+            if (factoryId == null || factoryId.isEmpty()) {
                 return Collections.emptyList();
             }
+            return eventStore.findMachineLines(factoryId).entrySet().stream()
+                    .filter(machine -> lineId == null || lineId.equals(machine.getValue()))
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .toList();
+        } catch (Exception e) {
+            logger.error("Error finding machines for factoryId: {}", factoryId, e);
+            return Collections.emptyList();
+        }
+    }
 
-            List<Map<String, Object>> responseList = new ArrayList<>();
-            for (Object[] row : results) {
-                if (row != null && row.length > 0) {
-                    try {
-                        responseList.add(mapLineStatsRow(row));
-                    } catch (Exception e) {
-                        logger.warn("Error mapping row for factoryId: {}", factoryId, e);
-                    }
-                }
+    @Override
+    public List<Map<String, Object>> getTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        try {
+            if (factoryId == null || factoryId.isEmpty() || from == null || to == null || limit <= 0) {
+                return Collections.emptyList();
             }
-            return responseList;
 
+            if (!from.isBefore(to)) {
+                return Collections.emptyList();
+            }
+
+            return statsCache.getTopDefectLines(factoryId, from, to, limit,
+                    () -> computeTopDefectLines(factoryId, from, to, limit));
+
+        } catch (ShardUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error in getTopDefectLines for factoryId: {}", factoryId, e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Failures propagate to the caller, so the stats cache never keeps the default result of a failed read.
+     */
+    private MachineStatsDTO computeMachineStats(String machineId, Instant start, Instant end) {
+        StatsRawData rawData = addColdStats(hotStats(machineId, start, end), machineId, start, end);
+        double windowHours = calculateWindowHours(start, end);
+        double avgDefectRate = calculateDefectRate(rawData.defects, windowHours);
+        String status = (avgDefectRate < 2.0) ? Constants.HEALTHY.getCode() : Constants.WARNING.getCode();
+
+        return MachineStatsDTO.builder()
+                .machineId(machineId)
+                .start(start)
+                .end(end)
+                .eventsCount(rawData.events)
+                .defectsCount(rawData.defects)
+                .avgDefectRate(roundToTwoDecimals(avgDefectRate))
+                .status(status)
+                .build();
+    }
+
+    /**
+     * A factory's rows normally sit on its shard, but stay on the former shard after a reassignment,
+     * so with shards every shard is asked. Rankings of several shards or including cold lines are
+     * incomplete on their own, so they are only limited after the merge.
+     */
+    private List<Map<String, Object>> computeTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        boolean spansColdTier = coldTier.overlaps(from);
+        boolean merged = spansColdTier || shardRouter.isEnabled();
+        List<List<Object[]>> shardResults = shardRouter.onAllShards(
+                () -> replicaRouter.read(to, () -> eventStore.findTopDefectLinesRaw(factoryId, from, to,
+                        merged ? Integer.MAX_VALUE : limit)));
+        List<Object[]> results = merged
+                ? mergeLines(factoryId, shardResults, spansColdTier, from, to, limit)
+                : shardResults.get(0);
+
+        if (results == null || results.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Object>> responseList = new ArrayList<>();
+        for (Object[] row : results) {
+            if (row != null && row.length > 0) {
+                try {
+                    responseList.add(mapLineStatsRow(row));
+                } catch (Exception e) {
+                    logger.warn("Error mapping row for factoryId: {}", factoryId, e);
+                }
+            }
+        }
+        return responseList;
+    }
+
     /**
      * Safe parsing of DB result which might be null if no data exists.
      */
@@ -135,6 +264,101 @@ public class MachineStatsServiceImpl implements MachineStatsService {
         }
     }
 
+    /**
+     * A machine's rows live on its factory's shard, but stay on the former shard if the factory is reassigned,
+     * so every shard is asked and the totals added up.
+     * Whole minutes the in-memory aggregates hold are taken from there, and one query reads the edges
+     * (minute aggregates never run with sharding). They are skipped for windows reaching into the cold tier,
+     * whose events they may still count.
+     */
+    private StatsRawData hotStats(String machineId, Instant start, Instant end) {
+        Optional<MinuteAggregateStore.Covered> covered = minuteAggregates.aggregate(machineId, start, end)
+                .filter(minutes -> !coldTier.overlaps(minutes.from()));
+        if (covered.isPresent()) {
+            MinuteAggregateStore.Covered minutes = covered.get();
+            StatsRawData edges = parseRawStats(replicaRouter.read(end,
+                    () -> eventStore.getMachineStatsRaw(machineId, start, end, minutes.from(), minutes.to())));
+            return new StatsRawData(edges.defects + minutes.defects(), edges.events + minutes.events());
+        }
+
+        long defects = 0;
+        long events = 0;
+        List<Object[]> results = shardRouter.onAllShards(
+                () -> replicaRouter.read(end, () -> eventStore.getMachineStatsRaw(machineId, start, end)));
+        for (Object result : results) {
+            StatsRawData shardStats = parseRawStats(result);
+            defects += shardStats.defects;
+            events += shardStats.events;
+        }
+        return new StatsRawData(defects, events);
+    }
+
+    /**
+     * Adds events already moved to the cold tier; cold and hot tiers never hold the same event.
+     */
+    private StatsRawData addColdStats(StatsRawData hot, String machineId, Instant start, Instant end) {
+        try {
+            ColdSegment.Totals cold = coldTier.aggregate(machineId, start, end);
+            return new StatsRawData(hot.defects + cold.defects(), hot.events + cold.events());
+        } catch (Exception e) {
+            logger.error("Error reading cold tier stats for machineId: {}", machineId, e);
+            return hot;
+        }
+    }
+
+    /**
+     * Adds up the per-line rows of every shard and, when the window reaches the cold tier, the per-machine
+     * cold totals, then re-ranks and applies the limit.
+     */
+    private List<Object[]> mergeLines(String factoryId, List<List<Object[]>> shardRows, boolean spansColdTier,
+                                      Instant from, Instant to, int limit) {
+        Map<String, long[]> lines = new LinkedHashMap<>();
+        for (List<Object[]> rows : shardRows) {
+            if (rows == null) {
+                continue;
+            }
+            for (Object[] row : rows) {
+                if (row == null || row.length < 3 || row[0] == null) {
+                    continue;
+                }
+                long[] line = lines.computeIfAbsent((String) row[0], id -> new long[2]);
+                line[0] += row[1] != null ? ((Number) row[1]).longValue() : 0;
+                line[1] += row[2] != null ? ((Number) row[2]).longValue() : 0;
+            }
+        }
+
+        if (spansColdTier) {
+            try {
+                Map<String, ColdSegment.Totals> cold = coldTier.aggregateAll(from, to);
+                if (!cold.isEmpty()) {
+                    Map<String, String> machineLines = eventStore.findMachineLines(factoryId);
+                    cold.forEach((machineId, totals) -> {
+                        String lineId = machineLines.get(machineId);
+                        if (lineId != null) {
+                            long[] line = lines.computeIfAbsent(lineId, id -> new long[2]);
+                            line[0] += totals.defects();
+                            line[1] += totals.events();
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                logger.error("Error reading cold tier stats for factoryId: {}", factoryId, e);
+            }
+        }
+
+        return lines.entrySet().stream()
+                .filter(line -> line.getValue()[1] > 0)
+                .map(line -> new Object[]{
+                        line.getKey(),
+                        line.getValue()[0],
+                        line.getValue()[1],
+                        line.getValue()[0] * 100.0 / line.getValue()[1]
+                })
+                .sorted(Comparator.comparingDouble((Object[] row) -> (double) row[3]).reversed())
+                .limit(limit)
+                .toList();
+    }
+
     private double calculateWindowHours(Instant start, Instant end) {
         try {
             if (start == null || end == null) {
@@ -0,0 +1,192 @@
+package com.cadosfrit.sensor.event.service.service.impl;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.cadosfrit.sensor.event.service.constants.Constants;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventSummaryRepository;
+import com.cadosfrit.sensor.event.service.service.SummaryIngestService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Same split as the V2 event path: ids that occur once go through one set-based call,
+ * ids repeated within the batch are applied one call at a time in arrival order so the last version wins.
+ */
+@Service("SummaryIngestService")
+@RequiredArgsConstructor
+@Slf4j
+public class SummaryIngestServiceImpl implements SummaryIngestService {
+
+    private final ObjectMapper objectMapper;
+    private final MachineEventSummaryRepository repository;
+
+    @Override
+    @Transactional
+    public IngestResponseDTO processBatch(List<SummaryRequestDTO> batch) {
+        try {
+            if (batch == null || batch.isEmpty()) {
+                log.warn("Received empty summary batch");
+                return buildResponse(new DbPersistResult(0, 0, 0), Collections.emptyList());
+            }
+
+            List<SummaryRequestDTO> validSummaries = new ArrayList<>();
+            List<IngestResponseDTO.Rejection> rejections = new ArrayList<>();
+            for (SummaryRequestDTO summary : batch) {
+                if (summary == null) {
+                    log.warn("Skipping null summary during validation");
+                    continue;
+                }
+                Optional<String> error = validate(summary);
+                if (error.isPresent()) {
+                    rejections.add(new IngestResponseDTO.Rejection(summary.getSummaryId(), error.get()));
+                } else {
+                    validSummaries.add(summary);
+                }
+            }
+
+            if (validSummaries.isEmpty()) {
+                log.warn("All {} summaries rejected during validation", batch.size());
+                return buildResponse(new DbPersistResult(0, 0, 0), rejections);
+            }
+
+            Map<String, Integer> frequencyMap = new HashMap<>();
+            for (SummaryRequestDTO summary : validSummaries) {
+                frequencyMap.merge(summary.getSummaryId(), 1, Integer::sum);
+            }
+
+            List<SummaryRequestDTO> uniqueSummaries = new ArrayList<>();
+            List<SummaryRequestDTO> repeatedSummaries = new ArrayList<>();
+            for (SummaryRequestDTO summary : validSummaries) {
+                if (frequencyMap.get(summary.getSummaryId()) > 1) {
+                    repeatedSummaries.add(summary);
+                } else {
+                    uniqueSummaries.add(summary);
+                }
+            }
+
+            DbPersistResult total = persist(uniqueSummaries);
+            for (SummaryRequestDTO summary : repeatedSummaries) {
+                total = total.plus(persist(List.of(summary)));
+            }
+
+            log.info("Summary batch processed - Accepted: {}, Updated: {}, Deduped: {}, Rejected: {}",
+                    total.accepted, total.updated, total.deduped, rejections.size());
+            return buildResponse(total, rejections);
+
+        } catch (Exception e) {
+            log.error("Error processing summary batch", e);
+            return buildResponse(new DbPersistResult(0, 0, 0), Collections.emptyList());
+        }
+    }
+
+    private Optional<String> validate(SummaryRequestDTO summary) {
+        Instant start = summary.getIntervalStart();
+        Instant end = summary.getIntervalEnd();
+        if (start == null || end == null || !end.isAfter(start)
+                || end.toEpochMilli() - start.toEpochMilli() > AppConstants.MAX_SUMMARY_INTERVAL_MS) {
+            return Optional.of(Constants.INVALID_SUMMARY_INTERVAL.getCode());
+        }
+
+        if (start.isAfter(Instant.now().plus(AppConstants.FUTURE_TIME_ALLOWANCE_MINS, ChronoUnit.MINUTES))) {
+            return Optional.of(Constants.FUTURE_EVENT_TIME.getCode());
+        }
+
+        if (summary.getEventCount() <= 0 || summary.getDefectSum() < 0) {
+            return Optional.of(Constants.INVALID_SUMMARY_COUNTS.getCode());
+        }
+
+        if (summary.getDurationMinMs() < 0
+                || summary.getDurationMinMs() > summary.getDurationMaxMs()
+                || summary.getDurationMaxMs() > AppConstants.MAX_DURATION_MS
+                || summary.getDurationSumMs() < summary.getDurationMinMs()) {
+            return Optional.of(Constants.INVALID_DURATION.getCode());
+        }
+        return Optional.empty();
+    }
+
+    private DbPersistResult persist(List<SummaryRequestDTO> summaries) {
+        try {
+            if (summaries.isEmpty()) {
+                return new DbPersistResult(0, 0, 0);
+            }
+            List<Map<String, Object>> rows = repository.processSummaryBatchSP(convertToDbJson(summaries));
+            return parseDbStats(rows);
+
+        } catch (JsonProcessingException e) {
+            log.error("JSON processing error in summary batch", e);
+            return new DbPersistResult(0, 0, 0);
+        } catch (Exception e) {
+            log.error("Error persisting summary batch", e);
+            return new DbPersistResult(0, 0, 0);
+        }
+    }
+
+    private String convertToDbJson(List<SummaryRequestDTO> summaries) throws JsonProcessingException {
+        List<Map<String, Object>> dbRows = new ArrayList<>();
+        Instant now = Instant.now();
+
+        for (SummaryRequestDTO summary : summaries) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("summary_id", summary.getSummaryId());
+            row.put("machine_id", summary.getMachineId());
+            row.put("interval_start", summary.getIntervalStart());
+            row.put("interval_end", summary.getIntervalEnd());
+            row.put("received_time", now);
+            row.put("event_count", summary.getEventCount());
+            row.put("defect_sum", summary.getDefectSum());
+            row.put("duration_sum_ms", summary.getDurationSumMs());
+            row.put("duration_min_ms", summary.getDurationMinMs());
+            row.put("duration_max_ms", summary.getDurationMaxMs());
+            dbRows.add(row);
+        }
+        return objectMapper.writeValueAsString(dbRows);
+    }
+
+    private DbPersistResult parseDbStats(List<Map<String, Object>> dbRows) {
+        if (dbRows == null || dbRows.isEmpty()) {
+            return new DbPersistResult(0, 0, 0);
+        }
+
+        int accepted = 0;
+        int updated = 0;
+        int deduped = 0;
+        for (Map<String, Object> row : dbRows) {
+            if (row == null) {
+                continue;
+            }
+            String status = (String) row.get(Constants.STATUS.getCode());
+            Number countNum = (Number) row.get(Constants.COUNT.getCode());
+            int count = (countNum != null) ? countNum.intValue() : 0;
+
+            if (Constants.ACCEPTED.getCode().equals(status)) accepted += count;
+            else if (Constants.UPDATED.getCode().equals(status)) updated += count;
+            else if (Constants.DEDUPED.getCode().equals(status)) deduped += count;
+        }
+        return new DbPersistResult(accepted, updated, deduped);
+    }
+
+    private IngestResponseDTO buildResponse(DbPersistResult dbResult, List<IngestResponseDTO.Rejection> rejections) {
+        return IngestResponseDTO.builder()
+                .accepted(dbResult.accepted)
+                .updated(dbResult.updated)
+                .deduped(dbResult.deduped)
+                .rejected(rejections.size())
+                .rejections(rejections)
+                .build();
+    }
+
+    private record DbPersistResult(int accepted, int updated, int deduped) {
+        DbPersistResult plus(DbPersistResult other) {
+            return new DbPersistResult(accepted + other.accepted, updated + other.updated, deduped + other.deduped);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cadosfrit.sensor.event.service.shadow;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks the current thread as replaying shadow traffic, which routes its connections to the shadow schema.
+ */
+public final class ShadowContext {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private ShadowContext() {}
+
+    public static boolean isActive() {
+        return Boolean.TRUE.equals(ACTIVE.get());
+    }
+
+    public static <T> T run(Supplier<T> work) {
+        Boolean previous = ACTIVE.get();
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            // A nested run must leave the outer one active
+            if (previous == null) {
+                ACTIVE.remove();
+            } else {
+                ACTIVE.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.cadosfrit.sensor.event.service.shadow;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Routes to the shadow pool while {@link ShadowContext} is active, otherwise to the ingest pool.
+ * There is no lenient fallback: a shadow thread without a shadow pool fails rather than writing to production.
+ */
+public class ShadowRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String SHADOW = "shadow";
+
+    public ShadowRoutingDataSource(DataSource primary, DataSource shadow) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        if (shadow != null) {
+            targets.put(SHADOW, shadow);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShadowContext.isActive() ? SHADOW : PRIMARY;
+    }
+}
@@ -0,0 +1,367 @@
+package com.cadosfrit.sensor.event.service.shadow;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.ShadowReportDTO;
+import com.cadosfrit.sensor.event.service.routing.LatencyHistogram;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.sharding.ShardPlacements;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.ScratchSchema;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a sample of production batches through a candidate engine against a shadow copy of the tables.
+ * The sampled ids' current rows (the before-image) are read just before the primary write, without locks and
+ * with a short query timeout, and the primary write itself runs exactly as for any other batch. The replay thread
+ * then copies the before-image into the shadow schema and runs the candidate there, so its counters are directly
+ * comparable. A write to the same ids landing between the read and the primary write shows up as a divergence.
+ * Replays run on a small bounded executor; when it is busy the sample is dropped, never the production batch.
+ */
+@Slf4j
+@Component
+public class ShadowTrafficMirror {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final int MAX_RECENT_DIVERGENCES = 50;
+    private static final int HISTOGRAM_WINDOW = 1024;
+    // Tables whose rows belong to one event id and therefore get a before-image copy
+    private static final Set<String> EVENT_KEYED_TABLES = Set.of("machine_events", "heartbeat_ledger", "machine_event_versions");
+    // Batches carry production dictionary keys, so the shadow dictionary must agree on them
+    private static final String MACHINE_KEYS_TABLE = "machine_keys";
+
+    private final boolean enabled;
+    private final String schema;
+    private final List<String> tables;
+    private final String candidateName;
+    private final double sampleRate;
+    private final Map<String, EventIngestService> ingestServices;
+    private final HikariDataSource shadowDataSource;
+    private final NamedParameterJdbcTemplate ingestJdbc;
+    private final NamedParameterJdbcTemplate captureKeysJdbc;
+    private final NamedParameterJdbcTemplate captureRowsJdbc;
+    private final NamedParameterJdbcTemplate shadowJdbc;
+    private final ShardRouter shardRouter;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Comparison> comparisons = new ConcurrentHashMap<>();
+    private final Deque<ShadowReportDTO.Divergence> recentDivergences = new ArrayDeque<>();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean ready;
+
+    public ShadowTrafficMirror(@Value("${ingest.shadow.enabled:false}") boolean enabled,
+                               @Value("${ingest.shadow.schema:factory_db_shadow}") String schema,
+                               @Value("${ingest.shadow.tables:machine_events,heartbeat_ledger,machine_heartbeat_minutes,machine_event_versions,machine_keys}") List<String> tables,
+                               @Value("${ingest.shadow.candidate:EventIngestServiceV2}") String candidateName,
+                               @Value("${ingest.shadow.sample-rate:0.01}") double sampleRate,
+                               @Value("${ingest.shadow.threads:2}") int threads,
+                               @Value("${ingest.shadow.queue-capacity:100}") int queueCapacity,
+                               @Value("${ingest.shadow.capture-timeout-seconds:1}") int captureTimeoutSeconds,
+                               Map<String, EventIngestService> ingestServices,
+                               @Qualifier("ingestDataSource") HikariDataSource ingestDataSource,
+                               @Qualifier("shadowDataSource") ObjectProvider<HikariDataSource> shadowDataSource,
+                               DataSource dataSource,
+                               ShardRouter shardRouter) {
+        this.enabled = enabled;
+        this.schema = schema;
+        this.tables = tables;
+        this.candidateName = candidateName;
+        this.sampleRate = sampleRate;
+        this.ingestServices = ingestServices;
+        this.shadowDataSource = shadowDataSource.getIfAvailable();
+        this.ingestJdbc = new NamedParameterJdbcTemplate(ingestDataSource);
+        this.captureKeysJdbc = timed(ingestDataSource, captureTimeoutSeconds);
+        this.captureRowsJdbc = timed(dataSource, captureTimeoutSeconds);
+        this.shadowJdbc = this.shadowDataSource != null ? new NamedParameterJdbcTemplate(this.shadowDataSource) : null;
+        this.shardRouter = shardRouter;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        if (enabled) {
+            if (!IDENTIFIER.matcher(schema).matches() || !tables.stream().allMatch(t -> IDENTIFIER.matcher(t).matches())) {
+                throw new IllegalStateException("Invalid shadow schema or table name");
+            }
+            if (!ingestServices.containsKey(candidateName)) {
+                throw new IllegalStateException("Unknown shadow candidate engine: " + candidateName);
+            }
+        }
+    }
+
+    /**
+     * Creates the shadow schema with the configured tables and the event ingest procedures, nothing else.
+     * Runs after startup so Hibernate has already created the production tables.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeShadowSchema() {
+        if (!enabled || shadowDataSource == null) {
+            return;
+        }
+        try {
+            ScratchSchema.createTables(ingestJdbc.getJdbcTemplate(), schema, tables);
+            ScratchSchema.installProcedures(ingestJdbc.getJdbcTemplate(), schema, ScratchSchema.EVENT_INGEST_PROCEDURES);
+            ready = true;
+            log.info("Shadow mode ready - Schema: {}, Candidate: {}, Sample rate: {}", schema, candidateName, sampleRate);
+        } catch (Exception e) {
+            log.error("Error initializing shadow schema {}, shadow mode stays off", schema, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the primary write and, for sampled batches, queues the candidate replay. The primary write is the same
+     * call as for an unsampled batch, so its result or failure reaches the caller unchanged.
+     */
+    public IngestResponseDTO mirror(String primaryName, List<EventRequestDTO> batch, Supplier<IngestResponseDTO> primary) {
+        if (!ready || primaryName.equals(candidateName) || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return primary.get();
+        }
+        if (executor.getQueue().remainingCapacity() == 0) {
+            dropped.increment();
+            return primary.get();
+        }
+
+        Optional<BeforeImage> beforeImage = readBeforeImage(batch);
+        long start = System.nanoTime();
+        IngestResponseDTO response = primary.get();
+        long primaryNanos = System.nanoTime() - start;
+
+        if (beforeImage.isEmpty() || response == null || !response.isComplete(batch.size())) {
+            return response;
+        }
+        try {
+            executor.execute(() -> replay(primaryName, batch, beforeImage.get(), response, primaryNanos));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+        }
+        return response;
+    }
+
+    public ShadowReportDTO getReport() {
+        Map<String, ShadowReportDTO.EngineComparison> report = new LinkedHashMap<>();
+        comparisons.forEach((primary, comparison) -> report.put(primary, comparison.toDto(primary)));
+        List<ShadowReportDTO.Divergence> divergences;
+        synchronized (recentDivergences) {
+            divergences = new ArrayList<>(recentDivergences);
+        }
+        return ShadowReportDTO.builder()
+                .enabled(ready)
+                .schema(schema)
+                .candidate(candidateName)
+                .sampleRate(sampleRate)
+                .dropped(dropped.sum())
+                .comparisons(report)
+                .recentDivergences(divergences)
+                .build();
+    }
+
+    /**
+     * Reads the current rows of the batch's ids from the shards holding them, plus their dictionary entries.
+     * Plain reads on the request thread: nothing is locked and the shadow pool is not involved.
+     *
+     * @return empty if the read failed or timed out, and the batch must not be replayed
+     */
+    private Optional<BeforeImage> readBeforeImage(List<EventRequestDTO> batch) {
+        Set<String> ids = idsOf(batch);
+        if (ids.isEmpty()) {
+            return Optional.empty();
+        }
+        Set<String> machineIds = new HashSet<>();
+        for (EventRequestDTO event : batch) {
+            if (event != null && event.getEventId() != null && event.getMachineId() != null) {
+                machineIds.add(event.getMachineId());
+            }
+        }
+        try {
+            // The primary owns the dictionary; shards hold copies of its keys
+            List<Map<String, Object>> machineKeys = tables.contains(MACHINE_KEYS_TABLE) && !machineIds.isEmpty()
+                    ? captureKeysJdbc.queryForList("SELECT * FROM " + MACHINE_KEYS_TABLE + " WHERE machine_id IN (:machineIds)",
+                            new MapSqlParameterSource("machineIds", machineIds))
+                    : List.of();
+            Map<String, List<Map<String, Object>>> rows = new LinkedHashMap<>();
+            shardRouter.split(batch, ShardPlacements.EVENTS, EventRequestDTO::getEventId, EventRequestDTO::getMachineId)
+                    .forEach((shard, part) -> shardRouter.onShard(shard, () -> {
+                        MapSqlParameterSource params = new MapSqlParameterSource("ids", idsOf(part));
+                        for (String table : tables) {
+                            if (EVENT_KEYED_TABLES.contains(table)) {
+                                rows.computeIfAbsent(table, t -> new ArrayList<>()).addAll(captureRowsJdbc.queryForList(
+                                        "SELECT * FROM " + table + " WHERE event_id IN (:ids)", params));
+                            }
+                        }
+                        return null;
+                    }));
+            return Optional.of(new BeforeImage(ids, machineKeys, rows));
+        } catch (Exception e) {
+            log.warn("Error reading before-images for the shadow schema, skipping sample", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the shadow copies of the batch's ids with the before-image, through the shadow pool.
+     */
+    private void writeBeforeImage(BeforeImage beforeImage) {
+        copyRows(MACHINE_KEYS_TABLE, "INSERT IGNORE INTO ", beforeImage.machineKeys());
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", beforeImage.ids());
+        beforeImage.rows().forEach((table, rows) -> {
+            shadowJdbc.update("DELETE FROM " + table + " WHERE event_id IN (:ids)", params);
+            copyRows(table, "INSERT INTO ", rows);
+        });
+    }
+
+    private void copyRows(String table, String insert, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = insert + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        shadowJdbc.getJdbcTemplate().batchUpdate(sql, rows.stream()
+                .map(row -> columns.stream().map(row::get).toArray())
+                .toList());
+    }
+
+    private void replay(String primaryName, List<EventRequestDTO> batch, BeforeImage beforeImage,
+                        IngestResponseDTO primaryResponse, long primaryNanos) {
+        try {
+            writeBeforeImage(beforeImage);
+        } catch (Exception e) {
+            log.warn("Error copying before-images to the shadow schema, skipping sample", e);
+            dropped.increment();
+            return;
+        }
+
+        Comparison comparison = comparisons.computeIfAbsent(primaryName, p -> new Comparison());
+        long start = System.nanoTime();
+        IngestResponseDTO candidateResponse;
+        try {
+            candidateResponse = ShadowContext.run(() -> ingestServices.get(candidateName).processBatch(batch));
+        } catch (Exception e) {
+            log.warn("Shadow replay through {} failed", candidateName, e);
+            comparison.candidateFailures.increment();
+            return;
+        }
+        long candidateNanos = System.nanoTime() - start;
+
+        if (candidateResponse == null || !candidateResponse.isComplete(batch.size())) {
+            comparison.candidateFailures.increment();
+            return;
+        }
+
+        comparison.primaryLatency.record(primaryNanos);
+        comparison.candidateLatency.record(candidateNanos);
+        comparison.compared.increment();
+
+        if (sameCounters(primaryResponse, candidateResponse)) {
+            comparison.matched.increment();
+            return;
+        }
+        comparison.diverged.increment();
+        log.warn("Shadow divergence for {} events - {}: {}/{}/{}/{}, {}: {}/{}/{}/{} (accepted/updated/deduped/rejected)",
+                batch.size(), primaryName, primaryResponse.getAccepted(), primaryResponse.getUpdated(),
+                primaryResponse.getDeduped(), primaryResponse.getRejected(), candidateName,
+                candidateResponse.getAccepted(), candidateResponse.getUpdated(),
+                candidateResponse.getDeduped(), candidateResponse.getRejected());
+        synchronized (recentDivergences) {
+            recentDivergences.addFirst(ShadowReportDTO.Divergence.builder()
+                    .at(Instant.now())
+                    .primary(primaryName)
+                    .events(batch.size())
+                    .primaryCounters(countersOf(primaryResponse))
+                    .candidateCounters(countersOf(candidateResponse))
+                    .build());
+            while (recentDivergences.size() > MAX_RECENT_DIVERGENCES) {
+                recentDivergences.removeLast();
+            }
+        }
+    }
+
+    private static boolean sameCounters(IngestResponseDTO a, IngestResponseDTO b) {
+        return a.getAccepted() == b.getAccepted()
+                && a.getUpdated() == b.getUpdated()
+                && a.getDeduped() == b.getDeduped()
+                && a.getRejected() == b.getRejected();
+    }
+
+    private static IngestResponseDTO countersOf(IngestResponseDTO response) {
+        return IngestResponseDTO.builder()
+                .accepted(response.getAccepted())
+                .updated(response.getUpdated())
+                .deduped(response.getDeduped())
+                .rejected(response.getRejected())
+                .build();
+    }
+
+    private static Set<String> idsOf(List<EventRequestDTO> events) {
+        Set<String> ids = new HashSet<>();
+        for (EventRequestDTO event : events) {
+            if (event != null && event.getEventId() != null) {
+                ids.add(event.getEventId());
+            }
+        }
+        return ids;
+    }
+
+    private static NamedParameterJdbcTemplate timed(DataSource dataSource, int timeoutSeconds) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.setQueryTimeout(timeoutSeconds);
+        return new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    /**
+     * Rows of the sampled ids as the primary write found them, keyed by table.
+     */
+    private record BeforeImage(Set<String> ids, List<Map<String, Object>> machineKeys,
+                               Map<String, List<Map<String, Object>>> rows) {}
+
+    private static final class Comparison {
+        private final LongAdder compared = new LongAdder();
+        private final LongAdder matched = new LongAdder();
+        private final LongAdder diverged = new LongAdder();
+        private final LongAdder candidateFailures = new LongAdder();
+        private final LatencyHistogram primaryLatency = new LatencyHistogram(HISTOGRAM_WINDOW);
+        private final LatencyHistogram candidateLatency = new LatencyHistogram(HISTOGRAM_WINDOW);
+
+        private ShadowReportDTO.EngineComparison toDto(String primary) {
+            return ShadowReportDTO.EngineComparison.builder()
+                    .primary(primary)
+                    .compared(compared.sum())
+                    .matched(matched.sum())
+                    .diverged(diverged.sum())
+                    .candidateFailures(candidateFailures.sum())
+                    .primaryP50Ms(primaryLatency.quantile(0.5) / 1_000_000.0)
+                    .primaryP95Ms(primaryLatency.quantile(0.95) / 1_000_000.0)
+                    .candidateP50Ms(candidateLatency.quantile(0.5) / 1_000_000.0)
+                    .candidateP95Ms(candidateLatency.quantile(0.95) / 1_000_000.0)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * Binds the current thread to one shard, which routes its ingest and analytics connections to that shard's pools.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<String> SHARD = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    public static String current() {
+        return SHARD.get();
+    }
+
+    public static <T> T run(String shard, Supplier<T> work) {
+        String previous = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                SHARD.remove();
+            } else {
+                SHARD.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.Map;
+
+/**
+ * Ingest and analytics pools of every non-primary shard, keyed by shard name.
+ */
+public record ShardDataSources(Map<String, HikariDataSource> ingest, Map<String, HikariDataSource> analytics) {
+
+    public void close() {
+        ingest.values().forEach(HikariDataSource::close);
+        analytics.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,55 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Global id-to-shard registry in the primary's shard_placements table.
+ * Each shard only dedupes against its own rows, so an id must keep going to the shard that first stored it:
+ * otherwise a correction to a machine of another factory, or a resend after the factory moved shards,
+ * would be accepted as new there and the stats fan-out would count both copies.
+ */
+@Component
+public class ShardPlacements {
+
+    public static final String EVENTS = "event";
+    public static final String SUMMARIES = "summary";
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public ShardPlacements(@Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.jdbc = new NamedParameterJdbcTemplate(ingestDataSource);
+    }
+
+    /**
+     * Claims the wanted shard for every id not placed yet and returns where each id lives.
+     * The insert commits before the lookup, so concurrent batches claiming the same new id all see one winner.
+     *
+     * @param wanted id to the shard of its machine's factory
+     */
+    public Map<String, String> claim(String kind, Map<String, String> wanted) {
+        if (wanted.isEmpty()) {
+            return Map.of();
+        }
+        MapSqlParameterSource[] rows = wanted.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource("kind", kind)
+                        .addValue("itemId", entry.getKey())
+                        .addValue("shard", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT IGNORE INTO shard_placements (kind, item_id, shard) VALUES (:kind, :itemId, :shard)", rows);
+
+        Map<String, String> placed = new HashMap<>();
+        jdbc.query("SELECT item_id, shard FROM shard_placements WHERE kind = :kind AND item_id IN (:ids)",
+                new MapSqlParameterSource("kind", kind).addValue("ids", wanted.keySet()),
+                rs -> {
+                    placed.put(rs.getString("item_id"), rs.getString("shard"));
+                });
+        return placed;
+    }
+}
@@ -0,0 +1,329 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.ShardStatsDTO;
+import com.cadosfrit.sensor.event.service.exception.ShardUnavailableException;
+import com.cadosfrit.sensor.event.service.flowcontrol.FactoryResolver;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Factory-to-shard routing for ingest and stats.
+ * A machine belongs to the shard of its factory (machines / production_lines hierarchy on the primary);
+ * factories not assigned to a shard, including unregistered machines, stay on the primary.
+ * An id already stored keeps going to the shard that holds it ({@link ShardPlacements}), so every event has
+ * one row across all shards. Mixed batches are split per shard, the sub-batches run in parallel each in its
+ * own shard transaction, and their counters are added up. A shard's dictionary entries are copied from the
+ * primary before its first write, so machine keys mean the same machine everywhere.
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+
+    public static final String PRIMARY = "primary";
+
+    private final ShardingProperties properties;
+    private final FactoryResolver factoryResolver;
+    private final MachineKeyDictionary machineKeys;
+    private final ShardPlacements placements;
+    private final Map<String, String> factoryShards = new HashMap<>();
+    private final Map<String, JdbcTemplate> shardJdbc = new LinkedHashMap<>();
+    private final Map<String, Set<Integer>> copiedKeys = new ConcurrentHashMap<>();
+    private final Map<String, ShardCounters> counters = new LinkedHashMap<>();
+    private final ExecutorService executor;
+    private final LongAdder crossShardBatches = new LongAdder();
+    private final LongAdder fanOutQueries = new LongAdder();
+    private final LongAdder placedElsewhere = new LongAdder();
+    private volatile Instant lastHierarchySyncAt;
+
+    public ShardRouter(ShardingProperties properties,
+                       FactoryResolver factoryResolver,
+                       MachineKeyDictionary machineKeys,
+                       ShardPlacements placements,
+                       ObjectProvider<ShardDataSources> shardDataSources) {
+        this.properties = properties;
+        this.factoryResolver = factoryResolver;
+        this.machineKeys = machineKeys;
+        this.placements = placements;
+
+        counters.put(PRIMARY, new ShardCounters());
+        ShardDataSources dataSources = shardDataSources.getIfAvailable();
+        if (properties.isEnabled() && dataSources != null) {
+            dataSources.ingest().forEach((shard, dataSource) -> {
+                shardJdbc.put(shard, new JdbcTemplate(dataSource));
+                copiedKeys.put(shard, ConcurrentHashMap.newKeySet());
+                counters.put(shard, new ShardCounters());
+            });
+            properties.getShards().forEach((shard, config) ->
+                    config.getFactories().forEach(factoryId -> {
+                        String previous = factoryShards.put(factoryId, shard);
+                        if (previous != null) {
+                            throw new IllegalStateException("Factory " + factoryId + " is assigned to shards "
+                                    + previous + " and " + shard);
+                        }
+                    }));
+        }
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "shard-router");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return !shardJdbc.isEmpty();
+    }
+
+    public Set<String> getShards() {
+        return counters.keySet();
+    }
+
+    /**
+     * Connections to a shard other than the primary, for schema and dictionary maintenance.
+     */
+    public Map<String, JdbcTemplate> getShardJdbc() {
+        return shardJdbc;
+    }
+
+    public String shardOfFactory(String factoryId) {
+        return factoryShards.getOrDefault(factoryId, PRIMARY);
+    }
+
+    public String shardOfMachine(String machineId) {
+        return isEnabled() ? shardOfFactory(factoryResolver.resolve(machineId)) : PRIMARY;
+    }
+
+    /**
+     * Runs the work with the shard's pools; the primary needs no binding.
+     */
+    public <T> T onShard(String shard, Supplier<T> work) {
+        return PRIMARY.equals(shard) ? work.get() : ShardContext.run(shard, work);
+    }
+
+    /**
+     * Runs the same query on every shard in parallel. Without shards it is a plain call on this thread.
+     * A shard that fails fails the whole call, so a total is never silently missing a shard's rows.
+     */
+    public <T> List<T> onAllShards(Supplier<T> work) {
+        if (!isEnabled()) {
+            return List.of(work.get());
+        }
+        fanOutQueries.increment();
+        Map<String, Supplier<T>> tasks = new LinkedHashMap<>();
+        for (String shard : getShards()) {
+            tasks.put(shard, work);
+        }
+        return new ArrayList<>(runParallel(tasks).values());
+    }
+
+    /**
+     * Splits the batch by the shard of each item, processes the parts in parallel and merges the counters.
+     * If any part fails, the call throws {@link ShardUnavailableException} after all parts have finished;
+     * parts that did commit are deduped by id when the caller retries the whole batch.
+     *
+     * @param kind {@link ShardPlacements#EVENTS} or {@link ShardPlacements#SUMMARIES}, the namespace of the ids
+     */
+    public <E> IngestResponseDTO ingest(List<E> batch, String kind, Function<E, String> idOf,
+                                        Function<E, String> machineIdOf,
+                                        Function<List<E>, IngestResponseDTO> processor) {
+        if (!isEnabled() || batch == null || batch.isEmpty()) {
+            return processor.apply(batch);
+        }
+
+        Map<String, List<E>> parts = split(batch, kind, idOf, machineIdOf);
+        if (parts.size() > 1) {
+            crossShardBatches.increment();
+        }
+
+        Map<String, Supplier<IngestResponseDTO>> tasks = new LinkedHashMap<>();
+        parts.forEach((shard, part) -> tasks.put(shard, () -> {
+            ShardCounters shardCounters = counters.get(shard);
+            shardCounters.batches.increment();
+            shardCounters.events.add(part.size());
+            try {
+                copyMachineKeys(shard, part, machineIdOf);
+                IngestResponseDTO response = processor.apply(part);
+                if (response == null || !response.isComplete(part.size())) {
+                    shardCounters.failures.increment();
+                }
+                return response;
+            } catch (RuntimeException e) {
+                shardCounters.failures.increment();
+                throw e;
+            }
+        }));
+        return merge(runParallel(tasks).values());
+    }
+
+    /**
+     * The batch's items per shard: the shard already holding an item's id, otherwise its machine's factory shard.
+     * Repeats of an id within the batch always land in the same part. Placements naming a shard that is no
+     * longer configured are ignored, since that shard's rows are not read either.
+     */
+    public <E> Map<String, List<E>> split(List<E> batch, String kind, Function<E, String> idOf,
+                                          Function<E, String> machineIdOf) {
+        Map<String, List<E>> parts = new LinkedHashMap<>();
+        if (!isEnabled()) {
+            parts.put(PRIMARY, batch);
+            return parts;
+        }
+        Map<String, String> wanted = new LinkedHashMap<>();
+        List<String> factoryShardOf = new ArrayList<>(batch.size());
+        for (E item : batch) {
+            String shard = shardOfMachine(item != null ? machineIdOf.apply(item) : null);
+            factoryShardOf.add(shard);
+            String id = item != null ? idOf.apply(item) : null;
+            if (id != null) {
+                wanted.putIfAbsent(id, shard);
+            }
+        }
+        Map<String, String> placed = placements.claim(kind, wanted);
+
+        for (int i = 0; i < batch.size(); i++) {
+            E item = batch.get(i);
+            String shard = factoryShardOf.get(i);
+            String placedShard = item != null ? placed.get(idOf.apply(item)) : null;
+            if (placedShard != null && !placedShard.equals(shard) && counters.containsKey(placedShard)) {
+                placedElsewhere.increment();
+                shard = placedShard;
+            }
+            parts.computeIfAbsent(shard, key -> new ArrayList<>()).add(item);
+        }
+        return parts;
+    }
+
+    public void markHierarchySynced() {
+        lastHierarchySyncAt = Instant.now();
+    }
+
+    public ShardStatsDTO getStats() {
+        List<ShardStatsDTO.Shard> shards = new ArrayList<>();
+        counters.forEach((shard, shardCounters) -> shards.add(ShardStatsDTO.Shard.builder()
+                .name(shard)
+                .factories(PRIMARY.equals(shard)
+                        ? List.of()
+                        : properties.getShards().get(shard).getFactories())
+                .batches(shardCounters.batches.sum())
+                .events(shardCounters.events.sum())
+                .failures(shardCounters.failures.sum())
+                .build()));
+        return ShardStatsDTO.builder()
+                .enabled(isEnabled())
+                .crossShardBatches(crossShardBatches.sum())
+                .fanOutQueries(fanOutQueries.sum())
+                .placedElsewhere(placedElsewhere.sum())
+                .lastHierarchySyncAt(lastHierarchySyncAt)
+                .shards(shards)
+                .build();
+    }
+
+    /**
+     * The first task runs on the calling thread, the rest on the shard executor; a single-shard call never hops.
+     * Every task is waited for before a failure is reported, so no shard is still writing when the caller retries.
+     */
+    private <T> Map<String, T> runParallel(Map<String, Supplier<T>> tasks) {
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        Map<String, T> results = new LinkedHashMap<>();
+        Set<String> failed = new LinkedHashSet<>();
+        Throwable firstFailure = null;
+        String local = null;
+        for (Map.Entry<String, Supplier<T>> task : tasks.entrySet()) {
+            if (local == null) {
+                local = task.getKey();
+                continue;
+            }
+            futures.put(task.getKey(), executor.submit(() -> onShard(task.getKey(), task.getValue())));
+        }
+        if (local != null) {
+            try {
+                results.put(local, onShard(local, tasks.get(local)));
+            } catch (RuntimeException e) {
+                log.error("Error on shard {}", local, e);
+                failed.add(local);
+                firstFailure = e;
+            }
+        }
+        for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted waiting for shard {}", future.getKey());
+                failed.add(future.getKey());
+                firstFailure = firstFailure != null ? firstFailure : e;
+            } catch (ExecutionException e) {
+                log.error("Error on shard {}", future.getKey(), e.getCause());
+                failed.add(future.getKey());
+                firstFailure = firstFailure != null ? firstFailure : e.getCause();
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new ShardUnavailableException(failed, firstFailure);
+        }
+        return results;
+    }
+
+    private <E> void copyMachineKeys(String shard, List<E> part, Function<E, String> machineIdOf) {
+        JdbcTemplate jdbc = shardJdbc.get(shard);
+        if (jdbc == null) {
+            return;
+        }
+        Set<String> machineIds = new HashSet<>();
+        for (E item : part) {
+            if (item != null && machineIdOf.apply(item) != null) {
+                machineIds.add(machineIdOf.apply(item));
+            }
+        }
+        Set<Integer> copied = copiedKeys.get(shard);
+        List<Object[]> missing = new ArrayList<>();
+        machineKeys.resolveAll(machineIds).forEach((machineId, key) -> {
+            if (!copied.contains(key)) {
+                missing.add(new Object[]{key, machineId});
+            }
+        });
+        if (missing.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate("INSERT IGNORE INTO machine_keys (machine_key, machine_id) VALUES (?, ?)", missing);
+        missing.forEach(row -> copied.add((Integer) row[0]));
+    }
+
+    private static IngestResponseDTO merge(Collection<IngestResponseDTO> responses) {
+        IngestResponseDTO merged = IngestResponseDTO.builder().rejections(new ArrayList<>()).build();
+        for (IngestResponseDTO response : responses) {
+            if (response == null) {
+                continue;
+            }
+            merged.setAccepted(merged.getAccepted() + response.getAccepted());
+            merged.setUpdated(merged.getUpdated() + response.getUpdated());
+            merged.setDeduped(merged.getDeduped() + response.getDeduped());
+            merged.setRejected(merged.getRejected() + response.getRejected());
+            if (response.getRejections() != null) {
+                merged.getRejections().addAll(response.getRejections());
+            }
+        }
+        return merged;
+    }
+
+    private static final class ShardCounters {
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder events = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+    }
+}
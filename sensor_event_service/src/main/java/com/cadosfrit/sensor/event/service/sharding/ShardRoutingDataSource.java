@@ -0,0 +1,38 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Routes to the pool of the shard bound by {@link ShardContext}, otherwise to the primary pool.
+ * There is no lenient fallback: an unknown shard fails rather than writing a factory's events to the primary.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final Map<Object, Object> targets = new HashMap<>();
+
+    private ShardRoutingDataSource(DataSource primary, Map<String, ? extends DataSource> shards) {
+        targets.put(ShardRouter.PRIMARY, primary);
+        targets.putAll(shards);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * @return the primary itself when there are no shards, so unsharded deployments keep a plain pool
+     */
+    public static DataSource of(DataSource primary, Map<String, ? extends DataSource> shards) {
+        return shards == null || shards.isEmpty() ? primary : new ShardRoutingDataSource(primary, shards);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = ShardContext.current();
+        return shard != null ? shard : ShardRouter.PRIMARY;
+    }
+}
@@ -0,0 +1,202 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps every shard structurally identical to the primary.
+ * Hibernate and the SQL initializer only run against the primary, so once they (and the layout and partition
+ * managers) are done, each primary table definition is replayed on the shards from SHOW CREATE TABLE, tables
+ * that already exist are altered to match it, and the stored procedures are installed. The factory hierarchy is small and read by the per-factory stats joins,
+ * so it is copied in full at startup and on a schedule.
+ */
+@Slf4j
+@Component
+public class ShardSchemaManager {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    // `column` ..., KEY `name` ..., UNIQUE KEY `name` ..., CONSTRAINT `name` FOREIGN KEY ... (not PRIMARY KEY)
+    private static final Pattern ELEMENT = Pattern.compile("((?:UNIQUE |FULLTEXT |SPATIAL )?KEY |CONSTRAINT )?`([^`]+)`");
+    // Parents first, so a copied row always finds the row it references
+    private static final List<String> HIERARCHY_TABLES = List.of("factories", "production_lines", "machines");
+
+    private final ShardingProperties properties;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate primaryJdbc;
+    private volatile boolean ready;
+
+    public ShardSchemaManager(ShardingProperties properties,
+                              ShardRouter shardRouter,
+                              @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.properties = properties;
+        this.shardRouter = shardRouter;
+        this.primaryJdbc = new JdbcTemplate(ingestDataSource);
+        if (!properties.getTables().stream().allMatch(table -> IDENTIFIER.matcher(table).matches())) {
+            throw new IllegalStateException("Invalid shard table name");
+        }
+    }
+
+    @Order(4)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!shardRouter.isEnabled()) {
+            return;
+        }
+        shardRouter.getShardJdbc().forEach((shard, jdbc) -> {
+            try {
+                createTables(jdbc);
+                ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+                populator.setSeparator(";;");
+                populator.execute(jdbc.getDataSource());
+                log.info("Shard {} schema ready", shard);
+            } catch (Exception e) {
+                log.error("Error preparing schema of shard {}", shard, e);
+            }
+        });
+        ready = true;
+        syncHierarchy();
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.sharding.hierarchy-sync-interval-ms:300000}")
+    public void syncHierarchy() {
+        if (!ready) {
+            return;
+        }
+        try {
+            for (String table : HIERARCHY_TABLES) {
+                List<Map<String, Object>> rows = primaryJdbc.queryForList("SELECT * FROM " + table);
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                List<String> columns = new ArrayList<>(rows.get(0).keySet());
+                String sql = upsertSql(table, columns);
+                List<Object[]> values = rows.stream()
+                        .map(row -> columns.stream().map(row::get).toArray())
+                        .toList();
+                shardRouter.getShardJdbc().forEach((shard, jdbc) -> jdbc.batchUpdate(sql, values));
+            }
+            shardRouter.markHierarchySynced();
+        } catch (Exception e) {
+            log.error("Error copying factory hierarchy to shards", e);
+        }
+    }
+
+    /**
+     * Missing tables are created with the primary's definition (keys, indexes and partitioning included).
+     * Existing tables get the columns, indexes and foreign keys they lack and the column definitions that differ,
+     * so schema changes Hibernate or a release makes on the primary also reach the shards.
+     */
+    private void createTables(JdbcTemplate shardJdbc) {
+        List<String> statements = new ArrayList<>();
+        for (String table : properties.getTables()) {
+            String definition = showCreateTable(primaryJdbc, table);
+            if (definition == null) {
+                continue;
+            }
+            String existing = showCreateTable(shardJdbc, table);
+            if (existing == null) {
+                statements.add(definition);
+            } else {
+                statements.addAll(alterStatements(table, definition, existing));
+            }
+        }
+        shardJdbc.execute((ConnectionCallback<Void>) (Connection connection) -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+                try {
+                    for (String sql : statements) {
+                        log.info("Applying to shard: {}", sql);
+                        statement.execute(sql);
+                    }
+                } finally {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String showCreateTable(JdbcTemplate jdbc, String table) {
+        Boolean exists = jdbc.query("SHOW TABLES LIKE '" + table + "'", ResultSet::next);
+        if (!Boolean.TRUE.equals(exists)) {
+            return null;
+        }
+        return jdbc.query("SHOW CREATE TABLE " + table, rs -> rs.next() ? rs.getString(2) : null);
+    }
+
+    /**
+     * ALTER TABLE statements that bring the shard's definition up to the primary's, element by element.
+     * The primary key and partitioning are left alone; they are fixed by the layout chosen at first start.
+     */
+    static List<String> alterStatements(String table, String primaryDefinition, String shardDefinition) {
+        Map<String, String> wanted = elements(primaryDefinition);
+        Map<String, String> present = elements(shardDefinition);
+        List<String> statements = new ArrayList<>();
+        wanted.forEach((name, line) -> {
+            String current = present.get(name);
+            if (line.equals(current)) {
+                return;
+            }
+            if (name.startsWith("column ")) {
+                statements.add("ALTER TABLE " + table + (current == null ? " ADD COLUMN " : " MODIFY COLUMN ") + line);
+            } else if (current == null) {
+                statements.add("ALTER TABLE " + table + " ADD " + line);
+            }
+        });
+        return statements;
+    }
+
+    /**
+     * Column, index and foreign key lines of a SHOW CREATE TABLE result, keyed by kind and name.
+     */
+    private static Map<String, String> elements(String definition) {
+        Map<String, String> elements = new LinkedHashMap<>();
+        for (String raw : definition.split("\n")) {
+            String line = raw.trim();
+            if (line.endsWith(",")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            Matcher matcher = ELEMENT.matcher(line);
+            if (!matcher.lookingAt()) {
+                continue;
+            }
+            String kind = matcher.group(1) == null ? "column" : matcher.group(1).startsWith("CONSTRAINT") ? "constraint" : "key";
+            elements.put(kind + " " + matcher.group(2), line);
+        }
+        return elements;
+    }
+
+    private static String upsertSql(String table, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", columns)).append(") VALUES (")
+                .append(String.join(", ", columns.stream().map(column -> "?").toList()))
+                .append(") ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns.get(i)).append(" = VALUES(").append(columns.get(i)).append(')');
+        }
+        return sql.toString();
+    }
+}
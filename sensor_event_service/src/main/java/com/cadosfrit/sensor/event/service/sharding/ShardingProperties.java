@@ -0,0 +1,36 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ingest.sharding")
+public class ShardingProperties {
+    private boolean enabled = false;
+    /** Threads that run per-shard sub-batches and stats fan-out in parallel. */
+    private int threads = 8;
+    /** Table definitions mirrored from the primary onto every shard at startup. */
+    private List<String> tables = new ArrayList<>(List.of("factories", "production_lines", "machines", "machine_keys",
+            "machine_events", "heartbeat_ledger", "machine_heartbeat_minutes", "machine_event_versions",
+            "machine_event_summaries", "event_outbox", "machine_event_rollup_hour"));
+    private long hierarchySyncIntervalMs = 300000;
+    private Map<String, Shard> shards = new LinkedHashMap<>();
+
+    @Data
+    public static class Shard {
+        private String url;
+        /** Defaults to the primary datasource credentials. */
+        private String username;
+        private String password;
+        private int poolSize = 10;
+        private int analyticsPoolSize = 4;
+        private List<String> factories = new ArrayList<>();
+    }
+}
@@ -0,0 +1,115 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.dto.VersionCompactionStatsDTO;
+import com.cadosfrit.sensor.event.service.model.MachineEventVersion;
+import com.cadosfrit.sensor.event.service.repository.MachineEventVersionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * VERSIONED storage: ingest only appends to machine_event_versions, this compactor is the single writer of
+ * machine_events. Each run projects the newest version of up to {@code batch-size} unprojected versions and prunes
+ * superseded versions once they are older than the history retention. Stats read machine_events, so they trail
+ * ingest by roughly one compaction interval.
+ */
+@Slf4j
+@Component
+public class EventVersionCompactor {
+
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final MachineEventVersionRepository versionRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration historyRetention;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder projected = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile Instant lastRunAt;
+
+    public EventVersionCompactor(MachineEventVersionRepository versionRepository,
+                                 IngestSessionSettings sessionSettings,
+                                 @Value("${ingest.versions.batch-size:5000}") int batchSize,
+                                 @Value("${ingest.versions.history-retention-hours:168}") long historyRetentionHours) {
+        this.versionRepository = versionRepository;
+        this.enabled = sessionSettings.getStorageMode() == StorageMode.VERSIONED;
+        this.batchSize = batchSize;
+        this.historyRetention = Duration.ofHours(historyRetentionHours);
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.versions.compact-interval-ms:500}")
+    public void scheduledCompaction() {
+        if (enabled) {
+            compact();
+        }
+    }
+
+    /**
+     * @return number of versions projected in this run
+     */
+    public long compact() {
+        long projectedInRun = 0;
+        try {
+            LocalDateTime pruneBefore = LocalDateTime.ofInstant(Instant.now().minus(historyRetention), ZoneOffset.UTC);
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                List<Map<String, Object>> rows = versionRepository.compactVersionsSP(batchSize, pruneBefore);
+                long batchProjected = count(rows, "projected");
+                projectedInRun += batchProjected;
+                projected.add(batchProjected);
+                pruned.add(count(rows, "pruned"));
+                if (batchProjected < batchSize) {
+                    break;
+                }
+            }
+            if (projectedInRun > 0) {
+                log.debug("Version compaction projected {} versions", projectedInRun);
+            }
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Error compacting event versions", e);
+        }
+        runs.increment();
+        lastRunAt = Instant.now();
+        return projectedInRun;
+    }
+
+    /**
+     * Correction history of one event, oldest first (superseded versions are kept for the history retention).
+     */
+    public List<MachineEventVersion> getHistory(String eventId) {
+        return versionRepository.findByEventIdOrderByVersionIdAsc(eventId);
+    }
+
+    public VersionCompactionStatsDTO getStats() {
+        return VersionCompactionStatsDTO.builder()
+                .enabled(enabled)
+                .pendingVersions(enabled ? versionRepository.countByProjectedFalse() : 0)
+                .runs(runs.sum())
+                .projected(projected.sum())
+                .pruned(pruned.sum())
+                .failures(failures.sum())
+                .lastRunAt(lastRunAt)
+                .build();
+    }
+
+    private static long count(List<Map<String, Object>> rows, String column) {
+        if (rows == null || rows.isEmpty() || !(rows.get(0).get(column) instanceof Number value)) {
+            return 0;
+        }
+        return value.longValue();
+    }
+}
@@ -0,0 +1,239 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.constants.EventStoreType;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of machine_keys: machine ids are stored in machine_events as a 4-byte integer key instead of the
+ * repeated VARCHAR. The dictionary is seeded from machines on startup; ids that are not registered (yet) get a key
+ * on first ingest. Keys are never reassigned, so cached entries never go stale and need no TTL. Misses of read-only
+ * lookups are remembered for {@link #MISS_TTL_MS}, since another instance may assign the key meanwhile.
+ * Ingest waits for {@link #initialize} (and with it the one-off column migration) to finish.
+ */
+@Slf4j
+@Component
+public class MachineKeyDictionary {
+
+    private static final String LEGACY_COLUMN = "machine_id";
+    private static final String LEGACY_INDEX = "idx_machine_id_time";
+    private static final long MISS_TTL_MS = 5000;
+    private static final int MAX_MISSES = 10000;
+    private static final int NOT_READY_RETRY_AFTER_SECONDS = 5;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final EventStoreType storeType;
+    private final Map<String, Integer> keysById = new ConcurrentHashMap<>();
+    private final Map<Integer, String> idsByKey = new ConcurrentHashMap<>();
+    // machine_id to the time its miss expires
+    private final Map<String, Long> misses = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public MachineKeyDictionary(@Qualifier("ingestDataSource") HikariDataSource ingestDataSource,
+                                @Value("${ingest.store.type:MYSQL}") EventStoreType storeType) {
+        this.jdbc = new NamedParameterJdbcTemplate(ingestDataSource);
+        this.storeType = storeType;
+        this.ready = storeType != EventStoreType.MYSQL;
+    }
+
+    /**
+     * Seeds the dictionary and moves a machine_events table still carrying machine_id over to machine_key.
+     * Runs before the layout and partition managers, whose keys are built on machine_key.
+     */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (storeType != EventStoreType.MYSQL) {
+            return;
+        }
+        try {
+            jdbc.getJdbcTemplate().update("INSERT IGNORE INTO machine_keys (machine_id) SELECT machine_id FROM machines");
+            if (hasLegacyColumn()) {
+                migrateLegacyColumn();
+            }
+            jdbc.getJdbcTemplate().query("SELECT machine_key, machine_id FROM machine_keys",
+                    (RowCallbackHandler) rs -> cache(rs.getString("machine_id"), rs.getInt("machine_key")));
+            log.info("Machine key dictionary loaded - Entries: {}", keysById.size());
+        } catch (Exception e) {
+            log.error("Error initializing the machine key dictionary", e);
+        } finally {
+            ready = true;
+        }
+    }
+
+    /**
+     * False until the dictionary is seeded and a legacy machine_id column is migrated; the web server already
+     * accepts requests by then, and a batch written during the backfill could miss it.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @throws ServiceOverloadedException while the dictionary is not ready, so clients retry after the migration
+     */
+    public void requireReady() {
+        if (!ready) {
+            throw new ServiceOverloadedException("Machine keys are being initialized", NOT_READY_RETRY_AFTER_SECONDS);
+        }
+    }
+
+    public int resolve(String machineId) {
+        Integer key = resolveAll(List.of(machineId)).get(machineId);
+        if (key == null) {
+            throw new IllegalStateException("No machine key for " + machineId);
+        }
+        return key;
+    }
+
+    /**
+     * Keys for all ids of a batch; unknown ids are added to machine_keys with one insert and one lookup.
+     */
+    public Map<String, Integer> resolveAll(Collection<String> machineIds) {
+        Map<String, Integer> keys = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String machineId : machineIds) {
+            if (machineId == null) {
+                continue;
+            }
+            Integer key = keysById.get(machineId);
+            if (key != null) {
+                keys.put(machineId, key);
+            } else {
+                missing.add(machineId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return keys;
+        }
+
+        MapSqlParameterSource[] rows = missing.stream()
+                .map(id -> new MapSqlParameterSource("machineId", id))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT IGNORE INTO machine_keys (machine_id) VALUES (:machineId)", rows);
+        keys.putAll(load(missing));
+        return keys;
+    }
+
+    /**
+     * Keys of a batch's events for the batch JSON. A failed lookup leaves the keys out of the batch; the procedures
+     * then resolve them from machine_keys.
+     */
+    public Map<String, Integer> resolveBatch(List<EventRequestDTO> events) {
+        try {
+            List<String> machineIds = new ArrayList<>();
+            for (EventRequestDTO event : events) {
+                if (event != null) {
+                    machineIds.add(event.getMachineId());
+                }
+            }
+            return resolveAll(machineIds);
+        } catch (Exception e) {
+            log.warn("Error resolving machine keys, leaving them to the database", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Read-only lookup for queries: an unknown id has no events, so it is not added to the dictionary.
+     */
+    public Optional<Integer> find(String machineId) {
+        if (machineId == null) {
+            return Optional.empty();
+        }
+        Integer key = keysById.get(machineId);
+        if (key != null) {
+            return Optional.of(key);
+        }
+        long now = System.currentTimeMillis();
+        Long missExpiresAt = misses.get(machineId);
+        if (missExpiresAt != null && missExpiresAt > now) {
+            return Optional.empty();
+        }
+        key = load(Set.of(machineId)).get(machineId);
+        if (key == null) {
+            if (misses.size() >= MAX_MISSES) {
+                misses.clear();
+            }
+            misses.put(machineId, now + MISS_TTL_MS);
+        }
+        return Optional.ofNullable(key);
+    }
+
+    public String machineId(int machineKey) {
+        String machineId = idsByKey.get(machineKey);
+        if (machineId != null) {
+            return machineId;
+        }
+        List<String> ids = jdbc.queryForList("SELECT machine_id FROM machine_keys WHERE machine_key = :machineKey",
+                new MapSqlParameterSource("machineKey", machineKey), String.class);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        cache(ids.get(0), machineKey);
+        return ids.get(0);
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+    private Map<String, Integer> load(Set<String> machineIds) {
+        Map<String, Integer> keys = new HashMap<>();
+        jdbc.query("SELECT machine_key, machine_id FROM machine_keys WHERE machine_id IN (:ids)",
+                new MapSqlParameterSource("ids", machineIds),
+                rs -> {
+                    String machineId = rs.getString("machine_id");
+                    int key = rs.getInt("machine_key");
+                    cache(machineId, key);
+                    keys.put(machineId, key);
+                });
+        return keys;
+    }
+
+    private void cache(String machineId, int key) {
+        keysById.put(machineId, key);
+        idsByKey.put(key, machineId);
+        misses.remove(machineId);
+    }
+
+    private boolean hasLegacyColumn() {
+        Integer columns = jdbc.getJdbcTemplate().queryForObject("""
+                SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?
+                """, Integer.class, StorageLayoutManager.TABLE, LEGACY_COLUMN);
+        return columns != null && columns > 0;
+    }
+
+    /**
+     * One-off backfill of machine_key from machine_id, then drop the string column (a table rebuild).
+     */
+    private void migrateLegacyColumn() {
+        String table = StorageLayoutManager.TABLE;
+        log.info("Migrating {}.{} to dictionary keys", table, LEGACY_COLUMN);
+        jdbc.getJdbcTemplate().update("INSERT IGNORE INTO machine_keys (machine_id) SELECT DISTINCT machine_id FROM " + table);
+        jdbc.getJdbcTemplate().update("UPDATE " + table + " e JOIN machine_keys k ON k.machine_id = e.machine_id "
+                + "SET e.machine_key = k.machine_key");
+
+        Integer legacyIndex = jdbc.getJdbcTemplate().queryForObject("""
+                SELECT COUNT(*) FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?
+                """, Integer.class, table, LEGACY_INDEX);
+        String dropIndex = legacyIndex != null && legacyIndex > 0 ? "DROP INDEX " + LEGACY_INDEX + ", " : "";
+        jdbc.getJdbcTemplate().execute("ALTER TABLE " + table + " " + dropIndex + "DROP COLUMN " + LEGACY_COLUMN);
+    }
+}
@@ -0,0 +1,333 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.PartitionInterval;
+import com.cadosfrit.sensor.event.service.constants.RetentionAction;
+import com.cadosfrit.sensor.event.service.dto.PartitionStatsDTO;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * RANGE partitioning of machine_events on event_time.
+ * MySQL requires the partition column in every unique key, so the keys come from {@link StorageLayoutManager}
+ * in their partitioned form; the stored procedures delete the old row when an update moves an event to a
+ * different event_time, and claim new ids in the event_ids registry so concurrent batches cannot both insert one.
+ * Maintenance keeps {@code future-partitions} empty periods ahead of today (split off the MAXVALUE catch-all)
+ * and drops or archives whole partitions once they fall behind the retention window. The rows of an expiring
+ * partition are first taken out of the hourly rollups and the registry, so stats never count dropped events.
+ */
+@Slf4j
+@Component
+public class PartitionManager {
+
+    private static final String TABLE = StorageLayoutManager.TABLE;
+    private static final String HISTORY_PARTITION = "p_history";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final String MAXVALUE = "MAXVALUE";
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String FORGET_EVENT_IDS_SQL = """
+            DELETE r FROM event_ids r
+            JOIN %s PARTITION (%s) e ON e.event_id = r.event_id
+            """;
+    // Same per machine and hour totals as RollupManager reconciles, taken back out of the live rollup rows
+    private static final String SUBTRACT_ROLLUPS_SQL = """
+            UPDATE machine_event_rollup_hour r
+            JOIN (
+                SELECT k.machine_id, CAST(DATE_FORMAT(e.event_time, '%%Y-%%m-%%d %%H:00:00') AS DATETIME(6)) AS hour_start,
+                       COUNT(*) AS events, SUM(CASE WHEN e.defect_count = -1 THEN 0 ELSE e.defect_count END) AS defects
+                FROM %s PARTITION (%s) e
+                JOIN machine_keys k ON k.machine_key = e.machine_key
+                GROUP BY k.machine_id, hour_start
+            ) d ON d.machine_id = r.machine_id AND d.hour_start = r.hour_start
+            SET r.event_count = r.event_count - d.events, r.defect_sum = r.defect_sum - d.defects
+            """;
+
+    private final boolean enabled;
+    private final PartitionInterval interval;
+    private final int futurePartitions;
+    private final int retentionPartitions;
+    private final RetentionAction retentionAction;
+    private final String archiveSchema;
+    private final StorageLayoutManager layoutManager;
+    private final boolean rollupsEnabled;
+    private final JdbcTemplate jdbc;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder archived = new LongAdder();
+    private volatile boolean ready;
+    private volatile Instant lastMaintenanceAt;
+
+    public PartitionManager(@Value("${ingest.storage.partitioning.enabled:false}") boolean enabled,
+                            @Value("${ingest.storage.partitioning.interval:DAILY}") PartitionInterval interval,
+                            @Value("${ingest.storage.partitioning.future-partitions:7}") int futurePartitions,
+                            @Value("${ingest.storage.partitioning.retention-partitions:0}") int retentionPartitions,
+                            @Value("${ingest.storage.partitioning.retention-action:DROP}") RetentionAction retentionAction,
+                            @Value("${ingest.storage.partitioning.archive-schema:}") String archiveSchema,
+                            StorageLayoutManager layoutManager,
+                            IngestSessionSettings sessionSettings,
+                            @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.enabled = enabled;
+        this.interval = interval;
+        this.futurePartitions = futurePartitions;
+        this.retentionPartitions = retentionPartitions;
+        this.retentionAction = retentionAction;
+        this.archiveSchema = archiveSchema;
+        this.layoutManager = layoutManager;
+        this.rollupsEnabled = sessionSettings.isRollupsEnabled();
+        this.jdbc = new JdbcTemplate(ingestDataSource);
+    }
+
+    /**
+     * Converts the table on first start (a full table rebuild, so plan it for an existing large table).
+     * Runs after startup so Hibernate has already created machine_events.
+     */
+    @Order(2)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        if (!archiveSchema.isEmpty() && !IDENTIFIER.matcher(archiveSchema).matches()) {
+            log.error("Invalid archive schema '{}', partition maintenance stays off", archiveSchema);
+            return;
+        }
+        try {
+            if (listPartitions().isEmpty()) {
+                partitionTable();
+            }
+            ready = true;
+            maintain();
+        } catch (Exception e) {
+            log.error("Error partitioning {}, partition maintenance stays off", TABLE, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.storage.partitioning.maintenance-interval-ms:3600000}")
+    public void scheduledMaintenance() {
+        if (ready) {
+            maintain();
+        }
+    }
+
+    public synchronized void maintain() {
+        try {
+            createFuturePartitions();
+            expirePartitions();
+            lastMaintenanceAt = Instant.now();
+        } catch (Exception e) {
+            log.error("Error maintaining {} partitions", TABLE, e);
+        }
+    }
+
+    public PartitionStatsDTO getStats() {
+        List<PartitionStatsDTO.Partition> partitions = Collections.emptyList();
+        if (ready) {
+            try {
+                partitions = listPartitions().stream()
+                        .map(p -> PartitionStatsDTO.Partition.builder()
+                                .name(p.name())
+                                .lessThan(p.upperBound() == null ? MAXVALUE : p.upperBound().format(BOUND_FORMAT))
+                                .estimatedRows(p.rows())
+                                .build())
+                        .toList();
+            } catch (Exception e) {
+                log.warn("Error listing {} partitions", TABLE, e);
+            }
+        }
+        return PartitionStatsDTO.builder()
+                .enabled(enabled)
+                .partitioned(ready)
+                .interval(interval.name())
+                .futurePartitions(futurePartitions)
+                .retentionPartitions(retentionPartitions)
+                .retentionAction(retentionAction.name())
+                .created(created.sum())
+                .dropped(dropped.sum())
+                .archived(archived.sum())
+                .lastMaintenanceAt(lastMaintenanceAt)
+                .partitions(partitions)
+                .build();
+    }
+
+    private void partitionTable() {
+        LocalDate current = interval.periodStart(LocalDate.now(ZoneOffset.UTC));
+        List<String> definitions = new ArrayList<>();
+        definitions.add(definition(HISTORY_PARTITION, current));
+        LocalDate start = current;
+        for (int i = 0; i <= futurePartitions; i++) {
+            LocalDate end = interval.next(start);
+            definitions.add(definition(partitionName(start), end));
+            start = end;
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (" + MAXVALUE + ")");
+
+        List<String> keyChanges = layoutManager.alterSpecs(true);
+        log.info("Partitioning {} by {} ranges of event_time ({} partitions), key changes: {}",
+                TABLE, interval, definitions.size(), keyChanges);
+        jdbc.execute("ALTER TABLE " + TABLE + " " + String.join(", ", keyChanges)
+                + " PARTITION BY RANGE COLUMNS(event_time) (" + String.join(", ", definitions) + ")");
+        created.add(definitions.size());
+    }
+
+    private void createFuturePartitions() {
+        LocalDate target = LocalDate.now(ZoneOffset.UTC);
+        target = interval.periodStart(target);
+        for (int i = 0; i <= futurePartitions; i++) {
+            target = interval.next(target);
+        }
+
+        LocalDate lastBound = null;
+        for (PartitionInfo partition : listPartitions()) {
+            if (partition.upperBound() != null) {
+                lastBound = partition.upperBound().toLocalDate();
+            }
+        }
+        if (lastBound == null) {
+            return;
+        }
+
+        List<String> definitions = new ArrayList<>();
+        for (LocalDate start = lastBound; start.isBefore(target); start = interval.next(start)) {
+            definitions.add(definition(partitionName(start), interval.next(start)));
+        }
+        if (definitions.isEmpty()) {
+            return;
+        }
+
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (" + MAXVALUE + ")");
+        jdbc.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + FUTURE_PARTITION
+                + " INTO (" + String.join(", ", definitions) + ")");
+        created.add(definitions.size() - 1);
+        log.info("Created {} future {} partitions up to {}", definitions.size() - 1, TABLE, target);
+    }
+
+    /**
+     * Start of the oldest partition kept; events before it may already have been dropped.
+     */
+    public Optional<Instant> getRetainedFrom() {
+        if (!enabled || retentionPartitions <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(retentionCutoff().toInstant(ZoneOffset.UTC));
+    }
+
+    private LocalDateTime retentionCutoff() {
+        return interval.previous(interval.periodStart(LocalDate.now(ZoneOffset.UTC)), retentionPartitions).atStartOfDay();
+    }
+
+    private void expirePartitions() {
+        if (retentionPartitions <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = retentionCutoff();
+
+        for (PartitionInfo partition : listPartitions()) {
+            if (partition.upperBound() == null || partition.upperBound().isAfter(cutoff)) {
+                continue;
+            }
+            if (retentionAction == RetentionAction.ARCHIVE && archiveExists(partition.name())) {
+                continue;
+            }
+            forget(partition.name());
+            if (retentionAction == RetentionAction.ARCHIVE) {
+                archive(partition.name());
+            }
+            jdbc.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition.name());
+            dropped.increment();
+            log.info("Dropped expired {} partition {} (< {})", TABLE, partition.name(), partition.upperBound());
+        }
+    }
+
+    /**
+     * Takes the partition's events out of the rollups and the id registry before they leave machine_events.
+     * An event written into the expired range between this and the drop stays in the rollups until the next
+     * startup reconcile.
+     */
+    private void forget(String partitionName) {
+        int ids = jdbc.update(FORGET_EVENT_IDS_SQL.formatted(TABLE, partitionName));
+        int hours = rollupsEnabled ? jdbc.update(SUBTRACT_ROLLUPS_SQL.formatted(TABLE, partitionName)) : 0;
+        log.debug("Removed partition {} from {} registered ids and {} rollup rows", partitionName, ids, hours);
+    }
+
+    private boolean archiveExists(String partitionName) {
+        String schema = archiveSchema();
+        String archiveTable = TABLE + "_" + partitionName;
+        Integer existing = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?",
+                Integer.class, schema, archiveTable);
+        if (existing != null && existing > 0) {
+            log.warn("Archive table {}.{} already exists, keeping partition {}", schema, archiveTable, partitionName);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Swaps the partition's rows into a new table of the archive schema; the partition is left empty.
+     */
+    private void archive(String partitionName) {
+        String qualified = "`" + archiveSchema() + "`.`" + TABLE + "_" + partitionName + "`";
+        jdbc.execute("CREATE DATABASE IF NOT EXISTS `" + archiveSchema() + "`");
+        jdbc.execute("CREATE TABLE " + qualified + " LIKE " + TABLE);
+        jdbc.execute("ALTER TABLE " + qualified + " REMOVE PARTITIONING");
+        jdbc.execute("ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partitionName
+                + " WITH TABLE " + qualified + " WITHOUT VALIDATION");
+        archived.increment();
+        log.info("Archived {} partition {} into {}", TABLE, partitionName, qualified);
+    }
+
+    private String archiveSchema() {
+        return archiveSchema.isEmpty() ? jdbc.queryForObject("SELECT DATABASE()", String.class) : archiveSchema;
+    }
+
+    private List<PartitionInfo> listPartitions() {
+        return jdbc.query("""
+                        SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS
+                        FROM information_schema.PARTITIONS
+                        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                        ORDER BY PARTITION_ORDINAL_POSITION
+                        """,
+                (rs, rowNum) -> new PartitionInfo(rs.getString(1), parseBound(rs.getString(2)), rs.getLong(3)),
+                TABLE);
+    }
+
+    private static LocalDateTime parseBound(String description) {
+        if (description == null || MAXVALUE.equalsIgnoreCase(description.trim())) {
+            return null;
+        }
+        return LocalDateTime.parse(description.replace("'", "").trim(), BOUND_FORMAT);
+    }
+
+    private static String partitionName(LocalDate start) {
+        return "p_" + start.format(NAME_FORMAT);
+    }
+
+    private static String definition(String name, LocalDate lessThan) {
+        return "PARTITION " + name + " VALUES LESS THAN ('" + lessThan.atStartOfDay().format(BOUND_FORMAT) + "')";
+    }
+
+    private record PartitionInfo(String name, LocalDateTime upperBound, long rows) {}
+}
@@ -0,0 +1,49 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ingest.retention")
+public class RetentionProperties {
+    private boolean enabled = false;
+    /** Age after which events are purged; 0 keeps them forever. */
+    private int defaultMaxAgeDays = 0;
+    private Map<String, Integer> maxAgeDays = new HashMap<>();
+    /** Rows removed per DELETE statement. */
+    private int chunkSize = 500;
+    /** Pause between chunks as a multiple of the last chunk's duration. */
+    private double sleepRatio = 1.0;
+    private long minSleepMs = 50;
+    private long maxSleepMs = 5000;
+    /** Back-off signals: InnoDB row lock waits, ingest pool wait, undo history length and replica lag above these. */
+    private long maxLockWaits = 0;
+    private double maxPoolWaitMs = 50;
+    private long maxHistoryLength = 1000000;
+    private long maxReplicaLagMs = 5000;
+    private long intervalMs = 3600000;
+
+    public int maxAgeDaysOf(String factoryId) {
+        return maxAgeDays.getOrDefault(factoryId, defaultMaxAgeDays);
+    }
+
+    /**
+     * The shortest age any factory keeps while the purge is enabled; 0 when nothing is purged.
+     */
+    public int shortestMaxAgeDays() {
+        if (!enabled) {
+            return 0;
+        }
+        return IntStream.concat(IntStream.of(defaultMaxAgeDays),
+                        maxAgeDays.values().stream().mapToInt(Integer::intValue))
+                .filter(days -> days > 0)
+                .min()
+                .orElse(0);
+    }
+}
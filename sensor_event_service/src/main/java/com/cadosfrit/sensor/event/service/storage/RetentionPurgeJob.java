@@ -0,0 +1,369 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.dto.RetentionStatsDTO;
+import com.cadosfrit.sensor.event.service.flowcontrol.AdaptiveConcurrencyLimiter;
+import com.cadosfrit.sensor.event.service.model.RetentionCheckpoint;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRouter;
+import com.cadosfrit.sensor.event.service.repository.RetentionCheckpointRepository;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes machine_events older than each factory's retention age, together with everything else kept per event
+ * or per machine and time, without stalling ingest.
+ * Chunks are not walked in primary-key order: event_id says nothing about age, so that walk would read the whole
+ * table to find the expired rows. Instead each chunk takes the oldest {@code chunk-size} expired ids of one machine
+ * from the (machine_key, event_time) index and deletes them by key, together with their versions and id claims,
+ * in one transaction. The machine's heartbeats, heartbeat minutes, summaries, hourly rollups and cold segments
+ * before the cutoff follow in chunks of the same size. The cutoff is aligned to the hour, so minute and hour
+ * counters go exactly with their rows. Between chunks the job sleeps in proportion to the chunk's
+ * duration and backs off exponentially while InnoDB reports row lock waits, the ingest pool is waiting for
+ * connections, the undo history (purge backlog) grows or the read replica falls behind.
+ * Progress is checkpointed per factory after every machine; runs execute on their own thread so the shared
+ * scheduler (WAL drainer, compactor) is never blocked.
+ */
+@Slf4j
+@Component
+public class RetentionPurgeJob {
+
+    private static final String TABLE = StorageLayoutManager.TABLE;
+
+    private final RetentionProperties properties;
+    private final RetentionCheckpointRepository checkpointRepository;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ReplicaRouter replicaRouter;
+    private final ColdTierStore coldTier;
+    private final boolean versioned;
+    private final boolean eventRegistry;
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retention-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder deletedEvents = new LongAdder();
+    private final LongAdder deletedRelatedRows = new LongAdder();
+    private final LongAdder deletedColdEvents = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder backoffs = new LongAdder();
+    private volatile long sleepMs;
+    private volatile long lastRunDeleted;
+    private volatile double lastRunEventsPerSecond;
+    private volatile Instant lastRunAt;
+
+    public RetentionPurgeJob(RetentionProperties properties,
+                             RetentionCheckpointRepository checkpointRepository,
+                             AdaptiveConcurrencyLimiter limiter,
+                             ReplicaRouter replicaRouter,
+                             ColdTierStore coldTier,
+                             IngestSessionSettings sessionSettings,
+                             @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.properties = properties;
+        this.checkpointRepository = checkpointRepository;
+        this.limiter = limiter;
+        this.replicaRouter = replicaRouter;
+        this.coldTier = coldTier;
+        this.versioned = sessionSettings.getStorageMode() == StorageMode.VERSIONED;
+        this.eventRegistry = sessionSettings.isEventRegistryEnabled();
+        this.jdbc = new JdbcTemplate(ingestDataSource);
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(ingestDataSource));
+        this.sleepMs = properties.getMinSleepMs();
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.retention.interval-ms:3600000}")
+    public void scheduledRun() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            log.debug("Retention purge executor is shut down");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * One pass over all factories; a pass already in progress makes this a no-op.
+     *
+     * @return events deleted by this pass
+     */
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long deleted = 0;
+        try {
+            for (Map.Entry<String, List<MachineRef>> factory : machinesByFactory().entrySet()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                int maxAgeDays = properties.maxAgeDaysOf(factory.getKey());
+                if (maxAgeDays > 0) {
+                    deleted += purgeFactory(factory.getKey(), factory.getValue(), maxAgeDays);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error purging expired {}", TABLE, e);
+        } finally {
+            double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+            lastRunDeleted = deleted;
+            lastRunEventsPerSecond = deleted / seconds;
+            lastRunAt = Instant.now();
+            running.set(false);
+        }
+        if (deleted > 0) {
+            log.info("Retention purge deleted {} events ({} events/sec)", deleted, String.format("%.0f", lastRunEventsPerSecond));
+        }
+        return deleted;
+    }
+
+    public RetentionStatsDTO getStats() {
+        List<RetentionStatsDTO.Factory> factories = new ArrayList<>();
+        try {
+            for (RetentionCheckpoint checkpoint : checkpointRepository.findAll()) {
+                factories.add(RetentionStatsDTO.Factory.builder()
+                        .factoryId(checkpoint.getFactoryId())
+                        .maxAgeDays(properties.maxAgeDaysOf(checkpoint.getFactoryId()))
+                        .nextMachineKey(checkpoint.getNextMachineKey())
+                        .cutoff(checkpoint.getCutoff())
+                        .deletedEvents(checkpoint.getDeletedEvents())
+                        .lastCompletedAt(checkpoint.getLastCompletedAt())
+                        .build());
+            }
+        } catch (Exception e) {
+            log.warn("Error reading retention checkpoints", e);
+        }
+        return RetentionStatsDTO.builder()
+                .enabled(properties.isEnabled())
+                .running(running.get())
+                .deletedEvents(deletedEvents.sum())
+                .deletedRelatedRows(deletedRelatedRows.sum())
+                .deletedColdEvents(deletedColdEvents.sum())
+                .chunks(chunks.sum())
+                .backoffs(backoffs.sum())
+                .currentSleepMs(sleepMs)
+                .lastRunDeleted(lastRunDeleted)
+                .lastRunEventsPerSecond(lastRunEventsPerSecond)
+                .lastRunAt(lastRunAt)
+                .factories(factories)
+                .build();
+    }
+
+    private long purgeFactory(String factoryId, List<MachineRef> machines, int maxAgeDays)
+            throws InterruptedException, IOException {
+        RetentionCheckpoint checkpoint = checkpointRepository.findById(factoryId).orElseGet(() -> {
+            RetentionCheckpoint fresh = new RetentionCheckpoint();
+            fresh.setFactoryId(factoryId);
+            return fresh;
+        });
+        Instant cutoff = cutoff(maxAgeDays);
+        Integer resumeFrom = checkpoint.getNextMachineKey();
+        checkpoint.setCutoff(cutoff);
+
+        long deleted = 0;
+        for (int i = 0; i < machines.size(); i++) {
+            MachineRef machine = machines.get(i);
+            if (resumeFrom != null && machine.key() < resumeFrom) {
+                continue;
+            }
+            long machineDeleted = purgeMachine(machine, cutoff);
+            deleted += machineDeleted;
+
+            checkpoint.setDeletedEvents(checkpoint.getDeletedEvents() + machineDeleted);
+            checkpoint.setNextMachineKey(i + 1 < machines.size() ? machines.get(i + 1).key() : null);
+            checkpoint.setUpdatedAt(Instant.now());
+            checkpointRepository.save(checkpoint);
+        }
+
+        checkpoint.setNextMachineKey(null);
+        checkpoint.setLastCompletedAt(Instant.now());
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+        return deleted;
+    }
+
+    /**
+     * The retention cutoff of a factory keeping {@code maxAgeDays}, aligned down to the hour.
+     */
+    public static Instant cutoff(int maxAgeDays) {
+        return Instant.now().minus(maxAgeDays, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /**
+     * @return events deleted from machine_events
+     */
+    private long purgeMachine(MachineRef machine, Instant cutoff) throws InterruptedException, IOException {
+        LocalDateTime utcCutoff = LocalDateTime.ofInstant(cutoff, ZoneOffset.UTC);
+        long deleted = 0;
+        while (true) {
+            long start = System.nanoTime();
+            List<String> eventIds = jdbc.queryForList("SELECT event_id FROM " + TABLE
+                    + " WHERE machine_key = ? AND event_time < ? ORDER BY event_time LIMIT ?",
+                    String.class, machine.key(), utcCutoff, properties.getChunkSize());
+            int rows = eventIds.isEmpty() ? 0 : deleteEvents(eventIds, utcCutoff);
+            long chunkMs = (System.nanoTime() - start) / 1_000_000;
+            deleted += rows;
+            deletedEvents.add(rows);
+            if (eventIds.isEmpty()) {
+                break;
+            }
+            chunks.increment();
+            if (eventIds.size() < properties.getChunkSize()) {
+                break;
+            }
+            Thread.sleep(nextSleepMs(chunkMs));
+        }
+
+        purgeChunked("DELETE FROM heartbeat_ledger WHERE machine_id = ? AND event_time < ? ORDER BY event_time",
+                machine.id(), utcCutoff);
+        purgeChunked("DELETE FROM machine_heartbeat_minutes WHERE machine_id = ? AND minute_start < ? ORDER BY minute_start",
+                machine.id(), utcCutoff);
+        purgeChunked("DELETE FROM machine_event_summaries WHERE machine_id = ? AND interval_start < ? ORDER BY interval_start",
+                machine.id(), utcCutoff);
+        purgeChunked("DELETE FROM machine_event_rollup_hour WHERE machine_id = ? AND hour_start < ? ORDER BY hour_start",
+                machine.id(), utcCutoff);
+        // Segments hold whole UTC days, so the day the cutoff falls into stays until the next day expires
+        deletedColdEvents.add(coldTier.purge(machine.id(), utcCutoff.toLocalDate()));
+        // Their ids go after the segments, so a resend is never accepted while its cold copy still counts
+        purgeChunked("DELETE FROM cold_event_ids WHERE machine_id = ? AND cold_day < ? ORDER BY cold_day",
+                machine.id(), utcCutoff.toLocalDate().atStartOfDay());
+        return deleted;
+    }
+
+    /**
+     * One chunk in one transaction: an event whose row was moved past the cutoff meanwhile keeps its versions,
+     * and an id keeps its claim while any row still holds it.
+     */
+    private int deleteEvents(List<String> eventIds, LocalDateTime utcCutoff) {
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", eventIds).addValue("cutoff", utcCutoff);
+        Integer rows = transactionTemplate.execute(status -> {
+            int deleted = namedJdbc.update("DELETE FROM " + TABLE
+                    + " WHERE event_id IN (:ids) AND event_time < :cutoff", params);
+            if (versioned) {
+                deletedRelatedRows.add(namedJdbc.update("""
+                        DELETE FROM machine_event_versions
+                        WHERE event_id IN (:ids) AND event_time < :cutoff
+                          AND NOT EXISTS (SELECT 1 FROM machine_events e WHERE e.event_id = machine_event_versions.event_id)
+                        """, params));
+            }
+            if (eventRegistry) {
+                deletedRelatedRows.add(namedJdbc.update("""
+                        DELETE r FROM event_ids r
+                        LEFT JOIN machine_events e ON e.event_id = r.event_id
+                        WHERE r.event_id IN (:ids) AND e.event_id IS NULL
+                        """, params));
+            }
+            return deleted;
+        });
+        return rows != null ? rows : 0;
+    }
+
+    private void purgeChunked(String delete, String machineId, LocalDateTime utcCutoff) throws InterruptedException {
+        while (true) {
+            long start = System.nanoTime();
+            int rows = jdbc.update(delete + " LIMIT ?", machineId, utcCutoff, properties.getChunkSize());
+            long chunkMs = (System.nanoTime() - start) / 1_000_000;
+            deletedRelatedRows.add(rows);
+            if (rows < properties.getChunkSize()) {
+                return;
+            }
+            chunks.increment();
+            Thread.sleep(nextSleepMs(chunkMs));
+        }
+    }
+
+    /**
+     * Duty-cycle pause after a chunk; doubles while any back-off signal fires and halves back once they clear.
+     */
+    private long nextSleepMs(long chunkMs) {
+        long base = (long) (chunkMs * properties.getSleepRatio());
+        long next;
+        if (underPressure()) {
+            backoffs.increment();
+            next = Math.max(base, sleepMs * 2);
+        } else {
+            next = Math.max(base, sleepMs / 2);
+        }
+        sleepMs = Math.max(properties.getMinSleepMs(), Math.min(properties.getMaxSleepMs(), next));
+        return sleepMs;
+    }
+
+    private boolean underPressure() {
+        if (limiter.getStats().getPoolWaitEwmaMs() > properties.getMaxPoolWaitMs()) {
+            return true;
+        }
+        if (replicaRouter.getLagMs().orElse(0) > properties.getMaxReplicaLagMs()) {
+            return true;
+        }
+        try {
+            Long lockWaits = jdbc.queryForObject("SELECT VARIABLE_VALUE FROM performance_schema.global_status "
+                    + "WHERE VARIABLE_NAME = 'Innodb_row_lock_current_waits'", Long.class);
+            if (lockWaits != null && lockWaits > properties.getMaxLockWaits()) {
+                return true;
+            }
+            Long historyLength = jdbc.queryForObject("SELECT COUNT FROM information_schema.INNODB_METRICS "
+                    + "WHERE NAME = 'trx_rseg_history_len'", Long.class);
+            return historyLength != null && historyLength > properties.getMaxHistoryLength();
+        } catch (Exception e) {
+            log.debug("Error reading purge back-off signals", e);
+            return false;
+        }
+    }
+
+    /**
+     * Machines without a registered factory are purged under {@link AppConstants#UNASSIGNED_FACTORY}.
+     */
+    private Map<String, List<MachineRef>> machinesByFactory() {
+        Map<String, List<MachineRef>> machines = new TreeMap<>();
+        jdbc.query("""
+                        SELECT k.machine_key, k.machine_id, COALESCE(pl.factory_id, ?) AS factory_id
+                        FROM machine_keys k
+                        LEFT JOIN machines m ON m.machine_id = k.machine_id
+                        LEFT JOIN production_lines pl ON pl.line_id = m.line_id
+                        ORDER BY k.machine_key
+                        """,
+                (RowCallbackHandler) rs -> machines.computeIfAbsent(rs.getString("factory_id"), id -> new ArrayList<>())
+                        .add(new MachineRef(rs.getInt("machine_key"), rs.getString("machine_id"))),
+                AppConstants.UNASSIGNED_FACTORY);
+        return machines;
+    }
+
+    private record MachineRef(int key, String id) {}
+}
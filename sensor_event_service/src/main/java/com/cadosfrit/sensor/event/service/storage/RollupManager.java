@@ -0,0 +1,306 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.config.IngestSessionSettings;
+import com.cadosfrit.sensor.event.service.constants.EventStoreType;
+import com.cadosfrit.sensor.event.service.constants.StorageMode;
+import com.cadosfrit.sensor.event.service.dto.RollupStatsDTO;
+import com.cadosfrit.sensor.event.service.sharding.ShardDataSources;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.sharding.ShardingProperties;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Brings machine_event_rollup_hour in line with the raw rows and tells the stats queries which whole hours they may
+ * read from it. The procedures keep the rollups current with deltas from the moment {@code @ingest_rollups} is set;
+ * hours written before that are reconciled once at startup, newest first, going back {@code window-days}.
+ * <p>
+ * Reconciling an hour reads the raw totals and the rollup rows in one REPEATABLE READ snapshot and adds the
+ * difference onto the live rollup rows. An ingest that commits after the snapshot changed both the raw rows and
+ * the rollup, and the upsert sees its delta, so the result is exact while ingest keeps running.
+ * Reconciling an already consistent hour changes nothing.
+ */
+@Slf4j
+@Component
+public class RollupManager {
+
+    private static final String EVENT_HOUR_SQL = """
+            SELECT k.machine_id, COUNT(*) AS events,
+                   SUM(CASE WHEN e.defect_count = -1 THEN 0 ELSE e.defect_count END) AS defects
+            FROM machine_events e
+            JOIN machine_keys k ON k.machine_key = e.machine_key
+            WHERE e.event_time >= ? AND e.event_time < ?
+            GROUP BY k.machine_id
+            """;
+    private static final String HEARTBEAT_HOUR_SQL = """
+            SELECT machine_id, COUNT(*) AS events, 0 AS defects
+            FROM heartbeat_ledger
+            WHERE event_time >= ? AND event_time < ?
+            GROUP BY machine_id
+            """;
+    private static final String ROLLUP_HOUR_SQL = """
+            SELECT machine_id, event_count AS events, defect_sum AS defects
+            FROM machine_event_rollup_hour
+            WHERE hour_start = ?
+            """;
+    private static final String CORRECT_SQL = """
+            INSERT INTO machine_event_rollup_hour (machine_id, hour_start, event_count, defect_sum)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), defect_sum = defect_sum + VALUES(defect_sum)
+            """;
+
+    private final boolean enabled;
+    private final int windowDays;
+    private final boolean heartbeatsCompacted;
+    private final ColdTierStore coldTier;
+    private final RetentionProperties retention;
+    private final PartitionManager partitions;
+    private final Map<String, JdbcTemplate> shards = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rollup-reconcile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Whole hours from here on are exact on every shard; null until the current hour is reconciled
+    private volatile Instant coveredFrom;
+    private volatile Instant lastReconcileAt;
+    private final LongAdder reconciledHours = new LongAdder();
+    private final LongAdder correctedRows = new LongAdder();
+    private final LongAdder rollupReads = new LongAdder();
+
+    public RollupManager(@Value("${ingest.rollups.enabled:false}") boolean enabled,
+                         @Value("${ingest.rollups.window-days:7}") int windowDays,
+                         @Value("${ingest.store.type:MYSQL}") EventStoreType storeType,
+                         IngestSessionSettings sessionSettings,
+                         ColdTierStore coldTier,
+                         RetentionProperties retention,
+                         PartitionManager partitions,
+                         ShardingProperties shardingProperties,
+                         ObjectProvider<ShardDataSources> shardDataSources,
+                         @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        boolean versioned = sessionSettings.getStorageMode() == StorageMode.VERSIONED;
+        if (enabled && (storeType != EventStoreType.MYSQL || versioned)) {
+            log.warn("Hourly rollups are not available with {}, stats keep reading raw rows",
+                    versioned ? "ingest.storage.mode=VERSIONED" : "ingest.store.type=" + storeType);
+        }
+        this.enabled = enabled && storeType == EventStoreType.MYSQL && !versioned;
+        this.windowDays = Math.max(1, windowDays);
+        this.heartbeatsCompacted = sessionSettings.getStorageMode() == StorageMode.HEARTBEAT_COMPACTED;
+        this.coldTier = coldTier;
+        this.retention = retention;
+        this.partitions = partitions;
+
+        shards.put(ShardRouter.PRIMARY, new JdbcTemplate(ingestDataSource));
+        ShardDataSources dataSources = shardDataSources.getIfAvailable();
+        if (shardingProperties.isEnabled() && dataSources != null) {
+            dataSources.ingest().forEach((shard, dataSource) -> shards.put(shard, new JdbcTemplate(dataSource)));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            executor.execute(this::reconcileWindow);
+        } catch (RejectedExecutionException e) {
+            log.debug("Rollup reconcile executor is shut down");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The whole hours of [start, end) that may be read from the rollups: reconciled, inside the window, not in
+     * the cold tier, whose events have left machine_events, and not before the retention purge or partition drop
+     * cutoff, where events and rollups are removed in separate steps. With per-factory ages the shortest one
+     * applies to every machine.
+     */
+    public Optional<Hours> wholeHours(Instant start, Instant end) {
+        Instant covered = coveredFrom;
+        if (!enabled || covered == null) {
+            return Optional.empty();
+        }
+        Instant from = max(ceilHour(start), max(covered, ceilHour(Instant.now().minus(windowDays, ChronoUnit.DAYS))));
+        Optional<Instant> coldCutoff = coldTier.getCutoffInstant();
+        if (coldCutoff.isPresent()) {
+            from = max(from, ceilHour(coldCutoff.get()));
+        }
+        int shortestAgeDays = retention.shortestMaxAgeDays();
+        if (shortestAgeDays > 0) {
+            // One hour of slack: a purge starting while the query runs may already cut at the next hour
+            from = max(from, RetentionPurgeJob.cutoff(shortestAgeDays).plus(1, ChronoUnit.HOURS));
+        }
+        Optional<Instant> retainedFrom = partitions.getRetainedFrom();
+        if (retainedFrom.isPresent()) {
+            from = max(from, ceilHour(retainedFrom.get()));
+        }
+        Instant to = end.truncatedTo(ChronoUnit.HOURS);
+        if (!from.isBefore(to)) {
+            return Optional.empty();
+        }
+        rollupReads.increment();
+        return Optional.of(new Hours(from, to));
+    }
+
+    /**
+     * Reconciles one hour on every shard.
+     *
+     * @return rollup rows corrected
+     */
+    public int reconcileHour(Instant hourStart) {
+        int corrected = 0;
+        for (Map.Entry<String, JdbcTemplate> shard : shards.entrySet()) {
+            corrected += reconcileHour(shard.getValue(), hourStart);
+        }
+        reconciledHours.increment();
+        correctedRows.add(corrected);
+        return corrected;
+    }
+
+    public RollupStatsDTO getStats() {
+        return RollupStatsDTO.builder()
+                .enabled(enabled)
+                .windowDays(windowDays)
+                .coveredFrom(coveredFrom)
+                .reconciledHours(reconciledHours.sum())
+                .correctedRows(correctedRows.sum())
+                .rollupReads(rollupReads.sum())
+                .lastReconcileAt(lastReconcileAt)
+                .build();
+    }
+
+    /**
+     * Starts with the next hour, which may already receive events up to the future allowance, and walks back.
+     */
+    private void reconcileWindow() {
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS);
+        Instant oldest = ceilHour(Instant.now().minus(windowDays, ChronoUnit.DAYS));
+        long started = System.currentTimeMillis();
+        long corrected = 0;
+        while (!hour.isBefore(oldest) && !Thread.currentThread().isInterrupted()) {
+            try {
+                corrected += reconcileHour(hour);
+                coveredFrom = hour;
+                hour = hour.minus(1, ChronoUnit.HOURS);
+            } catch (Exception e) {
+                log.error("Error reconciling hourly rollups of {}, stopping at {}", hour, coveredFrom, e);
+                break;
+            }
+        }
+        lastReconcileAt = Instant.now();
+        log.info("Reconciled hourly rollups back to {} ({} rows corrected) in {} ms", coveredFrom, corrected,
+                System.currentTimeMillis() - started);
+    }
+
+    private int reconcileHour(JdbcTemplate jdbc, Instant hourStart) {
+        LocalDateTime from = LocalDateTime.ofInstant(hourStart, ZoneOffset.UTC);
+        LocalDateTime to = from.plusHours(1);
+        Integer corrected = jdbc.execute((ConnectionCallback<Integer>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setAutoCommit(false);
+            try {
+                // {events, defects} per machine: raw totals minus the rollup rows, all from one snapshot
+                Map<String, long[]> differences = new HashMap<>();
+                addTotals(connection, EVENT_HOUR_SQL, differences, 1, from, to);
+                if (heartbeatsCompacted) {
+                    addTotals(connection, HEARTBEAT_HOUR_SQL, differences, 1, from, to);
+                }
+                addTotals(connection, ROLLUP_HOUR_SQL, differences, -1, from);
+
+                int rows = 0;
+                try (PreparedStatement statement = connection.prepareStatement(CORRECT_SQL)) {
+                    for (Map.Entry<String, long[]> machine : differences.entrySet()) {
+                        long[] difference = machine.getValue();
+                        if (difference[0] == 0 && difference[1] == 0) {
+                            continue;
+                        }
+                        statement.setString(1, machine.getKey());
+                        statement.setObject(2, from);
+                        statement.setLong(3, difference[0]);
+                        statement.setLong(4, difference[1]);
+                        statement.addBatch();
+                        rows++;
+                    }
+                    if (rows > 0) {
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+                connection.setTransactionIsolation(isolation);
+            }
+        });
+        return corrected != null ? corrected : 0;
+    }
+
+    private static void addTotals(Connection connection, String sql, Map<String, long[]> totals, int sign,
+                                  Object... params) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    long[] machine = totals.computeIfAbsent(rs.getString("machine_id"), id -> new long[2]);
+                    machine[0] += sign * rs.getLong("events");
+                    machine[1] += sign * rs.getLong("defects");
+                }
+            }
+        }
+    }
+
+    private static Instant ceilHour(Instant instant) {
+        Instant floor = instant.truncatedTo(ChronoUnit.HOURS);
+        return floor.equals(instant) ? floor : floor.plus(1, ChronoUnit.HOURS);
+    }
+
+    private static Instant max(Instant left, Instant right) {
+        return left.isAfter(right) ? left : right;
+    }
+
+    /**
+     * Whole hours [from, to) answered by the rollups.
+     */
+    public record Hours(Instant from, Instant to) {}
+}
@@ -0,0 +1,92 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a schema next to the production one holding only what an ingest path needs: empty copies of the named
+ * tables and the named procedures of {@code schema.sql}, created schema-qualified so unqualified table names in
+ * their bodies resolve to the copies. Used by shadow mode and the layout benchmark.
+ */
+public final class ScratchSchema {
+
+    /**
+     * What {@code process_event_batch} and {@code process_batch_sequential} read and write, whichever session
+     * flags are set.
+     */
+    public static final List<String> EVENT_INGEST_TABLES = List.of("machine_events", "machine_keys", "event_ids",
+            "heartbeat_ledger", "machine_heartbeat_minutes", "machine_event_versions", "event_outbox",
+            "machine_event_rollup_hour");
+    public static final List<String> EVENT_INGEST_PROCEDURES = List.of("process_event_batch", "process_batch_sequential",
+            "ingest_resolve_machine_key", "ingest_store_heartbeat", "ingest_remove_heartbeat", "ingest_record_change",
+            "ingest_rollup_change");
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final Pattern PROCEDURE_STATEMENT =
+            Pattern.compile("^(DROP PROCEDURE IF EXISTS|CREATE PROCEDURE)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private ScratchSchema() {}
+
+    /**
+     * Creates the schema and the missing tables {@code LIKE} their counterparts in the connection's default schema.
+     */
+    public static void createTables(JdbcTemplate jdbc, String schema, Collection<String> tables) {
+        requireIdentifiers(schema, tables);
+        jdbc.execute("CREATE DATABASE IF NOT EXISTS `" + schema + "`");
+        for (String table : tables) {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS `" + schema + "`.`" + table + "` LIKE `" + table + "`");
+        }
+    }
+
+    /**
+     * (Re)creates the named procedures of {@code schema.sql} in the schema.
+     */
+    public static void installProcedures(JdbcTemplate jdbc, String schema, Collection<String> procedures) {
+        requireIdentifiers(schema, procedures);
+        String script;
+        try {
+            script = new ClassPathResource("schema.sql").getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read schema.sql", e);
+        }
+        int installed = 0;
+        for (String chunk : script.split(";;")) {
+            String statement = withoutLeadingComments(chunk);
+            Matcher matcher = PROCEDURE_STATEMENT.matcher(statement);
+            if (!matcher.find() || !procedures.contains(matcher.group(2))) {
+                continue;
+            }
+            jdbc.execute(matcher.group(1) + " `" + schema + "`.`" + matcher.group(2) + "`"
+                    + statement.substring(matcher.end()));
+            if (matcher.group(1).toUpperCase().startsWith("CREATE")) {
+                installed++;
+            }
+        }
+        if (installed != procedures.size()) {
+            throw new IllegalStateException("schema.sql defines only " + installed + " of the procedures " + procedures);
+        }
+    }
+
+    private static String withoutLeadingComments(String chunk) {
+        String statement = chunk.strip();
+        while (statement.startsWith("--")) {
+            int lineEnd = statement.indexOf('\n');
+            statement = lineEnd < 0 ? "" : statement.substring(lineEnd + 1).strip();
+        }
+        return statement;
+    }
+
+    private static void requireIdentifiers(String schema, Collection<String> names) {
+        if (!IDENTIFIER.matcher(schema).matches() || !names.stream().allMatch(name -> IDENTIFIER.matcher(name).matches())) {
+            throw new IllegalStateException("Invalid schema, table or procedure name");
+        }
+    }
+}
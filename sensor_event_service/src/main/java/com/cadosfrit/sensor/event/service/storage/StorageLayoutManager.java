@@ -0,0 +1,139 @@
+package com.cadosfrit.sensor.event.service.storage;
+
+import com.cadosfrit.sensor.event.service.constants.EventStoreType;
+import com.cadosfrit.sensor.event.service.constants.StorageLayout;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Owns the keys of machine_events: the clustered primary key, the event_id lookup key and idx_machine_key_time.
+ * Hibernate only creates the table; on startup this manager migrates it to the configured {@link StorageLayout}
+ * with one ALTER TABLE (a table rebuild, so a layout switch on a large table should be scheduled).
+ * MySQL requires the partition column in every unique key, so on a partitioned table event_id gets a plain
+ * index; uniqueness then comes from the event_ids registry the stored procedures claim ids in.
+ */
+@Slf4j
+@Component
+public class StorageLayoutManager {
+
+    static final String TABLE = "machine_events";
+    private static final String UNIQUE_EVENT_ID = "uk_event_id";
+    private static final String EVENT_ID_INDEX = "idx_event_id";
+    private static final String MACHINE_TIME_INDEX = "idx_machine_key_time";
+
+    private final StorageLayout layout;
+    private final EventStoreType storeType;
+    private final JdbcTemplate jdbc;
+
+    public StorageLayoutManager(@Value("${ingest.storage.layout:EVENT_ID}") StorageLayout layout,
+                                @Value("${ingest.store.type:MYSQL}") EventStoreType storeType,
+                                @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.layout = layout;
+        this.storeType = storeType;
+        this.jdbc = new JdbcTemplate(ingestDataSource);
+    }
+
+    /**
+     * Runs before partitioning (which builds on these keys), after Hibernate has created the table and
+     * MachineKeyDictionary has moved it to machine_key.
+     */
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void applyLayout() {
+        if (storeType != EventStoreType.MYSQL) {
+            return;
+        }
+        try {
+            List<String> changes = alterSpecs(isPartitioned());
+            if (changes.isEmpty()) {
+                return;
+            }
+            log.info("Migrating {} to the {} layout: {}", TABLE, layout, changes);
+            jdbc.execute("ALTER TABLE " + TABLE + " " + String.join(", ", changes));
+        } catch (Exception e) {
+            log.error("Error applying the {} layout to {}", layout, TABLE, e);
+        }
+    }
+
+    public StorageLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * ALTER TABLE clauses that bring the current keys to the configured layout.
+     *
+     * @param partitioned whether the table is (or is about to be) range partitioned on event_time
+     */
+    public List<String> alterSpecs(boolean partitioned) {
+        return alterSpecs(jdbc, jdbc.queryForObject("SELECT DATABASE()", String.class), layout, partitioned);
+    }
+
+    /**
+     * ALTER TABLE clauses that bring machine_events of the given schema to a layout; the layout benchmark
+     * uses this on its scratch copies.
+     */
+    public static List<String> alterSpecs(JdbcTemplate jdbc, String schema, StorageLayout layout, boolean partitioned) {
+        List<String> primaryKey = primaryKeyColumns(layout, partitioned);
+        Set<String> indexes = new HashSet<>(jdbc.queryForList("""
+                SELECT DISTINCT INDEX_NAME FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?
+                """, String.class, schema, TABLE));
+        List<String> currentPrimaryKey = jdbc.queryForList("""
+                SELECT COLUMN_NAME FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = 'PRIMARY'
+                ORDER BY SEQ_IN_INDEX
+                """, String.class, schema, TABLE);
+
+        List<String> specs = new ArrayList<>();
+        if (!currentPrimaryKey.equals(primaryKey)) {
+            specs.add("DROP PRIMARY KEY");
+            specs.add("ADD PRIMARY KEY (" + String.join(", ", primaryKey) + ")");
+        }
+
+        String eventIdKey = layout == StorageLayout.EVENT_ID ? null : (partitioned ? EVENT_ID_INDEX : UNIQUE_EVENT_ID);
+        for (String key : List.of(UNIQUE_EVENT_ID, EVENT_ID_INDEX)) {
+            if (indexes.contains(key) && !key.equals(eventIdKey)) {
+                specs.add("DROP INDEX " + key);
+            }
+        }
+        if (eventIdKey != null && !indexes.contains(eventIdKey)) {
+            specs.add((eventIdKey.equals(UNIQUE_EVENT_ID) ? "ADD UNIQUE KEY " : "ADD INDEX ") + eventIdKey + " (event_id)");
+        }
+
+        // Redundant once (machine_key, event_time) is the clustered prefix
+        boolean needsMachineTimeIndex = layout == StorageLayout.EVENT_ID;
+        if (needsMachineTimeIndex && !indexes.contains(MACHINE_TIME_INDEX)) {
+            specs.add("ADD INDEX " + MACHINE_TIME_INDEX + " (machine_key, event_time)");
+        } else if (!needsMachineTimeIndex && indexes.contains(MACHINE_TIME_INDEX)) {
+            specs.add("DROP INDEX " + MACHINE_TIME_INDEX);
+        }
+        return specs;
+    }
+
+    private static List<String> primaryKeyColumns(StorageLayout layout, boolean partitioned) {
+        return switch (layout) {
+            case EVENT_ID -> partitioned ? List.of("event_id", "event_time") : List.of("event_id");
+            case MACHINE_TIME -> List.of("machine_key", "event_time", "event_id");
+        };
+    }
+
+    private boolean isPartitioned() {
+        Integer partitions = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                """, Integer.class, TABLE);
+        return partitions != null && partitions > 0;
+    }
+}
@@ -0,0 +1,410 @@
+package com.cadosfrit.sensor.event.service.store;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-process store for sites without MySQL, with the same rules as the stored procedures (STANDARD storage mode).
+ * Rows live in parallel primitive columns and are overwritten in place on update. An open-addressing table of
+ * int row numbers indexes them by event id. Each machine keeps its rows in an array sorted by event time, so a
+ * windowed aggregate is two binary searches and a scan of exactly the rows in the window.
+ * Writers take the write lock for a whole {@link #inTransaction} call, so readers never see half a batch.
+ * Each row a transaction touches is logged before it changes; if the work throws, the log is undone in reverse
+ * and the store is back to where the transaction began.
+ * Contents are not persisted and are lost on restart.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ingest.store.type", havingValue = "EMBEDDED")
+public class EmbeddedEventStore implements EventStore {
+
+    private static final int NO_ROW = -1;
+
+    private final EmbeddedStoreProperties properties;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Machine dictionary: key is the index into machineIds / series
+    private final Map<String, Integer> machineKeys = new HashMap<>();
+    private final List<String> machineIds = new ArrayList<>();
+    private final List<MachineSeries> series = new ArrayList<>();
+
+    // Row columns
+    private String[] eventIds;
+    private int[] machineKeyColumn;
+    private long[] eventTimeMicros;
+    private long[] receivedTimeMicros;
+    private long[] durationMs;
+    private int[] defectCount;
+    private int rowCount;
+
+    // Event id index: row + 1 per slot, 0 = empty; rows are only removed by a rollback, which rebuilds the index
+    private int[] slots;
+
+    // Undo log of the open transaction; guarded by the write lock like the columns
+    private int transactionDepth;
+    private List<Undo> undoLog;
+    private int rowCountAtBegin;
+    private int machineCountAtBegin;
+
+    public EmbeddedEventStore(EmbeddedStoreProperties properties) {
+        this.properties = properties;
+        int capacity = Math.max(16, properties.getInitialCapacity());
+        eventIds = new String[capacity];
+        machineKeyColumn = new int[capacity];
+        eventTimeMicros = new long[capacity];
+        receivedTimeMicros = new long[capacity];
+        durationMs = new long[capacity];
+        defectCount = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    @Override
+    public <T> T inTransaction(Supplier<T> work) {
+        lock.writeLock().lock();
+        boolean outermost = transactionDepth++ == 0;
+        try {
+            if (outermost) {
+                undoLog = new ArrayList<>();
+                rowCountAtBegin = rowCount;
+                machineCountAtBegin = machineIds.size();
+            }
+            T result;
+            try {
+                result = work.get();
+            } catch (RuntimeException | Error e) {
+                if (outermost) {
+                    rollback();
+                }
+                throw e;
+            }
+            return result;
+        } finally {
+            if (outermost) {
+                undoLog = null;
+            }
+            transactionDepth--;
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Counts upsertBatch(List<EventRequestDTO> events, Instant receivedTime) {
+        return upsertSequential(events, receivedTime);
+    }
+
+    /**
+     * Ids are unique in a set-based batch, so applying its events in order gives the set-based result as well.
+     */
+    @Override
+    public Counts upsertSequential(List<EventRequestDTO> events, Instant receivedTime) {
+        if (events == null || events.isEmpty()) {
+            return Counts.EMPTY;
+        }
+        long received = toMicros(receivedTime);
+        return inTransaction(() -> {
+            int accepted = 0;
+            int updated = 0;
+            int deduped = 0;
+            for (EventRequestDTO event : events) {
+                if (event == null || event.getEventId() == null || event.getEventTime() == null) {
+                    continue;
+                }
+                switch (apply(event, received)) {
+                    case ACCEPTED -> accepted++;
+                    case UPDATED -> updated++;
+                    case DEDUPED -> deduped++;
+                }
+            }
+            return new Counts(accepted, updated, deduped);
+        });
+    }
+
+    @Override
+    public Object[] getMachineStatsRaw(String machineId, Instant from, Instant to) {
+        lock.readLock().lock();
+        try {
+            Integer key = machineKeys.get(machineId);
+            if (key == null) {
+                return new Object[]{null, 0L};
+            }
+            long[] totals = series.get(key).aggregate(toMicros(from), toMicros(to));
+            return new Object[]{totals[1] > 0 ? totals[0] : null, totals[1]};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Object[]> findTopDefectLinesRaw(String factoryId, Instant from, Instant to, int limit) {
+        Map<String, String> machineLines = findMachineLines(factoryId);
+        Map<String, long[]> lines = new HashMap<>();
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+
+        lock.readLock().lock();
+        try {
+            machineLines.forEach((machineId, lineId) -> {
+                Integer key = machineKeys.get(machineId);
+                if (key == null) {
+                    return;
+                }
+                long[] totals = series.get(key).aggregate(fromMicros, toMicros);
+                long[] line = lines.computeIfAbsent(lineId, id -> new long[2]);
+                line[0] += totals[0];
+                line[1] += totals[1];
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return lines.entrySet().stream()
+                .filter(line -> line.getValue()[1] > 0)
+                .map(line -> new Object[]{
+                        line.getKey(),
+                        line.getValue()[0],
+                        line.getValue()[1],
+                        line.getValue()[0] * 100.0 / line.getValue()[1]
+                })
+                .sorted(Comparator.comparingDouble((Object[] row) -> (double) row[3]).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public Map<String, String> findMachineLines(String factoryId) {
+        return properties.machineLines(factoryId);
+    }
+
+    @Override
+    public Optional<String> findFactoryId(String machineId) {
+        return properties.factoryOf(machineId);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Status apply(EventRequestDTO event, long received) {
+        int machineKey = machineKey(event.getMachineId());
+        long eventTime = toMicros(event.getEventTime());
+        int row = find(event.getEventId());
+
+        if (row == NO_ROW) {
+            row = append(event.getEventId());
+            write(row, machineKey, eventTime, received, event);
+            series.get(machineKey).insert(eventTime, row);
+            return Status.ACCEPTED;
+        }
+
+        if (machineKeyColumn[row] == machineKey && eventTimeMicros[row] == eventTime
+                && durationMs[row] == event.getDurationMs() && defectCount[row] == event.getDefectCount()) {
+            return Status.DEDUPED;
+        }
+
+        undoLog.add(new Undo(row, machineKeyColumn[row], eventTimeMicros[row], receivedTimeMicros[row],
+                durationMs[row], defectCount[row]));
+        if (machineKeyColumn[row] != machineKey || eventTimeMicros[row] != eventTime) {
+            series.get(machineKeyColumn[row]).remove(eventTimeMicros[row], row);
+            series.get(machineKey).insert(eventTime, row);
+        }
+        write(row, machineKey, eventTime, received, event);
+        return Status.UPDATED;
+    }
+
+    private void write(int row, int machineKey, long eventTime, long received, EventRequestDTO event) {
+        machineKeyColumn[row] = machineKey;
+        eventTimeMicros[row] = eventTime;
+        receivedTimeMicros[row] = received;
+        durationMs[row] = event.getDurationMs();
+        defectCount[row] = event.getDefectCount();
+    }
+
+    /**
+     * Restores every updated row from its before-image, newest first, then drops the rows and machines the
+     * transaction added. Added rows sit at the end of the columns, so dropping them is a truncation.
+     */
+    private void rollback() {
+        int added = rowCount - rowCountAtBegin;
+        for (int i = undoLog.size() - 1; i >= 0; i--) {
+            Undo undo = undoLog.get(i);
+            int row = undo.row();
+            if (machineKeyColumn[row] != undo.machineKey() || eventTimeMicros[row] != undo.eventTime()) {
+                series.get(machineKeyColumn[row]).remove(eventTimeMicros[row], row);
+                series.get(undo.machineKey()).insert(undo.eventTime(), row);
+            }
+            machineKeyColumn[row] = undo.machineKey();
+            eventTimeMicros[row] = undo.eventTime();
+            receivedTimeMicros[row] = undo.received();
+            durationMs[row] = undo.durationMs();
+            defectCount[row] = undo.defectCount();
+        }
+        if (added > 0) {
+            for (int row = rowCountAtBegin; row < rowCount; row++) {
+                if (machineKeyColumn[row] < machineCountAtBegin) {
+                    series.get(machineKeyColumn[row]).remove(eventTimeMicros[row], row);
+                }
+                eventIds[row] = null;
+            }
+            rowCount = rowCountAtBegin;
+            rehash(slots.length);
+        }
+        while (machineIds.size() > machineCountAtBegin) {
+            machineKeys.remove(machineIds.remove(machineIds.size() - 1));
+            series.remove(series.size() - 1);
+        }
+        log.debug("Rolled back an embedded store transaction of {} updated and {} added rows",
+                undoLog.size(), added);
+    }
+
+    private int machineKey(String machineId) {
+        Integer key = machineKeys.get(machineId);
+        if (key == null) {
+            key = machineIds.size();
+            machineKeys.put(machineId, key);
+            machineIds.add(machineId);
+            series.add(new MachineSeries());
+        }
+        return key;
+    }
+
+    private int find(String eventId) {
+        int mask = slots.length - 1;
+        for (int i = spread(eventId.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return NO_ROW;
+            }
+            if (eventIds[slot - 1].equals(eventId)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    private int append(String eventId) {
+        if (rowCount == eventIds.length) {
+            int capacity = eventIds.length * 2;
+            eventIds = Arrays.copyOf(eventIds, capacity);
+            machineKeyColumn = Arrays.copyOf(machineKeyColumn, capacity);
+            eventTimeMicros = Arrays.copyOf(eventTimeMicros, capacity);
+            receivedTimeMicros = Arrays.copyOf(receivedTimeMicros, capacity);
+            durationMs = Arrays.copyOf(durationMs, capacity);
+            defectCount = Arrays.copyOf(defectCount, capacity);
+        }
+        int row = rowCount++;
+        eventIds[row] = eventId;
+        if (rowCount * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            index(row, slots);
+        }
+        return row;
+    }
+
+    private void rehash(int size) {
+        int[] resized = new int[size];
+        for (int row = 0; row < rowCount; row++) {
+            index(row, resized);
+        }
+        slots = resized;
+    }
+
+    private void index(int row, int[] table) {
+        int mask = table.length - 1;
+        int i = spread(eventIds[row].hashCode()) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = row + 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    private enum Status { ACCEPTED, UPDATED, DEDUPED }
+
+    /**
+     * Before-image of an updated row.
+     */
+    private record Undo(int row, int machineKey, long eventTime, long received, long durationMs, int defectCount) {}
+
+    /**
+     * One machine's rows ordered by event time; sensors mostly report in time order, so inserts are usually appends.
+     */
+    private final class MachineSeries {
+        private long[] times = new long[16];
+        private int[] rows = new int[16];
+        private int size;
+
+        void insert(long time, int row) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            int position = size > 0 && times[size - 1] <= time ? size : lowerBound(time + 1);
+            System.arraycopy(times, position, times, position + 1, size - position);
+            System.arraycopy(rows, position, rows, position + 1, size - position);
+            times[position] = time;
+            rows[position] = row;
+            size++;
+        }
+
+        void remove(long time, int row) {
+            for (int i = lowerBound(time); i < size && times[i] == time; i++) {
+                if (rows[i] == row) {
+                    System.arraycopy(times, i + 1, times, i, size - i - 1);
+                    System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return {defect sum without -1 heartbeats, event count} over [from, to)
+         */
+        long[] aggregate(long from, long to) {
+            int start = lowerBound(from);
+            int end = lowerBound(to);
+            long defects = 0;
+            for (int i = start; i < end; i++) {
+                int defect = defectCount[rows[i]];
+                if (defect != -1) {
+                    defects += defect;
+                }
+            }
+            return new long[]{defects, Math.max(0, end - start)};
+        }
+
+        // First position whose time is >= the given time
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.cadosfrit.sensor.event.service.store;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ingest.store.embedded")
+public class EmbeddedStoreProperties {
+    /** Rows allocated up front; the columns double when full. */
+    private int initialCapacity = 65536;
+    /** Factory hierarchy of the in-process stores (EMBEDDED and LSM): machine id to line id, line id to factory id. */
+    private Map<String, String> machines = new HashMap<>();
+    private Map<String, String> lines = new HashMap<>();
+
+    /**
+     * machine_id to line_id for every configured machine of the factory.
+     */
+    public Map<String, String> machineLines(String factoryId) {
+        Map<String, String> machineLines = new HashMap<>();
+        machines.forEach((machineId, lineId) -> {
+            if (factoryId.equals(lines.get(lineId))) {
+                machineLines.put(machineId, lineId);
+            }
+        });
+        return machineLines;
+    }
+
+    public Optional<String> factoryOf(String machineId) {
+        String lineId = machines.get(machineId);
+        return Optional.ofNullable(lineId != null ? lines.get(lineId) : null);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cadosfrit.sensor.event.service.store;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Persistence operations behind the V2 ingest engine and the stats service, selected by {@code ingest.store.type}.
+ * Every implementation applies the same rules: an unknown event id is ACCEPTED, an identical
+ * (machine, event time, duration, defects) payload is DEDUPED, anything else is UPDATED and overwrites the row
+ * including its received time. Stats count events in [from, to) and ignore defect_count = -1 in the sum.
+ * Stats rows keep the Object[] shape of the former JPA native queries.
+ */
+public interface EventStore {
+
+    /**
+     * Runs the work as one unit: either all of its writes become visible or none do.
+     */
+    <T> T inTransaction(Supplier<T> work);
+
+    /**
+     * Events whose ids are unique within the batch, applied set-based.
+     */
+    Counts upsertBatch(List<EventRequestDTO> events, Instant receivedTime);
+
+    /**
+     * Events with repeated ids, applied one at a time in arrival order so the last version wins.
+     */
+    Counts upsertSequential(List<EventRequestDTO> events, Instant receivedTime);
+
+    /**
+     * @return {totalDefects, totalEvents}
+     */
+    Object[] getMachineStatsRaw(String machineId, Instant from, Instant to);
+
+    /**
+     * Totals of [from, to) without the events of [skipFrom, skipTo), a range the caller answers from the minute
+     * aggregates. Stores without gateway summaries simply add up the two edges.
+     *
+     * @return {totalDefects, totalEvents}
+     */
+    default Object[] getMachineStatsRaw(String machineId, Instant from, Instant to, Instant skipFrom, Instant skipTo) {
+        Object[] head = getMachineStatsRaw(machineId, from, skipFrom);
+        Object[] tail = getMachineStatsRaw(machineId, skipTo, to);
+        return new Object[]{sum(head[0], tail[0]), sum(head[1], tail[1])};
+    }
+
+    /**
+     * Totals of several machines at once. Machines without events may be missing from the result.
+     * In-process stores have no round trip to save and simply ask per machine.
+     *
+     * @return machine_id to {totalDefects, totalEvents}
+     */
+    default Map<String, Object[]> getMachineStatsRaw(Collection<String> machineIds, Instant from, Instant to) {
+        Map<String, Object[]> totals = new HashMap<>();
+        for (String machineId : machineIds) {
+            totals.put(machineId, getMachineStatsRaw(machineId, from, to));
+        }
+        return totals;
+    }
+
+    /**
+     * @return {lineId, totalDefects, eventCount, defectPercentage} rows, worst line first
+     */
+    List<Object[]> findTopDefectLinesRaw(String factoryId, Instant from, Instant to, int limit);
+
+    /**
+     * machine_id to line_id for every machine of the factory.
+     */
+    Map<String, String> findMachineLines(String factoryId);
+
+    Optional<String> findFactoryId(String machineId);
+
+    private static long sum(Object left, Object right) {
+        return (left != null ? ((Number) left).longValue() : 0) + (right != null ? ((Number) right).longValue() : 0);
+    }
+
+    record Counts(int accepted, int updated, int deduped) {
+
+        public static final Counts EMPTY = new Counts(0, 0, 0);
+
+        public Counts plus(Counts other) {
+            return new Counts(accepted + other.accepted, updated + other.updated, deduped + other.deduped);
+        }
+    }
+}
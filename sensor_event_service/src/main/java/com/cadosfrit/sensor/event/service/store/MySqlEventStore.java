@@ -0,0 +1,164 @@
+package com.cadosfrit.sensor.event.service.store;
+
+import com.cadosfrit.sensor.event.service.constants.Constants;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.repository.MachineRepository;
+import com.cadosfrit.sensor.event.service.repository.MachineStatsJdbcRepository;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The stored-procedure store: batches go to {@code process_event_batch} / {@code process_batch_sequential}
+ * as JSON with resolved machine keys, stats come from the analytics queries.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ingest.store.type", havingValue = "MYSQL", matchIfMissing = true)
+public class MySqlEventStore implements EventStore {
+
+    private final ObjectMapper objectMapper;
+    private final MachineEventRepository repository;
+    private final MachineRepository machineRepository;
+    private final MachineStatsJdbcRepository statsRepository;
+    private final MachineKeyDictionary machineKeys;
+    private final TransactionTemplate transactionTemplate;
+
+    public MySqlEventStore(ObjectMapper objectMapper,
+                           MachineEventRepository repository,
+                           MachineRepository machineRepository,
+                           MachineStatsJdbcRepository statsRepository,
+                           MachineKeyDictionary machineKeys,
+                           PlatformTransactionManager transactionManager) {
+        this.objectMapper = objectMapper;
+        this.repository = repository;
+        this.machineRepository = machineRepository;
+        this.statsRepository = statsRepository;
+        this.machineKeys = machineKeys;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public <T> T inTransaction(Supplier<T> work) {
+        return transactionTemplate.execute(status -> work.get());
+    }
+
+    @Override
+    public Counts upsertBatch(List<EventRequestDTO> events, Instant receivedTime) {
+        if (events == null || events.isEmpty()) {
+            return Counts.EMPTY;
+        }
+        return parseDbStats(repository.processFastBatchSP(convertToDbJson(events, receivedTime)));
+    }
+
+    @Override
+    public Counts upsertSequential(List<EventRequestDTO> events, Instant receivedTime) {
+        if (events == null || events.isEmpty()) {
+            return Counts.EMPTY;
+        }
+        return parseDbStats(repository.processSlowBatchSP(convertToDbJson(events, receivedTime)));
+    }
+
+    @Override
+    public Object[] getMachineStatsRaw(String machineId, Instant from, Instant to) {
+        return statsRepository.getMachineStatsRaw(machineId, from, to);
+    }
+
+    @Override
+    public Object[] getMachineStatsRaw(String machineId, Instant from, Instant to, Instant skipFrom, Instant skipTo) {
+        return statsRepository.getMachineStatsRaw(machineId, from, to, skipFrom, skipTo);
+    }
+
+    @Override
+    public Map<String, Object[]> getMachineStatsRaw(Collection<String> machineIds, Instant from, Instant to) {
+        return statsRepository.getMachineStatsRaw(machineIds, from, to);
+    }
+
+    @Override
+    public List<Object[]> findTopDefectLinesRaw(String factoryId, Instant from, Instant to, int limit) {
+        return statsRepository.findTopDefectLinesRaw(factoryId, from, to, limit);
+    }
+
+    @Override
+    public Map<String, String> findMachineLines(String factoryId) {
+        return statsRepository.findMachineLines(factoryId);
+    }
+
+    @Override
+    public Optional<String> findFactoryId(String machineId) {
+        return machineRepository.findFactoryIdByMachineId(machineId);
+    }
+
+    private String convertToDbJson(List<EventRequestDTO> events, Instant receivedTime) {
+        List<Map<String, Object>> dbRows = new ArrayList<>();
+        Map<String, Integer> keys = machineKeys.resolveBatch(events);
+
+        for (EventRequestDTO event : events) {
+            if (event == null) {
+                log.warn("Skipping null event during JSON conversion");
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("event_id", event.getEventId());
+            row.put("machine_id", event.getMachineId());
+            row.put("machine_key", keys.get(event.getMachineId()));
+            row.put("event_time", event.getEventTime());
+            row.put("received_time", receivedTime);
+            row.put("defect_count", event.getDefectCount());
+            row.put("duration_ms", event.getDurationMs());
+            dbRows.add(row);
+        }
+
+        try {
+            return objectMapper.writeValueAsString(dbRows);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error converting events to JSON", e);
+        }
+    }
+
+    private Counts parseDbStats(List<Map<String, Object>> dbRows) {
+        if (dbRows == null || dbRows.isEmpty()) {
+            return Counts.EMPTY;
+        }
+
+        int accepted = 0;
+        int updated = 0;
+        int deduped = 0;
+
+        for (Map<String, Object> row : dbRows) {
+            try {
+                if (row == null) {
+                    log.warn("Skipping null row in DB stats");
+                    continue;
+                }
+
+                String status = (String) row.get("status");
+                Number countNum = (Number) row.get("count");
+                int count = (countNum != null) ? countNum.intValue() : 0;
+
+                if (status == null) {
+                    log.warn("Null status in DB stats row");
+                    continue;
+                }
+
+                if (Constants.ACCEPTED.getCode().equals(status)) accepted += count;
+                else if (Constants.UPDATED.getCode().equals(status)) updated += count;
+                else if (Constants.DEDUPED.getCode().equals(status)) deduped += count;
+            } catch (ClassCastException e) {
+                log.warn("Error parsing DB stats row", e);
+            }
+        }
+
+        return new Counts(accepted, updated, deduped);
+    }
+}
@@ -0,0 +1,505 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.LsmStatsDTO;
+import com.cadosfrit.sensor.event.service.store.EmbeddedStoreProperties;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import com.cadosfrit.sensor.event.service.wal.WalRecord;
+import com.cadosfrit.sensor.event.service.wal.WriteAheadLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Durable single-node store built as a log-structured merge tree, with the same rules as the stored procedures
+ * (STANDARD storage mode).
+ * <ul>
+ *   <li>A committed batch is appended to a {@link WriteAheadLog} (forced to disk) and then applied to the memtable.</li>
+ *   <li>A full memtable is written by a background thread as an immutable, memory-mapped {@link LsmSegment};
+ *       the log is then truncated up to the batches it covered.</li>
+ *   <li>Once {@code compaction-trigger} segments exist they are merged into one, keeping the newest version of
+ *       every event.</li>
+ *   <li>On startup, leftovers of an interrupted flush or compaction are removed and unflushed batches are replayed
+ *       from the log.</li>
+ * </ul>
+ * Lookups go memtable first, then segments newest first. A windowed stat counts a row only if no newer layer holds
+ * the same event id, so updates that moved an event to another machine or time are not counted twice.
+ * Writers take the write lock for a whole {@link #inTransaction} call and stage their rows until it commits, so
+ * readers never see half a batch and a failed batch leaves nothing behind.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ingest.store.type", havingValue = "LSM")
+public class LsmEventStore implements EventStore {
+
+    private static final String WAL_DIR = "wal";
+    // Engine byte of the shared log record format; the store has a single record type
+    private static final byte WAL_BATCH = 0;
+
+    private final LsmStoreProperties properties;
+    private final EmbeddedStoreProperties hierarchy;
+    private final Path directory;
+    private final WriteAheadLog wal;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes flushes and compactions, so the segment list only changes under one of them
+    private final Object maintenance = new Object();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private LsmMemtable memtable = new LsmMemtable();
+    private volatile LsmMemtable flushing;
+    private volatile List<LsmSegment> segments;
+    private long nextGeneration;
+
+    // Rows staged by the transaction holding the write lock
+    private Map<String, LsmRow> pending;
+    private int transactionDepth;
+
+    private final AtomicLong committedBatches = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactedRows = new AtomicLong();
+    private volatile Instant lastFlushAt;
+    private volatile Instant lastCompactionAt;
+
+    public LsmEventStore(LsmStoreProperties properties, EmbeddedStoreProperties hierarchy) {
+        this.properties = properties;
+        this.hierarchy = hierarchy;
+        this.directory = Path.of(properties.getDir());
+        try {
+            Files.createDirectories(directory);
+            this.segments = recoverSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open LSM store at " + directory, e);
+        }
+        this.nextGeneration = segments.stream().mapToLong(LsmSegment::getMaxGeneration).max().orElse(0) + 1;
+        this.wal = new WriteAheadLog(directory.resolve(WAL_DIR), properties.getWalSegmentSizeBytes());
+        replayLog();
+    }
+
+    private List<LsmSegment> recoverSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.sorted().toList();
+        }
+
+        List<LsmSegment> opened = new ArrayList<>();
+        for (Path file : files) {
+            if (LsmSegment.isTempFile(file)) {
+                log.warn("Discarding unfinished LSM segment {}", file.getFileName());
+                Files.deleteIfExists(file);
+            } else if (LsmSegment.isSegmentFile(file)) {
+                opened.add(LsmSegment.open(file));
+            }
+        }
+
+        // A compaction that crashed after installing its output leaves its inputs behind
+        List<LsmSegment> live = new ArrayList<>();
+        for (LsmSegment segment : opened) {
+            if (opened.stream().anyMatch(other -> other.covers(segment))) {
+                log.info("Removing LSM segment {} superseded by compaction", segment.getPath().getFileName());
+                segment.delete();
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong(LsmSegment::getMaxGeneration).reversed());
+        return List.copyOf(live);
+    }
+
+    private void replayLog() {
+        List<WalRecord> records = wal.readPending(Integer.MAX_VALUE);
+        for (WalRecord record : records) {
+            LsmRow.decode(record.payload()).forEach(memtable::put);
+            memtable.setLastSequence(record.sequence());
+        }
+        log.info("LSM store opened at {} - Segments: {}, Replayed batches: {}, Memtable rows: {}",
+                directory, segments.size(), records.size(), memtable.size());
+    }
+
+    @Override
+    public <T> T inTransaction(Supplier<T> work) {
+        lock.writeLock().lock();
+        boolean outermost = transactionDepth++ == 0;
+        try {
+            if (outermost) {
+                pending = new LinkedHashMap<>();
+            }
+            T result = work.get();
+            if (outermost) {
+                commit();
+            }
+            return result;
+        } finally {
+            if (outermost) {
+                pending = null;
+            }
+            transactionDepth--;
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Counts upsertBatch(List<EventRequestDTO> events, Instant receivedTime) {
+        return upsertSequential(events, receivedTime);
+    }
+
+    /**
+     * Ids are unique in a set-based batch, so applying its events in order gives the set-based result as well.
+     */
+    @Override
+    public Counts upsertSequential(List<EventRequestDTO> events, Instant receivedTime) {
+        if (events == null || events.isEmpty()) {
+            return Counts.EMPTY;
+        }
+        long received = toMicros(receivedTime);
+        return inTransaction(() -> {
+            int accepted = 0;
+            int updated = 0;
+            int deduped = 0;
+            for (EventRequestDTO event : events) {
+                if (event == null || event.getEventId() == null || event.getMachineId() == null
+                        || event.getEventTime() == null) {
+                    continue;
+                }
+                LsmRow row = new LsmRow(event.getEventId(), event.getMachineId(), toMicros(event.getEventTime()),
+                        received, event.getDurationMs(), event.getDefectCount());
+                LsmRow current = pending.containsKey(row.eventId()) ? pending.get(row.eventId()) : lookup(row.eventId());
+                if (current == null) {
+                    pending.put(row.eventId(), row);
+                    accepted++;
+                } else if (current.samePayload(row)) {
+                    deduped++;
+                } else {
+                    pending.put(row.eventId(), row);
+                    updated++;
+                }
+            }
+            return new Counts(accepted, updated, deduped);
+        });
+    }
+
+    @Override
+    public Object[] getMachineStatsRaw(String machineId, Instant from, Instant to) {
+        lock.readLock().lock();
+        try {
+            long[] totals = aggregate(levels(), machineId, toMicros(from), toMicros(to));
+            return new Object[]{totals[1] > 0 ? totals[0] : null, totals[1]};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Object[]> findTopDefectLinesRaw(String factoryId, Instant from, Instant to, int limit) {
+        Map<String, String> machineLines = findMachineLines(factoryId);
+        Map<String, long[]> lines = new HashMap<>();
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+
+        lock.readLock().lock();
+        try {
+            List<LsmLevel> levels = levels();
+            machineLines.forEach((machineId, lineId) -> {
+                long[] totals = aggregate(levels, machineId, fromMicros, toMicros);
+                long[] line = lines.computeIfAbsent(lineId, id -> new long[2]);
+                line[0] += totals[0];
+                line[1] += totals[1];
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return lines.entrySet().stream()
+                .filter(line -> line.getValue()[1] > 0)
+                .map(line -> new Object[]{
+                        line.getKey(),
+                        line.getValue()[0],
+                        line.getValue()[1],
+                        line.getValue()[0] * 100.0 / line.getValue()[1]
+                })
+                .sorted(Comparator.comparingDouble((Object[] row) -> (double) row[3]).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public Map<String, String> findMachineLines(String factoryId) {
+        return hierarchy.machineLines(factoryId);
+    }
+
+    @Override
+    public Optional<String> findFactoryId(String machineId) {
+        return hierarchy.factoryOf(machineId);
+    }
+
+    /**
+     * Writes out the memtable (or retries a failed flush) as a new segment and truncates the log it covered.
+     */
+    public void flush() {
+        synchronized (maintenance) {
+            LsmMemtable toFlush;
+            long generation;
+            lock.writeLock().lock();
+            try {
+                if (flushing == null) {
+                    if (memtable.isEmpty()) {
+                        return;
+                    }
+                    flushing = memtable;
+                    memtable = new LsmMemtable();
+                }
+                toFlush = flushing;
+                generation = nextGeneration++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            long start = System.currentTimeMillis();
+            LsmSegment segment;
+            try {
+                segment = LsmSegment.write(directory, generation, generation, new ArrayList<>(toFlush.sortedRows()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to flush LSM memtable", e);
+            }
+
+            lock.writeLock().lock();
+            try {
+                List<LsmSegment> installed = new ArrayList<>(segments.size() + 1);
+                installed.add(segment);
+                installed.addAll(segments);
+                segments = List.copyOf(installed);
+                flushing = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            wal.markApplied(toFlush.getLastSequence());
+            wal.truncateApplied();
+
+            flushes.incrementAndGet();
+            lastFlushAt = Instant.now();
+            log.debug("Flushed {} rows to LSM segment {} in {} ms",
+                    segment.getRowCount(), segment.getPath().getFileName(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Merges every segment into one, keeping the newest version of each event.
+     */
+    public void compact() {
+        synchronized (maintenance) {
+            List<LsmSegment> inputs;
+            lock.readLock().lock();
+            try {
+                inputs = segments;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (inputs.size() < 2) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            List<LsmRow> merged = merge(inputs);
+            long minGeneration = inputs.stream().mapToLong(LsmSegment::getMinGeneration).min().orElseThrow();
+            long maxGeneration = inputs.stream().mapToLong(LsmSegment::getMaxGeneration).max().orElseThrow();
+            LsmSegment output;
+            try {
+                output = LsmSegment.write(directory, minGeneration, maxGeneration, merged);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to compact LSM segments", e);
+            }
+
+            lock.writeLock().lock();
+            try {
+                segments = List.of(output);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            inputs.forEach(LsmSegment::delete);
+
+            long inputRows = inputs.stream().mapToLong(LsmSegment::getRowCount).sum();
+            compactions.incrementAndGet();
+            compactedRows.addAndGet(inputRows);
+            lastCompactionAt = Instant.now();
+            log.info("Compacted {} LSM segments ({} rows) into {} ({} rows) in {} ms", inputs.size(), inputRows,
+                    output.getPath().getFileName(), output.getRowCount(), System.currentTimeMillis() - start);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.store.lsm.compaction-interval-ms:1000}")
+    public void scheduledMaintenance() {
+        try {
+            if (flushing != null) {
+                flush();
+            }
+            if (segments.size() >= properties.getCompactionTrigger()) {
+                compact();
+            }
+        } catch (Exception e) {
+            log.error("LSM maintenance failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("LSM flush still running at shutdown; its batches will be replayed from the log");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+    }
+
+    public LsmStatsDTO getStats() {
+        lock.readLock().lock();
+        try {
+            return LsmStatsDTO.builder()
+                    .memtableRows(memtable.size())
+                    .flushingRows(flushing != null ? flushing.size() : 0)
+                    .segments(segments.size())
+                    .segmentRows(segments.stream().mapToLong(LsmSegment::getRowCount).sum())
+                    .segmentBytes(segments.stream().mapToLong(LsmSegment::getSizeBytes).sum())
+                    .walPendingRecords(wal.getPendingRecords())
+                    .walBytes(wal.getSizeBytes())
+                    .committedBatches(committedBatches.get())
+                    .flushes(flushes.get())
+                    .compactions(compactions.get())
+                    .compactedRows(compactedRows.get())
+                    .lastFlushAt(lastFlushAt)
+                    .lastCompactionAt(lastCompactionAt)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long sequence = wal.append(WAL_BATCH, LsmRow.encode(pending.values()));
+        pending.values().forEach(memtable::put);
+        memtable.setLastSequence(sequence);
+        committedBatches.incrementAndGet();
+
+        if (flushing == null && memtable.size() >= properties.getFlushRows()) {
+            flushing = memtable;
+            memtable = new LsmMemtable();
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                log.debug("LSM flush executor is shut down");
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("LSM flush failed; retrying on the next maintenance run", e);
+        }
+    }
+
+    private LsmRow lookup(String eventId) {
+        for (LsmLevel level : levels()) {
+            LsmRow row = level.get(eventId);
+            if (row != null) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    // Newest first; callers hold the lock
+    private List<LsmLevel> levels() {
+        List<LsmLevel> levels = new ArrayList<>(segments.size() + 2);
+        levels.add(memtable);
+        if (flushing != null) {
+            levels.add(flushing);
+        }
+        levels.addAll(segments);
+        return levels;
+    }
+
+    /**
+     * @return {defect sum without -1 heartbeats, event count} over [from, to)
+     */
+    private static long[] aggregate(List<LsmLevel> levels, String machineId, long fromMicros, long toMicros) {
+        long[] totals = new long[2];
+        for (int i = 0; i < levels.size(); i++) {
+            int depth = i;
+            levels.get(i).forEachInWindow(machineId, fromMicros, toMicros, row -> {
+                for (int newer = 0; newer < depth; newer++) {
+                    if (levels.get(newer).get(row.eventId()) != null) {
+                        return;
+                    }
+                }
+                totals[1]++;
+                if (row.defectCount() != -1) {
+                    totals[0] += row.defectCount();
+                }
+            });
+        }
+        return totals;
+    }
+
+    /**
+     * K-way merge by event id; on equal ids the newest segment (lowest index) wins.
+     */
+    private static List<LsmRow> merge(List<LsmSegment> inputs) {
+        record Cursor(int level, Iterator<LsmRow> rows, LsmRow head) {}
+
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator
+                .comparing((Cursor cursor) -> cursor.head().eventId())
+                .thenComparingInt(Cursor::level));
+        for (int i = 0; i < inputs.size(); i++) {
+            Iterator<LsmRow> rows = inputs.get(i).iterator();
+            if (rows.hasNext()) {
+                queue.add(new Cursor(i, rows, rows.next()));
+            }
+        }
+
+        List<LsmRow> merged = new ArrayList<>();
+        String lastId = null;
+        while (!queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            if (!cursor.head().eventId().equals(lastId)) {
+                merged.add(cursor.head());
+                lastId = cursor.head().eventId();
+            }
+            if (cursor.rows().hasNext()) {
+                queue.add(new Cursor(cursor.level(), cursor.rows(), cursor.rows().next()));
+            }
+        }
+        return merged;
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,16 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import java.util.function.Consumer;
+
+/**
+ * One layer of the store: the memtable or an immutable segment. Newer layers shadow older ones by event id.
+ */
+interface LsmLevel {
+
+    LsmRow get(String eventId);
+
+    /**
+     * Visits the layer's rows of one machine with event time in [from, to), oldest first.
+     */
+    void forEachInWindow(String machineId, long fromMicros, long toMicros, Consumer<LsmRow> action);
+}
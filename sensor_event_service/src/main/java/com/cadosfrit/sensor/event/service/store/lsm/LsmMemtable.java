@@ -0,0 +1,64 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Mutable in-memory layer: rows sorted by event id (the order segments are written in),
+ * plus one time-ordered set per machine for windowed stats. Guarded by the store's lock.
+ */
+class LsmMemtable implements LsmLevel {
+
+    private static final Comparator<LsmRow> TIME_ORDER =
+            Comparator.comparingLong(LsmRow::eventTimeMicros).thenComparing(LsmRow::eventId);
+
+    private final TreeMap<String, LsmRow> rows = new TreeMap<>();
+    private final Map<String, TreeSet<LsmRow>> byMachine = new HashMap<>();
+
+    // Write-ahead log sequence of the newest batch in this memtable; records up to it are covered once flushed
+    @Getter
+    @Setter
+    private long lastSequence;
+
+    void put(LsmRow row) {
+        LsmRow previous = rows.put(row.eventId(), row);
+        if (previous != null) {
+            byMachine.get(previous.machineId()).remove(previous);
+        }
+        byMachine.computeIfAbsent(row.machineId(), machine -> new TreeSet<>(TIME_ORDER)).add(row);
+    }
+
+    @Override
+    public LsmRow get(String eventId) {
+        return rows.get(eventId);
+    }
+
+    @Override
+    public void forEachInWindow(String machineId, long fromMicros, long toMicros, Consumer<LsmRow> action) {
+        TreeSet<LsmRow> machineRows = byMachine.get(machineId);
+        if (machineRows == null || fromMicros >= toMicros) {
+            return;
+        }
+        // "" sorts before every event id, so the probes bound [from, to) exactly
+        machineRows.subSet(probe(fromMicros), true, probe(toMicros), false).forEach(action);
+    }
+
+    Collection<LsmRow> sortedRows() {
+        return rows.values();
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    private static LsmRow probe(long timeMicros) {
+        return new LsmRow("", "", timeMicros, 0, 0, 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The latest version of one event; times are epoch microseconds (UTC).
+ */
+record LsmRow(String eventId, String machineId, long eventTimeMicros, long receivedTimeMicros,
+              long durationMs, int defectCount) {
+
+    /**
+     * Same comparison as the stored procedures: a resend with an identical payload is a duplicate,
+     * whatever its received time.
+     */
+    boolean samePayload(LsmRow other) {
+        return machineId.equals(other.machineId) && eventTimeMicros == other.eventTimeMicros
+                && durationMs == other.durationMs && defectCount == other.defectCount;
+    }
+
+    /**
+     * Write-ahead log payload of one committed batch: {@code [count][row]...}.
+     */
+    static byte[] encode(Collection<LsmRow> rows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(rows.size());
+            for (LsmRow row : rows) {
+                out.writeUTF(row.eventId);
+                out.writeUTF(row.machineId);
+                out.writeLong(row.eventTimeMicros);
+                out.writeLong(row.receivedTimeMicros);
+                out.writeLong(row.durationMs);
+                out.writeInt(row.defectCount);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<LsmRow> decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = in.readInt();
+            List<LsmRow> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(new LsmRow(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt()));
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
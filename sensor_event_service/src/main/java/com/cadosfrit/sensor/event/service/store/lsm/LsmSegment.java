@@ -0,0 +1,321 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable, memory-mapped sorted run. Rows are fixed-width records ordered by event id, so a point lookup is a
+ * binary search over the mapped file. A second array orders the row numbers by (machine, event time) and serves as
+ * the per-machine time index. The file name carries the range of flush generations it holds:
+ * a compacted segment covers the generations of its inputs.
+ * <p>
+ * Layout: {@code [header][machines][machine starts][rows][time index][event ids][crc][MAGIC]}
+ */
+@Slf4j
+final class LsmSegment implements LsmLevel {
+
+    static final String PREFIX = "seg-";
+    static final String EXTENSION = ".sst";
+    static final String TEMP_EXTENSION = ".sst.tmp";
+
+    private static final int MAGIC = 0x4C534D31;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int TRAILER_BYTES = 2 * Integer.BYTES;
+    // id offset, id length, machine, event time, received time, duration, defects
+    private static final int ROW_BYTES = 3 * Integer.BYTES + 3 * Long.BYTES + Integer.BYTES;
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final long minGeneration;
+    @Getter
+    private final long maxGeneration;
+    @Getter
+    private final int rowCount;
+    @Getter
+    private final long sizeBytes;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> machineIndex;
+    private final String[] machines;
+    private final int[] machineStarts;
+    private final int rowsOffset;
+    private final int timeIndexOffset;
+    private final int idsOffset;
+
+    private LsmSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        this.sizeBytes = buffer.capacity();
+        long[] generations = parseGenerations(path);
+        this.minGeneration = generations[0];
+        this.maxGeneration = generations[1];
+
+        if (sizeBytes < HEADER_BYTES + TRAILER_BYTES || buffer.getInt((int) sizeBytes - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not an LSM segment: " + path.getFileName());
+        }
+        int storedCrc = buffer.getInt((int) sizeBytes - TRAILER_BYTES);
+        if (storedCrc != checksum(buffer.duplicate().position(0).limit((int) sizeBytes - TRAILER_BYTES))) {
+            throw new IOException("Checksum mismatch in LSM segment " + path.getFileName());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported LSM segment version in " + path.getFileName());
+        }
+
+        this.rowCount = buffer.getInt(8);
+        int machineCount = buffer.getInt(12);
+        ByteBuffer view = buffer.duplicate().position(HEADER_BYTES);
+        this.machines = new String[machineCount];
+        this.machineIndex = new HashMap<>(machineCount * 2);
+        for (int i = 0; i < machineCount; i++) {
+            byte[] name = new byte[view.getShort() & 0xFFFF];
+            view.get(name);
+            machines[i] = new String(name, StandardCharsets.UTF_8);
+            machineIndex.put(machines[i], i);
+        }
+        this.machineStarts = new int[machineCount + 1];
+        for (int i = 0; i <= machineCount; i++) {
+            machineStarts[i] = view.getInt();
+        }
+        this.rowsOffset = view.position();
+        this.timeIndexOffset = rowsOffset + rowCount * ROW_BYTES;
+        this.idsOffset = timeIndexOffset + rowCount * Integer.BYTES;
+    }
+
+    static LsmSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new LsmSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes and fsyncs a segment under a temporary name, then renames it into place so a crash never leaves a
+     * partial segment behind. Rows must be sorted by event id with no duplicates.
+     */
+    static LsmSegment write(Path dir, long minGeneration, long maxGeneration, List<LsmRow> rows) throws IOException {
+        TreeMap<String, Integer> machineKeys = new TreeMap<>();
+        rows.forEach(row -> machineKeys.putIfAbsent(row.machineId(), 0));
+        String[] machines = machineKeys.keySet().toArray(String[]::new);
+        for (int i = 0; i < machines.length; i++) {
+            machineKeys.put(machines[i], i);
+        }
+
+        int[] rowMachines = new int[rows.size()];
+        byte[][] ids = new byte[rows.size()][];
+        long idBytes = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            rowMachines[i] = machineKeys.get(rows.get(i).machineId());
+            ids[i] = rows.get(i).eventId().getBytes(StandardCharsets.UTF_8);
+            idBytes += ids[i].length;
+        }
+        int[] timeIndex = IntStream.range(0, rows.size()).boxed()
+                .sorted(Comparator.<Integer>comparingInt(row -> rowMachines[row])
+                        .thenComparingLong(row -> rows.get(row).eventTimeMicros()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int[] machineStarts = new int[machines.length + 1];
+        for (int row : timeIndex) {
+            machineStarts[rowMachines[row] + 1]++;
+        }
+        for (int i = 0; i < machines.length; i++) {
+            machineStarts[i + 1] += machineStarts[i];
+        }
+
+        byte[][] machineNames = new byte[machines.length][];
+        long machineBytes = 0;
+        for (int i = 0; i < machines.length; i++) {
+            machineNames[i] = machines[i].getBytes(StandardCharsets.UTF_8);
+            machineBytes += Short.BYTES + machineNames[i].length;
+        }
+        long size = HEADER_BYTES + machineBytes + (long) (machines.length + 1) * Integer.BYTES
+                + (long) rows.size() * (ROW_BYTES + Integer.BYTES) + idBytes + TRAILER_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("LSM segment would exceed 2 GB: " + rows.size() + " rows");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(machines.length).putInt((int) idBytes);
+        for (byte[] name : machineNames) {
+            out.putShort((short) name.length).put(name);
+        }
+        for (int start : machineStarts) {
+            out.putInt(start);
+        }
+        int idOffset = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            LsmRow row = rows.get(i);
+            out.putInt(idOffset).putInt(ids[i].length).putInt(rowMachines[i])
+                    .putLong(row.eventTimeMicros()).putLong(row.receivedTimeMicros()).putLong(row.durationMs())
+                    .putInt(row.defectCount());
+            idOffset += ids[i].length;
+        }
+        for (int row : timeIndex) {
+            out.putInt(row);
+        }
+        for (byte[] id : ids) {
+            out.put(id);
+        }
+        out.putInt(checksum(out.duplicate().flip())).putInt(MAGIC).flip();
+
+        Path target = dir.resolve(fileName(minGeneration, maxGeneration));
+        Path temp = dir.resolve(fileName(minGeneration, maxGeneration).replace(EXTENSION, TEMP_EXTENSION));
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(target);
+    }
+
+    @Override
+    public LsmRow get(String eventId) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = eventIdAt(mid).compareTo(eventId);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return rowAt(mid);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void forEachInWindow(String machineId, long fromMicros, long toMicros, Consumer<LsmRow> action) {
+        Integer machine = machineIndex.get(machineId);
+        if (machine == null) {
+            return;
+        }
+        int start = lowerBound(machineStarts[machine], machineStarts[machine + 1], fromMicros);
+        int end = lowerBound(start, machineStarts[machine + 1], toMicros);
+        for (int i = start; i < end; i++) {
+            action.accept(rowAt(timeIndexAt(i)));
+        }
+    }
+
+    /**
+     * Rows in event id order, for compaction.
+     */
+    Iterator<LsmRow> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rowCount;
+            }
+
+            @Override
+            public LsmRow next() {
+                if (next >= rowCount) {
+                    throw new NoSuchElementException();
+                }
+                return rowAt(next++);
+            }
+        };
+    }
+
+    /**
+     * Whether this segment's generations include all of the other's, i.e. it is the output of a compaction
+     * the other took part in.
+     */
+    boolean covers(LsmSegment other) {
+        return this != other && minGeneration <= other.minGeneration && maxGeneration >= other.maxGeneration;
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Error deleting LSM segment {}", path.getFileName(), e);
+        }
+    }
+
+    private LsmRow rowAt(int row) {
+        int position = rowsOffset + row * ROW_BYTES;
+        return new LsmRow(
+                eventIdAt(row),
+                machines[buffer.getInt(position + 8)],
+                buffer.getLong(position + 12),
+                buffer.getLong(position + 20),
+                buffer.getLong(position + 28),
+                buffer.getInt(position + 36));
+    }
+
+    private String eventIdAt(int row) {
+        int position = rowsOffset + row * ROW_BYTES;
+        byte[] id = new byte[buffer.getInt(position + 4)];
+        buffer.get(idsOffset + buffer.getInt(position), id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private long eventTimeAt(int row) {
+        return buffer.getLong(rowsOffset + row * ROW_BYTES + 12);
+    }
+
+    private int timeIndexAt(int position) {
+        return buffer.getInt(timeIndexOffset + position * Integer.BYTES);
+    }
+
+    // First time index position in [low, high) whose event time is >= the given time
+    private int lowerBound(int low, int high, long timeMicros) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (eventTimeAt(timeIndexAt(mid)) < timeMicros) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    static String fileName(long minGeneration, long maxGeneration) {
+        return String.format("%s%020d-%020d%s", PREFIX, minGeneration, maxGeneration, EXTENSION);
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(EXTENSION);
+    }
+
+    static boolean isTempFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(TEMP_EXTENSION);
+    }
+
+    private static long[] parseGenerations(Path path) {
+        String name = path.getFileName().toString();
+        String[] range = name.substring(PREFIX.length(), name.length() - EXTENSION.length()).split("-");
+        return new long[]{Long.parseLong(range[0]), Long.parseLong(range[1])};
+    }
+}
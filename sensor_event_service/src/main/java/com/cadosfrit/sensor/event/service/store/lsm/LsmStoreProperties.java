@@ -0,0 +1,19 @@
+package com.cadosfrit.sensor.event.service.store.lsm;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ingest.store.lsm")
+public class LsmStoreProperties {
+    /** Holds the segments and, under wal/, the write-ahead log of unflushed batches. */
+    private String dir = "./data/lsm";
+    /** The memtable is written out as a segment once it holds this many rows. */
+    private int flushRows = 100_000;
+    /** Number of segments that triggers a merge of all of them into one. */
+    private int compactionTrigger = 4;
+    private long compactionIntervalMs = 1000;
+    private int walSegmentSizeBytes = 64 * 1024 * 1024;
+}
@@ -0,0 +1,55 @@
+package com.cadosfrit.sensor.event.service.stratergy.impl;
+
+import com.cadosfrit.sensor.event.service.constants.Constants;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.stratergy.EventValidationStrategy;
+import com.cadosfrit.sensor.event.service.tiering.ColdEventIds;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Cold segments are immutable: an event older than the tier cutoff, or one whose id already moved to the cold
+ * tier, can neither be stored nor update its cold copy, so it is rejected instead of being counted twice.
+ * The id check only runs once a cutoff exists and goes to MySQL only when {@link ColdEventIds} cannot rule it out.
+ */
+@Component
+@RequiredArgsConstructor
+public class ColdTierValidationStrategy implements EventValidationStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColdTierValidationStrategy.class);
+
+    private final ColdTierStore coldTier;
+    private final ColdEventIds coldIds;
+
+    @Override
+    public Optional<String> validate(EventRequestDTO event) {
+        try {
+            if (event == null || event.getEventTime() == null) {
+                return Optional.empty();
+            }
+
+            Optional<Instant> cutoff = coldTier.getCutoffInstant();
+            if (cutoff.isPresent() && event.getEventTime().isBefore(cutoff.get())) {
+                logger.warn("ColdTierValidationStrategy: Event time {} is before the cold tier cutoff {} for eventId: {}",
+                    event.getEventTime(), cutoff.get(), event.getEventId());
+                return Optional.of(Constants.COLD_TIER_EVENT_TIME.getCode());
+            }
+            if (cutoff.isPresent() && coldIds.isCold(event.getEventId())) {
+                logger.warn("ColdTierValidationStrategy: Event {} already moved to the cold tier, event time {}",
+                    event.getEventId(), event.getEventTime());
+                return Optional.of(Constants.COLD_TIER_EVENT_ID.getCode());
+            }
+            return Optional.empty();
+
+        } catch (Exception e) {
+            logger.error("ColdTierValidationStrategy: Unexpected error during validation: {}", e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.cadosfrit.sensor.event.service.tiering;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ids of the events moved to the cold tier, kept in cold_event_ids (written by {@link EventTieringJob} in the
+ * delete transaction) and fronted by an in-memory Bloom filter: hot ids almost never reach MySQL, and a possible
+ * hit is confirmed by primary key. Until {@link #load} has run every lookup goes to MySQL.
+ */
+@Slf4j
+@Component
+public class ColdEventIds {
+
+    private static final int MIN_CAPACITY = 100_000;
+    private static final int BITS_PER_ID = 10;
+    private static final int HASHES = 7;
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate streamingJdbc;
+    private volatile Filter filter;
+
+    public ColdEventIds(@Value("${ingest.tiering.enabled:false}") boolean enabled,
+                        @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.enabled = enabled;
+        this.jdbc = new JdbcTemplate(ingestDataSource);
+        // Streams the ids instead of buffering the whole table in the driver
+        this.streamingJdbc = new JdbcTemplate(ingestDataSource);
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Builds the filter from cold_event_ids, sized for twice the current ids.
+     */
+    public synchronized void load() {
+        if (!enabled) {
+            return;
+        }
+        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM cold_event_ids", Integer.class);
+        Filter loaded = new Filter(Math.max(MIN_CAPACITY, 2 * (count != null ? count : 0)));
+        streamingJdbc.query("SELECT event_id FROM cold_event_ids", rs -> {
+            loaded.add(rs.getString(1));
+        });
+        filter = loaded;
+        log.info("Cold event ids loaded - Ids: {}, Filter capacity: {}", loaded.size, loaded.capacity);
+    }
+
+    /**
+     * Called before the ids' hot rows are deleted, so no moment exists where an id is neither hot nor flagged.
+     * A filter past its capacity is rebuilt from the table.
+     */
+    public synchronized void add(Collection<String> eventIds) {
+        Filter current = filter;
+        if (current == null) {
+            return;
+        }
+        eventIds.forEach(current::add);
+        if (current.size > current.capacity) {
+            load();
+            eventIds.forEach(filter::add);
+        }
+    }
+
+    public boolean isCold(String eventId) {
+        if (!enabled || eventId == null) {
+            return false;
+        }
+        Filter current = filter;
+        if (current != null && !current.mightContain(eventId)) {
+            return false;
+        }
+        Integer rows = jdbc.queryForObject("SELECT COUNT(*) FROM cold_event_ids WHERE event_id = ?", Integer.class, eventId);
+        return rows != null && rows > 0;
+    }
+
+    private static final class Filter {
+
+        private final int capacity;
+        private final long bitCount;
+        private final AtomicLongArray bits;
+        private int size;
+
+        Filter(int capacity) {
+            this.capacity = capacity;
+            this.bitCount = (long) capacity * BITS_PER_ID;
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        void add(String eventId) {
+            long hash = hash(eventId);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = bitOf(hash, i);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = bits.get(word);
+                } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            }
+            size++;
+        }
+
+        boolean mightContain(String eventId) {
+            long hash = hash(eventId);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = bitOf(hash, i);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Double hashing over the two halves of one 64-bit hash
+        private long bitOf(long hash, int i) {
+            long combined = (hash & 0xFFFFFFFFL) + i * (hash >>> 32);
+            return combined % bitCount;
+        }
+
+        // FNV-1a over the chars, finished with the MurmurHash3 64-bit mix
+        private static long hash(String eventId) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < eventId.length(); i++) {
+                h = (h ^ eventId.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
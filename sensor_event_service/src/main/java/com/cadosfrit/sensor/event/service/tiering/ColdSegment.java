@@ -0,0 +1,271 @@
+package com.cadosfrit.sensor.event.service.tiering;
+
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Immutable columnar file holding one machine's events of one UTC day.
+ * Each column is stored separately and Deflate-compressed; event times are delta-encoded.
+ * The footer carries the row count, the min/max event_time and the machine's defect sum / event count,
+ * so a window covering the whole segment is answered without reading any column.
+ * <p>
+ * Layout: {@code [event_id][event_time][received_time][duration_ms][defect_count][footer][footer length][MAGIC]}
+ */
+@Getter
+public final class ColdSegment {
+
+    static final String EXTENSION = ".seg";
+    static final String TEMP_EXTENSION = ".seg.tmp";
+
+    private static final int MAGIC = 0x434F4C44;
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = 2 * Integer.BYTES;
+    private static final int EVENT_ID = 0;
+    private static final int EVENT_TIME = 1;
+    private static final int RECEIVED_TIME = 2;
+    private static final int DURATION = 3;
+    private static final int DEFECTS = 4;
+    private static final int COLUMNS = 5;
+
+    private final Path path;
+    private final String machineId;
+    private final LocalDate day;
+    private final int rowCount;
+    private final long minEventMicros;
+    private final long maxEventMicros;
+    private final long defectSum;
+    private final long eventCount;
+    private final long sizeBytes;
+    private final long[] columnOffsets;
+    private final int[] columnLengths;
+
+    private ColdSegment(Path path, String machineId, LocalDate day, int rowCount, long minEventMicros,
+                        long maxEventMicros, long defectSum, long eventCount, long sizeBytes,
+                        long[] columnOffsets, int[] columnLengths) {
+        this.path = path;
+        this.machineId = machineId;
+        this.day = day;
+        this.rowCount = rowCount;
+        this.minEventMicros = minEventMicros;
+        this.maxEventMicros = maxEventMicros;
+        this.defectSum = defectSum;
+        this.eventCount = eventCount;
+        this.sizeBytes = sizeBytes;
+        this.columnOffsets = columnOffsets;
+        this.columnLengths = columnLengths;
+    }
+
+    /**
+     * One event as stored in a segment; times are epoch microseconds (UTC).
+     */
+    public record Row(String eventId, long eventTimeMicros, long receivedTimeMicros, long durationMs, int defectCount) {}
+
+    public record Totals(long defects, long events) {
+        public static final Totals EMPTY = new Totals(0, 0);
+
+        public Totals plus(Totals other) {
+            return new Totals(defects + other.defects, events + other.events);
+        }
+    }
+
+    /**
+     * Writes and fsyncs a segment; rows must be sorted by event time.
+     */
+    public static ColdSegment write(Path path, String machineId, LocalDate day, List<Row> rows) throws IOException {
+        byte[][] columns = new byte[COLUMNS][];
+        columns[EVENT_ID] = compress(out -> {
+            for (Row row : rows) {
+                out.writeUTF(row.eventId());
+            }
+        });
+        columns[EVENT_TIME] = compress(out -> {
+            long previous = 0;
+            for (Row row : rows) {
+                out.writeLong(row.eventTimeMicros() - previous);
+                previous = row.eventTimeMicros();
+            }
+        });
+        columns[RECEIVED_TIME] = compress(out -> {
+            for (Row row : rows) {
+                out.writeLong(row.receivedTimeMicros());
+            }
+        });
+        columns[DURATION] = compress(out -> {
+            for (Row row : rows) {
+                out.writeLong(row.durationMs());
+            }
+        });
+        columns[DEFECTS] = compress(out -> {
+            for (Row row : rows) {
+                out.writeInt(row.defectCount());
+            }
+        });
+
+        long defectSum = 0;
+        for (Row row : rows) {
+            defectSum += row.defectCount() == -1 ? 0 : row.defectCount();
+        }
+        long minMicros = rows.isEmpty() ? 0 : rows.get(0).eventTimeMicros();
+        long maxMicros = rows.isEmpty() ? 0 : rows.get(rows.size() - 1).eventTimeMicros();
+
+        long[] offsets = new long[COLUMNS];
+        int[] lengths = new int[COLUMNS];
+        long size;
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            long position = 0;
+            for (int i = 0; i < COLUMNS; i++) {
+                offsets[i] = position;
+                lengths[i] = columns[i].length;
+                out.write(columns[i]);
+                position += columns[i].length;
+            }
+
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(VERSION);
+            footer.writeUTF(machineId);
+            footer.writeLong(day.toEpochDay());
+            footer.writeInt(rows.size());
+            footer.writeLong(minMicros);
+            footer.writeLong(maxMicros);
+            footer.writeLong(defectSum);
+            footer.writeLong(rows.size());
+            for (int i = 0; i < COLUMNS; i++) {
+                footer.writeLong(offsets[i]);
+                footer.writeInt(lengths[i]);
+            }
+            footer.flush();
+
+            out.write(footerBytes.toByteArray());
+            out.writeInt(footerBytes.size());
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+            size = position + footerBytes.size() + TRAILER_BYTES;
+        }
+        return new ColdSegment(path, machineId, day, rows.size(), minMicros, maxMicros, defectSum, rows.size(),
+                size, offsets, lengths);
+    }
+
+    /**
+     * Reads only the footer; columns are read on demand.
+     */
+    public static ColdSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) {
+                throw new IOException("Truncated cold segment " + path);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            int footerLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC || footerLength <= 0 || footerLength > size - TRAILER_BYTES) {
+                throw new IOException("Not a cold segment: " + path);
+            }
+
+            ByteBuffer footerBuffer = read(channel, size - TRAILER_BYTES - footerLength, footerLength);
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBuffer.array()));
+            int version = footer.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cold segment version " + version + ": " + path);
+            }
+            String machineId = footer.readUTF();
+            LocalDate day = LocalDate.ofEpochDay(footer.readLong());
+            int rowCount = footer.readInt();
+            long minMicros = footer.readLong();
+            long maxMicros = footer.readLong();
+            long defectSum = footer.readLong();
+            long eventCount = footer.readLong();
+            long[] offsets = new long[COLUMNS];
+            int[] lengths = new int[COLUMNS];
+            for (int i = 0; i < COLUMNS; i++) {
+                offsets[i] = footer.readLong();
+                lengths[i] = footer.readInt();
+            }
+            return new ColdSegment(path, machineId, day, rowCount, minMicros, maxMicros, defectSum, eventCount,
+                    size, offsets, lengths);
+        }
+    }
+
+    /**
+     * Defects and events with event_time in [fromMicros, toMicros): the footer when the segment lies entirely
+     * inside the window, otherwise a scan of the event_time and defect_count columns.
+     */
+    public Totals aggregate(long fromMicros, long toMicros) throws IOException {
+        if (rowCount == 0 || maxEventMicros < fromMicros || minEventMicros >= toMicros) {
+            return Totals.EMPTY;
+        }
+        if (minEventMicros >= fromMicros && maxEventMicros < toMicros) {
+            return new Totals(defectSum, eventCount);
+        }
+
+        DataInputStream times = column(EVENT_TIME);
+        DataInputStream defects = column(DEFECTS);
+        long defectTotal = 0;
+        long events = 0;
+        long time = 0;
+        for (int i = 0; i < rowCount; i++) {
+            time += times.readLong();
+            int defectCount = defects.readInt();
+            if (time >= toMicros) {
+                break;
+            }
+            if (time >= fromMicros) {
+                events++;
+                defectTotal += defectCount == -1 ? 0 : defectCount;
+            }
+        }
+        return new Totals(defectTotal, events);
+    }
+
+    public List<String> readEventIds() throws IOException {
+        DataInputStream ids = column(EVENT_ID);
+        List<String> eventIds = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            eventIds.add(ids.readUTF());
+        }
+        return eventIds;
+    }
+
+    private DataInputStream column(int column) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer compressed = read(channel, columnOffsets[column], columnLengths[column]);
+            return new DataInputStream(new BufferedInputStream(
+                    new InflaterInputStream(new ByteArrayInputStream(compressed.array()))));
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of cold segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] compress(ColumnWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,277 @@
+package com.cadosfrit.sensor.event.service.tiering;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Local directory of cold segments, one sub-directory per UTC day: {@code <dir>/<yyyy-MM-dd>/<machine key>-<n>.seg}.
+ * Segment footers are kept in memory; columns are read only for windows that cut through a segment.
+ * The cutoff day (persisted in {@code CUTOFF}) marks where the cold tier ends: no event before it is
+ * accepted into MySQL any more, so the two tiers never hold the same event.
+ * Ingest calls run {@link #admit shared} and cutoff changes and moves run {@link #exclusive exclusively}, so no
+ * batch validated against an older cutoff, or updating a row that is being moved, is still in flight.
+ */
+@Slf4j
+@Component
+public class ColdTierStore {
+
+    private static final String CUTOFF_FILE = "CUTOFF";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final Map<String, List<ColdSegment>> segmentsByMachine = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock ingestFence = new ReentrantReadWriteLock();
+    private volatile LocalDate cutoff;
+
+    public ColdTierStore(@Value("${ingest.tiering.enabled:false}") boolean enabled,
+                         @Value("${ingest.tiering.dir:./data/cold}") String directory) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+    }
+
+    /**
+     * Loads the cutoff and segment footers. Unpublished (.tmp) segments of an interrupted move are published
+     * when their rows are gone from MySQL (the delete committed) and discarded otherwise.
+     */
+    public synchronized void open(Predicate<List<String>> anyStillHot) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path cutoffFile = directory.resolve(CUTOFF_FILE);
+            if (Files.exists(cutoffFile)) {
+                cutoff = LocalDate.parse(Files.readString(cutoffFile, StandardCharsets.UTF_8).trim());
+            }
+
+            List<Path> files;
+            try (Stream<Path> listing = Files.walk(directory, 2)) {
+                files = listing.filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(ColdSegment.TEMP_EXTENSION)) {
+                    recover(file, anyStillHot);
+                } else if (name.endsWith(ColdSegment.EXTENSION)) {
+                    register(ColdSegment.open(file));
+                }
+            }
+            log.info("Cold tier opened at {} - Cutoff: {}, Segments: {}", directory, cutoff, getSegmentCount());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open cold tier at " + directory, e);
+        }
+    }
+
+    /**
+     * Runs one ingest call, from validation to commit, outside any cutoff change or move.
+     */
+    public <T> T admit(Supplier<T> ingest) {
+        if (!enabled) {
+            return ingest.get();
+        }
+        ingestFence.readLock().lock();
+        try {
+            return ingest.get();
+        } finally {
+            ingestFence.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a cutoff change or a move while no ingest call is in flight; new calls wait until it returns.
+     */
+    public <T> T exclusive(Callable<T> step) throws Exception {
+        ingestFence.writeLock().lock();
+        try {
+            return step.call();
+        } finally {
+            ingestFence.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<LocalDate> getCutoff() {
+        return Optional.ofNullable(cutoff);
+    }
+
+    /**
+     * Events strictly before the returned instant belong to the cold tier.
+     */
+    public Optional<Instant> getCutoffInstant() {
+        return getCutoff().map(day -> day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    /**
+     * Moves the cutoff forward (never back) and persists it before any event of the newly covered days moves.
+     */
+    public synchronized void advanceCutoff(LocalDate day) throws IOException {
+        if (cutoff != null && !day.isAfter(cutoff)) {
+            return;
+        }
+        Path temp = directory.resolve(CUTOFF_FILE + ".tmp");
+        Files.writeString(temp, day.toString(), StandardCharsets.UTF_8);
+        Files.move(temp, directory.resolve(CUTOFF_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        cutoff = day;
+    }
+
+    /**
+     * A fresh, not yet visible segment file for one machine and day.
+     */
+    public synchronized Path newSegmentFile(LocalDate day, int machineKey) throws IOException {
+        Path dayDirectory = Files.createDirectories(directory.resolve(day.toString()));
+        for (int n = 0; ; n++) {
+            String base = machineKey + "-" + n;
+            if (!Files.exists(dayDirectory.resolve(base + ColdSegment.EXTENSION))
+                    && !Files.exists(dayDirectory.resolve(base + ColdSegment.TEMP_EXTENSION))) {
+                return dayDirectory.resolve(base + ColdSegment.TEMP_EXTENSION);
+            }
+        }
+    }
+
+    /**
+     * Makes a written segment visible to queries; called once its rows have left MySQL.
+     */
+    public ColdSegment publish(Path tempFile) throws IOException {
+        Path target = finalPath(tempFile);
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        ColdSegment segment = ColdSegment.open(target);
+        register(segment);
+        return segment;
+    }
+
+    /**
+     * Deletes a machine's segments of days before {@code beforeDay}; called by the retention purge.
+     *
+     * @return rows of the deleted segments
+     */
+    public long purge(String machineId, LocalDate beforeDay) throws IOException {
+        List<ColdSegment> segments = segmentsByMachine.get(machineId);
+        if (segments == null) {
+            return 0;
+        }
+        long rows = 0;
+        for (ColdSegment segment : segments) {
+            if (segment.getDay().isBefore(beforeDay)) {
+                // Unregister first, so no query opens a file that is about to go
+                segments.remove(segment);
+                Files.deleteIfExists(segment.getPath());
+                rows += segment.getRowCount();
+            }
+        }
+        return rows;
+    }
+
+    public ColdSegment.Totals aggregate(String machineId, Instant from, Instant to) {
+        List<ColdSegment> segments = segmentsByMachine.get(machineId);
+        if (segments == null || !overlaps(from)) {
+            return ColdSegment.Totals.EMPTY;
+        }
+        return aggregate(segments, from, to);
+    }
+
+    /**
+     * Per-machine totals of every machine with cold events in the window.
+     */
+    public Map<String, ColdSegment.Totals> aggregateAll(Instant from, Instant to) {
+        Map<String, ColdSegment.Totals> totals = new HashMap<>();
+        if (!overlaps(from)) {
+            return totals;
+        }
+        segmentsByMachine.forEach((machineId, segments) -> {
+            ColdSegment.Totals machineTotals = aggregate(segments, from, to);
+            if (machineTotals.events() > 0) {
+                totals.put(machineId, machineTotals);
+            }
+        });
+        return totals;
+    }
+
+    /**
+     * Whether a window starting at {@code from} can include cold events.
+     */
+    public boolean overlaps(Instant from) {
+        Optional<Instant> cutoffInstant = getCutoffInstant();
+        return cutoffInstant.isPresent() && from.isBefore(cutoffInstant.get()) && !segmentsByMachine.isEmpty();
+    }
+
+    public int getSegmentCount() {
+        return segmentsByMachine.values().stream().mapToInt(List::size).sum();
+    }
+
+    public long getRowCount() {
+        return segmentsByMachine.values().stream().flatMap(List::stream).mapToLong(ColdSegment::getRowCount).sum();
+    }
+
+    public long getSizeBytes() {
+        return segmentsByMachine.values().stream().flatMap(List::stream).mapToLong(ColdSegment::getSizeBytes).sum();
+    }
+
+    private ColdSegment.Totals aggregate(List<ColdSegment> segments, Instant from, Instant to) {
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+        ColdSegment.Totals totals = ColdSegment.Totals.EMPTY;
+        for (ColdSegment segment : segments) {
+            try {
+                totals = totals.plus(segment.aggregate(fromMicros, toMicros));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read cold segment " + segment.getPath(), e);
+            }
+        }
+        return totals;
+    }
+
+    private void register(ColdSegment segment) {
+        segmentsByMachine.computeIfAbsent(segment.getMachineId(), id -> new CopyOnWriteArrayList<>()).add(segment);
+    }
+
+    private void recover(Path tempFile, Predicate<List<String>> anyStillHot) throws IOException {
+        ColdSegment segment;
+        try {
+            segment = ColdSegment.open(tempFile);
+        } catch (IOException e) {
+            log.warn("Discarding incomplete cold segment {}", tempFile, e);
+            Files.delete(tempFile);
+            return;
+        }
+        if (anyStillHot.test(segment.readEventIds())) {
+            log.info("Discarding cold segment {} of an interrupted move, its events are still in MySQL", tempFile);
+            Files.delete(tempFile);
+        } else {
+            log.info("Publishing cold segment {} of an interrupted move", tempFile);
+            publish(tempFile);
+        }
+    }
+
+    private static Path finalPath(Path tempFile) {
+        String name = tempFile.getFileName().toString();
+        return tempFile.resolveSibling(name.substring(0, name.length() - ColdSegment.TEMP_EXTENSION.length())
+                + ColdSegment.EXTENSION);
+    }
+
+    static long toMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
@@ -0,0 +1,317 @@
+package com.cadosfrit.sensor.event.service.tiering;
+
+import com.cadosfrit.sensor.event.service.dto.TieringStatsDTO;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves machine_events and compacted heartbeats older than {@code hot-days} into cold segments, one UTC day at a
+ * time (oldest first). Per day the cutoff is advanced first, so validation rejects new events for it; then each
+ * machine's rows are written to an unpublished segment, deleted from MySQL in one transaction and the segment is
+ * published. The moved ids are recorded in cold_event_ids by the same transaction, so {@link ColdEventIds} can
+ * reject later sends of them whatever their event_time. Both steps run with ingest held off by
+ * {@link ColdTierStore#exclusive}, so no batch can update a row between its copy and its delete. A day with unprojected versions waits, since projecting them later would bring
+ * its events back into MySQL.
+ */
+@Slf4j
+@Component
+public class EventTieringJob {
+
+    private static final String TABLE = "machine_events";
+    private static final int DELETE_CHUNK = 1000;
+
+    private final boolean enabled;
+    private final int hotDays;
+    private final int maxDaysPerRun;
+    private final ColdTierStore store;
+    private final ColdEventIds coldIds;
+    private final MachineKeyDictionary machineKeys;
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    private final LongAdder movedEvents = new LongAdder();
+    private final LongAdder movedDays = new LongAdder();
+    private volatile boolean ready;
+    private volatile Instant lastRunAt;
+
+    public EventTieringJob(@Value("${ingest.tiering.enabled:false}") boolean enabled,
+                           @Value("${ingest.tiering.hot-days:30}") int hotDays,
+                           @Value("${ingest.tiering.max-days-per-run:1}") int maxDaysPerRun,
+                           ColdTierStore store,
+                           ColdEventIds coldIds,
+                           MachineKeyDictionary machineKeys,
+                           @Qualifier("ingestDataSource") HikariDataSource ingestDataSource) {
+        this.enabled = enabled;
+        this.hotDays = hotDays;
+        this.maxDaysPerRun = maxDaysPerRun;
+        this.store = store;
+        this.coldIds = coldIds;
+        this.machineKeys = machineKeys;
+        this.jdbc = new JdbcTemplate(ingestDataSource);
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    @Order(3)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            store.open(this::anyStillHot);
+            coldIds.load();
+            ready = true;
+        } catch (Exception e) {
+            log.error("Error opening the cold tier, tiering stays off", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.tiering.interval-ms:3600000}")
+    public void scheduledRun() {
+        if (ready) {
+            run();
+        }
+    }
+
+    /**
+     * @return number of events moved to the cold tier
+     */
+    public synchronized long run() {
+        long moved = 0;
+        try {
+            LocalDate target = LocalDate.now(ZoneOffset.UTC).minusDays(hotDays);
+            for (int days = 0; days < maxDaysPerRun; days++) {
+                LocalDate day = oldestHotDay();
+                if (day == null || !day.isBefore(target)) {
+                    break;
+                }
+                if (!store.exclusive(() -> advanceCutoff(day))) {
+                    break;
+                }
+                moved += moveDay(day);
+                movedDays.increment();
+            }
+            lastRunAt = Instant.now();
+        } catch (Exception e) {
+            log.error("Error moving {} to the cold tier", TABLE, e);
+        }
+        return moved;
+    }
+
+    public TieringStatsDTO getStats() {
+        return TieringStatsDTO.builder()
+                .enabled(ready)
+                .hotDays(hotDays)
+                .cutoff(store.getCutoff().orElse(null))
+                .segments(store.getSegmentCount())
+                .coldEvents(store.getRowCount())
+                .coldBytes(store.getSizeBytes())
+                .movedEvents(movedEvents.sum())
+                .movedDays(movedDays.sum())
+                .lastRunAt(lastRunAt)
+                .build();
+    }
+
+    private boolean advanceCutoff(LocalDate day) throws IOException {
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = start.plusDays(1);
+        Integer pending = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM machine_event_versions v
+                WHERE v.projected = FALSE
+                  AND (v.event_time < ? OR v.event_id IN (
+                      SELECT event_id FROM machine_events WHERE event_time >= ? AND event_time < ?))
+                """, Integer.class, end, start, end);
+        if (pending != null && pending > 0) {
+            log.warn("Not moving {} to the cold tier yet, {} versions of it are still unprojected", day, pending);
+            return false;
+        }
+        store.advanceCutoff(day.plusDays(1));
+        return true;
+    }
+
+    private long moveDay(LocalDate day) throws Exception {
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = start.plusDays(1);
+        List<String> machineIds = jdbc.queryForList("""
+                SELECT k.machine_id FROM machine_keys k
+                WHERE k.machine_key IN (SELECT machine_key FROM machine_events WHERE event_time >= ? AND event_time < ?)
+                UNION
+                SELECT machine_id FROM heartbeat_ledger WHERE event_time >= ? AND event_time < ?
+                """, String.class, start, end, start, end);
+
+        long moved = 0;
+        for (String machineId : machineIds) {
+            moved += store.exclusive(() -> moveMachineDay(machineId, day));
+        }
+        log.info("Moved {} events of {} to the cold tier ({} machines)", moved, day, machineIds.size());
+        return moved;
+    }
+
+    private long moveMachineDay(String machineId, LocalDate day) throws IOException {
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = start.plusDays(1);
+        int machineKey = machineKeys.resolve(machineId);
+        List<ColdSegment.Row> events = jdbc.query("""
+                        SELECT event_id, event_time, received_time, duration_ms, defect_count
+                        FROM machine_events
+                        WHERE machine_key = ? AND event_time >= ? AND event_time < ?
+                        """,
+                (rs, rowNum) -> new ColdSegment.Row(
+                        rs.getString("event_id"),
+                        toMicros(rs.getObject("event_time", LocalDateTime.class)),
+                        toMicros(rs.getObject("received_time", LocalDateTime.class)),
+                        rs.getLong("duration_ms"),
+                        rs.getInt("defect_count")),
+                machineKey, start, end);
+        // Compacted heartbeats keep no received_time; their event_time stands in for it
+        List<ColdSegment.Row> heartbeats = jdbc.query("""
+                        SELECT event_id, event_time, duration_ms
+                        FROM heartbeat_ledger
+                        WHERE machine_id = ? AND event_time >= ? AND event_time < ?
+                        """,
+                (rs, rowNum) -> {
+                    long eventTime = toMicros(rs.getObject("event_time", LocalDateTime.class));
+                    return new ColdSegment.Row(rs.getString("event_id"), eventTime, eventTime,
+                            rs.getLong("duration_ms"), -1);
+                },
+                machineId, start, end);
+        if (events.isEmpty() && heartbeats.isEmpty()) {
+            return 0;
+        }
+        List<ColdSegment.Row> rows = new ArrayList<>(events);
+        rows.addAll(heartbeats);
+        rows.sort(Comparator.comparingLong(ColdSegment.Row::eventTimeMicros));
+
+        Path tempFile = store.newSegmentFile(day, machineKey);
+        try {
+            ColdSegment.write(tempFile, machineId, day, rows);
+            coldIds.add(rows.stream().map(ColdSegment.Row::eventId).toList());
+            deleteRows(machineId, day, events, heartbeats);
+        } catch (Exception e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        store.publish(tempFile);
+        movedEvents.add(rows.size());
+        return rows.size();
+    }
+
+    /**
+     * All-or-nothing, so an interrupted move can be resolved from whether any of the segment's rows remain.
+     * The machine's heartbeat minute counters of the day go with its ledger rows, and every moved id is recorded.
+     */
+    private void deleteRows(String machineId, LocalDate day, List<ColdSegment.Row> events, List<ColdSegment.Row> heartbeats) {
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = start.plusDays(1);
+        jdbc.execute((Connection connection) -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                recordColdIds(connection, machineId, day, events);
+                recordColdIds(connection, machineId, day, heartbeats);
+                delete(connection, "DELETE FROM " + TABLE + " WHERE event_id = ?", events);
+                if (!heartbeats.isEmpty()) {
+                    delete(connection, "DELETE FROM heartbeat_ledger WHERE event_id = ?", heartbeats);
+                    try (PreparedStatement minutes = connection.prepareStatement(
+                            "DELETE FROM machine_heartbeat_minutes WHERE machine_id = ? AND minute_start >= ? AND minute_start < ?")) {
+                        minutes.setString(1, machineId);
+                        minutes.setObject(2, start);
+                        minutes.setObject(3, end);
+                        minutes.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    private static void recordColdIds(Connection connection, String machineId, LocalDate day,
+                                      List<ColdSegment.Row> rows) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT IGNORE INTO cold_event_ids (event_id, machine_id, cold_day) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < rows.size(); i++) {
+                insert.setString(1, rows.get(i).eventId());
+                insert.setString(2, machineId);
+                insert.setObject(3, day);
+                insert.addBatch();
+                if ((i + 1) % DELETE_CHUNK == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void delete(Connection connection, String sql, List<ColdSegment.Row> rows) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(sql)) {
+            for (int i = 0; i < rows.size(); i++) {
+                delete.setString(1, rows.get(i).eventId());
+                delete.addBatch();
+                if ((i + 1) % DELETE_CHUNK == 0) {
+                    delete.executeBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private boolean anyStillHot(List<String> eventIds) {
+        for (int i = 0; i < eventIds.size(); i += DELETE_CHUNK) {
+            List<String> chunk = eventIds.subList(i, Math.min(eventIds.size(), i + DELETE_CHUNK));
+            Integer remaining = namedJdbc.queryForObject("""
+                            SELECT (SELECT COUNT(*) FROM machine_events WHERE event_id IN (:ids))
+                                 + (SELECT COUNT(*) FROM heartbeat_ledger WHERE event_id IN (:ids))
+                            """,
+                    new MapSqlParameterSource("ids", chunk), Integer.class);
+            if (remaining != null && remaining > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LocalDate oldestHotDay() {
+        LocalDateTime oldestEvent = jdbc.queryForObject("SELECT MIN(event_time) FROM " + TABLE, LocalDateTime.class);
+        LocalDateTime oldestHeartbeat = jdbc.queryForObject("SELECT MIN(event_time) FROM heartbeat_ledger", LocalDateTime.class);
+        LocalDateTime oldest = oldestHeartbeat == null || (oldestEvent != null && oldestEvent.isBefore(oldestHeartbeat))
+                ? oldestEvent : oldestHeartbeat;
+        return oldest == null ? null : oldest.toLocalDate();
+    }
+
+    // event_time holds UTC wall-clock values
+    private static long toMicros(LocalDateTime utc) {
+        return ColdTierStore.toMicros(utc.toInstant(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,35 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Checks that make a batch impossible to apply rather than partly rejected.
+ * Engines report invalid events as rejections, but an id wider than its column fails the whole call and would be
+ * retried forever, so such batches are refused before they are acknowledged into the log.
+ */
+public final class WalBatchValidator {
+
+    private WalBatchValidator() {}
+
+    public static Optional<String> validate(List<EventRequestDTO> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return Optional.of("Batch cannot be empty");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            EventRequestDTO event = batch.get(i);
+            if (event == null || event.getEventId() == null || event.getMachineId() == null) {
+                return Optional.of("Event at index " + i + " must have an eventId and a machineId");
+            }
+            if (event.getEventId().length() > AppConstants.MAX_ID_LENGTH
+                    || event.getMachineId().length() > AppConstants.MAX_ID_LENGTH) {
+                return Optional.of("Event at index " + i + " has an eventId or machineId longer than "
+                        + AppConstants.MAX_ID_LENGTH + " characters");
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,197 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.sharding.ShardPlacements;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies write-ahead log records to MySQL through the engine each batch was acknowledged for.
+ * Records are applied strictly in sequence; the first failure stops the run and is retried on the next tick,
+ * which is what lets the log absorb database outages. Re-applying a record is safe because the stored
+ * procedures dedupe by event id. A record that still fails after {@code max-attempts} runs, or can never be
+ * applied (unreadable, unknown engine, ids too wide), is moved to the dead-letter directory so it cannot
+ * block the records behind it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ingest.wal.enabled", havingValue = "true")
+public class WalDrainer {
+
+    private static final TypeReference<List<EventRequestDTO>> BATCH_TYPE = new TypeReference<>() {};
+
+    private final WriteAheadLog writeAheadLog;
+    private final Map<String, EventIngestService> ingestServices;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final StatsResultCache statsCache;
+    private final ColdTierStore coldTier;
+    private final MachineKeyDictionary machineKeys;
+    private final int maxRecordsPerRun;
+    private final int maxAttempts;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final LongAdder deadLettered = new LongAdder();
+    // Failed runs of the record at the head of the log; guarded by drainLock
+    private long failingSequence = -1;
+    private int failedAttempts;
+
+    public WalDrainer(WriteAheadLog writeAheadLog,
+                      Map<String, EventIngestService> ingestServices,
+                      ObjectMapper objectMapper,
+                      ShardRouter shardRouter,
+                      StatsResultCache statsCache,
+                      ColdTierStore coldTier,
+                      MachineKeyDictionary machineKeys,
+                      @Value("${ingest.wal.drain-batch-records:64}") int maxRecordsPerRun,
+                      @Value("${ingest.wal.max-attempts:10}") int maxAttempts) {
+        this.writeAheadLog = writeAheadLog;
+        this.ingestServices = ingestServices;
+        this.objectMapper = objectMapper;
+        this.shardRouter = shardRouter;
+        this.statsCache = statsCache;
+        this.coldTier = coldTier;
+        this.machineKeys = machineKeys;
+        this.maxRecordsPerRun = maxRecordsPerRun;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOnStartup() {
+        long pending = writeAheadLog.getPendingRecords();
+        if (pending == 0) {
+            return;
+        }
+        log.info("Replaying {} unapplied write-ahead log records", pending);
+        while (writeAheadLog.getPendingRecords() > 0) {
+            if (drain() == 0) {
+                log.warn("Startup replay stopped with {} records pending; drainer will keep retrying",
+                        writeAheadLog.getPendingRecords());
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.wal.drain-interval-ms:200}")
+    public void scheduledDrain() {
+        drain();
+    }
+
+    /**
+     * @return number of records applied or dead-lettered in this run
+     */
+    public int drain() {
+        // Records wait in the log until the machine key migration is done, without using up their attempts
+        if (!machineKeys.isReady() || !drainLock.tryLock()) {
+            return 0;
+        }
+        try {
+            List<WalRecord> records = writeAheadLog.readPending(maxRecordsPerRun);
+            int applied = 0;
+            for (WalRecord record : records) {
+                Outcome outcome = apply(record);
+                if (outcome == Outcome.RETRY && !exhausted(record)) {
+                    break;
+                }
+                if (outcome == Outcome.APPLIED) {
+                    writeAheadLog.markApplied(record.sequence());
+                } else {
+                    Path file = writeAheadLog.deadLetter(record);
+                    deadLettered.increment();
+                    log.error("WAL record {} moved to {} after {} attempts", record.sequence(), file,
+                            outcome == Outcome.RETRY ? failedAttempts : 1);
+                }
+                failingSequence = -1;
+                failedAttempts = 0;
+                applied++;
+            }
+            writeAheadLog.truncateApplied();
+            return applied;
+        } catch (Exception e) {
+            log.error("Error draining write-ahead log", e);
+            return 0;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    private boolean exhausted(WalRecord record) {
+        if (record.sequence() != failingSequence) {
+            failingSequence = record.sequence();
+            failedAttempts = 0;
+        }
+        return ++failedAttempts >= maxAttempts;
+    }
+
+    private Outcome apply(WalRecord record) {
+        try {
+            Optional<IngestEngine> engine = IngestEngine.fromCode(record.engine());
+            EventIngestService service = engine.map(e -> ingestServices.get(e.getBeanName())).orElse(null);
+            if (service == null) {
+                log.error("WAL record {} has unknown engine code {}", record.sequence(), record.engine());
+                return Outcome.DEAD;
+            }
+
+            List<EventRequestDTO> batch;
+            try {
+                batch = objectMapper.readValue(record.payload(), BATCH_TYPE);
+            } catch (IOException e) {
+                log.error("WAL record {} is unreadable", record.sequence(), e);
+                return Outcome.DEAD;
+            }
+            Optional<String> invalid = WalBatchValidator.validate(batch);
+            if (invalid.isPresent()) {
+                log.error("WAL record {} can never be applied: {}", record.sequence(), invalid.get());
+                return Outcome.DEAD;
+            }
+
+            IngestResponseDTO response = coldTier.admit(() -> statsCache.invalidateEvents(batch,
+                    () -> shardRouter.ingest(batch, ShardPlacements.EVENTS, EventRequestDTO::getEventId,
+                            EventRequestDTO::getMachineId, service::processBatch)));
+
+            // Engines swallow persistence errors, so counters short of the batch size mean part of it did not commit
+            if (response == null || !response.isComplete(batch.size())) {
+                log.warn("WAL record {} was not fully applied ({} of {} events reported), will retry",
+                        record.sequence(), response == null ? 0 : response.getAccepted() + response.getUpdated()
+                                + response.getDeduped() + response.getRejected(), batch.size());
+                return Outcome.RETRY;
+            }
+
+            log.debug("Applied WAL record {} via {} - Accepted: {}, Updated: {}, Deduped: {}, Rejected: {}",
+                    record.sequence(), engine.get(), response.getAccepted(), response.getUpdated(),
+                    response.getDeduped(), response.getRejected());
+            return Outcome.APPLIED;
+
+        } catch (Exception e) {
+            log.warn("Error applying WAL record {}, will retry", record.sequence(), e);
+            return Outcome.RETRY;
+        }
+    }
+
+    private enum Outcome { APPLIED, RETRY, DEAD }
+}
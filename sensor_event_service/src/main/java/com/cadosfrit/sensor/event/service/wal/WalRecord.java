@@ -0,0 +1,6 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+/**
+ * A single acknowledged batch as stored in the write-ahead log.
+ */
+public record WalRecord(long sequence, byte engine, byte[] payload) {}
@@ -0,0 +1,213 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped, append-only file of the write-ahead log.
+ * Only the owning {@link WriteAheadLog} appends; readers see records up to the published limit.
+ */
+@Slf4j
+class WalSegment {
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final long baseSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private volatile int limit;
+    private volatile long lastSequence;
+    private volatile long readHintSequence;
+    private volatile int readHintPosition;
+    @Getter
+    private volatile boolean sealed;
+
+    private WalSegment(Path path, long baseSequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.lastSequence = baseSequence - 1;
+        this.readHintSequence = baseSequence - 1;
+    }
+
+    static WalSegment create(Path dir, long baseSequence, int capacity) throws IOException {
+        Path path = dir.resolve(fileName(baseSequence));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new WalSegment(path, baseSequence, channel, buffer);
+    }
+
+    /**
+     * Maps an existing segment and scans it to the last intact record.
+     * A torn or corrupt tail (failed CRC) is zeroed so later appends start from a clean position.
+     */
+    static WalSegment recover(Path path) throws IOException {
+        long baseSequence = parseBaseSequence(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        WalSegment segment = new WalSegment(path, baseSequence, channel, buffer);
+
+        int position = 0;
+        while (true) {
+            WalRecord record = segment.readAt(position);
+            if (record == null) {
+                break;
+            }
+            segment.lastSequence = record.sequence();
+            position += AppConstants.WAL_RECORD_HEADER_BYTES + record.payload().length;
+        }
+        segment.limit = position;
+
+        for (int i = position; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                log.warn("Discarding torn WAL tail in {} at offset {}", path.getFileName(), position);
+                for (int j = position; j < buffer.capacity(); j++) {
+                    buffer.put(j, (byte) 0);
+                }
+                buffer.force();
+                break;
+            }
+        }
+        return segment;
+    }
+
+    boolean hasRoomFor(int payloadLength) {
+        return !sealed && limit + AppConstants.WAL_RECORD_HEADER_BYTES + payloadLength <= buffer.capacity();
+    }
+
+    /**
+     * Writes the record and forces the written range to disk before publishing it to readers.
+     */
+    void append(long sequence, byte engine, byte[] payload) {
+        int position = limit;
+        buffer.putInt(position, payload.length);
+        buffer.putInt(position + 4, checksum(sequence, engine, payload));
+        buffer.putLong(position + 8, sequence);
+        buffer.put(position + 16, engine);
+        buffer.put(position + AppConstants.WAL_RECORD_HEADER_BYTES, payload);
+
+        int recordLength = AppConstants.WAL_RECORD_HEADER_BYTES + payload.length;
+        buffer.force(position, recordLength);
+
+        lastSequence = sequence;
+        limit = position + recordLength;
+    }
+
+    /**
+     * Reads records newer than {@code sequence}, resuming from the position reached by the previous read
+     * so draining a large segment does not rescan it from the start.
+     */
+    List<WalRecord> readAfter(long sequence, int maxRecords) {
+        List<WalRecord> records = new ArrayList<>();
+        boolean resume = sequence >= readHintSequence;
+        int position = resume ? readHintPosition : 0;
+        long positionSequence = resume ? readHintSequence : baseSequence - 1;
+        int end = limit;
+        while (position < end && records.size() < maxRecords) {
+            WalRecord record = readAt(position);
+            if (record == null) {
+                break;
+            }
+            if (record.sequence() > sequence) {
+                records.add(record);
+            }
+            position += AppConstants.WAL_RECORD_HEADER_BYTES + record.payload().length;
+            positionSequence = record.sequence();
+        }
+        readHintSequence = positionSequence;
+        readHintPosition = position;
+        return records;
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    int sizeBytes() {
+        return limit;
+    }
+
+    boolean isEmpty() {
+        return limit == 0;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing WAL segment {}", path.getFileName(), e);
+        }
+    }
+
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Error deleting WAL segment {}", path.getFileName(), e);
+        }
+    }
+
+    private WalRecord readAt(int position) {
+        ByteBuffer view = buffer.duplicate();
+        if (position + AppConstants.WAL_RECORD_HEADER_BYTES > view.capacity()) {
+            return null;
+        }
+        int length = view.getInt(position);
+        if (length <= 0 || position + AppConstants.WAL_RECORD_HEADER_BYTES + length > view.capacity()) {
+            return null;
+        }
+        int crc = view.getInt(position + 4);
+        long sequence = view.getLong(position + 8);
+        byte engine = view.get(position + 16);
+        byte[] payload = new byte[length];
+        view.get(position + AppConstants.WAL_RECORD_HEADER_BYTES, payload);
+
+        if (crc != checksum(sequence, engine, payload)) {
+            return null;
+        }
+        return new WalRecord(sequence, engine, payload);
+    }
+
+    private static int checksum(long sequence, byte engine, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(9).putLong(sequence).put(engine).flip());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static String fileName(long baseSequence) {
+        return String.format("%s%020d%s", AppConstants.WAL_SEGMENT_PREFIX, baseSequence, AppConstants.WAL_SEGMENT_SUFFIX);
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(AppConstants.WAL_SEGMENT_PREFIX) && name.endsWith(AppConstants.WAL_SEGMENT_SUFFIX);
+    }
+
+    static long parseBaseSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(AppConstants.WAL_SEGMENT_PREFIX.length(),
+                name.length() - AppConstants.WAL_SEGMENT_SUFFIX.length()));
+    }
+}
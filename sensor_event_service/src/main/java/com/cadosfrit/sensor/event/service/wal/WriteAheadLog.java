@@ -0,0 +1,200 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Segmented, memory-mapped append-only log.
+ * Appends are serialized and forced to disk before returning, so a returned sequence survives a crash.
+ * Consumers track progress through {@link #markApplied(long)}; fully applied segments are deleted by
+ * {@link #truncateApplied()}.
+ */
+@Slf4j
+public class WriteAheadLog implements AutoCloseable {
+
+    private final Path directory;
+    private final int segmentSizeBytes;
+    private final ConcurrentSkipListMap<Long, WalSegment> segments = new ConcurrentSkipListMap<>();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+
+    private long nextSequence;
+    private volatile long appliedSequence;
+
+    public WriteAheadLog(Path directory, int segmentSizeBytes) {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        try {
+            Files.createDirectories(directory);
+            this.checkpointChannel = FileChannel.open(directory.resolve(AppConstants.WAL_CHECKPOINT_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            this.appliedSequence = checkpoint.getLong(0);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open write-ahead log at " + directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(WalSegment::isSegmentFile).sorted().toList();
+        }
+
+        long lastSequence = appliedSequence;
+        for (Path file : files) {
+            WalSegment segment = WalSegment.recover(file);
+            if (segment.isEmpty()) {
+                segment.delete();
+                continue;
+            }
+            segments.put(segment.getBaseSequence(), segment);
+            lastSequence = Math.max(lastSequence, segment.lastSequence());
+        }
+        segments.values().forEach(WalSegment::seal);
+        nextSequence = lastSequence + 1;
+
+        log.info("Write-ahead log opened at {} - Segments: {}, Applied through: {}, Pending records: {}",
+                directory, segments.size(), appliedSequence, nextSequence - 1 - appliedSequence);
+    }
+
+    /**
+     * Appends one record and returns its sequence once the bytes are durable.
+     */
+    public synchronized long append(byte engine, byte[] payload) {
+        try {
+            WalSegment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+            if (active == null || !active.hasRoomFor(payload.length)) {
+                if (active != null) {
+                    active.seal();
+                }
+                int capacity = Math.max(segmentSizeBytes, AppConstants.WAL_RECORD_HEADER_BYTES + payload.length);
+                active = WalSegment.create(directory, nextSequence, capacity);
+                segments.put(active.getBaseSequence(), active);
+                log.debug("Rolled write-ahead log to segment {}", active.getPath().getFileName());
+            }
+
+            long sequence = nextSequence++;
+            active.append(sequence, engine, payload);
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to write-ahead log", e);
+        }
+    }
+
+    /**
+     * Returns up to {@code maxRecords} records that have not been marked applied, in sequence order.
+     */
+    public List<WalRecord> readPending(int maxRecords) {
+        long after = appliedSequence;
+        List<WalRecord> records = new ArrayList<>();
+        for (WalSegment segment : segments.values()) {
+            if (records.size() >= maxRecords) {
+                break;
+            }
+            if (segment.lastSequence() <= after) {
+                continue;
+            }
+            records.addAll(segment.readAfter(after, maxRecords - records.size()));
+        }
+        return records;
+    }
+
+    public synchronized void markApplied(long sequence) {
+        if (sequence <= appliedSequence) {
+            return;
+        }
+        checkpoint.putLong(0, sequence);
+        checkpoint.force();
+        appliedSequence = sequence;
+    }
+
+    /**
+     * Copies a record that cannot be applied to {@code dead-letter/} and marks it applied, so the records behind
+     * it can drain. The copy is forced to disk before the checkpoint moves past it.
+     */
+    public synchronized Path deadLetter(WalRecord record) {
+        try {
+            Path dir = Files.createDirectories(directory.resolve(AppConstants.WAL_DEAD_LETTER_DIR));
+            Path file = dir.resolve(String.format("%020d-%d.json", record.sequence(), record.engine()));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(record.payload()));
+                channel.force(true);
+            }
+            markApplied(record.sequence());
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to dead-letter write-ahead log record " + record.sequence(), e);
+        }
+    }
+
+    /**
+     * Deletes sealed segments whose records have all been applied.
+     */
+    public synchronized int truncateApplied() {
+        int deleted = 0;
+        for (Map.Entry<Long, WalSegment> entry : segments.entrySet()) {
+            WalSegment segment = entry.getValue();
+            if (!segment.isSealed() || segment.lastSequence() > appliedSequence) {
+                break;
+            }
+            segments.remove(entry.getKey());
+            segment.delete();
+            deleted++;
+        }
+        if (deleted > 0) {
+            log.debug("Truncated {} applied write-ahead log segments", deleted);
+        }
+        return deleted;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    public long getPendingRecords() {
+        return Math.max(0, getLastSequence() - appliedSequence);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getSizeBytes() {
+        long total = 0;
+        for (WalSegment segment : segments.values()) {
+            total += segment.sizeBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(WalSegment::close);
+        try {
+            checkpointChannel.close();
+        } catch (IOException e) {
+            log.warn("Error closing write-ahead log checkpoint", e);
+        }
+    }
+}
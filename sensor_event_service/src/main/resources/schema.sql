@@ -3,10 +3,17 @@ DROP PROCEDURE IF EXISTS process_event_batch;;
 
 CREATE PROCEDURE process_event_batch(IN jsonBatch JSON)
 BEGIN
+    DECLARE v_compact_heartbeats BOOLEAN DEFAULT IFNULL(@ingest_heartbeat_compaction, 0) = 1;
+    DECLARE v_versioned BOOLEAN DEFAULT IFNULL(@ingest_versioned_storage, 0) = 1;
+    DECLARE v_outbox BOOLEAN DEFAULT IFNULL(@ingest_outbox, 0) = 1;
+    DECLARE v_rollups BOOLEAN DEFAULT IFNULL(@ingest_rollups, 0) = 1;
+    DECLARE v_event_registry BOOLEAN DEFAULT IFNULL(@ingest_event_registry, 0) = 1;
+
     SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED;
     CREATE TEMPORARY TABLE IF NOT EXISTS staging_events (
         event_id VARCHAR(50) PRIMARY KEY,
         machine_id VARCHAR(50),
+        machine_key INT,
         event_time DATETIME(6),
         received_time DATETIME(6),
         duration_ms BIGINT,
@@ -15,10 +22,11 @@ BEGIN
 
     TRUNCATE TABLE staging_events;
 
-    INSERT INTO staging_events (event_id, machine_id, event_time, received_time, duration_ms, defect_count)
+    INSERT INTO staging_events (event_id, machine_id, machine_key, event_time, received_time, duration_ms, defect_count)
     SELECT
         jt.event_id,
         jt.machine_id,
+        jt.machine_key,
         CAST(REPLACE(jt.event_time, 'Z', '') AS DATETIME(6)),
         CAST(REPLACE(jt.received_time, 'Z', '') AS DATETIME(6)),
         jt.duration_ms,
@@ -26,6 +34,7 @@ BEGIN
     FROM JSON_TABLE(jsonBatch, '$[*]' COLUMNS (
         event_id VARCHAR(50) PATH '$.event_id',
         machine_id VARCHAR(50) PATH '$.machine_id',
+        machine_key INT PATH '$.machine_key',
         event_time VARCHAR(50) PATH '$.event_time',
         received_time VARCHAR(50) PATH '$.received_time',
         duration_ms BIGINT PATH '$.duration_ms',
@@ -33,36 +42,247 @@ BEGIN
     )) AS jt
     ON DUPLICATE KEY UPDATE
         machine_id = VALUES(machine_id),
+        machine_key = VALUES(machine_key),
         event_time = VALUES(event_time),
         received_time = VALUES(received_time),
         duration_ms = VALUES(duration_ms),
         defect_count = VALUES(defect_count);
 
-    SELECT
-        CASE
-            WHEN t.event_id IS NULL THEN 'ACCEPTED'
-            WHEN (
-                t.machine_id = s.machine_id AND
-                t.event_time = s.event_time AND
-                t.duration_ms = s.duration_ms AND
-                t.defect_count = s.defect_count
-            ) THEN 'DEDUPED'
-            ELSE 'UPDATED'
-        END AS status,
-        COUNT(*) AS count
-    FROM staging_events s
-    LEFT JOIN machine_events t ON s.event_id = t.event_id
-    GROUP BY status;
+    -- Dictionary keys normally come resolved from the service; rows without one are resolved here
+    INSERT IGNORE INTO machine_keys (machine_id)
+    SELECT DISTINCT machine_id FROM staging_events WHERE machine_key IS NULL;
 
-    INSERT INTO machine_events (event_id, machine_id, event_time, received_time, duration_ms, defect_count)
-    SELECT event_id, machine_id, event_time, received_time, duration_ms, defect_count
-    FROM staging_events
-    ON DUPLICATE KEY UPDATE
-        machine_id = VALUES(machine_id),
-        event_time = VALUES(event_time),
-        received_time = VALUES(received_time),
-        duration_ms = VALUES(duration_ms),
-        defect_count = VALUES(defect_count);
+    UPDATE staging_events s
+    JOIN machine_keys k ON k.machine_id = s.machine_id
+    SET s.machine_key = k.machine_key
+    WHERE s.machine_key IS NULL;
+
+    -- Partitioned tables cannot keep event_id unique: claiming the ids first makes a concurrent batch with the
+    -- same new id wait for this one to commit, so it sees the row instead of inserting a second one
+    IF v_event_registry THEN
+        INSERT IGNORE INTO event_ids (event_id)
+        SELECT event_id FROM staging_events ORDER BY event_id;
+    END IF;
+
+    IF v_versioned THEN
+        -- Append-only: compare against the newest version (or the projected row), append only what changed
+        CREATE TEMPORARY TABLE IF NOT EXISTS staging_latest (
+            event_id VARCHAR(50) PRIMARY KEY,
+            machine_id VARCHAR(50),
+            event_time DATETIME(6),
+            duration_ms BIGINT,
+            defect_count INT
+        );
+
+        TRUNCATE TABLE staging_latest;
+
+        INSERT INTO staging_latest (event_id, machine_id, event_time, duration_ms, defect_count)
+        SELECT v.event_id, v.machine_id, v.event_time, v.duration_ms, v.defect_count
+        FROM machine_event_versions v
+        JOIN staging_events s ON s.event_id = v.event_id
+        WHERE NOT EXISTS (
+            SELECT 1 FROM machine_event_versions n
+            WHERE n.event_id = v.event_id AND n.version_id > v.version_id
+        );
+
+        INSERT IGNORE INTO staging_latest (event_id, machine_id, event_time, duration_ms, defect_count)
+        SELECT t.event_id, k.machine_id, t.event_time, t.duration_ms, t.defect_count
+        FROM machine_events t
+        JOIN staging_events s ON s.event_id = t.event_id
+        JOIN machine_keys k ON k.machine_key = t.machine_key;
+
+        SELECT
+            CASE
+                WHEN l.event_id IS NULL THEN 'ACCEPTED'
+                WHEN l.machine_id = s.machine_id AND
+                     l.event_time = s.event_time AND
+                     l.duration_ms = s.duration_ms AND
+                     l.defect_count = s.defect_count THEN 'DEDUPED'
+                ELSE 'UPDATED'
+            END AS status,
+            COUNT(*) AS count
+        FROM staging_events s
+        LEFT JOIN staging_latest l ON s.event_id = l.event_id
+        GROUP BY status;
+
+        IF v_outbox THEN
+            INSERT INTO event_outbox (event_id, change_type, machine_id, event_time, received_time, duration_ms, defect_count,
+                                      before_machine_id, before_event_time, before_duration_ms, before_defect_count, created_at)
+            SELECT s.event_id, IF(l.event_id IS NULL, 'ACCEPTED', 'UPDATED'),
+                   s.machine_id, s.event_time, s.received_time, s.duration_ms, s.defect_count,
+                   l.machine_id, l.event_time, l.duration_ms, l.defect_count, UTC_TIMESTAMP(6)
+            FROM staging_events s
+            LEFT JOIN staging_latest l ON s.event_id = l.event_id
+            WHERE l.event_id IS NULL
+               OR NOT (l.machine_id = s.machine_id AND
+                       l.event_time = s.event_time AND
+                       l.duration_ms = s.duration_ms AND
+                       l.defect_count = s.defect_count)
+            ORDER BY s.event_id;
+        END IF;
+
+        INSERT INTO machine_event_versions (event_id, machine_id, event_time, received_time, duration_ms, defect_count, projected)
+        SELECT s.event_id, s.machine_id, s.event_time, s.received_time, s.duration_ms, s.defect_count, FALSE
+        FROM staging_events s
+        LEFT JOIN staging_latest l ON s.event_id = l.event_id
+        WHERE l.event_id IS NULL
+           OR NOT (l.machine_id = s.machine_id AND
+                   l.event_time = s.event_time AND
+                   l.duration_ms = s.duration_ms AND
+                   l.defect_count = s.defect_count);
+
+        DROP TEMPORARY TABLE IF EXISTS staging_latest;
+    ELSE
+        SELECT
+            CASE
+                WHEN t.event_id IS NULL AND h.event_id IS NULL THEN 'ACCEPTED'
+                WHEN t.event_id IS NOT NULL AND (
+                    t.machine_key = s.machine_key AND
+                    t.event_time = s.event_time AND
+                    t.duration_ms = s.duration_ms AND
+                    t.defect_count = s.defect_count
+                ) THEN 'DEDUPED'
+                WHEN h.event_id IS NOT NULL AND (
+                    h.machine_id = s.machine_id AND
+                    h.event_time = s.event_time AND
+                    h.duration_ms = s.duration_ms AND
+                    s.defect_count = -1
+                ) THEN 'DEDUPED'
+                ELSE 'UPDATED'
+            END AS status,
+            COUNT(*) AS count
+        FROM staging_events s
+        LEFT JOIN machine_events t ON s.event_id = t.event_id
+        LEFT JOIN heartbeat_ledger h ON s.event_id = h.event_id
+        GROUP BY status;
+
+        -- Outbox: every non-deduplicated row with the image it replaces, captured before anything below rewrites it
+        IF v_outbox THEN
+            INSERT INTO event_outbox (event_id, change_type, machine_id, event_time, received_time, duration_ms, defect_count,
+                                      before_machine_id, before_event_time, before_duration_ms, before_defect_count, created_at)
+            SELECT s.event_id, IF(t.event_id IS NULL AND h.event_id IS NULL, 'ACCEPTED', 'UPDATED'),
+                   s.machine_id, s.event_time, s.received_time, s.duration_ms, s.defect_count,
+                   COALESCE(k.machine_id, h.machine_id), COALESCE(t.event_time, h.event_time),
+                   COALESCE(t.duration_ms, h.duration_ms), IF(h.event_id IS NOT NULL, -1, t.defect_count),
+                   UTC_TIMESTAMP(6)
+            FROM staging_events s
+            LEFT JOIN machine_events t ON s.event_id = t.event_id
+            LEFT JOIN machine_keys k ON k.machine_key = t.machine_key
+            LEFT JOIN heartbeat_ledger h ON s.event_id = h.event_id
+            WHERE NOT (t.event_id IS NOT NULL AND
+                       t.machine_key = s.machine_key AND
+                       t.event_time = s.event_time AND
+                       t.duration_ms = s.duration_ms AND
+                       t.defect_count = s.defect_count)
+              AND NOT (h.event_id IS NOT NULL AND
+                       h.machine_id = s.machine_id AND
+                       h.event_time = s.event_time AND
+                       h.duration_ms = s.duration_ms AND
+                       s.defect_count = -1)
+            ORDER BY s.event_id;
+        END IF;
+
+        -- Hourly rollups: retract the replaced images from their hours, then add the new ones (same before-images as the outbox)
+        IF v_rollups THEN
+            INSERT INTO machine_event_rollup_hour (machine_id, hour_start, event_count, defect_sum)
+            SELECT COALESCE(k.machine_id, h.machine_id) AS rollup_machine,
+                   CAST(DATE_FORMAT(COALESCE(t.event_time, h.event_time), '%Y-%m-%d %H:00:00') AS DATETIME(6)) AS rollup_hour,
+                   -COUNT(*),
+                   -SUM(CASE WHEN h.event_id IS NOT NULL OR t.defect_count = -1 THEN 0 ELSE t.defect_count END)
+            FROM staging_events s
+            LEFT JOIN machine_events t ON s.event_id = t.event_id
+            LEFT JOIN machine_keys k ON k.machine_key = t.machine_key
+            LEFT JOIN heartbeat_ledger h ON s.event_id = h.event_id
+            WHERE (t.event_id IS NOT NULL OR h.event_id IS NOT NULL)
+              AND NOT (t.event_id IS NOT NULL AND
+                       t.machine_key = s.machine_key AND
+                       t.event_time = s.event_time AND
+                       t.duration_ms = s.duration_ms AND
+                       t.defect_count = s.defect_count)
+              AND NOT (h.event_id IS NOT NULL AND
+                       h.machine_id = s.machine_id AND
+                       h.event_time = s.event_time AND
+                       h.duration_ms = s.duration_ms AND
+                       s.defect_count = -1)
+            GROUP BY rollup_machine, rollup_hour
+            ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), defect_sum = defect_sum + VALUES(defect_sum);
+
+            INSERT INTO machine_event_rollup_hour (machine_id, hour_start, event_count, defect_sum)
+            SELECT s.machine_id AS rollup_machine,
+                   CAST(DATE_FORMAT(s.event_time, '%Y-%m-%d %H:00:00') AS DATETIME(6)) AS rollup_hour,
+                   COUNT(*),
+                   SUM(CASE WHEN s.defect_count = -1 THEN 0 ELSE s.defect_count END)
+            FROM staging_events s
+            LEFT JOIN machine_events t ON s.event_id = t.event_id
+            LEFT JOIN heartbeat_ledger h ON s.event_id = h.event_id
+            WHERE NOT (t.event_id IS NOT NULL AND
+                       t.machine_key = s.machine_key AND
+                       t.event_time = s.event_time AND
+                       t.duration_ms = s.duration_ms AND
+                       t.defect_count = s.defect_count)
+              AND NOT (h.event_id IS NOT NULL AND
+                       h.machine_id = s.machine_id AND
+                       h.event_time = s.event_time AND
+                       h.duration_ms = s.duration_ms AND
+                       s.defect_count = -1)
+            GROUP BY rollup_machine, rollup_hour
+            ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), defect_sum = defect_sum + VALUES(defect_sum);
+        END IF;
+
+        -- Heartbeat ledger: identical heartbeats need no write, changed ones leave the ledger and are re-stored below
+        DELETE s FROM staging_events s
+        JOIN heartbeat_ledger h ON s.event_id = h.event_id
+        WHERE h.machine_id = s.machine_id AND h.event_time = s.event_time
+          AND h.duration_ms = s.duration_ms AND s.defect_count = -1;
+
+        UPDATE machine_heartbeat_minutes c
+        JOIN (
+            SELECT h.machine_id, CAST(DATE_FORMAT(h.event_time, '%Y-%m-%d %H:%i:00') AS DATETIME(6)) AS minute_start,
+                   COUNT(*) AS n
+            FROM heartbeat_ledger h
+            JOIN staging_events s ON s.event_id = h.event_id
+            GROUP BY h.machine_id, minute_start
+        ) d ON c.machine_id = d.machine_id AND c.minute_start = d.minute_start
+        SET c.heartbeat_count = c.heartbeat_count - d.n;
+
+        DELETE h FROM heartbeat_ledger h
+        JOIN staging_events s ON s.event_id = h.event_id;
+
+        IF v_compact_heartbeats THEN
+            DELETE t FROM machine_events t
+            JOIN staging_events s ON s.event_id = t.event_id
+            WHERE s.defect_count = -1;
+
+            INSERT INTO heartbeat_ledger (event_id, machine_id, event_time, duration_ms)
+            SELECT event_id, machine_id, event_time, duration_ms
+            FROM staging_events
+            WHERE defect_count = -1;
+
+            INSERT INTO machine_heartbeat_minutes (machine_id, minute_start, heartbeat_count)
+            SELECT machine_id, CAST(DATE_FORMAT(event_time, '%Y-%m-%d %H:%i:00') AS DATETIME(6)) AS minute_start, COUNT(*)
+            FROM staging_events
+            WHERE defect_count = -1
+            GROUP BY machine_id, minute_start
+            ON DUPLICATE KEY UPDATE heartbeat_count = heartbeat_count + VALUES(heartbeat_count);
+
+            DELETE FROM staging_events WHERE defect_count = -1;
+        END IF;
+
+        -- Partitioned / machine-time layouts key rows by machine_key and event_time too: a moved event must not leave its old row behind
+        DELETE t FROM machine_events t
+        JOIN staging_events s ON s.event_id = t.event_id
+        WHERE t.event_time <> s.event_time OR t.machine_key <> s.machine_key;
+
+        INSERT INTO machine_events (event_id, machine_key, event_time, received_time, duration_ms, defect_count)
+        SELECT event_id, machine_key, event_time, received_time, duration_ms, defect_count
+        FROM staging_events
+        ON DUPLICATE KEY UPDATE
+            machine_key = VALUES(machine_key),
+            event_time = VALUES(event_time),
+            received_time = VALUES(received_time),
+            duration_ms = VALUES(duration_ms),
+            defect_count = VALUES(defect_count);
+    END IF;
 
     DROP TEMPORARY TABLE IF EXISTS staging_events;
     SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ;
@@ -76,6 +296,7 @@ BEGIN
     DECLARE done INT DEFAULT FALSE;
     DECLARE v_event_id VARCHAR(50);
     DECLARE v_machine_id VARCHAR(50);
+    DECLARE v_machine_key INT;
     DECLARE v_event_time DATETIME(6);
     DECLARE v_received_time DATETIME(6);
     DECLARE v_duration_ms BIGINT;
@@ -90,16 +311,21 @@ BEGIN
     DECLARE db_event_time DATETIME(6);
     DECLARE db_defect_count INT;
     DECLARE row_exists INT;
+    DECLARE in_ledger INT;
+    DECLARE v_compact_heartbeats BOOLEAN DEFAULT IFNULL(@ingest_heartbeat_compaction, 0) = 1;
+    DECLARE v_versioned BOOLEAN DEFAULT IFNULL(@ingest_versioned_storage, 0) = 1;
+    DECLARE v_event_registry BOOLEAN DEFAULT IFNULL(@ingest_event_registry, 0) = 1;
 
     DECLARE event_cursor CURSOR FOR
     SELECT
-        event_id, machine_id,
+        event_id, machine_id, machine_key,
         CAST(REPLACE(event_time, 'Z', '') AS DATETIME(6)),
         CAST(REPLACE(received_time, 'Z', '') AS DATETIME(6)),
         duration_ms, defect_count
     FROM JSON_TABLE(jsonBatch, '$[*]' COLUMNS (
         event_id VARCHAR(50) PATH '$.event_id',
         machine_id VARCHAR(50) PATH '$.machine_id',
+        machine_key INT PATH '$.machine_key',
         event_time VARCHAR(50) PATH '$.event_time',
         received_time VARCHAR(50) PATH '$.received_time',
         duration_ms BIGINT PATH '$.duration_ms',
@@ -108,35 +334,119 @@ BEGIN
 
     DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = TRUE;
     SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED;
+
+    -- Same event id claim as process_event_batch, in id order so two batches never wait on each other in a cycle
+    IF v_event_registry THEN
+        INSERT IGNORE INTO event_ids (event_id)
+        SELECT DISTINCT event_id
+        FROM JSON_TABLE(jsonBatch, '$[*]' COLUMNS (event_id VARCHAR(50) PATH '$.event_id')) AS jt
+        ORDER BY event_id;
+    END IF;
+
     OPEN event_cursor;
 
     read_loop: LOOP
-        FETCH event_cursor INTO v_event_id, v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count;
+        FETCH event_cursor INTO v_event_id, v_machine_id, v_machine_key, v_event_time, v_received_time, v_duration_ms, v_defect_count;
         IF done THEN
             LEAVE read_loop;
         END IF;
 
-        SELECT count(*), MAX(machine_id), MAX(duration_ms), MAX(defect_count), MAX(event_time)
+        IF v_machine_key IS NULL THEN
+            CALL ingest_resolve_machine_key(v_machine_id, v_machine_key);
+        END IF;
+
+        IF v_versioned THEN
+            SELECT count(*), MAX(machine_id), MAX(duration_ms), MAX(defect_count), MAX(event_time)
+            INTO row_exists, db_machine_id, db_duration_ms, db_defect_count, db_event_time
+            FROM (
+                SELECT machine_id, duration_ms, defect_count, event_time
+                FROM machine_event_versions
+                WHERE event_id = v_event_id
+                ORDER BY version_id DESC
+                LIMIT 1
+            ) latest;
+
+            IF row_exists = 0 THEN
+                SELECT count(*), MAX(k.machine_id), MAX(t.duration_ms), MAX(t.defect_count), MAX(t.event_time)
+                INTO row_exists, db_machine_id, db_duration_ms, db_defect_count, db_event_time
+                FROM machine_events t
+                JOIN machine_keys k ON k.machine_key = t.machine_key
+                WHERE t.event_id = v_event_id;
+            END IF;
+
+            IF row_exists = 0 THEN
+                SET v_accepted = v_accepted + 1;
+                CALL ingest_record_change(v_event_id, 'ACCEPTED', v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count,
+                                          NULL, NULL, NULL, NULL);
+            ELSEIF (v_machine_id = db_machine_id AND v_duration_ms = db_duration_ms AND v_defect_count = db_defect_count AND v_event_time = db_event_time) THEN
+                SET v_deduped = v_deduped + 1;
+                ITERATE read_loop;
+            ELSE
+                SET v_updated = v_updated + 1;
+                CALL ingest_record_change(v_event_id, 'UPDATED', v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count,
+                                          db_machine_id, db_event_time, db_duration_ms, db_defect_count);
+            END IF;
+
+            INSERT INTO machine_event_versions (event_id, machine_id, event_time, received_time, duration_ms, defect_count, projected)
+            VALUES (v_event_id, v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count, FALSE);
+            ITERATE read_loop;
+        END IF;
+
+        SELECT count(*), MAX(k.machine_id), MAX(t.duration_ms), MAX(t.defect_count), MAX(t.event_time)
         INTO row_exists, db_machine_id, db_duration_ms, db_defect_count, db_event_time
-        FROM machine_events
-        WHERE event_id = v_event_id;
+        FROM machine_events t
+        JOIN machine_keys k ON k.machine_key = t.machine_key
+        WHERE t.event_id = v_event_id;
+
+        SET in_ledger = 0;
+        IF row_exists = 0 THEN
+            SELECT count(*), MAX(machine_id), MAX(duration_ms), -1, MAX(event_time)
+            INTO in_ledger, db_machine_id, db_duration_ms, db_defect_count, db_event_time
+            FROM heartbeat_ledger
+            WHERE event_id = v_event_id;
+            SET row_exists = in_ledger;
+        END IF;
 
         IF row_exists = 0 THEN
-            INSERT INTO machine_events (event_id, machine_id, event_time, received_time, duration_ms, defect_count)
-            VALUES (v_event_id, v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count);
+            IF v_compact_heartbeats AND v_defect_count = -1 THEN
+                CALL ingest_store_heartbeat(v_event_id, v_machine_id, v_event_time, v_duration_ms);
+            ELSE
+                INSERT INTO machine_events (event_id, machine_key, event_time, received_time, duration_ms, defect_count)
+                VALUES (v_event_id, v_machine_key, v_event_time, v_received_time, v_duration_ms, v_defect_count);
+            END IF;
             SET v_accepted = v_accepted + 1;
+            CALL ingest_record_change(v_event_id, 'ACCEPTED', v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count,
+                                      NULL, NULL, NULL, NULL);
+            CALL ingest_rollup_change(v_machine_id, v_event_time, v_defect_count, NULL, NULL, NULL);
         ELSE
             IF (v_machine_id = db_machine_id AND v_duration_ms = db_duration_ms AND v_defect_count = db_defect_count AND v_event_time = db_event_time) THEN
                 SET v_deduped = v_deduped + 1;
             ELSE
-                UPDATE machine_events
-                SET machine_id = v_machine_id,
-                    event_time = v_event_time,
-                    received_time = v_received_time,
-                    duration_ms = v_duration_ms,
-                    defect_count = v_defect_count
-                WHERE event_id = v_event_id;
+                IF in_ledger > 0 THEN
+                    CALL ingest_remove_heartbeat(v_event_id);
+                END IF;
+
+                IF v_compact_heartbeats AND v_defect_count = -1 THEN
+                    IF in_ledger = 0 THEN
+                        DELETE FROM machine_events WHERE event_id = v_event_id;
+                    END IF;
+                    CALL ingest_store_heartbeat(v_event_id, v_machine_id, v_event_time, v_duration_ms);
+                ELSEIF in_ledger > 0 THEN
+                    INSERT INTO machine_events (event_id, machine_key, event_time, received_time, duration_ms, defect_count)
+                    VALUES (v_event_id, v_machine_key, v_event_time, v_received_time, v_duration_ms, v_defect_count);
+                ELSE
+                    UPDATE machine_events
+                    SET machine_key = v_machine_key,
+                        event_time = v_event_time,
+                        received_time = v_received_time,
+                        duration_ms = v_duration_ms,
+                        defect_count = v_defect_count
+                    WHERE event_id = v_event_id;
+                END IF;
                 SET v_updated = v_updated + 1;
+                CALL ingest_record_change(v_event_id, 'UPDATED', v_machine_id, v_event_time, v_received_time, v_duration_ms, v_defect_count,
+                                          db_machine_id, db_event_time, db_duration_ms, db_defect_count);
+                CALL ingest_rollup_change(v_machine_id, v_event_time, v_defect_count, db_machine_id, db_event_time, db_defect_count);
             END IF;
         END IF;
     END LOOP;
@@ -149,4 +459,235 @@ BEGIN
     UNION ALL
     SELECT 'DEDUPED' as status, v_deduped as count;
     SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ;
-END;;
\ No newline at end of file
+END;;
+
+-- 3. HEARTBEAT COMPACTION HELPERS: heartbeats (defect_count = -1) kept as a slim ledger row plus a per-minute counter
+DROP PROCEDURE IF EXISTS ingest_store_heartbeat;;
+
+CREATE PROCEDURE ingest_store_heartbeat(IN p_event_id VARCHAR(50), IN p_machine_id VARCHAR(50),
+                                        IN p_event_time DATETIME(6), IN p_duration_ms BIGINT)
+BEGIN
+    INSERT INTO heartbeat_ledger (event_id, machine_id, event_time, duration_ms)
+    VALUES (p_event_id, p_machine_id, p_event_time, p_duration_ms);
+
+    INSERT INTO machine_heartbeat_minutes (machine_id, minute_start, heartbeat_count)
+    VALUES (p_machine_id, CAST(DATE_FORMAT(p_event_time, '%Y-%m-%d %H:%i:00') AS DATETIME(6)), 1)
+    ON DUPLICATE KEY UPDATE heartbeat_count = heartbeat_count + 1;
+END;;
+
+DROP PROCEDURE IF EXISTS ingest_remove_heartbeat;;
+
+CREATE PROCEDURE ingest_remove_heartbeat(IN p_event_id VARCHAR(50))
+BEGIN
+    UPDATE machine_heartbeat_minutes c
+    JOIN heartbeat_ledger h
+      ON c.machine_id = h.machine_id
+     AND c.minute_start = CAST(DATE_FORMAT(h.event_time, '%Y-%m-%d %H:%i:00') AS DATETIME(6))
+    SET c.heartbeat_count = c.heartbeat_count - 1
+    WHERE h.event_id = p_event_id;
+
+    DELETE FROM heartbeat_ledger WHERE event_id = p_event_id;
+END;;
+
+-- 4. SUMMARY SP: set-based upsert of gateway summaries (ids must be unique within one call)
+DROP PROCEDURE IF EXISTS process_summary_batch;;
+
+CREATE PROCEDURE process_summary_batch(IN jsonBatch JSON)
+BEGIN
+    SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED;
+    CREATE TEMPORARY TABLE IF NOT EXISTS staging_summaries (
+        summary_id VARCHAR(50) PRIMARY KEY,
+        machine_id VARCHAR(50),
+        interval_start DATETIME(6),
+        interval_end DATETIME(6),
+        received_time DATETIME(6),
+        event_count BIGINT,
+        defect_sum BIGINT,
+        duration_sum_ms BIGINT,
+        duration_min_ms BIGINT,
+        duration_max_ms BIGINT
+    );
+
+    TRUNCATE TABLE staging_summaries;
+
+    INSERT INTO staging_summaries (summary_id, machine_id, interval_start, interval_end, received_time,
+                                   event_count, defect_sum, duration_sum_ms, duration_min_ms, duration_max_ms)
+    SELECT
+        jt.summary_id,
+        jt.machine_id,
+        CAST(REPLACE(jt.interval_start, 'Z', '') AS DATETIME(6)),
+        CAST(REPLACE(jt.interval_end, 'Z', '') AS DATETIME(6)),
+        CAST(REPLACE(jt.received_time, 'Z', '') AS DATETIME(6)),
+        jt.event_count,
+        jt.defect_sum,
+        jt.duration_sum_ms,
+        jt.duration_min_ms,
+        jt.duration_max_ms
+    FROM JSON_TABLE(jsonBatch, '$[*]' COLUMNS (
+        summary_id VARCHAR(50) PATH '$.summary_id',
+        machine_id VARCHAR(50) PATH '$.machine_id',
+        interval_start VARCHAR(50) PATH '$.interval_start',
+        interval_end VARCHAR(50) PATH '$.interval_end',
+        received_time VARCHAR(50) PATH '$.received_time',
+        event_count BIGINT PATH '$.event_count',
+        defect_sum BIGINT PATH '$.defect_sum',
+        duration_sum_ms BIGINT PATH '$.duration_sum_ms',
+        duration_min_ms BIGINT PATH '$.duration_min_ms',
+        duration_max_ms BIGINT PATH '$.duration_max_ms'
+    )) AS jt;
+
+    SELECT
+        CASE
+            WHEN t.summary_id IS NULL THEN 'ACCEPTED'
+            WHEN t.machine_id = s.machine_id AND
+                 t.interval_start = s.interval_start AND
+                 t.interval_end = s.interval_end AND
+                 t.event_count = s.event_count AND
+                 t.defect_sum = s.defect_sum AND
+                 t.duration_sum_ms = s.duration_sum_ms AND
+                 t.duration_min_ms = s.duration_min_ms AND
+                 t.duration_max_ms = s.duration_max_ms THEN 'DEDUPED'
+            ELSE 'UPDATED'
+        END AS status,
+        COUNT(*) AS count
+    FROM staging_summaries s
+    LEFT JOIN machine_event_summaries t ON s.summary_id = t.summary_id
+    GROUP BY status;
+
+    INSERT INTO machine_event_summaries (summary_id, machine_id, interval_start, interval_end, received_time,
+                                         event_count, defect_sum, duration_sum_ms, duration_min_ms, duration_max_ms)
+    SELECT summary_id, machine_id, interval_start, interval_end, received_time,
+           event_count, defect_sum, duration_sum_ms, duration_min_ms, duration_max_ms
+    FROM staging_summaries
+    ON DUPLICATE KEY UPDATE
+        machine_id = VALUES(machine_id),
+        interval_start = VALUES(interval_start),
+        interval_end = VALUES(interval_end),
+        received_time = VALUES(received_time),
+        event_count = VALUES(event_count),
+        defect_sum = VALUES(defect_sum),
+        duration_sum_ms = VALUES(duration_sum_ms),
+        duration_min_ms = VALUES(duration_min_ms),
+        duration_max_ms = VALUES(duration_max_ms);
+
+    DROP TEMPORARY TABLE IF EXISTS staging_summaries;
+    SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ;
+END;;
+
+-- 5. VERSION COMPACTOR: projects the newest version of recently appended events into machine_events
+--    and prunes superseded, already projected versions received before p_prune_before
+DROP PROCEDURE IF EXISTS compact_event_versions;;
+
+CREATE PROCEDURE compact_event_versions(IN p_limit INT, IN p_prune_before DATETIME(6))
+BEGIN
+    DECLARE v_projected INT DEFAULT 0;
+    DECLARE v_pruned INT DEFAULT 0;
+
+    SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED;
+    CREATE TEMPORARY TABLE IF NOT EXISTS compaction_batch (
+        version_id BIGINT PRIMARY KEY,
+        event_id VARCHAR(50),
+        INDEX idx_compaction_event (event_id)
+    );
+
+    TRUNCATE TABLE compaction_batch;
+
+    INSERT INTO compaction_batch (version_id, event_id)
+    SELECT version_id, event_id
+    FROM machine_event_versions
+    WHERE projected = FALSE
+    ORDER BY version_id
+    LIMIT p_limit;
+
+    -- Partitioned / machine-time layouts key rows by machine_key and event_time too: remove projections that moved
+    DELETE t FROM machine_events t
+    JOIN compaction_batch b ON b.event_id = t.event_id
+    JOIN machine_event_versions v ON v.event_id = t.event_id
+    JOIN machine_keys k ON k.machine_id = v.machine_id
+    WHERE (v.event_time <> t.event_time OR k.machine_key <> t.machine_key)
+      AND NOT EXISTS (
+          SELECT 1 FROM machine_event_versions n
+          WHERE n.event_id = v.event_id AND n.version_id > v.version_id
+      );
+
+    -- Newest version overall, not newest in the batch: a late-committing older version never overwrites a newer one
+    INSERT INTO machine_events (event_id, machine_key, event_time, received_time, duration_ms, defect_count)
+    SELECT v.event_id, k.machine_key, v.event_time, v.received_time, v.duration_ms, v.defect_count
+    FROM machine_event_versions v
+    JOIN (SELECT DISTINCT event_id FROM compaction_batch) b ON b.event_id = v.event_id
+    JOIN machine_keys k ON k.machine_id = v.machine_id
+    WHERE NOT EXISTS (
+        SELECT 1 FROM machine_event_versions n
+        WHERE n.event_id = v.event_id AND n.version_id > v.version_id
+    )
+    ON DUPLICATE KEY UPDATE
+        machine_key = VALUES(machine_key),
+        event_time = VALUES(event_time),
+        received_time = VALUES(received_time),
+        duration_ms = VALUES(duration_ms),
+        defect_count = VALUES(defect_count);
+
+    UPDATE machine_event_versions v
+    JOIN compaction_batch b ON b.version_id = v.version_id
+    SET v.projected = TRUE;
+    SET v_projected = ROW_COUNT();
+
+    DELETE v FROM machine_event_versions v
+    JOIN machine_event_versions n ON n.event_id = v.event_id AND n.version_id > v.version_id
+    WHERE v.projected = TRUE
+      AND v.received_time < p_prune_before;
+    SET v_pruned = ROW_COUNT();
+
+    DROP TEMPORARY TABLE IF EXISTS compaction_batch;
+    SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ;
+
+    SELECT v_projected AS projected, v_pruned AS pruned;
+END;;
+
+-- 6. MACHINE KEY DICTIONARY: key of one machine id, added to machine_keys on first use
+DROP PROCEDURE IF EXISTS ingest_resolve_machine_key;;
+
+CREATE PROCEDURE ingest_resolve_machine_key(IN p_machine_id VARCHAR(50), OUT p_machine_key INT)
+BEGIN
+    INSERT IGNORE INTO machine_keys (machine_id) VALUES (p_machine_id);
+    SELECT machine_key INTO p_machine_key FROM machine_keys WHERE machine_id = p_machine_id;
+END;;
+
+-- 7. CHANGE OUTBOX: one row per accepted / updated event, written in the ingest transaction when @ingest_outbox = 1
+DROP PROCEDURE IF EXISTS ingest_record_change;;
+
+CREATE PROCEDURE ingest_record_change(IN p_event_id VARCHAR(50), IN p_change_type VARCHAR(10),
+                                      IN p_machine_id VARCHAR(50), IN p_event_time DATETIME(6),
+                                      IN p_received_time DATETIME(6), IN p_duration_ms BIGINT, IN p_defect_count INT,
+                                      IN p_before_machine_id VARCHAR(50), IN p_before_event_time DATETIME(6),
+                                      IN p_before_duration_ms BIGINT, IN p_before_defect_count INT)
+BEGIN
+    IF IFNULL(@ingest_outbox, 0) = 1 THEN
+        INSERT INTO event_outbox (event_id, change_type, machine_id, event_time, received_time, duration_ms, defect_count,
+                                  before_machine_id, before_event_time, before_duration_ms, before_defect_count, created_at)
+        VALUES (p_event_id, p_change_type, p_machine_id, p_event_time, p_received_time, p_duration_ms, p_defect_count,
+                p_before_machine_id, p_before_event_time, p_before_duration_ms, p_before_defect_count, UTC_TIMESTAMP(6));
+    END IF;
+END;;
+
+-- 8. HOURLY ROLLUPS: per machine and hour event counts and defect sums, kept in step with machine_events when @ingest_rollups = 1
+DROP PROCEDURE IF EXISTS ingest_rollup_change;;
+
+CREATE PROCEDURE ingest_rollup_change(IN p_machine_id VARCHAR(50), IN p_event_time DATETIME(6), IN p_defect_count INT,
+                                      IN p_before_machine_id VARCHAR(50), IN p_before_event_time DATETIME(6),
+                                      IN p_before_defect_count INT)
+BEGIN
+    IF IFNULL(@ingest_rollups, 0) = 1 THEN
+        IF p_before_machine_id IS NOT NULL THEN
+            INSERT INTO machine_event_rollup_hour (machine_id, hour_start, event_count, defect_sum)
+            VALUES (p_before_machine_id, CAST(DATE_FORMAT(p_before_event_time, '%Y-%m-%d %H:00:00') AS DATETIME(6)),
+                    -1, IF(p_before_defect_count = -1, 0, -p_before_defect_count))
+            ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), defect_sum = defect_sum + VALUES(defect_sum);
+        END IF;
+
+        INSERT INTO machine_event_rollup_hour (machine_id, hour_start, event_count, defect_sum)
+        VALUES (p_machine_id, CAST(DATE_FORMAT(p_event_time, '%Y-%m-%d %H:00:00') AS DATETIME(6)),
+                1, IF(p_defect_count = -1, 0, p_defect_count))
+        ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), defect_sum = defect_sum + VALUES(defect_sum);
+    END IF;
+END;;
@@ -0,0 +1,166 @@
+package com.cadosfrit.sensor.event.service.benchmark;
+
+import com.cadosfrit.sensor.event.service.constants.StorageLayout;
+import com.cadosfrit.sensor.event.service.storage.ScratchSchema;
+import com.cadosfrit.sensor.event.service.storage.StorageLayoutManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Before/after comparison of the machine_events layouts (see StorageLayoutManager). Each layout gets a scratch
+ * schema with copies of the ingest tables and procedures, and events go through {@code process_event_batch}
+ * there, so the measured write is the production one and the real tables are never touched.
+ * Tagged {@code benchmark}, which the default build excludes: run with {@code mvn test -Pbenchmark}.
+ * Row count: -Dbenchmark.layout.rows (default 200000).
+ */
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+public class LayoutBenchmarkTest {
+
+    private static final int MACHINES = 30;
+    private static final int BATCH_SIZE = 1000;
+    private static final int STATS_QUERIES = 200;
+    private static final Instant START = Instant.parse("2023-11-01T00:00:00Z");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void runLayoutBenchmark() throws Exception {
+        int rows = Integer.getInteger("benchmark.layout.rows", 200_000);
+        List<String> batches = generateBatches(rows);
+
+        List<String> results = new ArrayList<>();
+        for (StorageLayout layout : StorageLayout.values()) {
+            String schema = "bench_layout_" + layout.name().toLowerCase();
+            try {
+                createSchema(schema, layout);
+                long insertMs = ingest(schema, batches);
+                long statsMs = runStatsQueries(schema, rows);
+                results.add(formatResult(layout, insertMs, statsMs, rows, schema));
+            } finally {
+                jdbcTemplate.execute("DROP DATABASE IF EXISTS `" + schema + "`");
+            }
+        }
+
+        log.info("=".repeat(80));
+        log.info("LAYOUT BENCHMARK - {} rows, {} machines, {} stats queries", rows, MACHINES, STATS_QUERIES);
+        log.info("=".repeat(80));
+        results.forEach(log::info);
+    }
+
+    /**
+     * Copies of the ingest tables without partitioning, with machine_events keyed for the layout.
+     */
+    private void createSchema(String schema, StorageLayout layout) {
+        jdbcTemplate.execute("DROP DATABASE IF EXISTS `" + schema + "`");
+        ScratchSchema.createTables(jdbcTemplate, schema, ScratchSchema.EVENT_INGEST_TABLES);
+        ScratchSchema.installProcedures(jdbcTemplate, schema, List.of(
+                "process_event_batch", "ingest_resolve_machine_key", "ingest_record_change", "ingest_rollup_change",
+                "ingest_store_heartbeat", "ingest_remove_heartbeat"));
+
+        String table = "`" + schema + "`.machine_events";
+        Integer partitions = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'machine_events' AND PARTITION_NAME IS NOT NULL
+                """, Integer.class, schema);
+        if (partitions != null && partitions > 0) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " REMOVE PARTITIONING");
+        }
+        List<String> changes = StorageLayoutManager.alterSpecs(jdbcTemplate, schema, layout, false);
+        if (!changes.isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " " + String.join(", ", changes));
+        }
+    }
+
+    /**
+     * Events arrive roughly in time order across all machines, with random ids, as gateways send them.
+     * Machine keys are left out so the scratch dictionary assigns them.
+     */
+    private List<String> generateBatches(int rows) throws JsonProcessingException {
+        Random random = new Random(42);
+        List<String> batches = new ArrayList<>();
+        List<Map<String, Object>> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < rows; i++) {
+            Instant eventTime = START.plusMillis(i * 500L);
+            batch.add(Map.of(
+                    "event_id", UUID.randomUUID().toString(),
+                    "machine_id", "bench_mac_" + random.nextInt(MACHINES),
+                    "event_time", eventTime.toString(),
+                    "received_time", eventTime.plusSeconds(1).toString(),
+                    "duration_ms", random.nextInt(5000),
+                    "defect_count", random.nextInt(4) - 1));
+            if (batch.size() == BATCH_SIZE || i == rows - 1) {
+                batches.add(objectMapper.writeValueAsString(batch));
+                batch.clear();
+            }
+        }
+        return batches;
+    }
+
+    private long ingest(String schema, List<String> batches) {
+        String sql = "CALL `" + schema + "`.process_event_batch(?)";
+        long start = System.currentTimeMillis();
+        for (String batch : batches) {
+            jdbcTemplate.queryForList(sql, batch);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Same shape as the /stats query: one machine, a one-hour window somewhere in the data set.
+     */
+    private long runStatsQueries(String schema, int rows) {
+        Map<String, Integer> keys = new HashMap<>();
+        jdbcTemplate.query("SELECT machine_id, machine_key FROM `" + schema + "`.machine_keys",
+                (RowCallbackHandler) rs -> keys.put(rs.getString(1), rs.getInt(2)));
+        Random random = new Random(7);
+        String sql = "SELECT SUM(CASE WHEN defect_count = -1 THEN 0 ELSE defect_count END), COUNT(event_id) FROM `"
+                + schema + "`.machine_events WHERE machine_key = ? AND event_time >= ? AND event_time < ?";
+        long spanHours = Math.max(1, ChronoUnit.HOURS.between(START, START.plusMillis(rows * 500L)));
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < STATS_QUERIES; i++) {
+            LocalDateTime from = LocalDateTime.ofInstant(START.plus(random.nextLong(spanHours), ChronoUnit.HOURS), ZoneOffset.UTC);
+            jdbcTemplate.queryForList(sql, keys.get("bench_mac_" + random.nextInt(MACHINES)),
+                    Timestamp.valueOf(from), Timestamp.valueOf(from.plusHours(1)));
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private String formatResult(StorageLayout layout, long insertMs, long statsMs, int rows, String schema) {
+        jdbcTemplate.execute("ANALYZE TABLE `" + schema + "`.machine_events");
+        Map<String, Object> size = jdbcTemplate.queryForMap(
+                "SELECT DATA_LENGTH, INDEX_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'machine_events'",
+                schema);
+        return String.format("%s:%n  - Ingest: %d ms (%.0f rows/sec)%n  - Stats: %d ms total, %.2f ms/query%n"
+                        + "  - Data: %d KB, Secondary indexes: %d KB",
+                layout, insertMs, rows * 1000.0 / Math.max(1, insertMs), statsMs, statsMs / (double) STATS_QUERIES,
+                ((Number) size.get("DATA_LENGTH")).longValue() / 1024, ((Number) size.get("INDEX_LENGTH")).longValue() / 1024);
+    }
+}
@@ -0,0 +1,82 @@
+package com.cadosfrit.sensor.event.service.controller;
+
+import com.cadosfrit.sensor.event.service.constants.ResponseMode;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.LeanIngestResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestResponseRendererTest {
+
+    private final IngestResponseRenderer renderer = new IngestResponseRenderer(new ObjectMapper(), ResponseMode.FULL, 2);
+
+    @Test
+    void testQueryParameterWinsOverHeaderAndDefault() {
+        assertEquals(Optional.of(ResponseMode.LEAN), renderer.resolve("lean", "NDJSON"));
+        assertEquals(Optional.of(ResponseMode.NDJSON), renderer.resolve(null, " ndjson "));
+        assertEquals(Optional.of(ResponseMode.FULL), renderer.resolve(null, null));
+        assertEquals(Optional.empty(), renderer.resolve("compact", null));
+        assertEquals(Optional.empty(), renderer.resolve(null, ""));
+    }
+
+    @Test
+    void testFullModeReturnsEveryRejection() {
+        IngestResponseDTO response = responseWithRejections(3);
+
+        ResponseEntity<?> entity = renderer.render(response, ResponseMode.FULL, true);
+
+        assertSame(response, entity.getBody());
+        assertEquals("true", entity.getHeaders().getFirst(EventIngestController.IDEMPOTENT_REPLAYED_HEADER));
+    }
+
+    @Test
+    void testLeanModeReturnsReasonsAndIdSample() {
+        ResponseEntity<?> entity = renderer.render(responseWithRejections(3), ResponseMode.LEAN, false);
+
+        LeanIngestResponseDTO lean = assertInstanceOf(LeanIngestResponseDTO.class, entity.getBody());
+        assertEquals(5, lean.getAccepted());
+        assertEquals(3, lean.getRejected());
+        assertEquals(Map.of("INVALID_DURATION", 2, "FUTURE_EVENT_TIME", 1), lean.getRejectionReasons());
+        assertEquals(List.of("E-0", "E-1"), lean.getRejectedIdsSample());
+        assertTrue(lean.isRejectedIdsTruncated());
+        assertEquals("false", entity.getHeaders().getFirst(EventIngestController.IDEMPOTENT_REPLAYED_HEADER));
+    }
+
+    @Test
+    void testNdjsonModeStreamsCountersThenOneLinePerRejection() throws Exception {
+        ResponseEntity<?> entity = renderer.render(responseWithRejections(2), ResponseMode.NDJSON, false);
+
+        assertEquals(IngestResponseRenderer.NDJSON, entity.getHeaders().getContentType());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertInstanceOf(StreamingResponseBody.class, entity.getBody()).writeTo(out);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(List.of(
+                "{\"accepted\":5,\"deduped\":1,\"updated\":0,\"rejected\":2}",
+                "{\"eventId\":\"E-0\",\"reason\":\"INVALID_DURATION\"}",
+                "{\"eventId\":\"E-1\",\"reason\":\"FUTURE_EVENT_TIME\"}"), lines);
+    }
+
+    private IngestResponseDTO responseWithRejections(int count) {
+        List<IngestResponseDTO.Rejection> rejections = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rejections.add(new IngestResponseDTO.Rejection("E-" + i, i % 2 == 0 ? "INVALID_DURATION" : "FUTURE_EVENT_TIME"));
+        }
+        return IngestResponseDTO.builder()
+                .accepted(5)
+                .deduped(1)
+                .rejected(count)
+                .rejections(rejections)
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long NO_COOLDOWN_MS = 0;
+    private static final long LONG_COOLDOWN_MS = 60_000;
+
+    @Test
+    void testRequestsOverTheLimitAreShed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 10, 2000, NO_COOLDOWN_MS);
+
+        Optional<AdaptiveConcurrencyLimiter.Permit> first = limiter.tryAcquire();
+        Optional<AdaptiveConcurrencyLimiter.Permit> second = limiter.tryAcquire();
+
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertTrue(limiter.tryAcquire().isEmpty());
+        assertEquals(1, limiter.getStats().getRejected());
+
+        // A released permit frees its slot for the next request
+        first.get().release(false);
+        assertTrue(limiter.tryAcquire().isPresent());
+        assertEquals(3, limiter.getStats().getAccepted());
+    }
+
+    @Test
+    void testInterceptorAnswersSheddingWith429AndReleasesOnCompletion() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 10, 2000, NO_COOLDOWN_MS);
+        IngestLimiterInterceptor interceptor = new IngestLimiterInterceptor(limiter);
+        MockHttpServletRequest admitted = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(admitted, response, null));
+        ServiceOverloadedException shed = assertThrows(ServiceOverloadedException.class,
+                () -> interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+        assertTrue(shed.getRetryAfterSeconds() >= 1);
+
+        interceptor.afterCompletion(admitted, response, null, null);
+        assertEquals(0, limiter.getStats().getInFlight());
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    void testFastSamplesGrowTheLimitUpToTheMaximum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 12, 2000, NO_COOLDOWN_MS);
+
+        // Each fast sample adds 1/limit, so about one limit's worth of samples adds one slot
+        releaseSamples(limiter, 25, false);
+        assertEquals(12, limiter.getLimit());
+
+        releaseSamples(limiter, 50, false);
+        assertEquals(12, limiter.getLimit());
+    }
+
+    @Test
+    void testFailuresCutTheLimitOncePerCooldown() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 2, 100, 2000, LONG_COOLDOWN_MS);
+
+        releaseSamples(limiter, 3, true);
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void testRepeatedFailuresStopAtTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 3, 100, 2000, NO_COOLDOWN_MS);
+
+        releaseSamples(limiter, 10, true);
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void testSlowRequestsAndPoolWaitsCountAsOverload() {
+        // A zero latency threshold makes every completed request slow
+        AdaptiveConcurrencyLimiter slow = limiter(20, 2, 100, 0, NO_COOLDOWN_MS);
+        releaseSamples(slow, 1, false);
+        assertEquals(10, slow.getLimit());
+
+        AdaptiveConcurrencyLimiter waiting = limiter(20, 2, 100, 2000, NO_COOLDOWN_MS);
+        waiting.recordPoolWait(TimeUnit.SECONDS.toNanos(1));
+        releaseSamples(waiting, 1, false);
+        assertEquals(10, waiting.getLimit());
+    }
+
+    @Test
+    void testConcurrentPoolWaitsAreAllAveragedIn() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 2, 100, 2000, NO_COOLDOWN_MS);
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        int threads = 4;
+        int waitsPerThread = 10;
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(CompletableFuture.runAsync(() -> IntStream.range(0, waitsPerThread)
+                    .forEach(i -> limiter.recordPoolWait(waitNanos))));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        // Every sample moves the average 20% of the way to the same wait, whatever the order
+        double expectedMs = 10 * (1 - Math.pow(0.8, threads * waitsPerThread));
+        assertEquals(expectedMs, limiter.getStats().getPoolWaitEwmaMs(), 1e-9);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max, long latencyThresholdMs, long cooldownMs) {
+        return new AdaptiveConcurrencyLimiter(initial, min, max, latencyThresholdMs, 50, 0.5, cooldownMs);
+    }
+
+    private void releaseSamples(AdaptiveConcurrencyLimiter limiter, int samples, boolean failed) {
+        for (int i = 0; i < samples; i++) {
+            limiter.tryAcquire().orElseThrow().release(failed);
+        }
+    }
+}
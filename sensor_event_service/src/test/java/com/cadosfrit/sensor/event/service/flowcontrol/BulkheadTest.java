@@ -0,0 +1,113 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    private static final long TIMEOUT_MS = 100;
+
+    private HikariDataSource dataSource;
+    private Bulkhead bulkhead;
+
+    @BeforeEach
+    void setUp() {
+        // Never connected: the bulkhead only reads pool metrics for its stats
+        dataSource = new HikariDataSource();
+        bulkhead = new Bulkhead("test", 1, 1, TIMEOUT_MS, dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkhead.close();
+        dataSource.close();
+    }
+
+    @Test
+    void testStartedWorkIsWaitedForPastTheTimeout() {
+        String result = bulkhead.call(() -> {
+            sleep(TIMEOUT_MS * 3);
+            return "committed";
+        });
+
+        assertEquals("committed", result);
+        assertEquals(0, bulkhead.getStats().getTimedOut());
+    }
+
+    @Test
+    void testQueuedWorkTimesOutWithoutRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> bulkhead.call(() -> {
+            started.countDown();
+            await(release);
+            return "first";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        assertThrows(ServiceOverloadedException.class, () -> bulkhead.call(() -> {
+            queuedRan.set(true);
+            return "second";
+        }));
+
+        release.countDown();
+        assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        // The abandoned task's turn comes and goes without running the work
+        while (bulkhead.getStats().getQueued() > 0) {
+            Thread.onSpinWait();
+        }
+        assertEquals("third", bulkhead.call(() -> "third"));
+        assertFalse(queuedRan.get());
+        assertEquals(1, bulkhead.getStats().getTimedOut());
+    }
+
+    @Test
+    void testFullQueueIsRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> bulkhead.call(() -> {
+            started.countDown();
+            await(release);
+            return "first";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> bulkhead.call(() -> "second"));
+        while (bulkhead.getStats().getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(ServiceOverloadedException.class, () -> bulkhead.call(() -> "third"));
+        release.countDown();
+        assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.getStats().getRejected());
+        // The queued call either ran after the first one or timed out behind it
+        queued.handle((result, error) -> result).get(5, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
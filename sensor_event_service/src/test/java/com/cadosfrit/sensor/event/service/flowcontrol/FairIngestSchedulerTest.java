@@ -0,0 +1,150 @@
+package com.cadosfrit.sensor.event.service.flowcontrol;
+
+import com.cadosfrit.sensor.event.service.dto.FairSchedulerStatsDTO;
+import com.cadosfrit.sensor.event.service.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairIngestSchedulerTest {
+
+    private FairSchedulerProperties properties;
+    private FairIngestScheduler scheduler;
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties = new FairSchedulerProperties();
+        properties.setConcurrency(1);
+        properties.setQuantumEvents(10);
+        properties.setWeights(Map.of("F-HEAVY", 3, "F-LIGHT", 1));
+        properties.setMaxQueuedPerFactory(10);
+        properties.setMaxWaitMs(10000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+        pending.forEach(future -> future.cancel(true));
+    }
+
+    @Test
+    void testDispatchFollowsFactoryWeights() throws Exception {
+        start();
+        CountDownLatch release = holdOnlySlot();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        // Heavy is queued first, so the round starts with it
+        for (int i = 0; i < 6; i++) {
+            submit("F-HEAVY", 10, order);
+        }
+        awaitQueued("F-HEAVY", 6);
+        for (int i = 0; i < 6; i++) {
+            submit("F-LIGHT", 10, order);
+        }
+        awaitQueued("F-LIGHT", 6);
+
+        release.countDown();
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        // Three heavy batches per light one while both are backlogged
+        assertEquals(List.of("F-HEAVY", "F-HEAVY", "F-HEAVY", "F-LIGHT", "F-HEAVY", "F-HEAVY", "F-HEAVY", "F-LIGHT"),
+                order.subList(0, 8));
+    }
+
+    @Test
+    void testFullFactoryQueueIsRejectedWithoutBlockingOthers() throws Exception {
+        properties.setMaxQueuedPerFactory(2);
+        start();
+        CountDownLatch release = holdOnlySlot();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        submit("F-HEAVY", 10, order);
+        submit("F-HEAVY", 10, order);
+        awaitQueued("F-HEAVY", 2);
+
+        assertThrows(ServiceOverloadedException.class, () -> scheduler.execute("F-HEAVY", 10, () -> "third"));
+        submit("F-LIGHT", 10, order);
+        awaitQueued("F-LIGHT", 1);
+
+        release.countDown();
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertEquals(3, order.size());
+        assertEquals(1, scheduler.getStats().getFactories().get("F-HEAVY").getRejected());
+    }
+
+    @Test
+    void testSharedBatchChargesEveryFactoryItsShare() {
+        start();
+        Map<String, Integer> shares = new LinkedHashMap<>();
+        shares.put("F-LIGHT", 4);
+        shares.put("F-HEAVY", 6);
+
+        assertEquals("done", scheduler.execute(shares, () -> "done"));
+
+        Map<String, FairSchedulerStatsDTO.FactoryQueueStats> factories = scheduler.getStats().getFactories();
+        assertEquals(6, factories.get("F-HEAVY").getDispatchedEvents());
+        assertEquals(1, factories.get("F-HEAVY").getDispatchedBatches());
+        assertEquals(4, factories.get("F-LIGHT").getDispatchedEvents());
+        assertEquals(0, factories.get("F-LIGHT").getDispatchedBatches());
+        assertEquals(-4, factories.get("F-LIGHT").getDeficit());
+
+        // The debt is worked off before the next batch of the charged factory is granted
+        assertEquals("next", scheduler.execute("F-LIGHT", 6, () -> "next"));
+        assertEquals(0, scheduler.getStats().getFactories().get("F-LIGHT").getDeficit());
+    }
+
+    private void start() {
+        scheduler = new FairIngestScheduler(properties);
+        scheduler.start();
+    }
+
+    /**
+     * Occupies the only execution slot until the returned latch is released.
+     */
+    private CountDownLatch holdOnlySlot() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pending.add(CompletableFuture.runAsync(() -> scheduler.execute("F-BLOCKER", 1, () -> {
+            started.countDown();
+            await(release);
+            return null;
+        })));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void submit(String factoryId, int events, List<String> order) {
+        pending.add(CompletableFuture.runAsync(() -> scheduler.execute(factoryId, events, () -> order.add(factoryId))));
+    }
+
+    private void awaitQueued(String factoryId, int batches) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queued(factoryId) < batches) {
+            assertTrue(System.currentTimeMillis() < deadline, "batches of " + factoryId + " were not queued");
+            Thread.sleep(5);
+        }
+    }
+
+    private int queued(String factoryId) {
+        FairSchedulerStatsDTO.FactoryQueueStats stats = scheduler.getStats().getFactories().get(factoryId);
+        return stats == null ? 0 : stats.getQueued();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
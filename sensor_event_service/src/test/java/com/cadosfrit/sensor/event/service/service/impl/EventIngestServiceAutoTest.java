@@ -0,0 +1,133 @@
+package com.cadosfrit.sensor.event.service.service.impl;
+
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.routing.RoutingDecision;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class EventIngestServiceAutoTest {
+
+    private static final String V1 = IngestEngine.V1.getBeanName();
+    private static final String V2 = IngestEngine.V2.getBeanName();
+    private static final int MIN_SAMPLES = 3;
+
+    private final EventIngestService v1 = mock(EventIngestService.class);
+    private final EventIngestService v2 = mock(EventIngestService.class);
+
+    @Test
+    void testBatchWithCollisionsNeverGoesToV1() {
+        answerAccepted(v1, 0);
+        answerAccepted(v2, 0);
+        EventIngestServiceAuto router = router();
+
+        router.processBatch(List.of(createEvent("E-1"), createEvent("E-1"), createEvent("E-2")));
+
+        verify(v1, never()).processBatch(anyList());
+        RoutingDecision decision = router.getStats().getRecentDecisions().get(0);
+        assertEquals(V2, decision.engine());
+        assertEquals("only-eligible", decision.reason());
+    }
+
+    @Test
+    void testColdModelExploresThenPicksTheCheaperEngine() {
+        answerAccepted(v1, 20);
+        answerAccepted(v2, 0);
+        EventIngestServiceAuto router = router();
+
+        // --- 1. ACT: Enough batches of one shape to fill both engines' buckets, then one more ---
+        for (int i = 0; i < 2 * MIN_SAMPLES; i++) {
+            router.processBatch(batch("warm-" + i, 10));
+        }
+        router.processBatch(batch("scored", 10));
+
+        // --- 2. ASSERT: Every warm-up batch explored, the model then chose the faster V2 ---
+        List<RoutingDecision> decisions = router.getStats().getRecentDecisions();
+        assertTrue(decisions.subList(1, decisions.size()).stream().allMatch(d -> d.reason().equals("explore")));
+        assertEquals(Map.of(V1, (long) MIN_SAMPLES, V2, (long) MIN_SAMPLES + 1), router.getStats().getDecisions());
+        assertEquals(V2, decisions.get(0).engine());
+        assertEquals("model", decisions.get(0).reason());
+    }
+
+    @Test
+    void testIncompleteResponseIsNotLearnedFrom() {
+        when(v1.processBatch(anyList())).thenReturn(IngestResponseDTO.builder().build());
+        when(v2.processBatch(anyList())).thenReturn(IngestResponseDTO.builder().build());
+        EventIngestServiceAuto router = router();
+
+        for (int i = 0; i < 2 * MIN_SAMPLES; i++) {
+            router.processBatch(batch("failing-" + i, 10));
+        }
+
+        // Without samples the model never gets to score, and the ratio is not fed with failed batches
+        assertTrue(router.getStats().getRecentDecisions().stream().allMatch(d -> d.reason().equals("explore")));
+        assertEquals(0.0, router.getStats().getExpectedExistingRatio());
+    }
+
+    @Test
+    void testConcurrentBatchesDoNotLoseExistingRatioUpdates() throws Exception {
+        // Every batch is all duplicates, so each completed batch moves the ratio 10% of the way to 1
+        when(v1.processBatch(anyList())).thenAnswer(call ->
+                IngestResponseDTO.builder().deduped(call.<List<?>>getArgument(0).size()).build());
+        when(v2.processBatch(anyList())).thenAnswer(call ->
+                IngestResponseDTO.builder().deduped(call.<List<?>>getArgument(0).size()).build());
+        EventIngestServiceAuto router = router();
+
+        int threads = 4;
+        int batchesPerThread = 10;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(CompletableFuture.runAsync(() -> IntStream.range(0, batchesPerThread)
+                    .forEach(i -> router.processBatch(batch("dup-" + thread + "-" + i, 5)))));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        double expected = 1 - Math.pow(0.9, threads * batchesPerThread);
+        assertEquals(expected, router.getStats().getExpectedExistingRatio(), 1e-9);
+    }
+
+    private EventIngestServiceAuto router() {
+        return new EventIngestServiceAuto(Map.of(V1, v1, V2, v2), List.of(V1, V2), 64, MIN_SAMPLES, 0.0, 100);
+    }
+
+    private void answerAccepted(EventIngestService engine, long delayMs) {
+        when(engine.processBatch(anyList())).thenAnswer(call -> {
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            return IngestResponseDTO.builder().accepted(call.<List<?>>getArgument(0).size()).build();
+        });
+    }
+
+    private List<EventRequestDTO> batch(String prefix, int size) {
+        List<EventRequestDTO> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(createEvent(prefix + "-" + i));
+        }
+        return batch;
+    }
+
+    private EventRequestDTO createEvent(String id) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId("M-1");
+        event.setEventTime(Instant.parse("2026-01-01T10:00:00Z"));
+        event.setDurationMs(1000);
+        event.setDefectCount(0);
+        return event;
+    }
+}
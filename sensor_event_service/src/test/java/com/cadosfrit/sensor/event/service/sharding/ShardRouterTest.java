@@ -0,0 +1,129 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.exception.ShardUnavailableException;
+import com.cadosfrit.sensor.event.service.flowcontrol.FactoryResolver;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ShardRouterTest {
+
+    private ShardDataSources dataSources;
+    private ShardPlacements placements;
+    private ShardRouter router;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ShardingProperties properties = new ShardingProperties();
+        properties.setEnabled(true);
+        ShardingProperties.Shard east = new ShardingProperties.Shard();
+        east.setFactories(List.of("F_EAST"));
+        properties.getShards().put("east", east);
+
+        FactoryResolver factoryResolver = mock(FactoryResolver.class);
+        when(factoryResolver.resolve(anyString()))
+                .thenAnswer(call -> ((String) call.getArgument(0)).startsWith("east_") ? "F_EAST" : "F_WEST");
+
+        // Pools are never connected: the mocked dictionary reports no keys to copy
+        dataSources = new ShardDataSources(Map.of("east", new HikariDataSource()), Map.of("east", new HikariDataSource()));
+        ObjectProvider<ShardDataSources> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(dataSources);
+
+        // No id is placed yet unless a test says so: every id claims its factory's shard
+        placements = mock(ShardPlacements.class);
+        when(placements.claim(anyString(), anyMap())).thenAnswer(call -> call.getArgument(1));
+
+        router = new ShardRouter(properties, factoryResolver, mock(MachineKeyDictionary.class), placements, provider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.shutdown();
+        dataSources.close();
+    }
+
+    @Test
+    void testMixedBatchIsSplitPerShardAndCountersAreAdded() {
+        Map<String, List<String>> parts = new ConcurrentHashMap<>();
+
+        IngestResponseDTO response = router.ingest(List.of("east_1", "west_1", "east_2"), ShardPlacements.EVENTS, id -> id, id -> id, part -> {
+            parts.put(Objects.requireNonNullElse(ShardContext.current(), ShardRouter.PRIMARY), part);
+            return IngestResponseDTO.builder().accepted(part.size()).rejections(new ArrayList<>()).build();
+        });
+
+        assertEquals(List.of("east_1", "east_2"), parts.get("east"));
+        assertEquals(List.of("west_1"), parts.get(ShardRouter.PRIMARY));
+        assertEquals(3, response.getAccepted());
+        assertTrue(response.isComplete(3));
+        assertEquals(1, router.getStats().getCrossShardBatches());
+    }
+
+    @Test
+    void testPlacedIdsStayOnTheirShardWhateverTheirMachine() {
+        // e1 was stored on the primary before its machine moved east; e2 is new
+        when(placements.claim(eq(ShardPlacements.EVENTS), anyMap())).thenAnswer(call -> {
+            Map<String, String> placed = new HashMap<>(call.<Map<String, String>>getArgument(1));
+            placed.put("e1", ShardRouter.PRIMARY);
+            return placed;
+        });
+        Map<String, List<String>> parts = new ConcurrentHashMap<>();
+
+        router.ingest(List.of("e1:east_1", "e2:east_1", "e1:east_2"), ShardPlacements.EVENTS,
+                item -> item.split(":")[0], item -> item.split(":")[1], part -> {
+                    parts.put(Objects.requireNonNullElse(ShardContext.current(), ShardRouter.PRIMARY), part);
+                    return IngestResponseDTO.builder().accepted(part.size()).rejections(new ArrayList<>()).build();
+                });
+
+        // Both sends of e1 go where it is stored, so that shard updates or dedupes them
+        assertEquals(List.of("e1:east_1", "e1:east_2"), parts.get(ShardRouter.PRIMARY));
+        assertEquals(List.of("e2:east_1"), parts.get("east"));
+        assertEquals(2, router.getStats().getPlacedElsewhere());
+        verify(placements).claim(ShardPlacements.EVENTS, Map.of("e1", "east", "e2", "east"));
+    }
+
+    @Test
+    void testFailedShardFailsTheBatchAfterTheOtherPartsFinished() {
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+
+        ShardUnavailableException failure = assertThrows(ShardUnavailableException.class,
+                () -> router.ingest(List.of("east_1", "west_1"), ShardPlacements.EVENTS, id -> id, id -> id, part -> {
+                    if ("east".equals(ShardContext.current())) {
+                        throw new IllegalStateException("shard down");
+                    }
+                    finished.addAll(part);
+                    return IngestResponseDTO.builder().accepted(part.size()).rejections(new ArrayList<>()).build();
+                }));
+
+        assertEquals(Set.of("east"), failure.getShards());
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(List.of("west_1"), finished);
+        long eastFailures = router.getStats().getShards().stream()
+                .filter(shard -> shard.getName().equals("east"))
+                .findFirst().orElseThrow().getFailures();
+        assertEquals(1, eastFailures);
+    }
+
+    @Test
+    void testFanOutAsksEveryShardAndFailsOnAMissingOne() {
+        List<String> answers = router.onAllShards(() -> Objects.requireNonNullElse(ShardContext.current(), ShardRouter.PRIMARY));
+        assertEquals(Set.of(ShardRouter.PRIMARY, "east"), new HashSet<>(answers));
+
+        assertThrows(ShardUnavailableException.class, () -> router.onAllShards(() -> {
+            if (ShardContext.current() == null) {
+                throw new IllegalStateException("primary down");
+            }
+            return 1;
+        }));
+    }
+}
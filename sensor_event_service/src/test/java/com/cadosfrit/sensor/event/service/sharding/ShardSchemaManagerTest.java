@@ -0,0 +1,41 @@
+package com.cadosfrit.sensor.event.service.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardSchemaManagerTest {
+
+    @Test
+    void testShardTableGetsMissingColumnsIndexesAndChangedTypes() {
+        String primary = """
+                CREATE TABLE `machine_events` (
+                  `event_id` varchar(50) NOT NULL,
+                  `machine_key` int NOT NULL,
+                  `defect_count` int DEFAULT NULL,
+                  `received_time` datetime(6) DEFAULT NULL,
+                  PRIMARY KEY (`event_id`),
+                  KEY `idx_machine_key_time` (`machine_key`,`event_time`),
+                  KEY `idx_received` (`received_time`)
+                ) ENGINE=InnoDB""";
+        String shard = """
+                CREATE TABLE `machine_events` (
+                  `event_id` varchar(50) NOT NULL,
+                  `machine_key` int NOT NULL,
+                  `defect_count` smallint DEFAULT NULL,
+                  PRIMARY KEY (`event_id`),
+                  KEY `idx_machine_key_time` (`machine_key`,`event_time`)
+                ) ENGINE=InnoDB""";
+
+        List<String> statements = ShardSchemaManager.alterStatements("machine_events", primary, shard);
+
+        assertEquals(List.of(
+                "ALTER TABLE machine_events MODIFY COLUMN `defect_count` int DEFAULT NULL",
+                "ALTER TABLE machine_events ADD COLUMN `received_time` datetime(6) DEFAULT NULL",
+                "ALTER TABLE machine_events ADD KEY `idx_received` (`received_time`)"
+        ), statements);
+        assertTrue(ShardSchemaManager.alterStatements("machine_events", primary, primary).isEmpty());
+    }
+}
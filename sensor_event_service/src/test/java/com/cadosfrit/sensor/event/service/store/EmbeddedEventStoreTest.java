@@ -0,0 +1,77 @@
+package com.cadosfrit.sensor.event.service.store;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedEventStoreTest {
+
+    private static final Instant HOUR = Instant.parse("2026-01-01T10:00:00Z");
+
+    private EmbeddedEventStore store;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedStoreProperties properties = new EmbeddedStoreProperties();
+        // Small enough that the failed batch grows the columns and the index
+        properties.setInitialCapacity(16);
+        store = new EmbeddedEventStore(properties);
+    }
+
+    @Test
+    void testFailedTransactionRestoresTouchedRows() {
+        // --- 1. ARRANGE: Two committed events ---
+        store.upsertSequential(List.of(
+                createEvent("E-1", "M-1", HOUR.plusSeconds(60), 2),
+                createEvent("E-2", "M-1", HOUR.plusSeconds(120), 3)), Instant.now());
+
+        // --- 2. ACT: Move one event, correct the other, add new ones and a new machine, then fail ---
+        assertThrows(IllegalStateException.class, () -> store.inTransaction(() -> {
+            store.upsertSequential(List.of(
+                    createEvent("E-1", "M-2", HOUR.plus(2, ChronoUnit.HOURS), 7),
+                    createEvent("E-2", "M-1", HOUR.plusSeconds(120), 9)), Instant.now());
+            for (int i = 0; i < 40; i++) {
+                store.upsertBatch(List.of(createEvent("N-" + i, "M-" + (i % 3), HOUR.plusSeconds(i), 1)), Instant.now());
+            }
+            throw new IllegalStateException("failed midway");
+        }));
+
+        // --- 3. ASSERT: Rows, windows and the id index are as before ---
+        assertEquals(2, store.size());
+        assertArrayEquals(new Object[]{5L, 2L}, store.getMachineStatsRaw("M-1", HOUR, HOUR.plus(1, ChronoUnit.HOURS)));
+        assertEquals(0L, store.getMachineStatsRaw("M-2", HOUR, HOUR.plus(3, ChronoUnit.HOURS))[1]);
+
+        EventStore.Counts replay = store.upsertSequential(List.of(
+                createEvent("E-1", "M-1", HOUR.plusSeconds(60), 2),
+                createEvent("E-2", "M-1", HOUR.plusSeconds(120), 3),
+                createEvent("N-0", "M-0", HOUR, 1)), Instant.now());
+        assertEquals(new EventStore.Counts(1, 0, 2), replay);
+    }
+
+    @Test
+    void testCommittedTransactionKeepsItsRows() {
+        EventStore.Counts counts = store.inTransaction(() -> store.upsertSequential(List.of(
+                createEvent("E-1", "M-1", HOUR, 1),
+                createEvent("E-1", "M-1", HOUR, 4)), Instant.now()));
+
+        assertEquals(new EventStore.Counts(1, 1, 0), counts);
+        assertEquals(1, store.size());
+        assertArrayEquals(new Object[]{4L, 1L}, store.getMachineStatsRaw("M-1", HOUR, HOUR.plusSeconds(1)));
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
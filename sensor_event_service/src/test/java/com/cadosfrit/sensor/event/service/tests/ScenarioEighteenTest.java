@@ -0,0 +1,91 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.store.EmbeddedEventStore;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Runs without MySQL: the embedded profile keeps events in the in-process store.
+ */
+@SpringBootTest(properties = {
+        "ingest.store.embedded.lines.L_EDGE_1=F_EDGE",
+        "ingest.store.embedded.lines.L_EDGE_2=F_EDGE",
+        "ingest.store.embedded.machines.mac_edge_1=L_EDGE_1",
+        "ingest.store.embedded.machines.mac_edge_2=L_EDGE_2"
+})
+@ActiveProfiles("embedded")
+public class ScenarioEighteenTest {
+
+    private static final Instant BASE = Instant.parse("2024-02-01T10:00:00Z");
+
+    @Autowired private EventStore eventStore;
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+
+    @Test
+    void testEmbeddedStoreMatchesProcedureSemantics() {
+        // --- 1. ARRANGE: A first batch, then resends, corrections and an in-batch repeat ---
+        assertInstanceOf(EmbeddedEventStore.class, eventStore);
+        ingestService.processBatch(List.of(
+                createEvent("edge_1", "mac_edge_1", 0, 2),
+                createEvent("edge_2", "mac_edge_1", 60, 1),
+                createEvent("edge_3", "mac_edge_2", 120, 0)
+        ));
+
+        // --- 2. ACT ---
+        IngestResponseDTO response = ingestService.processBatch(List.of(
+                createEvent("edge_1", "mac_edge_1", 0, 2),      // identical resend
+                createEvent("edge_2", "mac_edge_1", 90, 4),     // corrected time and defects
+                createEvent("edge_3", "mac_edge_2", 120, -1),   // now a heartbeat
+                createEvent("edge_4", "mac_edge_2", 180, 3),    // new, then corrected in the same batch
+                createEvent("edge_4", "mac_edge_2", 180, 5)
+        ));
+
+        // --- 3. ASSERT: Counters and stats as the stored procedures would give ---
+        assertEquals(1, response.getAccepted());
+        assertEquals(3, response.getUpdated());
+        assertEquals(1, response.getDeduped());
+
+        MachineStatsDTO first = statsService.getMachineStats("mac_edge_1", BASE, BASE.plusSeconds(3600));
+        assertEquals(2, first.getEventsCount());
+        assertEquals(6, first.getDefectsCount());
+
+        MachineStatsDTO edge = statsService.getMachineStats("mac_edge_1", BASE, BASE.plusSeconds(90));
+        assertEquals(1, edge.getEventsCount(), "The corrected event moved to the exclusive window end");
+
+        MachineStatsDTO second = statsService.getMachineStats("mac_edge_2", BASE, BASE.plusSeconds(3600));
+        assertEquals(2, second.getEventsCount());
+        assertEquals(5, second.getDefectsCount(), "Heartbeats count as events but not as defects");
+
+        List<Map<String, Object>> lines = statsService.getTopDefectLines("F_EDGE", BASE, BASE.plusSeconds(3600), 5);
+        assertEquals(2, lines.size());
+        assertEquals("L_EDGE_1", lines.get(0).get("lineId"));
+        assertEquals(300.0, lines.get(0).get("defectsPercent"));
+    }
+
+    private EventRequestDTO createEvent(String id, String machineId, int offsetSeconds, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machineId);
+        event.setEventTime(BASE.plusSeconds(offsetSeconds));
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,75 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.dto.SummaryRequestDTO;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.service.SummaryIngestService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ScenarioElevenTest {
+
+    @Autowired private SummaryIngestService summaryIngestService;
+    @Autowired private MachineStatsService statsService;
+
+    @Test
+    void testSummariesDedupeUpdateAndCountInStats() {
+        // --- 1. ARRANGE: Two one-minute summaries; the second one is later corrected ---
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_gateway_summary_" + run;
+        SummaryRequestDTO first = createSummary("sum_gw_1_" + run, machine, "2023-11-03T08:00:00Z", 1000, 4);
+        SummaryRequestDTO second = createSummary("sum_gw_2_" + run, machine, "2023-11-03T08:01:00Z", 500, 1);
+        SummaryRequestDTO corrected = createSummary("sum_gw_2_" + run, machine, "2023-11-03T08:01:00Z", 600, 2);
+
+        // --- 2. ACT ---
+        IngestResponseDTO initial = summaryIngestService.processBatch(List.of(first, second));
+        IngestResponseDTO resend = summaryIngestService.processBatch(List.of(first, corrected));
+
+        // --- 3. ASSERT: Same semantics as events, and stats see the latest version ---
+        assertEquals(2, initial.getAccepted());
+        assertEquals(1, resend.getDeduped());
+        assertEquals(1, resend.getUpdated());
+
+        MachineStatsDTO stats = statsService.getMachineStats(machine,
+                Instant.parse("2023-11-03T08:00:00Z"), Instant.parse("2023-11-03T09:00:00Z"));
+        assertEquals(1600, stats.getEventsCount());
+        assertEquals(6, stats.getDefectsCount());
+    }
+
+    @Test
+    void testInvalidSummaryIsRejected() {
+        String run = Long.toString(System.nanoTime());
+        SummaryRequestDTO inverted = createSummary("sum_gw_bad_" + run, "mac_gateway_summary_" + run,
+                "2023-11-03T08:00:00Z", 10, 0);
+        inverted.setIntervalEnd(inverted.getIntervalStart().minusSeconds(60));
+
+        IngestResponseDTO response = summaryIngestService.processBatch(List.of(inverted));
+
+        assertEquals(1, response.getRejected());
+        assertEquals("INVALID_SUMMARY_INTERVAL", response.getRejections().get(0).getReason());
+    }
+
+    private SummaryRequestDTO createSummary(String id, String machine, String start, long events, long defects) {
+        SummaryRequestDTO summary = new SummaryRequestDTO();
+        summary.setSummaryId(id);
+        summary.setMachineId(machine);
+        summary.setIntervalStart(Instant.parse(start));
+        summary.setIntervalEnd(Instant.parse(start).plusSeconds(60));
+        summary.setEventCount(events);
+        summary.setDefectSum(defects);
+        summary.setDurationSumMs(events * 100);
+        summary.setDurationMinMs(50);
+        summary.setDurationMaxMs(200);
+        return summary;
+    }
+}
@@ -0,0 +1,79 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.RetentionStatsDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.storage.RetentionPurgeJob;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "ingest.retention.enabled=true",
+        "ingest.retention.default-max-age-days=30",
+        "ingest.retention.chunk-size=2",
+        "ingest.retention.min-sleep-ms=0"
+})
+@ActiveProfiles("test")
+public class ScenarioFifteenTest {
+
+    private static final String MACHINE = "mac_retention";
+
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private RetentionPurgeJob retentionJob;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void testExpiredEventsArePurgedInChunks() throws Exception {
+        // --- 1. ARRANGE: Five events past the 30 day age, one recent event ---
+        eventRepository.deleteAll();
+        Instant now = Instant.now();
+        List<Map<String, Object>> batch = List.of(
+                createEventMap("ret_1", now.minus(90, ChronoUnit.DAYS)),
+                createEventMap("ret_2", now.minus(80, ChronoUnit.DAYS)),
+                createEventMap("ret_3", now.minus(70, ChronoUnit.DAYS)),
+                createEventMap("ret_4", now.minus(60, ChronoUnit.DAYS)),
+                createEventMap("ret_5", now.minus(40, ChronoUnit.DAYS)),
+                createEventMap("ret_6", now.minus(1, ChronoUnit.DAYS))
+        );
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(batch));
+        long deletedBefore = retentionJob.getStats().getDeletedEvents();
+
+        // --- 2. ACT ---
+        long deleted = retentionJob.run();
+
+        // --- 3. ASSERT: Old rows gone in chunks of two, recent row kept ---
+        assertEquals(5, deleted);
+        assertFalse(eventRepository.existsById("ret_1"));
+        assertFalse(eventRepository.existsById("ret_5"));
+        assertTrue(eventRepository.existsById("ret_6"));
+
+        RetentionStatsDTO stats = retentionJob.getStats();
+        assertEquals(5, stats.getDeletedEvents() - deletedBefore);
+        assertEquals(5, stats.getLastRunDeleted());
+        assertTrue(stats.getChunks() >= 3);
+        assertTrue(stats.getFactories().stream()
+                .allMatch(factory -> factory.getNextMachineKey() == null && factory.getLastCompletedAt() != null));
+    }
+
+    private Map<String, Object> createEventMap(String id, Instant eventTime) {
+        return Map.of(
+                "event_id", id,
+                "machine_id", MACHINE,
+                "event_time", eventTime.truncatedTo(ChronoUnit.SECONDS).toString(),
+                "received_time", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString(),
+                "duration_ms", 1000,
+                "defect_count", 1
+        );
+    }
+}
@@ -0,0 +1,132 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.constants.Constants;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.tiering.EventTieringJob;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest(properties = {
+        "ingest.tiering.enabled=true",
+        "ingest.tiering.hot-days=30",
+        "ingest.tiering.max-days-per-run=10"
+})
+@ActiveProfiles("test")
+public class ScenarioFourteenTest {
+
+    private static final String MACHINE = "mac_cold_tier";
+
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private EventTieringJob tieringJob;
+    @Autowired private MachineStatsService statsService;
+    @Autowired @Qualifier("EventIngestServiceV1") private EventIngestService ingestService;
+    @Autowired private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void coldTierDirectory(DynamicPropertyRegistry registry) throws Exception {
+        String directory = Files.createTempDirectory("cold-tier").toString();
+        registry.add("ingest.tiering.dir", () -> directory);
+    }
+
+    @Test
+    void testOldEventsMoveToColdTierAndStillCount() throws Exception {
+        // --- 1. ARRANGE: Two old days of events, one window edge cutting through the second day ---
+        eventRepository.deleteAll();
+        List<Map<String, Object>> batch = List.of(
+                createEventMap("cold_1", "2023-12-05T08:00:00Z", 2),
+                createEventMap("cold_2", "2023-12-05T09:00:00Z", -1),
+                createEventMap("cold_3", "2023-12-06T08:00:00Z", 4),
+                createEventMap("cold_4", "2023-12-06T20:00:00Z", 1)
+        );
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(batch));
+        Instant from = Instant.parse("2023-12-05T00:00:00Z");
+        Instant to = Instant.parse("2023-12-06T12:00:00Z");
+        MachineStatsDTO before = statsService.getMachineStats(MACHINE, from, to);
+
+        // --- 2. ACT: Move both days, then try to re-send one of the moved events ---
+        long moved = tieringJob.run();
+
+        EventRequestDTO late = new EventRequestDTO();
+        late.setEventId("cold_1");
+        late.setMachineId(MACHINE);
+        late.setEventTime(Instant.parse("2023-12-05T08:00:00Z"));
+        late.setDurationMs(1000);
+        late.setDefectCount(5);
+        IngestResponseDTO response = ingestService.processBatch(List.of(late));
+
+        // --- 3. ASSERT: Rows left MySQL, stats are unchanged, the late event is rejected ---
+        assertEquals(4, moved);
+        assertFalse(eventRepository.existsById("cold_1"));
+        assertFalse(eventRepository.existsById("cold_4"));
+
+        MachineStatsDTO after = statsService.getMachineStats(MACHINE, from, to);
+        assertEquals(3, before.getEventsCount());
+        assertEquals(6, before.getDefectsCount());
+        assertEquals(before.getEventsCount(), after.getEventsCount());
+        assertEquals(before.getDefectsCount(), after.getDefectsCount());
+
+        assertEquals(1, response.getRejected());
+        assertEquals(Constants.COLD_TIER_EVENT_TIME.getCode(), response.getRejections().get(0).getReason());
+    }
+
+    @Test
+    void testMovedEventResentWithHotTimeIsRejected() throws Exception {
+        // --- 1. ARRANGE: One old event, moved to the cold tier ---
+        String id = "cold_resent_" + System.nanoTime();
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(
+                List.of(createEventMap(id, "2023-11-20T08:00:00Z", 3))));
+        tieringJob.run();
+        assertFalse(eventRepository.existsById(id));
+        Instant from = Instant.parse("2023-11-01T00:00:00Z");
+        MachineStatsDTO before = statsService.getMachineStats(MACHINE, from, Instant.now());
+
+        // --- 2. ACT: A correction that moves it into the hot tier ---
+        EventRequestDTO correction = new EventRequestDTO();
+        correction.setEventId(id);
+        correction.setMachineId(MACHINE);
+        correction.setEventTime(Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+        correction.setDurationMs(1000);
+        correction.setDefectCount(7);
+        IngestResponseDTO response = ingestService.processBatch(List.of(correction));
+
+        // --- 3. ASSERT: Rejected, no hot copy, the event still counts once ---
+        assertEquals(1, response.getRejected());
+        assertEquals(Constants.COLD_TIER_EVENT_ID.getCode(), response.getRejections().get(0).getReason());
+        assertFalse(eventRepository.existsById(id));
+
+        MachineStatsDTO after = statsService.getMachineStats(MACHINE, from, Instant.now());
+        assertEquals(before.getEventsCount(), after.getEventsCount());
+        assertEquals(before.getDefectsCount(), after.getDefectsCount());
+    }
+
+    private Map<String, Object> createEventMap(String id, String eventTime, int defects) {
+        return Map.of(
+                "event_id", id,
+                "machine_id", MACHINE,
+                "event_time", eventTime,
+                "received_time", "2023-12-07T00:00:00Z",
+                "duration_ms", 1000,
+                "defect_count", defects
+        );
+    }
+}
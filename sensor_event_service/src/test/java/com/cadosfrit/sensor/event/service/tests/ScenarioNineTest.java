@@ -0,0 +1,131 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.WalAckDTO;
+import com.cadosfrit.sensor.event.service.exception.IdempotencyKeyConflictException;
+import com.cadosfrit.sensor.event.service.service.IdempotencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ScenarioNineTest {
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    void testRetriedBatchReplaysOriginalResponse() {
+        // --- 1. ARRANGE: A batch whose first run accepts both events ---
+        List<EventRequestDTO> batch = List.of(createEvent("evt_idem_1"), createEvent("evt_idem_2"));
+        AtomicInteger executions = new AtomicInteger();
+
+        // --- 2. ACT: Send the same key twice, as a gateway retry would ---
+        IdempotencyService.IdempotentResult first = idempotencyService.execute("V2", "retry-key-1", batch,
+                () -> countedResponse(executions, 2, 0));
+        IdempotencyService.IdempotentResult retry = idempotencyService.execute("V2", "retry-key-1", batch,
+                () -> countedResponse(executions, 0, 2));
+
+        // --- 3. ASSERT: The retry sees the original counters, not "deduped" ---
+        assertEquals(1, executions.get(), "Retry must not re-run the ingest path");
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals(2, retry.response().getAccepted());
+        assertEquals(0, retry.response().getDeduped());
+    }
+
+    @Test
+    void testReusedKeyWithDifferentBatchIsRejected() {
+        List<EventRequestDTO> batch = List.of(createEvent("evt_idem_3"));
+        List<EventRequestDTO> otherBatch = List.of(createEvent("evt_idem_4"));
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyService.execute("V1", "reused-key-1", batch, () -> countedResponse(executions, 1, 0));
+
+        assertThrows(IdempotencyKeyConflictException.class, () ->
+                idempotencyService.execute("V1", "reused-key-1", otherBatch, () -> countedResponse(executions, 1, 0)));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testConcurrentRequestsWithOneKeyRunOnce() {
+        // --- 1. ARRANGE: Eight requests with the same key released together ---
+        List<EventRequestDTO> batch = List.of(createEvent("evt_idem_5"));
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        String key = "race-key-" + System.nanoTime();
+
+        // --- 2. ACT ---
+        List<CompletableFuture<IdempotencyService.IdempotentResult>> requests = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    awaitQuietly(start);
+                    return idempotencyService.execute("V2", key, batch, () -> countedResponse(executions, 1, 0));
+                }))
+                .toList();
+        start.countDown();
+        List<IdempotencyService.IdempotentResult> results = requests.stream().map(CompletableFuture::join).toList();
+
+        // --- 3. ASSERT: One execution, every other request replays it ---
+        assertEquals(1, executions.get());
+        assertEquals(7, results.stream().filter(IdempotencyService.IdempotentResult::replayed).count());
+    }
+
+    @Test
+    void testWalAcknowledgementIsReplayed() {
+        List<EventRequestDTO> batch = List.of(createEvent("evt_idem_6"));
+        AtomicInteger appends = new AtomicInteger();
+        String key = "wal-key-" + System.nanoTime();
+
+        IdempotencyService.AcknowledgedResult first = idempotencyService.acknowledge("V1", key, batch,
+                () -> WalAckDTO.builder().sequence(appends.incrementAndGet()).events(1).durability("WAL").build());
+        IdempotencyService.AcknowledgedResult retry = idempotencyService.acknowledge("V1", key, batch,
+                () -> WalAckDTO.builder().sequence(appends.incrementAndGet()).events(1).durability("WAL").build());
+
+        assertEquals(1, appends.get(), "Retry must not append the batch again");
+        assertTrue(retry.replayed());
+        assertEquals(first.ack().getSequence(), retry.ack().getSequence());
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private IngestResponseDTO countedResponse(AtomicInteger executions, int accepted, int deduped) {
+        executions.incrementAndGet();
+        return IngestResponseDTO.builder()
+                .accepted(accepted)
+                .deduped(deduped)
+                .rejections(List.of())
+                .build();
+    }
+
+    private EventRequestDTO createEvent(String eventId) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(eventId);
+        event.setMachineId("mac_1");
+        event.setEventTime(Instant.parse("2023-11-01T12:00:00Z"));
+        event.setReceivedTime(Instant.parse("2023-11-01T12:05:00Z"));
+        event.setDurationMs(1000);
+        event.setDefectCount(0);
+        return event;
+    }
+}
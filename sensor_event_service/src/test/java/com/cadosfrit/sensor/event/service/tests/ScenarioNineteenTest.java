@@ -0,0 +1,161 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.store.EmbeddedStoreProperties;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import com.cadosfrit.sensor.event.service.store.lsm.LsmEventStore;
+import com.cadosfrit.sensor.event.service.store.lsm.LsmStoreProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs without MySQL: the LSM store keeps events in a write-ahead log and memory-mapped segments.
+ */
+@SpringBootTest(properties = {
+        "ingest.store.type=LSM",
+        "ingest.store.lsm.flush-rows=1000000",
+        "ingest.store.lsm.compaction-trigger=100",
+        "ingest.store.lsm.wal-segment-size-bytes=1048576",
+        "ingest.store.embedded.lines.L_LSM_1=F_LSM",
+        "ingest.store.embedded.lines.L_LSM_2=F_LSM",
+        "ingest.store.embedded.machines.mac_lsm_1=L_LSM_1",
+        "ingest.store.embedded.machines.mac_lsm_2=L_LSM_2"
+})
+@ActiveProfiles("embedded")
+public class ScenarioNineteenTest {
+
+    private static final Instant BASE = Instant.parse("2024-03-01T10:00:00Z");
+    private static final Path DIR = createTempDir();
+
+    @Autowired private EventStore eventStore;
+    @Autowired private LsmEventStore lsmStore;
+    @Autowired private EmbeddedStoreProperties hierarchy;
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+
+    @DynamicPropertySource
+    static void lsmDir(DynamicPropertyRegistry registry) {
+        registry.add("ingest.store.lsm.dir", DIR::toString);
+    }
+
+    @Test
+    void testUpdatesAcrossSegmentsCompactionAndRecovery() throws IOException {
+        // --- 1. ARRANGE: First versions flushed to a segment ---
+        assertEquals(lsmStore, eventStore);
+        ingestService.processBatch(List.of(
+                createEvent("lsm_1", "mac_lsm_1", 0, 2),
+                createEvent("lsm_2", "mac_lsm_1", 60, 1),
+                createEvent("lsm_3", "mac_lsm_2", 120, 0)
+        ));
+        lsmStore.flush();
+
+        // --- 2. ACT: Resends and corrections land in a newer segment ---
+        IngestResponseDTO response = ingestService.processBatch(List.of(
+                createEvent("lsm_1", "mac_lsm_1", 0, 2),      // identical to the flushed row
+                createEvent("lsm_2", "mac_lsm_1", 90, 4),     // moves out of the older segment's window
+                createEvent("lsm_3", "mac_lsm_2", 120, -1),   // now a heartbeat
+                createEvent("lsm_4", "mac_lsm_2", 180, 3),    // new, then corrected in the same batch
+                createEvent("lsm_4", "mac_lsm_2", 180, 5)
+        ));
+        lsmStore.flush();
+
+        // --- 3. ASSERT: Procedure counters; the flushed older versions are shadowed ---
+        assertEquals(1, response.getAccepted());
+        assertEquals(3, response.getUpdated());
+        assertEquals(1, response.getDeduped());
+        assertEquals(2, lsmStore.getStats().getSegments());
+        assertStats();
+
+        lsmStore.compact();
+        assertEquals(1, lsmStore.getStats().getSegments());
+        assertEquals(4, lsmStore.getStats().getSegmentRows());
+        assertStats();
+
+        // --- 4. Crash: an unflushed batch survives in the log of a copy taken while the store is running ---
+        ingestService.processBatch(List.of(createEvent("lsm_5", "mac_lsm_1", 300, 7)));
+        Path crashed = Files.createTempDirectory("lsm-crash");
+        copy(DIR, crashed);
+
+        LsmStoreProperties properties = new LsmStoreProperties();
+        properties.setDir(crashed.toString());
+        properties.setWalSegmentSizeBytes(1048576);
+        LsmEventStore recovered = new LsmEventStore(properties, hierarchy);
+        try {
+            assertEquals(1, recovered.getStats().getMemtableRows(), "Unflushed batch replayed from the log");
+            Object[] stats = recovered.getMachineStatsRaw("mac_lsm_1", BASE, BASE.plusSeconds(3600));
+            assertEquals(13L, stats[0]);
+            assertEquals(3L, stats[1]);
+            assertEquals(1, recovered.upsertBatch(List.of(createEvent("lsm_5", "mac_lsm_1", 300, 7)), Instant.now()).deduped());
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    private void assertStats() {
+        MachineStatsDTO first = statsService.getMachineStats("mac_lsm_1", BASE, BASE.plusSeconds(3600));
+        assertEquals(2, first.getEventsCount());
+        assertEquals(6, first.getDefectsCount());
+
+        MachineStatsDTO edge = statsService.getMachineStats("mac_lsm_1", BASE, BASE.plusSeconds(90));
+        assertEquals(1, edge.getEventsCount(), "The old version of lsm_2 at +60s must not be counted");
+
+        MachineStatsDTO second = statsService.getMachineStats("mac_lsm_2", BASE, BASE.plusSeconds(3600));
+        assertEquals(2, second.getEventsCount());
+        assertEquals(5, second.getDefectsCount(), "Heartbeats count as events but not as defects");
+
+        List<Map<String, Object>> lines = statsService.getTopDefectLines("F_LSM", BASE, BASE.plusSeconds(3600), 5);
+        assertEquals(2, lines.size());
+        assertEquals("L_LSM_1", lines.get(0).get("lineId"));
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.toList()) {
+                Path destination = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.copy(file, destination);
+                }
+            }
+        }
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("lsm-scenario");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private EventRequestDTO createEvent(String id, String machineId, int offsetSeconds, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machineId);
+        event.setEventTime(BASE.plusSeconds(offsetSeconds));
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
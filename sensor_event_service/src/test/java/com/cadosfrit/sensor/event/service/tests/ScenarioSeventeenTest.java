@@ -0,0 +1,75 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.dto.ReplicaStatsDTO;
+import com.cadosfrit.sensor.event.service.replica.ReplicaRouter;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The "replica" is the test database itself, i.e. a replica with no lag; point analytics.replica.url at a
+ * second, replicating instance to exercise real lag.
+ */
+@SpringBootTest(properties = {
+        "analytics.replica.enabled=true",
+        "analytics.replica.url=jdbc:mysql://localhost:3306/factory_test_db",
+        "analytics.replica.lag-margin-ms=1000"
+})
+@ActiveProfiles("test")
+public class ScenarioSeventeenTest {
+
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private ReplicaRouter replicaRouter;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void testOnlyWindowsOlderThanTheLagReadFromTheReplica() throws Exception {
+        // --- 1. ARRANGE: One event an hour ago, one a second ago ---
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_replica_" + run;
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(List.of(
+                createEventMap("replica_1_" + run, machine, now.minus(1, ChronoUnit.HOURS)),
+                createEventMap("replica_2_" + run, machine, now.minusSeconds(1))
+        )));
+        replicaRouter.checkLag();
+        ReplicaStatsDTO before = replicaRouter.getStats();
+
+        // --- 2. ACT: A window that ended before the lag, then one that ends now ---
+        MachineStatsDTO history = statsService.getMachineStats(machine, now.minus(2, ChronoUnit.HOURS), now.minusSeconds(60));
+        MachineStatsDTO live = statsService.getMachineStats(machine, now.minus(2, ChronoUnit.HOURS), now.plusSeconds(60));
+
+        // --- 3. ASSERT ---
+        ReplicaStatsDTO after = replicaRouter.getStats();
+        assertTrue(after.isHealthy());
+        assertEquals(1, history.getEventsCount());
+        assertEquals(2, live.getEventsCount());
+        assertEquals(1, after.getReplicaReads() - before.getReplicaReads());
+        assertEquals(1, after.getFallbacksForFreshness() - before.getFallbacksForFreshness());
+    }
+
+    private Map<String, Object> createEventMap(String id, String machine, Instant eventTime) {
+        return Map.of(
+                "event_id", id,
+                "machine_id", machine,
+                "event_time", eventTime.toString(),
+                "received_time", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString(),
+                "duration_ms", 1000,
+                "defect_count", 1
+        );
+    }
+}
@@ -0,0 +1,147 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.model.*;
+import com.cadosfrit.sensor.event.service.repository.*;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.sharding.ShardPlacements;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.sharding.ShardSchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "ingest.sharding.enabled=true",
+        "ingest.sharding.shards.east.url=jdbc:mysql://localhost:3306/factory_test_shard?createDatabaseIfNotExist=true&rewriteBatchedStatements=true",
+        "ingest.sharding.shards.east.factories=F_EAST"
+})
+@ActiveProfiles("test")
+public class ScenarioSixteenTest {
+
+    @Autowired private FactoryRepository factoryRepository;
+    @Autowired private ProductionLineRepository lineRepository;
+    @Autowired private MachineRepository machineRepository;
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private ShardRouter shardRouter;
+    @Autowired private ShardSchemaManager schemaManager;
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+
+    @BeforeEach
+    @AfterEach
+    void clean() {
+        eventRepository.deleteAll();
+        machineRepository.deleteAll();
+        lineRepository.deleteAll();
+        factoryRepository.deleteAll();
+        shardRouter.getShardJdbc().get("east").update("DELETE FROM machine_events");
+    }
+
+    @Test
+    void testMixedBatchIsSplitAcrossShards() {
+        // --- 1. ARRANGE: One machine per factory, F_EAST owned by the east shard ---
+        register("F_WEST", "L_WEST", "mac_shard_west");
+        register("F_EAST", "L_EAST", "mac_shard_east");
+        schemaManager.syncHierarchy();
+        Instant time = Instant.parse("2024-01-10T10:00:00Z");
+        List<EventRequestDTO> batch = List.of(
+                createEvent("shard_1", "mac_shard_west", time, 1),
+                createEvent("shard_2", "mac_shard_east", time, 2),
+                createEvent("shard_3", "mac_shard_east", time.plusSeconds(60), 3)
+        );
+
+        // --- 2. ACT ---
+        IngestResponseDTO response = ingest(batch);
+
+        // --- 3. ASSERT: Counters merged, rows on their owner's instance, stats see both ---
+        assertEquals(3, response.getAccepted());
+        JdbcTemplate east = shardRouter.getShardJdbc().get("east");
+        assertEquals(2, east.queryForObject("SELECT COUNT(*) FROM machine_events", Integer.class));
+        assertFalse(eventRepository.existsById("shard_2"));
+        assertEquals(1, eventRepository.count());
+
+        MachineStatsDTO eastStats = statsService.getMachineStats("mac_shard_east", time, time.plusSeconds(3600));
+        assertEquals(2, eastStats.getEventsCount());
+        assertEquals(5, eastStats.getDefectsCount());
+
+        List<Map<String, Object>> lines = statsService.getTopDefectLines("F_EAST", time, time.plusSeconds(3600), 5);
+        assertEquals(1, lines.size());
+        assertEquals("L_EAST", lines.get(0).get("lineId"));
+        assertEquals(2L, lines.get(0).get("eventCount"));
+    }
+
+    @Test
+    void testEventMovedToAShardFactoryKeepsOneRow() {
+        // --- 1. ARRANGE: An event stored on the primary, for a machine of an unsharded factory ---
+        register("F_WEST", "L_WEST", "mac_shard_west");
+        register("F_EAST", "L_EAST", "mac_shard_east");
+        schemaManager.syncHierarchy();
+        String id = "shard_move_" + System.nanoTime();
+        Instant time = Instant.parse("2024-01-10T10:00:00Z");
+        assertEquals(1, ingest(List.of(createEvent(id, "mac_shard_west", time, 1))).getAccepted());
+
+        // --- 2. ACT: Correct it to a machine of the east factory, then resend the correction ---
+        IngestResponseDTO moved = ingest(List.of(createEvent(id, "mac_shard_east", time, 4)));
+        IngestResponseDTO resent = ingest(List.of(createEvent(id, "mac_shard_east", time, 4)));
+
+        // --- 3. ASSERT: Updated and deduped where the event lives, never copied to the east shard ---
+        assertEquals(1, moved.getUpdated());
+        assertEquals(1, resent.getDeduped());
+        assertTrue(eventRepository.existsById(id));
+        assertEquals(0, shardRouter.getShardJdbc().get("east")
+                .queryForObject("SELECT COUNT(*) FROM machine_events WHERE event_id = ?", Integer.class, id));
+
+        assertEquals(0, statsService.getMachineStats("mac_shard_west", time, time.plusSeconds(3600)).getEventsCount());
+        MachineStatsDTO eastStats = statsService.getMachineStats("mac_shard_east", time, time.plusSeconds(3600));
+        assertEquals(1, eastStats.getEventsCount());
+        assertEquals(4, eastStats.getDefectsCount());
+        List<Map<String, Object>> lines = statsService.getTopDefectLines("F_EAST", time, time.plusSeconds(3600), 5);
+        assertEquals(1L, lines.get(0).get("eventCount"));
+    }
+
+    private IngestResponseDTO ingest(List<EventRequestDTO> batch) {
+        return shardRouter.ingest(batch, ShardPlacements.EVENTS, EventRequestDTO::getEventId,
+                EventRequestDTO::getMachineId, ingestService::processBatch);
+    }
+
+    private void register(String factoryId, String lineId, String machineId) {
+        Factory factory = new Factory();
+        factory.setFactoryId(factoryId);
+        factoryRepository.saveAndFlush(factory);
+        ProductionLine line = new ProductionLine();
+        line.setLineId(lineId);
+        line.setFactory(factory);
+        lineRepository.saveAndFlush(line);
+        Machine machine = new Machine();
+        machine.setMachineId(machineId);
+        machine.setProductionLine(line);
+        machineRepository.saveAndFlush(machine);
+    }
+
+    private EventRequestDTO createEvent(String id, String machineId, Instant time, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machineId);
+        event.setEventTime(time);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
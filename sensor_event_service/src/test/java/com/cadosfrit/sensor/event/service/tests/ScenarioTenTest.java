@@ -0,0 +1,71 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.repository.HeartbeatLedgerRepository;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "ingest.storage.mode=HEARTBEAT_COMPACTED")
+@ActiveProfiles("test")
+public class ScenarioTenTest {
+
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private HeartbeatLedgerRepository ledgerRepository;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void testHeartbeatsAreCompactedButStillCounted() throws Exception {
+        // --- 1. ARRANGE: Heartbeats on both sides of minute boundaries plus one real event ---
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_heartbeat_compaction_" + run;
+        List<Map<String, Object>> batch = List.of(
+                createEventMap("hb_cmp_1_" + run, machine, "2023-11-02T10:00:10Z", -1),
+                createEventMap("hb_cmp_2_" + run, machine, "2023-11-02T10:00:50Z", -1),
+                createEventMap("hb_cmp_3_" + run, machine, "2023-11-02T10:01:30Z", -1),
+                createEventMap("hb_cmp_4_" + run, machine, "2023-11-02T10:02:40Z", -1),
+                createEventMap("real_cmp_1_" + run, machine, "2023-11-02T10:01:00Z", 3)
+        );
+
+        // --- 2. ACT: Ingest twice; the second run must dedupe against the ledger ---
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(batch));
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(batch));
+
+        // --- 3. ASSERT: Only the real event is a full row, heartbeats live in the ledger ---
+        assertTrue(eventRepository.existsById("real_cmp_1_" + run));
+        assertFalse(eventRepository.existsById("hb_cmp_1_" + run));
+        assertTrue(ledgerRepository.existsById("hb_cmp_1_" + run));
+        assertEquals(4, ledgerRepository.findAllById(
+                List.of("hb_cmp_1_" + run, "hb_cmp_2_" + run, "hb_cmp_3_" + run, "hb_cmp_4_" + run)).size());
+
+        // Window [10:00:30, 10:02:30): hb_cmp_2 (head edge), hb_cmp_3 (full minute), real_cmp_1
+        MachineStatsDTO stats = statsService.getMachineStats(machine,
+                Instant.parse("2023-11-02T10:00:30Z"), Instant.parse("2023-11-02T10:02:30Z"));
+        assertEquals(3, stats.getEventsCount());
+        assertEquals(3, stats.getDefectsCount());
+    }
+
+    private Map<String, Object> createEventMap(String id, String machine, String eventTime, int defects) {
+        return Map.of(
+                "event_id", id,
+                "machine_id", machine,
+                "event_time", eventTime,
+                "received_time", "2023-11-02T11:00:00Z",
+                "duration_ms", 1000,
+                "defect_count", defects
+        );
+    }
+}
@@ -0,0 +1,82 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.model.MachineEvent;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ScenarioThirteenTest {
+
+    private static final String MACHINE_A = "mac_dictionary_a";
+    private static final String MACHINE_B = "mac_dictionary_b";
+
+    @Autowired @Qualifier("EventIngestServiceV1") private EventIngestService ingestService;
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private MachineKeyDictionary machineKeys;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void testUnregisteredMachinesGetKeysAndStatsMapBack() throws Exception {
+        // --- 1. ARRANGE: An event for a machine that is not in the machines table ---
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+        eventRepository.deleteAllById(List.of("dict_evt_1"));
+
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId("dict_evt_1");
+        event.setMachineId(MACHINE_A);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(2);
+
+        // --- 2. ACT: Ingest through the service, then move the event to another machine via a keyless call ---
+        IngestResponseDTO response = ingestService.processBatch(List.of(event));
+        List<Map<String, Object>> moved = List.of(Map.of(
+                "event_id", "dict_evt_1",
+                "machine_id", MACHINE_B,
+                "event_time", eventTime.toString(),
+                "received_time", Instant.now().toString(),
+                "duration_ms", 1000,
+                "defect_count", 2
+        ));
+        eventRepository.processFastBatchSP(objectMapper.writeValueAsString(moved));
+
+        // --- 3. ASSERT: Both ids have distinct keys, the row reads back as the new machine, stats follow it ---
+        assertEquals(1, response.getAccepted());
+        assertTrue(machineKeys.find(MACHINE_A).isPresent());
+        assertTrue(machineKeys.find(MACHINE_B).isPresent());
+        assertNotEquals(machineKeys.find(MACHINE_A).get(), machineKeys.find(MACHINE_B).get());
+
+        MachineEvent stored = eventRepository.findById("dict_evt_1").orElseThrow();
+        assertEquals(MACHINE_B, stored.getMachineId());
+
+        Instant from = eventTime.minus(1, ChronoUnit.MINUTES);
+        Instant to = eventTime.plus(1, ChronoUnit.MINUTES);
+        MachineStatsDTO statsA = statsService.getMachineStats(MACHINE_A, from, to);
+        MachineStatsDTO statsB = statsService.getMachineStats(MACHINE_B, from, to);
+        assertEquals(0, statsA.getEventsCount());
+        assertEquals(1, statsB.getEventsCount());
+        assertEquals(2, statsB.getDefectsCount());
+    }
+}
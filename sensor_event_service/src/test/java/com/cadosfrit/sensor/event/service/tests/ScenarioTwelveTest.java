@@ -0,0 +1,66 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.model.MachineEvent;
+import com.cadosfrit.sensor.event.service.model.MachineEventVersion;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.storage.EventVersionCompactor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "ingest.storage.mode=VERSIONED",
+        "ingest.versions.compact-interval-ms=3600000"
+})
+@ActiveProfiles("test")
+public class ScenarioTwelveTest {
+
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private EventVersionCompactor compactor;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void testCorrectionsAppendVersionsAndCompactToLatest() throws Exception {
+        // --- 1. ACT: Original, identical resend, then a correction ---
+        String eventId = "versioned_evt_" + System.nanoTime();
+        Map<String, Object> accepted = statusCounts(eventRepository.processFastBatchSP(json(eventId, 5)));
+        Map<String, Object> deduped = statusCounts(eventRepository.processFastBatchSP(json(eventId, 5)));
+        Map<String, Object> updated = statusCounts(eventRepository.processFastBatchSP(json(eventId, 8)));
+        compactor.compact();
+
+        // --- 2. ASSERT: Counters unchanged, history kept, projection holds the latest version ---
+        assertEquals(1, ((Number) accepted.get("ACCEPTED")).intValue());
+        assertEquals(1, ((Number) deduped.get("DEDUPED")).intValue());
+        assertEquals(1, ((Number) updated.get("UPDATED")).intValue());
+
+        List<MachineEventVersion> history = compactor.getHistory(eventId);
+        assertEquals(2, history.size(), "Dedupe must not append a version");
+
+        MachineEvent latest = eventRepository.findById(eventId).orElseThrow();
+        assertEquals(8, latest.getDefectCount());
+    }
+
+    private String json(String eventId, int defects) throws Exception {
+        return objectMapper.writeValueAsString(List.of(Map.of(
+                "event_id", eventId,
+                "machine_id", "mac_versioned",
+                "event_time", "2023-11-04T09:00:00Z",
+                "received_time", "2023-11-04T09:01:00Z",
+                "duration_ms", 1000,
+                "defect_count", defects
+        )));
+    }
+
+    private Map<String, Object> statusCounts(List<Map<String, Object>> rows) {
+        return rows.stream().collect(Collectors.toMap(
+                row -> (String) row.get("status"), row -> row.get("count")));
+    }
+}
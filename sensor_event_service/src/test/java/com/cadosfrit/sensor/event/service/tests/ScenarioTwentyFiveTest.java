@@ -0,0 +1,149 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.PartitionStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.storage.PartitionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "ingest.storage.partitioning.enabled=true",
+        "ingest.storage.partitioning.retention-partitions=3",
+        "ingest.rollups.enabled=true"
+})
+@ActiveProfiles("test")
+public class ScenarioTwentyFiveTest {
+
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private PartitionManager partitionManager;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testPartitionsAreCreatedAndMovedEventsKeepOneRow() {
+        // --- 1. ARRANGE: Partitioning is set up on start ---
+        PartitionStatsDTO stats = partitionManager.getStats();
+        assertTrue(stats.isPartitioned());
+        List<String> names = stats.getPartitions().stream().map(PartitionStatsDTO.Partition::getName).toList();
+        assertTrue(names.contains("p_history"));
+        assertTrue(names.contains("p_future"));
+
+        String run = Long.toString(System.nanoTime());
+        String id = "part_move_" + run;
+        String machine = "mac_part_" + run;
+        Instant today = Instant.now().truncatedTo(ChronoUnit.HOURS);
+
+        // --- 2. ACT: Move the event back two days, across a partition boundary ---
+        ingestService.processBatch(List.of(createEvent(id, machine, today, 2)));
+        IngestResponseDTO moved = ingestService.processBatch(List.of(createEvent(id, machine, today.minus(2, ChronoUnit.DAYS), 5)));
+
+        // --- 3. ASSERT: Still one row, now in the old window only ---
+        assertEquals(1, moved.getUpdated());
+        assertEquals(1, countRows(id));
+        assertEquals(0, statsService.getMachineStats(machine, today, today.plus(1, ChronoUnit.HOURS)).getEventsCount());
+        assertEquals(5, statsService.getMachineStats(machine, today.minus(2, ChronoUnit.DAYS),
+                today.minus(2, ChronoUnit.DAYS).plus(1, ChronoUnit.HOURS)).getDefectsCount());
+    }
+
+    @Test
+    void testConcurrentBatchesInsertANewIdOnce() {
+        // --- 1. ARRANGE: The same new id in two batches released together ---
+        String run = Long.toString(System.nanoTime());
+        String id = "part_race_" + run;
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // --- 2. ACT ---
+        List<CompletableFuture<IngestResponseDTO>> futures = List.of(
+                CompletableFuture.supplyAsync(() -> ingestAfter(start, createEvent(id, "mac_race_" + run, eventTime, 1))),
+                CompletableFuture.supplyAsync(() -> ingestAfter(start, createEvent(id, "mac_race_" + run, eventTime, 1))));
+        start.countDown();
+        List<IngestResponseDTO> responses = futures.stream().map(CompletableFuture::join).toList();
+
+        // --- 3. ASSERT: One accepted, one deduped, one row ---
+        assertEquals(1, responses.stream().mapToInt(IngestResponseDTO::getAccepted).sum());
+        assertEquals(1, responses.stream().mapToInt(IngestResponseDTO::getDeduped).sum());
+        assertEquals(1, countRows(id));
+    }
+
+    @Test
+    void testDroppedPartitionLeavesStatsRollupsAndRegistry() {
+        // --- 1. ARRANGE: Split an expired partition off p_history and put one event in it ---
+        LocalDate expiredBound = LocalDate.now(ZoneOffset.UTC).minusDays(20);
+        jdbcTemplate.execute("ALTER TABLE machine_events REORGANIZE PARTITION p_history INTO ("
+                + "PARTITION p_test_old VALUES LESS THAN ('" + expiredBound + " 00:00:00'), "
+                + "PARTITION p_history VALUES LESS THAN (" + firstBound() + "))");
+
+        String run = Long.toString(System.nanoTime());
+        String id = "part_drop_" + run;
+        String machine = "mac_drop_" + run;
+        Instant eventTime = expiredBound.minusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC).plusSeconds(600);
+        Instant hour = eventTime.truncatedTo(ChronoUnit.HOURS);
+        ingestService.processBatch(List.of(createEvent(id, machine, eventTime, 3)));
+        assertEquals(3, statsService.getMachineStats(machine, hour, hour.plus(1, ChronoUnit.HOURS)).getDefectsCount());
+
+        // --- 2. ACT ---
+        long droppedBefore = partitionManager.getStats().getDropped();
+        partitionManager.maintain();
+
+        // --- 3. ASSERT: Partition, event, rollup and id claim are gone ---
+        PartitionStatsDTO stats = partitionManager.getStats();
+        assertTrue(stats.getDropped() > droppedBefore);
+        assertTrue(stats.getPartitions().stream().noneMatch(p -> p.getName().equals("p_test_old")));
+        assertEquals(0, countRows(id));
+        assertEquals(0, statsService.getMachineStats(machine, hour, hour.plus(1, ChronoUnit.HOURS)).getEventsCount());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(event_count), 0) FROM machine_event_rollup_hour WHERE machine_id = ?",
+                Integer.class, machine));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM event_ids WHERE event_id = ?",
+                Integer.class, id));
+    }
+
+    private String firstBound() {
+        return jdbcTemplate.queryForObject("""
+                SELECT PARTITION_DESCRIPTION FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'machine_events' AND PARTITION_NAME = 'p_history'
+                """, String.class);
+    }
+
+    private IngestResponseDTO ingestAfter(CountDownLatch start, EventRequestDTO event) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ingestService.processBatch(List.of(event));
+    }
+
+    private int countRows(String eventId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM machine_events WHERE event_id = ?",
+                Integer.class, eventId);
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
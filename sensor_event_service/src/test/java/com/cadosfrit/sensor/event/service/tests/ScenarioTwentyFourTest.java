@@ -0,0 +1,88 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.constants.Constants;
+import com.cadosfrit.sensor.event.service.controller.MachineStatsController;
+import com.cadosfrit.sensor.event.service.dto.BatchStatsRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ScenarioTwentyFourTest {
+
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private MachineStatsController statsController;
+
+    @Test
+    void testBatchStatsMatchPerMachineStatsInRequestOrder() {
+        // --- 1. ARRANGE: Three machines with different defect rates, one machine without events ---
+        Instant start = Instant.now().minus(3, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        Instant end = start.plus(1, ChronoUnit.HOURS);
+        String run = Long.toString(System.nanoTime());
+        String healthy = "mac_batch_ok_" + run;
+        String warning = "mac_batch_warn_" + run;
+        String ignored = "mac_batch_ign_" + run;
+        String idle = "mac_batch_idle_" + run;
+        ingestService.processBatch(List.of(
+                createEvent("batch_1_" + run, healthy, start.plusSeconds(60), 1),
+                createEvent("batch_2_" + run, warning, start.plusSeconds(120), 3),
+                createEvent("batch_3_" + run, warning, start.plusSeconds(180), 2),
+                createEvent("batch_4_" + run, ignored, start.plusSeconds(240), -1),
+                createEvent("batch_5_" + run, healthy, end.plusSeconds(60), 9)
+        ));
+
+        // --- 2. ACT: One batch call, with a repeated id ---
+        List<String> machineIds = List.of(warning, idle, healthy, ignored, warning);
+        List<MachineStatsDTO> batch = statsService.getMachineStats(machineIds, start, end);
+
+        // --- 3. ASSERT: Request order without the repeat, same numbers as one GET /stats per machine ---
+        assertEquals(List.of(warning, idle, healthy, ignored), batch.stream().map(MachineStatsDTO::getMachineId).toList());
+        for (MachineStatsDTO stats : batch) {
+            MachineStatsDTO single = statsService.getMachineStats(stats.getMachineId(), start, end);
+            assertEquals(single.getEventsCount(), stats.getEventsCount());
+            assertEquals(single.getDefectsCount(), stats.getDefectsCount());
+            assertEquals(single.getAvgDefectRate(), stats.getAvgDefectRate());
+            assertEquals(single.getStatus(), stats.getStatus());
+        }
+        assertEquals(5, batch.get(0).getDefectsCount());
+        assertEquals(Constants.WARNING.getCode(), batch.get(0).getStatus());
+        assertEquals(0, batch.get(1).getEventsCount());
+        assertEquals(1, batch.get(2).getEventsCount());
+        assertEquals(Constants.HEALTHY.getCode(), batch.get(2).getStatus());
+        assertEquals(1, batch.get(3).getEventsCount());
+        assertEquals(0, batch.get(3).getDefectsCount());
+
+        // Ids and a factory selector together are ambiguous
+        BatchStatsRequestDTO ambiguous = new BatchStatsRequestDTO();
+        ambiguous.setMachineIds(List.of(healthy));
+        ambiguous.setFactoryId("F01");
+        ambiguous.setStart(start);
+        ambiguous.setEnd(end);
+        assertEquals(HttpStatus.BAD_REQUEST, statsController.getBatchStats(ambiguous).getStatusCode());
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
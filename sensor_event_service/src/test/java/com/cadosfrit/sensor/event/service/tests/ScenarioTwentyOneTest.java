@@ -0,0 +1,104 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.aggregate.MinuteAggregateStore;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.store.EventStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ingest.outbox.enabled=true", "analytics.minute-aggregates.enabled=true"})
+@ActiveProfiles("test")
+public class ScenarioTwentyOneTest {
+
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private MinuteAggregateStore minuteAggregates;
+    @Autowired private EventStore eventStore;
+
+    @Test
+    void testMinuteAggregatesFollowAcceptsAndRetractUpdates() throws InterruptedException {
+        // --- 1. ARRANGE: Store loaded and following the feed ---
+        awaitCurrent();
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_min_" + run;
+        String other = "mac_min_other_" + run;
+        Instant base = Instant.now().minus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
+
+        // --- 2. ACT: Events in three minutes, then one moved in time, one corrected and one moved to another machine ---
+        ingestService.processBatch(List.of(
+                createEvent("min_1_" + run, machine, base.plusSeconds(10), 2),
+                createEvent("min_2_" + run, machine, base.plusSeconds(70), -1),
+                createEvent("min_3_" + run, machine, base.plusSeconds(130), 1),
+                createEvent("min_4_" + run, machine, base.plusSeconds(150), 3)
+        ));
+        ingestService.processBatch(List.of(
+                createEvent("min_1_" + run, machine, base.plusSeconds(250), 2),
+                createEvent("min_3_" + run, machine, base.plusSeconds(130), 6),
+                createEvent("min_4_" + run, other, base.plusSeconds(150), 3)
+        ));
+
+        // --- 3. ASSERT: Memory holds the final images only ---
+        Instant end = base.plus(5, ChronoUnit.MINUTES);
+        MinuteAggregateStore.Covered covered = awaitEvents(machine, base, end, 3);
+        assertEquals(base, covered.from());
+        assertEquals(end, covered.to());
+        assertEquals(8, covered.defects());
+        assertEquals(0, awaitEvents(machine, base, base.plus(1, ChronoUnit.MINUTES), 0).events());
+        assertEquals(3, awaitEvents(other, base, end, 1).defects());
+
+        // Unaligned window: memory for the whole minutes plus MySQL for the edges matches a plain MySQL read
+        Instant start = base.plusSeconds(65);
+        Instant unalignedEnd = base.plusSeconds(255);
+        MachineStatsDTO stats = statsService.getMachineStats(machine, start, unalignedEnd);
+        Object[] mysql = eventStore.getMachineStatsRaw(machine, start, unalignedEnd);
+        assertEquals(((Number) mysql[1]).longValue(), stats.getEventsCount());
+        assertEquals(((Number) mysql[0]).longValue(), stats.getDefectsCount());
+        assertEquals(3, stats.getEventsCount());
+        assertEquals(8, stats.getDefectsCount());
+        assertTrue(minuteAggregates.getStats().getRetractions() >= 3);
+    }
+
+    private void awaitCurrent() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!minuteAggregates.getStats().isCurrent()) {
+            assertTrue(System.currentTimeMillis() < deadline, "minute aggregates never caught up");
+            Thread.sleep(100);
+        }
+    }
+
+    private MinuteAggregateStore.Covered awaitEvents(String machine, Instant from, Instant to, long events)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            Optional<MinuteAggregateStore.Covered> covered = minuteAggregates.aggregate(machine, from, to);
+            if (covered.isPresent() && covered.get().events() == events) {
+                return covered.get();
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "minute aggregates did not reach " + events + " events");
+            Thread.sleep(100);
+        }
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,117 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.dto.ShadowReportDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.shadow.ShadowTrafficMirror;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Every batch is sampled; the candidate is V2 and the primary V1, replaying into factory_test_db_shadow.
+ */
+@SpringBootTest(properties = {
+        "ingest.shadow.enabled=true",
+        "ingest.shadow.schema=factory_test_db_shadow",
+        "ingest.shadow.candidate=EventIngestServiceV2",
+        "ingest.shadow.sample-rate=1.0"
+})
+@ActiveProfiles("test")
+public class ScenarioTwentySixTest {
+
+    private static final String PRIMARY = IngestEngine.V1.getBeanName();
+    private static final String SHADOW_EVENTS = "factory_test_db_shadow.machine_events";
+
+    @Autowired private ShadowTrafficMirror shadowMirror;
+    @Autowired @Qualifier("EventIngestServiceV1") private EventIngestService primaryService;
+    @Autowired private MachineEventRepository eventRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testCandidateWritesOnlyTheShadowSchemaAndDivergencesAreReported() throws Exception {
+        // --- 1. ARRANGE: A primary that stores nothing and claims a dedupe ---
+        String id = "shadow_new_" + System.nanoTime();
+        List<EventRequestDTO> batch = List.of(createEvent(id, 3));
+        ShadowReportDTO.EngineComparison before = comparison();
+
+        // --- 2. ACT ---
+        IngestResponseDTO response = shadowMirror.mirror(PRIMARY, batch,
+                () -> IngestResponseDTO.builder().deduped(1).build());
+        ShadowReportDTO.EngineComparison after = awaitCompared(before.getCompared() + 1);
+
+        // --- 3. ASSERT: The caller got the primary's answer, the candidate's insert stayed in the shadow schema ---
+        assertEquals(1, response.getDeduped());
+        assertFalse(eventRepository.existsById(id));
+        assertEquals(3, shadowDefects(id));
+
+        assertEquals(before.getDiverged() + 1, after.getDiverged());
+        ShadowReportDTO.Divergence divergence = shadowMirror.getReport().getRecentDivergences().get(0);
+        assertEquals(PRIMARY, divergence.getPrimary());
+        assertEquals(1, divergence.getPrimaryCounters().getDeduped());
+        assertEquals(1, divergence.getCandidateCounters().getAccepted());
+    }
+
+    @Test
+    void testUpdatesReplayAgainstTheBeforeImage() throws Exception {
+        // --- 1. ARRANGE: An event already in production, unknown to the shadow schema ---
+        String id = "shadow_update_" + System.nanoTime();
+        assertEquals(1, primaryService.processBatch(List.of(createEvent(id, 1))).getAccepted());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + SHADOW_EVENTS + " WHERE event_id = ?", Integer.class, id));
+        ShadowReportDTO.EngineComparison before = comparison();
+
+        // --- 2. ACT: A sampled correction ---
+        List<EventRequestDTO> correction = List.of(createEvent(id, 6));
+        IngestResponseDTO response = shadowMirror.mirror(PRIMARY, correction, () -> primaryService.processBatch(correction));
+        ShadowReportDTO.EngineComparison after = awaitCompared(before.getCompared() + 1);
+
+        // --- 3. ASSERT: Both engines saw the old row and updated it, each in its own schema ---
+        assertEquals(1, response.getUpdated());
+        assertEquals(before.getMatched() + 1, after.getMatched());
+        assertEquals(before.getDiverged(), after.getDiverged());
+        assertEquals(6, eventRepository.findById(id).orElseThrow().getDefectCount());
+        assertEquals(6, shadowDefects(id));
+    }
+
+    private ShadowReportDTO.EngineComparison comparison() {
+        ShadowReportDTO.EngineComparison comparison = shadowMirror.getReport().getComparisons().get(PRIMARY);
+        return comparison != null ? comparison : ShadowReportDTO.EngineComparison.builder().primary(PRIMARY).build();
+    }
+
+    private ShadowReportDTO.EngineComparison awaitCompared(long compared) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (comparison().getCompared() < compared) {
+            assertTrue(System.currentTimeMillis() < deadline, "Shadow replay did not finish");
+            Thread.sleep(50);
+        }
+        return comparison();
+    }
+
+    private int shadowDefects(String id) {
+        return jdbcTemplate.queryForObject(
+                "SELECT defect_count FROM " + SHADOW_EVENTS + " WHERE event_id = ?", Integer.class, id);
+    }
+
+    private EventRequestDTO createEvent(String id, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId("mac_shadow");
+        event.setEventTime(Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,131 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.ChangeFeedPageDTO;
+import com.cadosfrit.sensor.event.service.dto.EventChangeDTO;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.service.ChangeFeedService;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "ingest.outbox.enabled=true")
+@ActiveProfiles("test")
+public class ScenarioTwentyTest {
+
+    private static final String MACHINE = "mac_outbox";
+
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private ChangeFeedService changeFeedService;
+
+    @Test
+    void testChangeFeedRecordsAcceptsAndUpdatesInOrder() {
+        // --- 1. ARRANGE: Start from the current end of the feed ---
+        List<EventChangeDTO> existing = readAll(0);
+        long head = existing.isEmpty() ? 0 : lastSeq(existing);
+        Instant base = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+        String run = Long.toString(System.nanoTime());
+
+        // --- 2. ACT: Two accepts, then a resend, a correction and an id repeated in one batch ---
+        ingestService.processBatch(List.of(
+                createEvent("out_1_" + run, base, 1),
+                createEvent("out_2_" + run, base.plusSeconds(10), 1)
+        ));
+        ingestService.processBatch(List.of(
+                createEvent("out_1_" + run, base, 1),
+                createEvent("out_2_" + run, base.plusSeconds(10), 4),
+                createEvent("out_3_" + run, base.plusSeconds(20), 0),
+                createEvent("out_3_" + run, base.plusSeconds(20), 2)
+        ));
+
+        // --- 3. ASSERT: Deduplicated resend absent, updates carry the replaced image ---
+        List<EventChangeDTO> changes = readAll(head);
+        assertEquals(List.of(
+                "ACCEPTED out_1_" + run,
+                "ACCEPTED out_2_" + run,
+                "UPDATED out_2_" + run,
+                "ACCEPTED out_3_" + run,
+                "UPDATED out_3_" + run
+        ), changes.stream().map(change -> change.getChangeType() + " " + change.getEventId()).toList());
+
+        EventChangeDTO correction = changes.get(2);
+        assertEquals(4, correction.getAfter().getDefectCount());
+        assertEquals(1, correction.getBefore().getDefectCount());
+        assertEquals(MACHINE, correction.getBefore().getMachineId());
+        assertNull(changes.get(0).getBefore());
+        for (int i = 1; i < changes.size(); i++) {
+            assertTrue(changes.get(i).getSeq() > changes.get(i - 1).getSeq());
+        }
+
+        // Paging resumes exactly where the previous page ended
+        ChangeFeedPageDTO first = changeFeedService.getChanges(head, 2, 0);
+        ChangeFeedPageDTO second = changeFeedService.getChanges(first.getNextAfter(), 2, 0);
+        assertEquals(2, first.getChanges().size());
+        assertEquals(changes.get(2).getSeq(), second.getChanges().get(0).getSeq());
+
+        // Long poll at the end of the feed waits, then returns an empty page at the same position
+        long started = System.nanoTime();
+        ChangeFeedPageDTO idle = changeFeedService.getChanges(lastSeq(changes), 10, 300);
+        assertTrue(idle.getChanges().isEmpty());
+        assertEquals(lastSeq(changes), idle.getNextAfter());
+        assertTrue(System.nanoTime() - started >= 250_000_000L);
+    }
+
+    @Test
+    void testWaitingReadersAreAnsweredByThePollerWithoutHoldingThreads() throws Exception {
+        // --- 1. ARRANGE: Many readers parked at the end of the feed ---
+        List<EventChangeDTO> existing = readAll(0);
+        long head = existing.isEmpty() ? 0 : lastSeq(existing);
+        List<CompletableFuture<ChangeFeedPageDTO>> waiting = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            waiting.add(changeFeedService.awaitChanges(head, 10, 10_000));
+        }
+        assertTrue(waiting.stream().noneMatch(CompletableFuture::isDone));
+
+        // --- 2. ACT: One new event ---
+        String id = "out_wait_" + System.nanoTime();
+        ingestService.processBatch(List.of(createEvent(id, Instant.now().minus(1, ChronoUnit.HOURS), 1)));
+
+        // --- 3. ASSERT: Every reader gets it well before its wait ends ---
+        for (CompletableFuture<ChangeFeedPageDTO> page : waiting) {
+            ChangeFeedPageDTO answered = page.get(5, TimeUnit.SECONDS);
+            assertEquals(id, answered.getChanges().get(0).getEventId());
+        }
+    }
+
+    private List<EventChangeDTO> readAll(long after) {
+        List<EventChangeDTO> changes = new ArrayList<>();
+        ChangeFeedPageDTO page;
+        do {
+            page = changeFeedService.getChanges(after, 1000, 0);
+            changes.addAll(page.getChanges());
+            after = page.getNextAfter();
+        } while (!page.getChanges().isEmpty());
+        return changes;
+    }
+
+    private static long lastSeq(List<EventChangeDTO> changes) {
+        return changes.get(changes.size() - 1).getSeq();
+    }
+
+    private EventRequestDTO createEvent(String id, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(MACHINE);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
+import com.cadosfrit.sensor.event.service.controller.EventIngestController;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.dto.StatsCacheStatsDTO;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"analytics.stats-cache.enabled=true"})
+@ActiveProfiles("test")
+public class ScenarioTwentyThreeTest {
+
+    @Autowired private EventIngestController ingestController;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private StatsResultCache statsCache;
+
+    @Test
+    void testClosedWindowsAreCachedUntilAnEventLandsInThem() {
+        // --- 1. ARRANGE: Two closed one-hour windows of one machine, both cached ---
+        Instant hour = Instant.now().minus(5, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        Instant nextHour = hour.plus(1, ChronoUnit.HOURS);
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_cache_" + run;
+        ingestController.ingestBatch(List.of(
+                createEvent("cache_1_" + run, machine, hour.plusSeconds(600), 2),
+                createEvent("cache_2_" + run, machine, nextHour.plusSeconds(600), 1)
+        ), null, null, null);
+
+        assertEquals(2, statsService.getMachineStats(machine, hour, nextHour).getDefectsCount());
+        assertEquals(1, statsService.getMachineStats(machine, nextHour, nextHour.plus(1, ChronoUnit.HOURS)).getDefectsCount());
+        StatsCacheStatsDTO before = statsCache.getStats();
+
+        // --- 2. ACT: Repeat both reads, then ingest a late event into the first hour ---
+        statsService.getMachineStats(machine, hour, nextHour);
+        statsService.getMachineStats(machine, nextHour, nextHour.plus(1, ChronoUnit.HOURS));
+        assertEquals(before.getHits() + 2, statsCache.getStats().getHits());
+
+        ingestController.ingestBatch(List.of(createEvent("cache_3_" + run, machine, hour.plusSeconds(1800), 4)),
+                null, null, null);
+
+        // --- 3. ASSERT: Only the window holding the late event was recomputed ---
+        MachineStatsDTO first = statsService.getMachineStats(machine, hour, nextHour);
+        assertEquals(2, first.getEventsCount());
+        assertEquals(6, first.getDefectsCount());
+        MachineStatsDTO second = statsService.getMachineStats(machine, nextHour, nextHour.plus(1, ChronoUnit.HOURS));
+        assertEquals(1, second.getDefectsCount());
+
+        StatsCacheStatsDTO after = statsCache.getStats();
+        assertEquals(before.getHits() + 3, after.getHits());
+        assertTrue(after.getInvalidatedEntries() >= before.getInvalidatedEntries() + 1);
+
+        // An open window is never cached
+        long bypasses = after.getBypasses();
+        statsService.getMachineStats(machine, hour, Instant.now().plusSeconds(60));
+        assertEquals(bypasses + 1, statsCache.getStats().getBypasses());
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,90 @@
+package com.cadosfrit.sensor.event.service.tests;
+
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.MachineStatsDTO;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.MachineStatsService;
+import com.cadosfrit.sensor.event.service.storage.RollupManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ingest.rollups.enabled=true", "ingest.rollups.window-days=1"})
+@ActiveProfiles("test")
+public class ScenarioTwentyTwoTest {
+
+    @Autowired @Qualifier("EventIngestServiceV2") private EventIngestService ingestService;
+    @Autowired private MachineStatsService statsService;
+    @Autowired private RollupManager rollupManager;
+
+    @Test
+    void testRollupsFollowAcceptsAndUpdatesOnBothProcedures() throws InterruptedException {
+        // --- 1. ARRANGE: Reconciled hours reach back past the test window ---
+        Instant hour = Instant.now().minus(6, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        awaitCoveredFrom(hour);
+        String run = Long.toString(System.nanoTime());
+        String machine = "mac_roll_" + run;
+
+        // --- 2. ACT: Set-based accepts, then a move across hours, a heartbeat and in-batch repeats (sequential path) ---
+        ingestService.processBatch(List.of(
+                createEvent("roll_1_" + run, machine, hour.plusSeconds(600), 2),
+                createEvent("roll_2_" + run, machine, hour.plusSeconds(1200), 3),
+                createEvent("roll_3_" + run, machine, hour.plusSeconds(4200), 1)
+        ));
+        ingestService.processBatch(List.of(
+                createEvent("roll_2_" + run, machine, hour.plusSeconds(7800), 5),
+                createEvent("roll_4_" + run, machine, hour.plusSeconds(4300), -1)
+        ));
+        ingestService.processBatch(List.of(
+                createEvent("roll_3_" + run, machine, hour.plusSeconds(4200), 4),
+                createEvent("roll_3_" + run, machine, hour.plusSeconds(4200), 6)
+        ));
+
+        // --- 3. ASSERT: Rollup totals match the raw rows exactly ---
+        Instant start = hour.minus(10, ChronoUnit.MINUTES);
+        Instant end = hour.plus(3, ChronoUnit.HOURS).plus(10, ChronoUnit.MINUTES);
+        Optional<RollupManager.Hours> hours = rollupManager.wholeHours(start, end);
+        assertTrue(hours.isPresent());
+        assertEquals(hour, hours.get().from());
+
+        MachineStatsDTO stats = statsService.getMachineStats(machine, start, end);
+        assertEquals(4, stats.getEventsCount());
+        assertEquals(2 + 5 + 6, stats.getDefectsCount());
+
+        MachineStatsDTO firstHour = statsService.getMachineStats(machine, hour, hour.plus(1, ChronoUnit.HOURS));
+        assertEquals(1, firstHour.getEventsCount());
+        assertEquals(2, firstHour.getDefectsCount());
+
+        // Deltas kept the rollups exact, so reconciling finds nothing to correct
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rollupManager.reconcileHour(hour.plus(i, ChronoUnit.HOURS)));
+        }
+    }
+
+    private void awaitCoveredFrom(Instant hour) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (rollupManager.getStats().getCoveredFrom() == null || rollupManager.getStats().getCoveredFrom().isAfter(hour)) {
+            assertTrue(System.currentTimeMillis() < deadline, "hourly rollups were never reconciled back to " + hour);
+            Thread.sleep(100);
+        }
+    }
+
+    private EventRequestDTO createEvent(String id, String machine, Instant eventTime, int defects) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId(machine);
+        event.setEventTime(eventTime);
+        event.setDurationMs(1000);
+        event.setDefectCount(defects);
+        return event;
+    }
+}
@@ -0,0 +1,155 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.aggregate.StatsResultCache;
+import com.cadosfrit.sensor.event.service.constants.IngestEngine;
+import com.cadosfrit.sensor.event.service.dto.EventRequestDTO;
+import com.cadosfrit.sensor.event.service.dto.IngestResponseDTO;
+import com.cadosfrit.sensor.event.service.repository.MachineEventRepository;
+import com.cadosfrit.sensor.event.service.service.EventIngestService;
+import com.cadosfrit.sensor.event.service.service.impl.EventIngestServiceImpl;
+import com.cadosfrit.sensor.event.service.sharding.ShardRouter;
+import com.cadosfrit.sensor.event.service.storage.MachineKeyDictionary;
+import com.cadosfrit.sensor.event.service.stratergy.impl.DurationValidationStrategy;
+import com.cadosfrit.sensor.event.service.tiering.ColdTierStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WalDrainerTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final EventIngestService engine = mock(EventIngestService.class);
+    private final List<String> appliedIds = new ArrayList<>();
+    private WriteAheadLog wal;
+
+    @BeforeEach
+    void setUp() {
+        wal = new WriteAheadLog(dir, 4096);
+        when(engine.processBatch(anyList())).thenAnswer(call -> {
+            List<EventRequestDTO> batch = call.getArgument(0);
+            if (batch.stream().anyMatch(event -> event.getEventId().startsWith("poison"))) {
+                return IngestResponseDTO.builder().build();
+            }
+            batch.forEach(event -> appliedIds.add(event.getEventId()));
+            return IngestResponseDTO.builder().accepted(batch.size()).build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        wal.close();
+    }
+
+    @Test
+    void testDrainAppliesRecordsInOrderAndTruncatesTheLog() throws Exception {
+        append(event("e1"), event("e2"));
+        append(event("e3"));
+
+        assertEquals(2, drainer().drain());
+
+        assertEquals(List.of("e1", "e2", "e3"), appliedIds);
+        assertEquals(0, wal.getPendingRecords());
+    }
+
+    @Test
+    void testRecordThatNeverCompletesIsDeadLetteredAfterMaxAttempts() throws Exception {
+        long poisoned = append(event("poison_1"));
+        append(event("e1"));
+        WalDrainer drainer = drainer();
+
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            assertEquals(0, drainer.drain());
+            assertTrue(appliedIds.isEmpty());
+        }
+        assertEquals(2, drainer.drain());
+
+        assertEquals(List.of("e1"), appliedIds);
+        assertEquals(1, drainer.getDeadLettered());
+        assertTrue(Files.exists(dir.resolve("dead-letter").resolve(String.format("%020d-%d.json", poisoned,
+                IngestEngine.V1.getCode()))));
+    }
+
+    @Test
+    void testAllRejectedRecordWithRepeatedIdsIsAppliedOnce() throws Exception {
+        // The real V1 engine: both copies of e1 fail validation, so nothing reaches the database
+        MachineEventRepository repository = mock(MachineEventRepository.class);
+        EventIngestService v1 = new EventIngestServiceImpl(objectMapper, repository,
+                List.of(new DurationValidationStrategy()), mock(MachineKeyDictionary.class));
+        EventRequestDTO invalid = event("e1");
+        invalid.setDurationMs(-1);
+        append(invalid, invalid);
+
+        WalDrainer drainer = drainer(v1);
+
+        assertEquals(1, drainer.drain());
+        assertEquals(0, drainer.getDeadLettered());
+        assertEquals(0, wal.getPendingRecords());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void testUnappliedRecordsAreReplayedOnStartupAfterACrash() throws Exception {
+        append(event("e1"));
+        append(event("e2"));
+        // Crash: the log closes without the drainer ever running
+        wal.close();
+        wal = new WriteAheadLog(dir, 4096);
+
+        drainer().replayOnStartup();
+
+        assertEquals(List.of("e1", "e2"), appliedIds);
+        assertEquals(0, wal.getPendingRecords());
+    }
+
+    private WalDrainer drainer() {
+        return drainer(engine);
+    }
+
+    @SuppressWarnings("unchecked")
+    private WalDrainer drainer(EventIngestService engine) {
+        ShardRouter shardRouter = mock(ShardRouter.class);
+        when(shardRouter.ingest(anyList(), any(), any(), any(), any())).thenAnswer(call ->
+                ((Function<List<EventRequestDTO>, IngestResponseDTO>) call.getArgument(4)).apply(call.getArgument(0)));
+        StatsResultCache statsCache = mock(StatsResultCache.class);
+        when(statsCache.invalidateEvents(anyList(), any())).thenAnswer(call ->
+                ((Supplier<IngestResponseDTO>) call.getArgument(1)).get());
+        MachineKeyDictionary machineKeys = mock(MachineKeyDictionary.class);
+        when(machineKeys.isReady()).thenReturn(true);
+        return new WalDrainer(wal, Map.of(IngestEngine.V1.getBeanName(), engine), objectMapper,
+                shardRouter, statsCache, new ColdTierStore(false, "unused"), machineKeys, 64, MAX_ATTEMPTS);
+    }
+
+    private long append(EventRequestDTO... batch) throws Exception {
+        return wal.append(IngestEngine.V1.getCode(), objectMapper.writeValueAsBytes(List.of(batch)));
+    }
+
+    private static EventRequestDTO event(String id) {
+        EventRequestDTO event = new EventRequestDTO();
+        event.setEventId(id);
+        event.setMachineId("mac_wal");
+        event.setEventTime(Instant.parse("2026-01-01T00:00:00Z"));
+        event.setDurationMs(1000);
+        event.setDefectCount(0);
+        return event;
+    }
+}
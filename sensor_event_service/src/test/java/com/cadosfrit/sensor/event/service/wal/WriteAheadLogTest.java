@@ -0,0 +1,84 @@
+package com.cadosfrit.sensor.event.service.wal;
+
+import com.cadosfrit.sensor.event.service.constants.AppConstants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testAppendedRecordsArePendingInSequenceUntilApplied() {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 4096)) {
+            long first = wal.append((byte) 1, bytes("a"));
+            long second = wal.append((byte) 2, bytes("b"));
+
+            List<WalRecord> pending = wal.readPending(10);
+            assertEquals(List.of(first, second), pending.stream().map(WalRecord::sequence).toList());
+            assertEquals(2, pending.get(1).engine());
+            assertEquals("b", new String(pending.get(1).payload(), StandardCharsets.UTF_8));
+
+            wal.markApplied(first);
+            assertEquals(List.of(second), wal.readPending(10).stream().map(WalRecord::sequence).toList());
+            assertEquals(1, wal.getPendingRecords());
+        }
+    }
+
+    @Test
+    void testReopenAfterCrashKeepsUnappliedRecordsAndDropsTornTail() throws Exception {
+        long applied;
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 4096)) {
+            applied = wal.append((byte) 1, bytes("applied"));
+            wal.append((byte) 1, bytes("pending"));
+            wal.markApplied(applied);
+        }
+        // A record whose header reached the disk but whose payload did not
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(WalSegment::isSegmentFile).findFirst().orElseThrow();
+        }
+        int end = 2 * AppConstants.WAL_RECORD_HEADER_BYTES + bytes("applied").length + bytes("pending").length;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 9, 1, 2, 3, 4}), end);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 4096)) {
+            List<WalRecord> pending = wal.readPending(10);
+            assertEquals(1, pending.size());
+            assertEquals("pending", new String(pending.get(0).payload(), StandardCharsets.UTF_8));
+            assertEquals(applied + 2, wal.append((byte) 1, bytes("next")));
+        }
+    }
+
+    @Test
+    void testDeadLetterKeepsThePayloadAndUnblocksTheLog() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 4096)) {
+            long poisoned = wal.append((byte) 1, bytes("poison"));
+            long next = wal.append((byte) 1, bytes("next"));
+
+            Path file = wal.deadLetter(wal.readPending(1).get(0));
+
+            assertEquals("poison", Files.readString(file));
+            assertTrue(file.startsWith(dir.resolve(AppConstants.WAL_DEAD_LETTER_DIR)));
+            assertEquals(poisoned, wal.getAppliedSequence());
+            assertEquals(next, wal.readPending(10).get(0).sequence());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}